@@ -0,0 +1,37 @@
+package com.afkstatstracker;
+
+import java.util.Random;
+
+/**
+ * Synthetic click traces and session histories shared by the benchmarks.
+ */
+final class BenchmarkData
+{
+    static final long START = 1_700_000_000_000L;
+
+    private BenchmarkData()
+    {
+    }
+
+    /**
+     * Click timestamps spaced 0.6 to 5 seconds apart, the range of a typical AFK method.
+     */
+    static long[] clickTrace(int clicks, Random random)
+    {
+        long[] timestamps = new long[clicks];
+        long time = START;
+        for (int i = 0; i < clicks; i++)
+        {
+            time += 600 + random.nextInt(4400);
+            timestamps[i] = time;
+        }
+        return timestamps;
+    }
+
+    static Session session(int index, Random random)
+    {
+        long start = START + index * 3_600_000L;
+        return new Session("session-" + index, "Session " + index, start, start + 1_800_000L,
+            500 + random.nextInt(2000), random.nextInt(101), 600 + random.nextInt(4400));
+    }
+}
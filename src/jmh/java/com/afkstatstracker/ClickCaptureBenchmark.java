@@ -0,0 +1,56 @@
+package com.afkstatstracker;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The work done on the client thread for every mouse press. Runs long enough for the
+ * click buffer to wrap, so the steady state of a long session is measured and should
+ * show no allocation. Run with instrumentation off and on to check what it costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClickCaptureBenchmark
+{
+    @Param({"false", "true"})
+    private boolean instrumented;
+
+    private MouseClickCounterListener listener;
+
+    @Setup
+    public void setUp()
+    {
+        Instrumentation instrumentation = new Instrumentation();
+        instrumentation.setEnabled(instrumented);
+        listener = new MouseClickCounterListener(null, instrumentation, () -> {});
+    }
+
+    @Benchmark
+    public long addClick()
+    {
+        listener.addClick();
+        return listener.getClicks().totalCount();
+    }
+
+    @Benchmark
+    public long readLiveStats()
+    {
+        return listener.getIntervalStats().getConsistencyScore()
+            + listener.getIntervalHistogram().getValueAtPercentile(99)
+            + listener.getRecentStats().getConsistencyScore(listener.getClock().currentTimeMillis());
+    }
+}
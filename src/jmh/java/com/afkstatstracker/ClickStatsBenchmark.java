@@ -0,0 +1,88 @@
+package com.afkstatstracker;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Metric computation over a whole synthetic session, from a short session to one far
+ * longer than anyone will record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ClickStatsBenchmark
+{
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    private int clicks;
+
+    private long[] timestamps;
+    private byte[] encodedTrace;
+
+    @Setup
+    public void setUp()
+    {
+        timestamps = BenchmarkData.clickTrace(clicks, new Random(42));
+        encodedTrace = TraceCodec.encode(timestamps);
+    }
+
+    /**
+     * Batch path used by {@link AfkStatsTrackerPlugin#computeConsistency(long[])}.
+     */
+    @Benchmark
+    public long computeConsistency()
+    {
+        return IntervalStats.of(timestamps).getConsistencyScore();
+    }
+
+    /**
+     * The live path: the stats are fed one click at a time and read at the end.
+     */
+    @Benchmark
+    public double streamingAverageInterval()
+    {
+        IntervalStats stats = new IntervalStats();
+        for (long timestamp : timestamps)
+        {
+            stats.addClick(timestamp);
+        }
+        return stats.getMeanInterval();
+    }
+
+    @Benchmark
+    public IntervalPercentiles percentiles()
+    {
+        IntervalHistogram histogram = new IntervalHistogram();
+        for (int i = 1; i < timestamps.length; i++)
+        {
+            histogram.recordValue(timestamps[i] - timestamps[i - 1]);
+        }
+        return histogram.toPercentiles();
+    }
+
+    @Benchmark
+    public byte[] encodeTrace()
+    {
+        return TraceCodec.encode(timestamps);
+    }
+
+    @Benchmark
+    public long[] decodeTrace()
+    {
+        return TraceCodec.decode(ByteBuffer.wrap(encodedTrace));
+    }
+}
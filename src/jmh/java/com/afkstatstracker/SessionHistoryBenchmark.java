@@ -0,0 +1,187 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving and loading the session history, through both the journal on disk and the
+ * legacy whole-JSON config storage it replaced, so the two can be compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionHistoryBenchmark
+{
+    @Param({"20", "1000", "10000"})
+    private int sessions;
+
+    private final Gson gson = new Gson();
+    private final Random random = new Random(42);
+
+    private Path directory;
+    private File journalDir;
+    private File savedDir;
+    private List<Session> history;
+    private String legacyJson;
+
+    private SessionJournal savingJournal;
+    private int nextIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("afk-stats-bench");
+        history = new ArrayList<>();
+        for (int i = 0; i < sessions; i++)
+        {
+            history.add(BenchmarkData.session(i, random));
+        }
+        legacyJson = gson.toJson(history);
+
+        journalDir = new File(directory.toFile(), "journal");
+        SessionJournal journal = new SessionJournal(journalDir, gson, new MemoryStorage(legacyJson));
+        journal.loadPage(SessionHistoryManager.PAGE_SIZE);
+        journal.compact();
+    }
+
+    /**
+     * Starts every iteration of {@link #journalSave()} from a copy of the compacted
+     * history, opened the way the plugin opens it, so the history does not grow from one
+     * iteration to the next and only saving is timed.
+     */
+    @Setup(Level.Iteration)
+    public void openSavingJournal() throws IOException
+    {
+        if (savedDir != null)
+        {
+            delete(savedDir.toPath());
+        }
+        savedDir = Files.createTempDirectory(directory, "saved").toFile();
+        Files.copy(new File(journalDir, SessionJournal.BASE_FILE).toPath(),
+            new File(savedDir, SessionJournal.BASE_FILE).toPath());
+
+        savingJournal = new SessionJournal(savedDir, gson, new MemoryStorage(null));
+        savingJournal.loadPage(SessionHistoryManager.PAGE_SIZE);
+        nextIndex = sessions;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        delete(directory);
+    }
+
+    /**
+     * Plugin start-up: opening the journal and loading the first page.
+     */
+    @Benchmark
+    public SessionHistoryManager journalLoad()
+    {
+        return new SessionHistoryManager(new SessionJournal(journalDir, gson, new MemoryStorage(null)));
+    }
+
+    /**
+     * Recording one finished session and writing it out. The journal grows within an
+     * iteration, so the cost of periodic compaction is included.
+     */
+    @Benchmark
+    public void journalSave()
+    {
+        savingJournal.add(BenchmarkData.session(nextIndex++, random));
+        savingJournal.flush();
+    }
+
+    @Benchmark
+    public SessionHistoryManager legacyLoad()
+    {
+        return new SessionHistoryManager(new MemoryStorage(legacyJson), gson);
+    }
+
+    /**
+     * Recording one finished session, which the legacy storage saves by writing out the
+     * whole history again.
+     */
+    @Benchmark
+    public void legacySave(LegacyHistory legacy)
+    {
+        legacy.manager.addSession(legacy.session);
+    }
+
+    /**
+     * A legacy history loaded afresh before every save, so parsing it is not timed.
+     */
+    @State(Scope.Thread)
+    public static class LegacyHistory
+    {
+        private SessionHistoryManager manager;
+        private Session session;
+
+        @Setup(Level.Invocation)
+        public void load(SessionHistoryBenchmark benchmark)
+        {
+            manager = new SessionHistoryManager(new MemoryStorage(benchmark.legacyJson), benchmark.gson);
+            session = BenchmarkData.session(benchmark.sessions, benchmark.random);
+        }
+    }
+
+    private static void delete(Path path) throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(path))
+        {
+            paths.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static class MemoryStorage implements SessionHistoryManager.ConfigStorage
+    {
+        private String json;
+
+        MemoryStorage(String json)
+        {
+            this.json = json;
+        }
+
+        @Override
+        public String load()
+        {
+            return json;
+        }
+
+        @Override
+        public void save(String json)
+        {
+            this.json = json;
+        }
+
+        @Override
+        public void clear()
+        {
+            json = null;
+        }
+    }
+}
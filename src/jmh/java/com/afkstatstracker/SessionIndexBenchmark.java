@@ -0,0 +1,80 @@
+package com.afkstatstracker;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sorting, filtering and changing a fully loaded history, up to the 100k sessions the
+ * history list is meant to stay responsive with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionIndexBenchmark
+{
+    @Param({"1000", "10000", "100000"})
+    private int sessions;
+
+    private SessionIndex index;
+    private Session[] renamed;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        index = new SessionIndex();
+        renamed = new Session[sessions];
+        for (int i = 0; i < sessions; i++)
+        {
+            Session session = BenchmarkData.session(i, random);
+            index.add(session);
+            renamed[i] = session.withName("Renamed " + i);
+        }
+    }
+
+    /**
+     * The history list sorted by consistency over every date.
+     */
+    @Benchmark
+    public List<Session> sortByConsistency()
+    {
+        return index.query(SessionIndex.SortKey.CONSISTENCY, true, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * The history list filtered to the newest tenth and sorted by duration.
+     */
+    @Benchmark
+    public List<Session> filterAndSortByDuration()
+    {
+        long from = BenchmarkData.START + sessions * 9L / 10 * 3_600_000L;
+        return index.query(SessionIndex.SortKey.DURATION, true, from, Long.MAX_VALUE);
+    }
+
+    /**
+     * One rename as the history manager makes it: change the index, then publish a copy.
+     */
+    @Benchmark
+    public SessionIndex renameAndPublish()
+    {
+        index.add(renamed[next]);
+        next = (next + 97) % sessions;
+        return index.copy();
+    }
+}
@@ -0,0 +1,37 @@
+package com.afkstatstracker;
+
+/**
+ * A {@link ClickMetric} that keeps its own running state rather than reading the stats
+ * every dispatcher shares.
+ * <p>
+ * A {@link MetricDispatcher} feeds every interval of the click stream to the
+ * accumulators of all its metrics in a single pass, so adding a metric never adds
+ * another walk over the timestamps. Metrics treat the intervals as a set, not a
+ * sequence, which lets two accumulators be merged into the one that would have seen
+ * both sets of intervals.
+ */
+public interface AccumulatingMetric extends ClickMetric
+{
+    Accumulator newAccumulator();
+
+    /**
+     * Running state of one metric over a stream of intervals.
+     */
+    interface Accumulator
+    {
+        /**
+         * Adds one interval between clicks, in ms, never negative.
+         */
+        void update(long interval);
+
+        /**
+         * Adds everything another accumulator of the same metric has seen.
+         */
+        void merge(Accumulator other);
+
+        /**
+         * The metric over the intervals seen so far, 0 if there are too few.
+         */
+        double result();
+    }
+}
@@ -0,0 +1,138 @@
+package com.afkstatstracker;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.time.LocalDate;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import net.runelite.client.ui.ColorScheme;
+
+/**
+ * Side by side stats of each activity tag, read straight from the
+ * {@link SessionRollups} so it costs the same however long the history is.
+ */
+class ActivityComparisonPanel extends JPanel implements SessionHistoryManager.Listener
+{
+	private static final String[] RANGE_NAMES = {"All time", "Today", "This week", "Last 4 weeks"};
+
+	private final SessionRollups rollups;
+	private final JComboBox<String> rangeBox = new JComboBox<>(RANGE_NAMES);
+	private final JPanel rows = new JPanel(new GridLayout(0, 4, 5, 2));
+	private final JLabel emptyLabel = createLabel("No sessions in this range", Color.GRAY);
+
+	ActivityComparisonPanel(SessionHistoryManager sessionHistoryManager)
+	{
+		super(new BorderLayout(0, 5));
+		this.rollups = sessionHistoryManager.getRollups();
+
+		setBorder(BorderFactory.createCompoundBorder(
+			BorderFactory.createMatteBorder(1, 0, 0, 0, ColorScheme.DARK_GRAY_COLOR),
+			BorderFactory.createEmptyBorder(8, 5, 8, 5)
+		));
+		setToolTipText("Sessions, mean interval over every click and consistency from the pooled variance of each activity");
+
+		JLabel title = new JLabel("Compare Activities");
+		title.setForeground(Color.GRAY);
+
+		rangeBox.setToolTipText("Only count sessions started in this range");
+		rangeBox.addActionListener(e -> refresh());
+
+		JPanel header = new JPanel(new BorderLayout(5, 0));
+		header.add(title, BorderLayout.WEST);
+		header.add(rangeBox, BorderLayout.EAST);
+
+		add(header, BorderLayout.NORTH);
+		add(rows, BorderLayout.CENTER);
+		add(emptyLabel, BorderLayout.SOUTH);
+
+		sessionHistoryManager.addListener(this);
+		refresh();
+	}
+
+	@Override
+	public void sessionAdded(Session session)
+	{
+		refresh();
+	}
+
+	@Override
+	public void sessionUpdated(Session session)
+	{
+		refresh();
+	}
+
+	@Override
+	public void sessionRemoved(Session session)
+	{
+		refresh();
+	}
+
+	@Override
+	public void rollupsRebuilt()
+	{
+		SwingUtilities.invokeLater(this::refresh);
+	}
+
+	void refresh()
+	{
+		rows.removeAll();
+		rows.add(createLabel("Activity", Color.GRAY));
+		rows.add(createLabel("Sessions", Color.GRAY));
+		rows.add(createLabel("Avg", Color.GRAY));
+		rows.add(createLabel("Score", Color.GRAY));
+
+		List<String> tags = rollups.getTags();
+		for (String tag : tags)
+		{
+			SessionRollups.Rollup rollup = rollupFor(tag, rangeBox.getSelectedIndex());
+			if (rollup.getSessionCount() == 0)
+			{
+				continue;
+			}
+
+			rows.add(createLabel(tag.equals(SessionRollups.UNTAGGED) ? "Untagged" : tag, null));
+			rows.add(createLabel(String.valueOf(rollup.getSessionCount()), null));
+			rows.add(createLabel(String.format("%.0f ms", rollup.getMeanInterval()), null));
+			rows.add(createLabel(String.valueOf(rollup.getConsistencyScore()), null));
+		}
+
+		boolean empty = rows.getComponentCount() == 4;
+		rows.setVisible(!empty);
+		emptyLabel.setVisible(empty);
+		revalidate();
+		repaint();
+	}
+
+	private SessionRollups.Rollup rollupFor(String tag, int range)
+	{
+		LocalDate today = LocalDate.now();
+		switch (range)
+		{
+			case 1:
+				return rollups.getRange(tag, SessionRollups.Period.DAY, today, today);
+			case 2:
+				return rollups.getRange(tag, SessionRollups.Period.WEEK, today, today);
+			case 3:
+				return rollups.getRange(tag, SessionRollups.Period.WEEK, today.minusWeeks(3), today);
+			default:
+				return rollups.getTotal(tag);
+		}
+	}
+
+	private static JLabel createLabel(String text, Color color)
+	{
+		JLabel label = new JLabel(text);
+		label.setFont(label.getFont().deriveFont(Font.PLAIN, 11f));
+		if (color != null)
+		{
+			label.setForeground(color);
+		}
+		return label;
+	}
+}
@@ -0,0 +1,124 @@
+package com.afkstatstracker;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
+import net.runelite.client.ui.FontManager;
+import net.runelite.client.ui.overlay.Overlay;
+import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.components.ComponentConstants;
+
+/**
+ * Shows the stats of the session in progress on the game screen.
+ * <p>
+ * An overlay is rendered every frame, so it only reads the {@link LiveStats} the plugin
+ * publishes and draws a cached image of them. The image is redrawn when a new snapshot
+ * is published or the elapsed time ticks over to the next second, which is the only
+ * time anything is formatted or allocated.
+ */
+class AfkStatsOverlay extends Overlay
+{
+	private static final int PADDING = 4;
+	private static final int LINE_GAP = 2;
+	private static final int LABEL_GAP = 8;
+	private static final String[] LABELS = {"Consistency:", "Avg Interval:", "Elapsed:"};
+
+	private final Supplier<LiveStats> liveStats;
+	private final ClickClock clock;
+
+	private LiveStats cachedStats;
+	private long cachedSecond = -1;
+	private BufferedImage cachedImage;
+	private final Dimension cachedSize = new Dimension();
+
+	AfkStatsOverlay(Supplier<LiveStats> liveStats, ClickClock clock)
+	{
+		this.liveStats = liveStats;
+		this.clock = clock;
+		setPosition(OverlayPosition.TOP_LEFT);
+	}
+
+	@Override
+	public Dimension render(Graphics2D graphics)
+	{
+		LiveStats stats = liveStats.get();
+		if (stats == null)
+		{
+			return null;
+		}
+
+		long second = Math.max(0, clock.currentTimeMillis() - stats.getStartTime()) / 1000;
+		if (stats != cachedStats || second != cachedSecond || cachedImage == null)
+		{
+			cachedImage = draw(graphics, stats, second);
+			cachedSize.setSize(cachedImage.getWidth(), cachedImage.getHeight());
+			cachedStats = stats;
+			cachedSecond = second;
+		}
+
+		graphics.drawImage(cachedImage, 0, 0, null);
+		return cachedSize;
+	}
+
+	/**
+	 * The image the last frame drew, which stays the same object until it is redrawn.
+	 */
+	BufferedImage getCachedImage()
+	{
+		return cachedImage;
+	}
+
+	private static BufferedImage draw(Graphics2D graphics, LiveStats stats, long second)
+	{
+		String[] values = {
+			String.valueOf(stats.getConsistency()),
+			String.format("%.0f ms", stats.getAvgInterval()),
+			AfkStatsTrackerPanel.formatDuration(second * 1000)
+		};
+
+		FontMetrics metrics = graphics.getFontMetrics(FontManager.getRunescapeSmallFont());
+		int labelWidth = 0;
+		int valueWidth = 0;
+		for (int i = 0; i < LABELS.length; i++)
+		{
+			labelWidth = Math.max(labelWidth, metrics.stringWidth(LABELS[i]));
+			valueWidth = Math.max(valueWidth, metrics.stringWidth(values[i]));
+		}
+		int lineHeight = metrics.getHeight() + LINE_GAP;
+		int width = PADDING * 2 + labelWidth + LABEL_GAP + valueWidth;
+		int height = PADDING * 2 + lineHeight * LABELS.length - LINE_GAP;
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		try
+		{
+			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+			g.setColor(ComponentConstants.STANDARD_BACKGROUND_COLOR);
+			g.fillRect(0, 0, width, height);
+			g.setFont(metrics.getFont());
+
+			int y = PADDING + metrics.getAscent();
+			for (int i = 0; i < LABELS.length; i++)
+			{
+				int valueX = width - PADDING - metrics.stringWidth(values[i]);
+				g.setColor(Color.BLACK);
+				g.drawString(LABELS[i], PADDING + 1, y + 1);
+				g.drawString(values[i], valueX + 1, y + 1);
+				g.setColor(Color.WHITE);
+				g.drawString(LABELS[i], PADDING, y);
+				g.setColor(Color.YELLOW);
+				g.drawString(values[i], valueX, y);
+				y += lineHeight;
+			}
+		}
+		finally
+		{
+			g.dispose();
+		}
+		return image;
+	}
+}
@@ -1,9 +1,179 @@
 package com.afkstatstracker;
 
+import java.util.EnumSet;
+import java.util.Set;
 import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
+import net.runelite.client.config.ConfigItem;
+import net.runelite.client.config.ConfigSection;
+import net.runelite.client.config.Range;
+import net.runelite.client.config.Units;
 
-@ConfigGroup("afkStatsTracker")
+@ConfigGroup(AfkStatsTrackerConfig.GROUP)
 public interface AfkStatsTrackerConfig extends Config
 {
-}
\ No newline at end of file
+	String GROUP = "afkStatsTracker";
+
+	@ConfigSection(
+		name = "Stats",
+		description = "How live stats are calculated",
+		position = 0
+	)
+	String statsSection = "stats";
+
+	@ConfigSection(
+		name = "History",
+		description = "How long session history is kept",
+		position = 1
+	)
+	String historySection = "history";
+
+	@ConfigSection(
+		name = "Debug",
+		description = "Diagnostics for the plugin itself",
+		position = 2,
+		closedByDefault = true
+	)
+	String debugSection = "debug";
+
+	@ConfigItem(
+		keyName = "recentWindowMinutes",
+		name = "Recent window",
+		description = "Recent consistency and interval only count clicks from this many minutes back.",
+		section = statsSection,
+		position = 0
+	)
+	@Range(min = 1, max = 120)
+	@Units(Units.MINUTES)
+	default int recentWindowMinutes()
+	{
+		return 10;
+	}
+
+	@ConfigItem(
+		keyName = "statsRefreshRate",
+		name = "Max refresh rate",
+		description = "Most times per second the panel updates while you click. Nothing updates while idle or while the panel is hidden.",
+		section = statsSection,
+		position = 1
+	)
+	@Range(min = 1, max = 10)
+	default int statsRefreshRate()
+	{
+		return 2;
+	}
+
+	@ConfigItem(
+		keyName = "idleThreshold",
+		name = "Idle threshold",
+		description = "A gap between clicks longer than this splits the session into segments and is counted as idle time instead of an interval, leaving it out of the consistency.",
+		section = statsSection,
+		position = 2
+	)
+	@Range(min = 5, max = 3600)
+	@Units(Units.SECONDS)
+	default int idleThreshold()
+	{
+		return 60;
+	}
+
+	@ConfigItem(
+		keyName = "panelMetrics",
+		name = "Extra metrics",
+		description = "Metrics listed under the live stats. Every metric is still saved with each session.",
+		section = statsSection,
+		position = 3
+	)
+	default Set<BuiltInMetric> panelMetrics()
+	{
+		return EnumSet.of(BuiltInMetric.MEDIAN_INTERVAL, BuiltInMetric.INTERVAL_MAD, BuiltInMetric.ROBUST_CONSISTENCY);
+	}
+
+	@ConfigItem(
+		keyName = "showOverlay",
+		name = "Show overlay",
+		description = "Shows consistency, average interval and elapsed time on the game screen during a session",
+		section = statsSection,
+		position = 4
+	)
+	default boolean showOverlay()
+	{
+		return true;
+	}
+
+	@ConfigItem(
+		keyName = "trackGameTicks",
+		name = "Track game ticks",
+		description = "Also counts the game ticks between clicks, which are exact where the ms intervals jitter",
+		section = statsSection,
+		position = 5
+	)
+	default boolean trackGameTicks()
+	{
+		return true;
+	}
+
+	@ConfigItem(
+		keyName = "historyMaxSessions",
+		name = "Max sessions",
+		description = "Oldest sessions are removed once the history holds more than this. 0 keeps every session.",
+		section = historySection,
+		position = 0
+	)
+	default int historyMaxSessions()
+	{
+		return 5000;
+	}
+
+	@ConfigItem(
+		keyName = "historyMaxAgeDays",
+		name = "Max age (days)",
+		description = "Sessions started longer ago than this are removed. 0 keeps sessions forever.",
+		section = historySection,
+		position = 1
+	)
+	default int historyMaxAgeDays()
+	{
+		return 0;
+	}
+
+	@ConfigItem(
+		keyName = "historyWriteInterval",
+		name = "Save interval",
+		description = "History changes are written in the background at most once per interval.",
+		section = historySection,
+		position = 2
+	)
+	@Range(max = 60)
+	@Units(Units.SECONDS)
+	default int historyWriteInterval()
+	{
+		return 5;
+	}
+
+	@ConfigItem(
+		keyName = "checkpointInterval",
+		name = "Checkpoint interval",
+		description = "New clicks of the session in progress are saved this often, so it can be recovered after a crash.",
+		section = historySection,
+		position = 3
+	)
+	@Range(min = 5, max = 600)
+	@Units(Units.SECONDS)
+	default int checkpointInterval()
+	{
+		return 30;
+	}
+
+	@ConfigItem(
+		keyName = "debugInstrumentation",
+		name = "Instrumentation",
+		description = "Records how long the plugin's own work takes, shown in the panel and over JMX.",
+		section = debugSection,
+		position = 0
+	)
+	default boolean debugInstrumentation()
+	{
+		return false;
+	}
+}
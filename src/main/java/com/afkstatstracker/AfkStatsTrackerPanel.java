@@ -6,37 +6,83 @@ import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GridLayout;
-import java.awt.event.FocusAdapter;
-import java.awt.event.FocusEvent;
-import java.awt.event.KeyAdapter;
-import java.awt.event.KeyEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import javax.swing.BorderFactory;
-import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
-import javax.swing.JTextField;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import net.runelite.client.ui.ColorScheme;
 import net.runelite.client.ui.PluginPanel;
 
 public class AfkStatsTrackerPanel extends PluginPanel
 {
+	private static final String[] SORT_NAMES = {"Oldest first", "Newest first", "Most consistent", "Longest interval", "Longest session"};
+	private static final SessionIndex.SortKey[] SORT_KEYS = {
+		SessionIndex.SortKey.DATE, SessionIndex.SortKey.DATE, SessionIndex.SortKey.CONSISTENCY,
+		SessionIndex.SortKey.INTERVAL, SessionIndex.SortKey.DURATION
+	};
+	private static final boolean[] SORT_DESCENDING = {false, true, true, true, true};
+	private static final String[] RANGE_NAMES = {"All time", "Today", "Last 7 days", "Last 30 days"};
+
 	private final AfkStatsTrackerPlugin plugin;
 	private final SessionHistoryManager sessionHistoryManager;
 
-	private Timer timer;
+	private final StatsRefresher statsRefresher;
 	private JButton startButton;
 	private JButton stopButton;
+	private JButton lapButton;
+	private JPanel lapSection;
+	private JPanel lapRows;
+	private JLabel[] currentLapLabels;
+	private HeatmapPanel heatmapPanel;
+	private JPanel metricSection;
+	private List<ClickMetric> metrics = new ArrayList<>();
+	private final List<JLabel> metricValueLabels = new ArrayList<>();
 	private JLabel consistencyValueLabel;
 	private JLabel avgIntervalValueLabel;
+	private JLabel recentConsistencyValueLabel;
+	private JLabel recentAvgIntervalValueLabel;
+	private JLabel segmentConsistencyValueLabel;
+	private JLabel idleTimeValueLabel;
+	private JPanel tickPanel;
+	private JLabel tickIntervalValueLabel;
+	private JLabel tickConsistencyValueLabel;
+	private JLabel p50ValueLabel;
+	private JLabel p90ValueLabel;
+	private JLabel p99ValueLabel;
+	private JLabel maxIntervalValueLabel;
+
+	private InstrumentationPanel instrumentationPanel;
+	private JPanel recoveryPanel;
+	private JLabel recoveryLabel;
 
 	private JPanel historyContainer;
+	private SessionHistoryList historyList;
+	private JLabel loadOlderLabel;
+	private JLabel emptyLabel;
+	private JLabel reanalyzeLabel;
+	private JProgressBar reanalysisProgress;
+	private JLabel cancelReanalysisLabel;
+	private ReanalysisEngine.Job reanalysisJob;
+	private Timer reanalysisTimer;
 	private boolean historyExpanded = true;
 
 	public AfkStatsTrackerPanel(AfkStatsTrackerPlugin plugin, SessionHistoryManager sessionHistoryManager)
@@ -46,38 +92,52 @@ public class AfkStatsTrackerPanel extends PluginPanel
 
 		setLayout(new BorderLayout());
 
-		timer = new Timer(1000, e -> updateStats());
-		timer.setRepeats(true);
+		statsRefresher = new StatsRefresher(this::updateStats, 1, plugin.getClock());
 
 		// Main content panel
 		JPanel contentPanel = new JPanel();
 		contentPanel.setLayout(new BoxLayout(contentPanel, BoxLayout.Y_AXIS));
 
 		// Button panel
-		JPanel buttonPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+		JPanel buttonPanel = new JPanel(new GridLayout(2, 2, 5, 5));
 		startButton = new JButton("Start Session");
 		stopButton = new JButton("Stop Session");
 		stopButton.setEnabled(false);
+		lapButton = new JButton("New Lap");
+		lapButton.setToolTipText("End the current lap and start the next, to compare methods within one session");
+		lapButton.setEnabled(false);
 
 		startButton.addActionListener(e -> {
+			recoveryPanel.setVisible(false);
 			plugin.startSession();
+			clearLaps();
 			updateStats();
-			timer.start();
 			startButton.setEnabled(false);
 			stopButton.setEnabled(true);
+			lapButton.setEnabled(true);
 		});
 
 		stopButton.addActionListener(e -> {
-			timer.stop();
 			plugin.stopSession();
 			startButton.setEnabled(true);
 			stopButton.setEnabled(false);
+			lapButton.setEnabled(false);
 			updateStats();
-			refreshHistoryPanel();
+		});
+
+		lapButton.addActionListener(e -> {
+			SessionLap lap = plugin.markLap();
+			if (lap != null)
+			{
+				addLap(lap);
+				updateStats();
+			}
 		});
 
 		buttonPanel.add(startButton);
 		buttonPanel.add(stopButton);
+		buttonPanel.add(lapButton);
+		buttonPanel.add(new JPanel());
 		buttonPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, buttonPanel.getPreferredSize().height));
 
 		// Stats panel
@@ -93,20 +153,272 @@ public class AfkStatsTrackerPanel extends PluginPanel
 			"Average time between clicks in ms");
 		avgIntervalValueLabel = (JLabel) ((BorderLayout) avgIntervalPanel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
 
+		JPanel recentConsistencyPanel = createStatCard("Recent",
+			"Consistency over the last few minutes only; the window is set in the plugin config.");
+		recentConsistencyValueLabel = (JLabel) ((BorderLayout) recentConsistencyPanel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+
+		JPanel recentAvgIntervalPanel = createStatCard("Recent Avg",
+			"Average time between clicks in ms over the last few minutes only");
+		recentAvgIntervalValueLabel = (JLabel) ((BorderLayout) recentAvgIntervalPanel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+
+		JPanel recentPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+		recentPanel.add(recentConsistencyPanel);
+		recentPanel.add(recentAvgIntervalPanel);
+
+		JPanel segmentConsistencyPanel = createStatCard("Segment",
+			"Consistency since the last idle gap; the gap length is set in the plugin config.");
+		segmentConsistencyValueLabel = (JLabel) ((BorderLayout) segmentConsistencyPanel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+
+		JPanel idleTimePanel = createStatCard("Idle",
+			"Time spent in idle gaps, which are left out of the segment stats");
+		idleTimeValueLabel = (JLabel) ((BorderLayout) idleTimePanel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+
+		JPanel segmentPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+		segmentPanel.add(segmentConsistencyPanel);
+		segmentPanel.add(idleTimePanel);
+
+		JPanel tickIntervalPanel = createStatCard("Ticks",
+			"Average number of game ticks (600 ms) between clicks");
+		tickIntervalValueLabel = (JLabel) ((BorderLayout) tickIntervalPanel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+
+		JPanel tickConsistencyPanel = createStatCard("Tick Score",
+			"Consistency of the intervals counted in game ticks, free of the ms jitter of the client");
+		tickConsistencyValueLabel = (JLabel) ((BorderLayout) tickConsistencyPanel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+
+		tickPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+		tickPanel.add(tickIntervalPanel);
+		tickPanel.add(tickConsistencyPanel);
+
+		JPanel p50Panel = createStatCard("p50", "Median time between clicks in ms");
+		p50ValueLabel = (JLabel) ((BorderLayout) p50Panel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+
+		JPanel p90Panel = createStatCard("p90", "90% of click intervals are at most this long, in ms");
+		p90ValueLabel = (JLabel) ((BorderLayout) p90Panel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+
+		JPanel p99Panel = createStatCard("p99", "99% of click intervals are at most this long, in ms");
+		p99ValueLabel = (JLabel) ((BorderLayout) p99Panel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+
+		JPanel maxIntervalPanel = createStatCard("Max", "Longest time between clicks in ms");
+		maxIntervalValueLabel = (JLabel) ((BorderLayout) maxIntervalPanel.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+
+		JPanel percentilePanel = new JPanel(new GridLayout(2, 2, 5, 0));
+		percentilePanel.add(p50Panel);
+		percentilePanel.add(p90Panel);
+		percentilePanel.add(p99Panel);
+		percentilePanel.add(maxIntervalPanel);
+
 		statsPanel.add(consistencyPanel);
 		statsPanel.add(avgIntervalPanel);
+		statsPanel.add(recentPanel);
+		statsPanel.add(segmentPanel);
+		statsPanel.add(tickPanel);
+		statsPanel.add(percentilePanel);
+		metricSection = new JPanel(new GridLayout(0, 2, 5, 2));
+		metricSection.setBorder(BorderFactory.createCompoundBorder(
+			BorderFactory.createMatteBorder(1, 0, 0, 0, ColorScheme.DARK_GRAY_COLOR),
+			BorderFactory.createEmptyBorder(8, 5, 8, 5)
+		));
+		metricSection.setVisible(false);
+		statsPanel.add(metricSection);
+		statsPanel.add(createLapSection());
+		statsPanel.add(createHeatmapSection());
 		statsPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, statsPanel.getPreferredSize().height));
 
 		// History section
 		JPanel historySection = createHistorySection();
 
+		contentPanel.add(createRecoveryPanel());
 		contentPanel.add(buttonPanel);
 		contentPanel.add(statsPanel);
 		contentPanel.add(historySection);
+		contentPanel.add(new ActivityComparisonPanel(sessionHistoryManager));
+
+		instrumentationPanel = new InstrumentationPanel(plugin.getInstrumentation());
+		instrumentationPanel.setVisible(plugin.getInstrumentation().isEnabled());
+		contentPanel.add(instrumentationPanel);
 
 		add(contentPanel, BorderLayout.NORTH);
 	}
 
+	private JPanel createRecoveryPanel()
+	{
+		recoveryPanel = new JPanel(new BorderLayout(0, 3));
+		recoveryPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 8, 0));
+		recoveryPanel.setVisible(false);
+
+		recoveryLabel = new JLabel();
+		recoveryLabel.setToolTipText("The client closed before this session was stopped");
+
+		JPanel actions = new JPanel(new GridLayout(1, 3, 5, 0));
+		actions.add(createRecoveryAction("Resume", "Carry on tracking this session", () ->
+		{
+			plugin.resumeRecoveredSession();
+			clearLaps();
+			startButton.setEnabled(false);
+			stopButton.setEnabled(true);
+			lapButton.setEnabled(true);
+			updateStats();
+		}));
+		actions.add(createRecoveryAction("Save", "Add it to the history as it stood at its last checkpoint",
+			plugin::saveRecoveredSession));
+		actions.add(createRecoveryAction("Discard", "Throw the session away", plugin::discardRecoveredSession));
+
+		recoveryPanel.add(recoveryLabel, BorderLayout.NORTH);
+		recoveryPanel.add(actions, BorderLayout.CENTER);
+		return recoveryPanel;
+	}
+
+	private JLabel createRecoveryAction(String text, String tooltip, Runnable action)
+	{
+		JLabel label = new JLabel(text);
+		label.setForeground(Color.GRAY);
+		label.setToolTipText(tooltip);
+		label.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+		label.addMouseListener(new MouseAdapter()
+		{
+			@Override
+			public void mouseClicked(MouseEvent e)
+			{
+				recoveryPanel.setVisible(false);
+				action.run();
+				revalidate();
+			}
+		});
+		return label;
+	}
+
+	/**
+	 * Offers to resume, save or discard an unfinished session left by a previous run.
+	 */
+	void showRecovery(long startTime, long clickCount)
+	{
+		SwingUtilities.invokeLater(() ->
+		{
+			recoveryLabel.setText(String.format("Unfinished session from %s, %d clicks",
+				new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(startTime)), clickCount));
+			recoveryPanel.setVisible(true);
+			revalidate();
+		});
+	}
+
+	/**
+	 * One row per finished lap plus a live row for the open one, hidden until the first
+	 * lap is marked. Finished rows are added once, so a refresh only touches the live
+	 * row however many laps there are.
+	 */
+	private JPanel createLapSection()
+	{
+		lapSection = new JPanel(new BorderLayout(0, 3));
+		lapSection.setBorder(BorderFactory.createCompoundBorder(
+			BorderFactory.createMatteBorder(1, 0, 0, 0, ColorScheme.DARK_GRAY_COLOR),
+			BorderFactory.createEmptyBorder(8, 5, 8, 5)
+		));
+		lapSection.setToolTipText("Clicks, average interval and consistency of each lap of this session");
+
+		JLabel title = new JLabel("Laps");
+		title.setForeground(Color.GRAY);
+		lapSection.add(title, BorderLayout.NORTH);
+
+		lapRows = new JPanel(new GridLayout(0, 4, 5, 2));
+		lapSection.add(lapRows, BorderLayout.CENTER);
+
+		currentLapLabels = new JLabel[4];
+		for (int i = 0; i < currentLapLabels.length; i++)
+		{
+			currentLapLabels[i] = createSmallLabel("", null);
+			currentLapLabels[i].setFont(currentLapLabels[i].getFont().deriveFont(Font.BOLD));
+		}
+		clearLaps();
+		return lapSection;
+	}
+
+	private JPanel createHeatmapSection()
+	{
+		JPanel section = new JPanel(new BorderLayout(0, 3));
+		section.setBorder(BorderFactory.createCompoundBorder(
+			BorderFactory.createMatteBorder(1, 0, 0, 0, ColorScheme.DARK_GRAY_COLOR),
+			BorderFactory.createEmptyBorder(8, 5, 8, 5)
+		));
+
+		JLabel title = new JLabel("Click Heatmap");
+		title.setForeground(Color.GRAY);
+		section.add(title, BorderLayout.NORTH);
+
+		heatmapPanel = new HeatmapPanel();
+		JPanel centered = new JPanel();
+		centered.add(heatmapPanel);
+		section.add(centered, BorderLayout.CENTER);
+		return section;
+	}
+
+	/**
+	 * Lists the given metrics under the live stats, in the order given.
+	 */
+	void setMetrics(Collection<? extends ClickMetric> enabled)
+	{
+		List<ClickMetric> metrics = new ArrayList<>(enabled);
+		if (metrics.equals(this.metrics))
+		{
+			return;
+		}
+		this.metrics = metrics;
+
+		metricSection.removeAll();
+		metricValueLabels.clear();
+		for (ClickMetric metric : metrics)
+		{
+			JLabel name = createSmallLabel(metric.getName(), Color.GRAY);
+			name.setToolTipText(metric.getDescription());
+			JLabel value = createSmallLabel(metric.format(0), null);
+			value.setToolTipText(metric.getDescription());
+			metricSection.add(name);
+			metricSection.add(value);
+			metricValueLabels.add(value);
+		}
+		metricSection.setVisible(!metrics.isEmpty());
+		revalidate();
+		repaint();
+	}
+
+	private void clearLaps()
+	{
+		lapRows.removeAll();
+		for (String heading : new String[]{"Lap", "Clicks", "Avg", "Score"})
+		{
+			lapRows.add(createSmallLabel(heading, Color.GRAY));
+		}
+		for (JLabel label : currentLapLabels)
+		{
+			lapRows.add(label);
+		}
+		lapSection.setVisible(false);
+		revalidate();
+	}
+
+	private void addLap(SessionLap lap)
+	{
+		// Finished laps go above the live row
+		int index = lapRows.getComponentCount() - currentLapLabels.length;
+		String number = String.valueOf((index - 4) / 4 + 1);
+		lapRows.add(createSmallLabel(number, null), index++);
+		lapRows.add(createSmallLabel(String.valueOf(lap.getClickCount()), null), index++);
+		lapRows.add(createSmallLabel(String.format("%.0f ms", lap.getAvgInterval()), null), index++);
+		lapRows.add(createSmallLabel(String.valueOf(lap.getConsistencyScore()), null), index);
+		lapSection.setVisible(true);
+		revalidate();
+	}
+
+	private static JLabel createSmallLabel(String text, Color color)
+	{
+		JLabel label = new JLabel(text);
+		label.setFont(label.getFont().deriveFont(Font.PLAIN, 11f));
+		if (color != null)
+		{
+			label.setForeground(color);
+		}
+		return label;
+	}
+
 	private JPanel createStatCard(String title, String tooltip)
 	{
 		JPanel card = new JPanel(new BorderLayout());
@@ -151,157 +463,316 @@ public class AfkStatsTrackerPanel extends PluginPanel
 		});
 		header.add(headerLabel, BorderLayout.WEST);
 
+		// Sort and date filter
+		JComboBox<String> sortBox = new JComboBox<>(SORT_NAMES);
+		sortBox.setToolTipText("Sort sessions");
+		JComboBox<String> rangeBox = new JComboBox<>(RANGE_NAMES);
+		rangeBox.setToolTipText("Only show sessions started in this range");
+		ActionListener viewListener = e -> historyList.setView(
+			SORT_KEYS[sortBox.getSelectedIndex()],
+			SORT_DESCENDING[sortBox.getSelectedIndex()],
+			rangeStart(rangeBox.getSelectedIndex()));
+		sortBox.addActionListener(viewListener);
+		rangeBox.addActionListener(viewListener);
+
+		JPanel viewPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+		viewPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 5, 0));
+		viewPanel.add(sortBox);
+		viewPanel.add(rangeBox);
+
 		// History container
-		historyContainer = new JPanel();
-		historyContainer.setLayout(new BoxLayout(historyContainer, BoxLayout.Y_AXIS));
+		historyContainer = new JPanel(new BorderLayout());
 
-		JScrollPane scrollPane = new JScrollPane(historyContainer);
-		scrollPane.setPreferredSize(new Dimension(0, 300));
-		scrollPane.setBorder(null);
+		loadOlderLabel = new JLabel("Load older sessions");
+		loadOlderLabel.setForeground(Color.GRAY);
+		loadOlderLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
+		loadOlderLabel.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+		loadOlderLabel.addMouseListener(new MouseAdapter()
+		{
+			@Override
+			public void mouseClicked(MouseEvent e)
+			{
+				sessionHistoryManager.loadOlderSessions();
+			}
+		});
 
-		section.add(header, BorderLayout.NORTH);
-		section.add(scrollPane, BorderLayout.CENTER);
+		emptyLabel = new JLabel("No sessions recorded");
+		emptyLabel.setForeground(Color.GRAY);
 
-		refreshHistoryPanel();
-		return section;
-	}
+		historyList = new SessionHistoryList(sessionHistoryManager, plugin.getInstrumentation());
+		historyList.getModel().addListDataListener(new ListDataListener()
+		{
+			@Override
+			public void intervalAdded(ListDataEvent e)
+			{
+				updateHistoryControls();
+			}
 
-	public void refreshHistoryPanel()
-	{
-		historyContainer.removeAll();
+			@Override
+			public void intervalRemoved(ListDataEvent e)
+			{
+				updateHistoryControls();
+			}
 
-		for (Session session : sessionHistoryManager.getSessions())
-		{
-			historyContainer.add(createSessionRow(session));
-			historyContainer.add(Box.createRigidArea(new Dimension(0, 3)));
-		}
+			@Override
+			public void contentsChanged(ListDataEvent e)
+			{
+			}
+		});
 
-		if (sessionHistoryManager.getSessions().isEmpty())
-		{
-			JLabel emptyLabel = new JLabel("No sessions recorded");
-			emptyLabel.setForeground(Color.GRAY);
-			historyContainer.add(emptyLabel);
-		}
+		JScrollPane scrollPane = new JScrollPane(historyList);
+		scrollPane.setPreferredSize(new Dimension(0, 300));
+		scrollPane.setBorder(null);
 
-		historyContainer.revalidate();
-		historyContainer.repaint();
-	}
+		JPanel historyTop = new JPanel(new BorderLayout());
+		historyTop.add(viewPanel, BorderLayout.NORTH);
+		historyTop.add(loadOlderLabel, BorderLayout.SOUTH);
 
-	private JPanel createSessionRow(Session session)
-	{
-		JPanel row = new JPanel(new BorderLayout(5, 2));
-		row.setBorder(BorderFactory.createCompoundBorder(
-			BorderFactory.createMatteBorder(0, 0, 1, 0, ColorScheme.DARK_GRAY_COLOR),
-			BorderFactory.createEmptyBorder(5, 5, 5, 5)
-		));
+		historyContainer.add(historyTop, BorderLayout.NORTH);
+		historyContainer.add(scrollPane, BorderLayout.CENTER);
+		historyContainer.add(createReanalysisRow(), BorderLayout.SOUTH);
 
-		// Name (editable on click)
-		String displayName = session.getName();
-		if (displayName.length() > 30)
-		{
-			displayName = displayName.substring(0, 27) + "...";
-		}
+		section.add(header, BorderLayout.NORTH);
+		section.add(historyContainer, BorderLayout.CENTER);
+
+		updateHistoryControls();
+		return section;
+	}
 
-		JLabel nameLabel = new JLabel(displayName);
-		nameLabel.setToolTipText(session.getName());
-		nameLabel.setCursor(Cursor.getPredefinedCursor(Cursor.TEXT_CURSOR));
-		nameLabel.addMouseListener(new MouseAdapter()
+	private JPanel createReanalysisRow()
+	{
+		reanalyzeLabel = new JLabel("Re-analyze history");
+		reanalyzeLabel.setForeground(Color.GRAY);
+		reanalyzeLabel.setToolTipText("Recompute the stats of every stored session from its clicks, using the current settings");
+		reanalyzeLabel.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+		reanalyzeLabel.addMouseListener(new MouseAdapter()
 		{
 			@Override
 			public void mouseClicked(MouseEvent e)
 			{
-				makeEditable(row, session, nameLabel);
+				startReanalysis();
 			}
 		});
 
-		// Stats line
-		JLabel statsLabel = new JLabel(String.format("%d | %.0fms | %d clicks",
-			session.getConsistencyScore(),
-			session.getAvgInterval(),
-			session.getClickCount()));
-		statsLabel.setForeground(Color.GRAY);
-
-		// Delete icon
-		JLabel deleteIcon = new JLabel("\uD83D\uDDD1");
-		deleteIcon.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-		deleteIcon.setToolTipText("Delete session");
-		deleteIcon.addMouseListener(new MouseAdapter()
+		reanalysisProgress = new JProgressBar();
+		reanalysisProgress.setStringPainted(true);
+		reanalysisProgress.setVisible(false);
+
+		cancelReanalysisLabel = new JLabel("Cancel");
+		cancelReanalysisLabel.setForeground(Color.GRAY);
+		cancelReanalysisLabel.setBorder(BorderFactory.createEmptyBorder(0, 5, 0, 0));
+		cancelReanalysisLabel.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+		cancelReanalysisLabel.setVisible(false);
+		cancelReanalysisLabel.addMouseListener(new MouseAdapter()
 		{
 			@Override
 			public void mouseClicked(MouseEvent e)
 			{
-				sessionHistoryManager.deleteSession(session.getId());
-				refreshHistoryPanel();
+				if (reanalysisJob != null)
+				{
+					reanalysisJob.cancel();
+				}
 			}
 		});
 
-		JPanel textPanel = new JPanel(new GridLayout(2, 1));
-		textPanel.add(nameLabel);
-		textPanel.add(statsLabel);
+		JPanel reanalysisRow = new JPanel(new BorderLayout());
+		reanalysisRow.setBorder(BorderFactory.createEmptyBorder(5, 0, 0, 0));
+		reanalysisRow.add(reanalyzeLabel, BorderLayout.WEST);
+		reanalysisRow.add(reanalysisProgress, BorderLayout.CENTER);
+		reanalysisRow.add(cancelReanalysisLabel, BorderLayout.EAST);
+
+		JPanel bottom = new JPanel(new BorderLayout());
+		bottom.add(emptyLabel, BorderLayout.NORTH);
+		bottom.add(reanalysisRow, BorderLayout.SOUTH);
+		return bottom;
+	}
+
+	private void startReanalysis()
+	{
+		if (reanalysisJob != null)
+		{
+			return;
+		}
 
-		row.add(textPanel, BorderLayout.CENTER);
-		row.add(deleteIcon, BorderLayout.EAST);
+		reanalysisJob = plugin.reanalyzeHistory();
+		reanalyzeLabel.setVisible(false);
+		reanalysisProgress.setVisible(true);
+		cancelReanalysisLabel.setVisible(true);
 
-		row.setMaximumSize(new Dimension(Integer.MAX_VALUE, row.getPreferredSize().height));
-		return row;
+		// Polls only while a run is in progress
+		reanalysisTimer = new Timer(250, e -> updateReanalysisProgress());
+		reanalysisTimer.start();
+		updateReanalysisProgress();
 	}
 
-	private void makeEditable(JPanel row, Session session, JLabel nameLabel)
+	private void updateReanalysisProgress()
 	{
-		JTextField textField = new JTextField(session.getName());
-		textField.setBorder(BorderFactory.createEmptyBorder(0, 2, 0, 2));
-		Dimension pref = textField.getPreferredSize();
-		textField.setPreferredSize(new Dimension(pref.width, pref.height + 5));
-		textField.selectAll();
-
-		Runnable saveAndRestore = () -> {
-			String newName = textField.getText().trim();
-			if (!newName.isEmpty() && !newName.equals(session.getName()))
-			{
-				sessionHistoryManager.renameSession(session.getId(), newName);
-			}
-			refreshHistoryPanel();
-		};
+		ReanalysisEngine.Job job = reanalysisJob;
+		int total = job.getTotal();
+		reanalysisProgress.setIndeterminate(total < 0);
+		if (total >= 0)
+		{
+			reanalysisProgress.setMaximum(Math.max(1, total));
+			reanalysisProgress.setValue(job.getDone());
+			reanalysisProgress.setString(job.getDone() + " / " + total);
+		}
 
-		textField.addActionListener(e -> saveAndRestore.run());
-		textField.addFocusListener(new FocusAdapter()
+		if (job.getResult().isDone())
 		{
-			@Override
-			public void focusLost(FocusEvent e)
+			reanalysisTimer.stop();
+			reanalysisJob = null;
+			reanalysisProgress.setVisible(false);
+			cancelReanalysisLabel.setVisible(false);
+			reanalyzeLabel.setVisible(true);
+			if (job.getResult().isCompletedExceptionally())
 			{
-				saveAndRestore.run();
+				// Nothing was written back, click to try again
+				reanalyzeLabel.setForeground(ColorScheme.PROGRESS_ERROR_COLOR);
+				reanalyzeLabel.setText("Re-analysis failed, retry");
+				return;
 			}
-		});
-		textField.addKeyListener(new KeyAdapter()
+
+			String text = (job.isCancelled() ? "Cancelled, " : "Re-analyzed ") + job.getUpdated() + " sessions";
+			int failed = job.getFailed();
+			reanalyzeLabel.setForeground(failed > 0 ? ColorScheme.PROGRESS_ERROR_COLOR : Color.GRAY);
+			reanalyzeLabel.setText(failed > 0 ? text + ", " + failed + " failed" : text);
+		}
+	}
+
+	/**
+	 * Earliest start time shown for a date range choice.
+	 */
+	private static long rangeStart(int range)
+	{
+		LocalDate today = LocalDate.now();
+		switch (range)
 		{
-			@Override
-			public void keyPressed(KeyEvent e)
-			{
-				if (e.getKeyCode() == KeyEvent.VK_ESCAPE)
-				{
-					refreshHistoryPanel();
-				}
-			}
-		});
+			case 1:
+				return today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+			case 2:
+				return today.minusDays(6).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+			case 3:
+				return today.minusDays(29).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+			default:
+				return Long.MIN_VALUE;
+		}
+	}
 
-		JPanel textPanel = (JPanel) row.getComponent(0);
-		textPanel.remove(nameLabel);
-		textPanel.add(textField, 0);
-		textPanel.revalidate();
-		textField.requestFocusInWindow();
+	private void updateHistoryControls()
+	{
+		loadOlderLabel.setVisible(sessionHistoryManager.hasOlderSessions());
+		loadOlderLabel.setToolTipText(sessionHistoryManager.getStoredSessionCount() + " sessions stored");
+		emptyLabel.setVisible(historyList.getModel().getSize() == 0);
 	}
 
 	public void updateStats()
 	{
+		Instrumentation instrumentation = plugin.getInstrumentation();
+		long start = instrumentation.start();
+
 		consistencyValueLabel.setText(String.valueOf(plugin.getConsistency()));
 		avgIntervalValueLabel.setText(String.format("%.0f ms", plugin.getAverageClickInterval()));
+		recentConsistencyValueLabel.setText(String.valueOf(plugin.getRecentConsistency()));
+		recentAvgIntervalValueLabel.setText(String.format("%.0f ms", plugin.getRecentAverageInterval()));
+		// Idle clicks still drop out of the recent window
+		statsRefresher.refreshAt(plugin.getRecentStatsExpiry());
+		segmentConsistencyValueLabel.setText(String.valueOf(plugin.getSegmentConsistency()));
+		segmentConsistencyValueLabel.setToolTipText(plugin.getSegmentCount() + " segments this session");
+		idleTimeValueLabel.setText(formatDuration(plugin.getIdleTime()));
+
+		tickPanel.setVisible(plugin.isTrackingGameTicks());
+		if (tickPanel.isVisible())
+		{
+			TickIntervals ticks = plugin.getTickIntervals();
+			tickIntervalValueLabel.setText(String.format("%.2f", ticks.getMeanTicks()));
+			tickConsistencyValueLabel.setText(String.valueOf(ticks.getConsistencyScore()));
+		}
+
+		IntervalPercentiles percentiles = plugin.getIntervalPercentiles();
+		p50ValueLabel.setText(percentiles.getP50() + " ms");
+		p90ValueLabel.setText(percentiles.getP90() + " ms");
+		p99ValueLabel.setText(percentiles.getP99() + " ms");
+		maxIntervalValueLabel.setText(percentiles.getMax() + " ms");
+
+		for (int i = 0; i < metrics.size(); i++)
+		{
+			metricValueLabels.get(i).setText(metrics.get(i).format(plugin.getMetricResult(metrics.get(i))));
+		}
+
+		if (lapSection.isVisible())
+		{
+			currentLapLabels[0].setText(String.valueOf(plugin.getLapNumber()));
+			currentLapLabels[1].setText(String.valueOf(plugin.getLapClickCount()));
+			currentLapLabels[2].setText(String.format("%.0f ms", plugin.getLapAverageInterval()));
+			currentLapLabels[3].setText(String.valueOf(plugin.getLapConsistency()));
+		}
+
+		heatmapPanel.setHeatmap(plugin.getHeatmap());
+		heatmapPanel.refresh();
+
+		instrumentation.stop(Instrumentation.Stage.STATS_REFRESH, start);
+		if (instrumentationPanel.isVisible())
+		{
+			instrumentationPanel.refresh();
+		}
+	}
+
+	static String formatDuration(long millis)
+	{
+		long seconds = millis / 1000;
+		if (seconds < 60)
+		{
+			return seconds + "s";
+		}
+		if (seconds < 3600)
+		{
+			return String.format("%dm %02ds", seconds / 60, seconds % 60);
+		}
+		return String.format("%dh %02dm", seconds / 3600, seconds % 3600 / 60);
+	}
+
+	void setDebugVisible(boolean visible)
+	{
+		instrumentationPanel.setVisible(visible);
+		if (visible)
+		{
+			instrumentationPanel.refresh();
+		}
+		revalidate();
+	}
+
+	@Override
+	public void onActivate()
+	{
+		statsRefresher.setActive(true);
+	}
+
+	@Override
+	public void onDeactivate()
+	{
+		statsRefresher.setActive(false);
+	}
+
+	/**
+	 * Schedules a stats refresh; called from the click path.
+	 */
+	public void markStatsDirty()
+	{
+		statsRefresher.markDirty();
+	}
+
+	public void setMaxRefreshRate(int maxPerSecond)
+	{
+		statsRefresher.setMaxRate(maxPerSecond);
 	}
 
-	public void stopTimer()
+	public void stopRefreshing()
 	{
-		if (timer != null)
+		statsRefresher.stop();
+		if (reanalysisJob != null)
 		{
-			timer.stop();
+			reanalysisJob.cancel();
+			reanalysisTimer.stop();
 		}
 	}
 }
@@ -3,21 +3,29 @@ package com.afkstatstracker;
 import com.google.gson.Gson;
 import com.google.inject.Provides;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.time.ZoneId;
 import java.util.Date;
-import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
+import net.runelite.api.events.GameTick;
+import net.runelite.client.RuneLite;
 import net.runelite.client.config.ConfigManager;
+import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.input.MouseManager;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
 import net.runelite.client.ui.ClientToolbar;
 import net.runelite.client.ui.NavigationButton;
+import net.runelite.client.ui.overlay.OverlayManager;
 import net.runelite.client.util.ImageUtil;
 
 @Slf4j
@@ -26,6 +34,15 @@ import net.runelite.client.util.ImageUtil;
 )
 public class AfkStatsTrackerPlugin extends Plugin
 {
+	static final File DATA_DIR = new File(RuneLite.RUNELITE_DIR, "afk-stats-tracker");
+
+	/**
+	 * Keys of the tick interval stats in {@link Session#getMetrics()}, stored alongside
+	 * the click metrics when game ticks were tracked.
+	 */
+	static final String TICK_INTERVAL_KEY = "tickInterval";
+	static final String TICK_CONSISTENCY_KEY = "tickConsistency";
+
 	@Inject
 	private Client client;
 
@@ -43,6 +60,7 @@ public class AfkStatsTrackerPlugin extends Plugin
 	private AfkStatsTrackerPanel panel;
 	private NavigationButton navButton;
 
+	private MonotonicClock clock;
 	private long startTime;
 	private boolean isTracking = false;
 
@@ -52,33 +70,85 @@ public class AfkStatsTrackerPlugin extends Plugin
 	@Inject
 	private Gson gson;
 
+	@Inject
+	private OverlayManager overlayManager;
+
+	private AfkStatsOverlay overlay;
+	private volatile LiveStats liveStats;
+
+	private Instrumentation instrumentation;
+	private CoalescingSessionStore historyStore;
 	private SessionHistoryManager sessionHistoryManager;
+	private TraceStore traceStore;
+	private ReanalysisEngine reanalysisEngine;
+	private SessionCheckpoint checkpoint;
+	private SessionCheckpoint.Recovery pendingRecovery;
+	private Timer checkpointTimer;
 
 	@Override
 	protected void startUp() throws Exception
 	{
-		SessionHistoryManager.ConfigStorage storage = new SessionHistoryManager.ConfigStorage()
+		SessionHistoryManager.ConfigStorage legacyStorage = new SessionHistoryManager.ConfigStorage()
 		{
-			private static final String CONFIG_GROUP = "afkStatsTracker";
 			private static final String CONFIG_KEY = "sessionHistory";
 
 			@Override
 			public String load()
 			{
-				return configManager.getConfiguration(CONFIG_GROUP, CONFIG_KEY);
+				return configManager.getConfiguration(AfkStatsTrackerConfig.GROUP, CONFIG_KEY);
 			}
 
 			@Override
 			public void save(String json)
 			{
-				configManager.setConfiguration(CONFIG_GROUP, CONFIG_KEY, json);
+				configManager.setConfiguration(AfkStatsTrackerConfig.GROUP, CONFIG_KEY, json);
+			}
+
+			@Override
+			public void clear()
+			{
+				configManager.unsetConfiguration(AfkStatsTrackerConfig.GROUP, CONFIG_KEY);
 			}
 		};
-		sessionHistoryManager = new SessionHistoryManager(storage, gson);
+		clock = new MonotonicClock();
+		instrumentation = new Instrumentation();
+		instrumentation.setEnabled(config.debugInstrumentation());
+		instrumentation.register();
+
+		historyStore = new CoalescingSessionStore(new SessionJournal(DATA_DIR, gson, legacyStorage, instrumentation),
+			TimeUnit.SECONDS.toMillis(config.historyWriteInterval()));
+		SessionRollups rollups = new SessionRollups(DATA_DIR, gson, ZoneId.systemDefault());
+		historyStore.setAfterFlush(rollups::save);
+		sessionHistoryManager = new SessionHistoryManager(historyStore, rollups, historyStore::execute);
+
+		traceStore = new TraceStore(new File(DATA_DIR, "traces"));
+		sessionHistoryManager.addListener(new SessionHistoryManager.Listener()
+		{
+			@Override
+			public void sessionRemoved(Session session)
+			{
+				// Queued behind any save of the same trace
+				historyStore.execute(() -> traceStore.delete(session.getId()));
+			}
+		});
+		sessionHistoryManager.setRetention(config.historyMaxSessions(), config.historyMaxAgeDays());
+
+		reanalysisEngine = new ReanalysisEngine(traceStore, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+		checkpoint = new SessionCheckpoint(DATA_DIR);
+		pendingRecovery = checkpoint.recover();
+		checkpointTimer = new Timer((int) TimeUnit.SECONDS.toMillis(config.checkpointInterval()),
+			e -> checkpoint.checkpoint(mouseListener.getClicks()));
 
 		log.info("AFK Stats Tracker plugin started!");
 
 		panel = new AfkStatsTrackerPanel(this, sessionHistoryManager);
+		panel.setMaxRefreshRate(config.statsRefreshRate());
+		panel.setMetrics(config.panelMetrics());
+		if (pendingRecovery != null)
+		{
+			panel.showRecovery(pendingRecovery.getStartTime(), pendingRecovery.getClickCount());
+		}
 
 		// Add to toolbar
 		navButton = NavigationButton.builder()
@@ -89,7 +159,23 @@ public class AfkStatsTrackerPlugin extends Plugin
 
 		clientToolbar.addNavigation(navButton);
 
-        mouseListener = new MouseClickCounterListener(client);
+		overlay = new AfkStatsOverlay(this::getLiveStats, clock);
+		if (config.showOverlay())
+		{
+			overlayManager.add(overlay);
+		}
+
+        mouseListener = new MouseClickCounterListener(client, instrumentation, clock, () ->
+        {
+            if (isTracking)
+            {
+                publishLiveStats();
+                panel.markStatsDirty();
+            }
+        });
+        mouseListener.setRecentWindow(TimeUnit.MINUTES.toMillis(config.recentWindowMinutes()));
+        mouseListener.getGapSegmenter().setIdleThreshold(TimeUnit.SECONDS.toMillis(config.idleThreshold()));
+        mouseListener.setTickTracking(config.trackGameTicks());
         mouseManager.registerMouseListener(mouseListener);
 
 	}
@@ -100,18 +186,99 @@ public class AfkStatsTrackerPlugin extends Plugin
 		log.info("AFK Stats Tracker plugin stopped!");
 
 		clientToolbar.removeNavigation(navButton);
+		overlayManager.remove(overlay);
 
 	       mouseManager.unregisterMouseListener(mouseListener);
+
+		// Leaves the session in progress to be recovered on the next start
+		checkpointTimer.stop();
+		if (isTracking)
+		{
+			checkpoint.checkpoint(mouseListener.getClicks());
+		}
+		checkpoint.close();
 	       mouseListener = null;
 
-	       panel.stopTimer();
+	       panel.stopRefreshing();
+
+		reanalysisEngine.shutdown();
+
+		// Writes out anything still waiting for the next background save, rollups included
+		historyStore.close();
+
+		instrumentation.unregister();
+	}
+
+	@Subscribe
+	public void onConfigChanged(ConfigChanged event)
+	{
+		if (!AfkStatsTrackerConfig.GROUP.equals(event.getGroup()))
+		{
+			return;
+		}
+
+		historyStore.setInterval(TimeUnit.SECONDS.toMillis(config.historyWriteInterval()));
+		instrumentation.setEnabled(config.debugInstrumentation());
+		if (mouseListener != null)
+		{
+			mouseListener.setTickTracking(config.trackGameTicks());
+		}
+
+		// The history and click stats are only touched from the EDT
+		SwingUtilities.invokeLater(() ->
+		{
+			sessionHistoryManager.setRetention(config.historyMaxSessions(), config.historyMaxAgeDays());
+			if (mouseListener != null)
+			{
+				if ("recentWindowMinutes".equals(event.getKey()))
+				{
+					mouseListener.setRecentWindow(TimeUnit.MINUTES.toMillis(config.recentWindowMinutes()));
+				}
+				mouseListener.getGapSegmenter().setIdleThreshold(TimeUnit.SECONDS.toMillis(config.idleThreshold()));
+			}
+			checkpointTimer.setDelay((int) TimeUnit.SECONDS.toMillis(config.checkpointInterval()));
+			panel.setDebugVisible(config.debugInstrumentation());
+			panel.setMaxRefreshRate(config.statsRefreshRate());
+			panel.setMetrics(config.panelMetrics());
+			panel.markStatsDirty();
+		});
+
+		if ("showOverlay".equals(event.getKey()))
+		{
+			overlayManager.remove(overlay);
+			if (config.showOverlay())
+			{
+				overlayManager.add(overlay);
+			}
+		}
+	}
+
+	@Subscribe
+	public void onGameTick(GameTick event)
+	{
+		MouseClickCounterListener listener = mouseListener;
+		if (listener != null)
+		{
+			listener.onGameTick();
+		}
 	}
 
 	public void startSession()
 	{
+		if (pendingRecovery != null)
+		{
+			// The checkpoint is about to be replaced, so the unfinished session is kept
+			saveRecoveredSession();
+		}
+
+		// Back on the wall clock in case the machine slept since the last session
+		clock.anchor();
 		mouseListener.resetMouseClickCounterListener();
-		startTime = System.currentTimeMillis();
+		startTime = clock.currentTimeMillis();
 		isTracking = true;
+		publishLiveStats();
+		checkpoint.begin(startTime);
+		checkpointTimer.start();
 	}
 
 	public void stopSession()
@@ -121,86 +288,300 @@ public class AfkStatsTrackerPlugin extends Plugin
 			return;
 		}
 
-		long endTime = System.currentTimeMillis();
+		long endTime = clock.currentTimeMillis();
 		String id = UUID.randomUUID().toString();
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-		String name = "Session " + dateFormat.format(new Date(startTime));
 
 		Session session = new Session(
 			id,
-			name,
+			sessionName(startTime),
 			startTime,
 			endTime,
 			getClickCount(),
 			getConsistency(),
 			getAverageClickInterval()
 		);
-
+		IntervalStats intervalStats = mouseListener.getIntervalStats();
+		session = session
+			.withIntervalVariance(intervalStats.getIntervalCount() > 1 ? intervalStats.getVariance() : 0)
+			.withPercentiles(getIntervalPercentiles())
+			.withSegments(mouseListener.getGapSegmenter().getSegments())
+			.withLaps(mouseListener.getLapTracker().getLaps())
+			.withMetrics(getSessionMetrics())
+			.withHeatmap(mouseListener.getHeatmap())
+			.withIdleTime(getIdleTime())
+			.withAnalysisVersion(ReanalysisEngine.ANALYSIS_VERSION);
+
+		// Copied on the EDT, encoded and written on the history writer
+		long[] timestamps = mouseListener.getClicks().toArray();
+		historyStore.execute(() -> traceStore.save(id, timestamps));
 		sessionHistoryManager.addSession(session);
 		isTracking = false;
+		liveStats = null;
+		checkpointTimer.stop();
+		checkpoint.discard();
 	}
 
-	public long getConsistency()
+	private Map<String, Double> getSessionMetrics()
 	{
-		return computeConsistency(mouseListener.getClickCounter());
+		Map<String, Double> results = mouseListener.getMetrics().getResults();
+		TickIntervals ticks = mouseListener.getTickIntervals();
+		if (ticks.getClickCount() > 1)
+		{
+			results.put(TICK_INTERVAL_KEY, ticks.getMeanTicks());
+			results.put(TICK_CONSISTENCY_KEY, (double) ticks.getConsistencyScore());
+		}
+		return results;
 	}
 
-    public long computeConsistency(List<Long> timestamps)
-    {
-        int n = timestamps.size();
-        if (n < 2) return 0;
+	/**
+	 * Carries on tracking the unfinished session found at startup.
+	 */
+	public void resumeRecoveredSession()
+	{
+		SessionCheckpoint.Recovery recovery = pendingRecovery;
+		if (recovery == null || isTracking)
+		{
+			return;
+		}
+		pendingRecovery = null;
 
-        List<Long> sorted = new ArrayList<>(timestamps);
-        Collections.sort(sorted);
+		// Live clicks carry on from the recovered ones on the wall clock
+		clock.anchor();
+		mouseListener.restoreClicks(recovery.getTimestamps());
+		startTime = recovery.getStartTime();
+		isTracking = true;
+		publishLiveStats();
+		checkpoint.resume(recovery);
+		checkpointTimer.start();
+	}
 
-        List<Double> intervals = new ArrayList<>();
-        for (int i = 1; i < n; i++)
-        {
-            intervals.add((double) (sorted.get(i) - sorted.get(i - 1)));
-        }
+	/**
+	 * Adds the unfinished session found at startup to the history as it stood at its
+	 * last checkpoint.
+	 */
+	public void saveRecoveredSession()
+	{
+		SessionCheckpoint.Recovery recovery = pendingRecovery;
+		if (recovery == null)
+		{
+			return;
+		}
+		pendingRecovery = null;
+
+		String id = UUID.randomUUID().toString();
+		Session recovered = new Session(id, sessionName(recovery.getStartTime()), recovery.getStartTime(),
+			recovery.getEndTime(), (int) recovery.getClickCount(), 0, 0);
+		long idleThreshold = TimeUnit.SECONDS.toMillis(config.idleThreshold());
 
-        double totalSpan = sorted.get(n - 1) - sorted.get(0);
-        int numIntervals = intervals.size();
-        double meanInterval = totalSpan / numIntervals;
+		// A long session takes a while to analyze, so not on the EDT
+		historyStore.execute(() ->
+		{
+			Session session = ReanalysisEngine.analyze(recovered, recovery.getTimestamps(), idleThreshold);
+			traceStore.save(id, recovery.getTimestamps());
+			SwingUtilities.invokeLater(() -> sessionHistoryManager.addSession(session));
+		});
+		checkpoint.discard();
+	}
 
-        double sumSqDiff = 0;
-        for (double interval : intervals)
-        {
-            sumSqDiff += Math.pow(interval - meanInterval, 2);
-        }
-        double variance = sumSqDiff / (numIntervals - 1);
-        double stdDev = Math.sqrt(variance);
+	public void discardRecoveredSession()
+	{
+		if (pendingRecovery != null)
+		{
+			pendingRecovery = null;
+			checkpoint.discard();
+		}
+	}
+
+	public boolean isTracking()
+	{
+		return isTracking;
+	}
+
+	/**
+	 * Stats of the session in progress as of its last click, or null if no session is
+	 * being tracked. Safe to read from any thread.
+	 */
+	LiveStats getLiveStats()
+	{
+		return liveStats;
+	}
+
+	private void publishLiveStats()
+	{
+		IntervalStats stats = mouseListener.getIntervalStats();
+		liveStats = new LiveStats(startTime, stats.getClickCount(), stats.getConsistencyScore(),
+			stats.getMeanInterval());
+	}
+
+	/**
+	 * Ends the current lap of the session in progress. Returns the finished lap, or null
+	 * if there was nothing to end.
+	 */
+	public SessionLap markLap()
+	{
+		return isTracking ? mouseListener.getLapTracker().markLap() : null;
+	}
+
+	/**
+	 * Number of the lap being clicked in now, counting from 1.
+	 */
+	public int getLapNumber()
+	{
+		return mouseListener.getLapTracker().getLapNumber();
+	}
+
+	public long getLapConsistency()
+	{
+		return mouseListener.getLapTracker().getCurrentLap().getConsistencyScore();
+	}
+
+	public double getLapAverageInterval()
+	{
+		return mouseListener.getLapTracker().getCurrentLap().getMeanInterval();
+	}
+
+	public long getLapClickCount()
+	{
+		return mouseListener.getLapTracker().getCurrentLap().getClickCount();
+	}
+
+	private static String sessionName(long startTime)
+	{
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+		return "Session " + dateFormat.format(new Date(startTime));
+	}
+
+	public long getConsistency()
+	{
+		return mouseListener.getIntervalStats().getConsistencyScore();
+	}
 
-		double cv = stdDev / meanInterval;
-        return (long)(1 / (1 + cv) * 100);
+    public long computeConsistency(long[] timestamps)
+    {
+        return IntervalStats.of(timestamps).getConsistencyScore();
     }
 
     public double getAverageClickInterval()
     {
-        List<Long> timestamps = mouseListener.getClickCounter();
-        int n = timestamps.size();
-        if (n < 2) return 0.0;
+        return mouseListener.getIntervalStats().getMeanInterval();
+    }
 
-        List<Long> sorted = new ArrayList<>(timestamps);
-        Collections.sort(sorted);
+	/**
+	 * Consistency over the configured recent window only.
+	 */
+	public long getRecentConsistency()
+	{
+		return mouseListener.getRecentStats().getConsistencyScore(clock.currentTimeMillis());
+	}
 
-        List<Double> intervals = new ArrayList<>();
-        for (int i = 1; i < n; i++)
-        {
-            intervals.add((double) (sorted.get(i) - sorted.get(i - 1)));
-        }
+	public double getRecentAverageInterval()
+	{
+		return mouseListener.getRecentStats().getMeanInterval(clock.currentTimeMillis());
+	}
 
-        double sum = 0.0;
-        for (double interval : intervals)
-        {
-            sum += interval;
-        }
-        return sum / intervals.size();
-    }
+	/**
+	 * When the recent window stats next change without a click, as their oldest clicks
+	 * drop out of the window, or {@link Long#MAX_VALUE} if they will not.
+	 */
+	public long getRecentStatsExpiry()
+	{
+		return mouseListener.getRecentStats().getNextExpiry(clock.currentTimeMillis());
+	}
+
+	/**
+	 * Consistency of the current stretch of clicking since the last idle gap.
+	 */
+	public long getSegmentConsistency()
+	{
+		return mouseListener.getGapSegmenter().getCurrentSegment().getConsistencyScore();
+	}
+
+	public int getSegmentCount()
+	{
+		return mouseListener.getGapSegmenter().getSegmentCount();
+	}
+
+	public long getIdleTime()
+	{
+		return mouseListener.getGapSegmenter().getIdleTime();
+	}
+
+	/**
+	 * Current result of a metric over the session in progress.
+	 */
+	public double getMetricResult(ClickMetric metric)
+	{
+		return mouseListener.getMetrics().getResult(metric);
+	}
+
+	/**
+	 * Click positions of the session in progress, only to be read on the EDT.
+	 */
+	public ClickHeatmap getHeatmap()
+	{
+		return mouseListener.getHeatmap();
+	}
+
+	/**
+	 * Intervals of the session in progress in game ticks, empty unless ticks are tracked.
+	 */
+	public TickIntervals getTickIntervals()
+	{
+		return mouseListener.getTickIntervals();
+	}
+
+	public boolean isTrackingGameTicks()
+	{
+		return config.trackGameTicks();
+	}
+
+	public IntervalPercentiles getIntervalPercentiles()
+	{
+		return mouseListener.getIntervalHistogram().toPercentiles();
+	}
+
+	/**
+	 * Lazily loaded click trace of a stored session, or null if it was recorded before
+	 * traces were kept.
+	 */
+	public ClickTrace getTrace(Session session)
+	{
+		return traceStore.find(session.getId());
+	}
+
+	/**
+	 * Recomputes the metrics of every stored session from its click trace in the
+	 * background, writing the results back to the history on the EDT when done.
+	 */
+	public ReanalysisEngine.Job reanalyzeHistory()
+	{
+		ReanalysisEngine.Job job = reanalysisEngine.start(historyStore::loadAll,
+			TimeUnit.SECONDS.toMillis(config.idleThreshold()), true);
+		job.getResult().whenComplete((results, error) ->
+		{
+			if (error != null)
+			{
+				log.warn("Session re-analysis failed", error);
+				return;
+			}
+			SwingUtilities.invokeLater(() -> sessionHistoryManager.updateSessions(results));
+		});
+		return job;
+	}
+
+	public Instrumentation getInstrumentation()
+	{
+		return instrumentation;
+	}
+
+	public ClickClock getClock()
+	{
+		return clock;
+	}
 
 	public int getClickCount()
 	{
-		return mouseListener.getClickCounter().size();
+		return (int) mouseListener.getClicks().totalCount();
 	}
 
 	@Provides
@@ -0,0 +1,112 @@
+package com.afkstatstracker;
+
+/**
+ * The metrics that come with the plugin. The mean based ones match
+ * {@link IntervalStats}; the median based ones are robust variants that a few very long
+ * or very short intervals barely move.
+ * <p>
+ * They are views rather than accumulators: each reads its result off the stats and
+ * histogram its {@link MetricDispatcher} already keeps, so merging two dispatchers
+ * merges them too.
+ */
+public enum BuiltInMetric implements ClickMetric
+{
+    CONSISTENCY("consistency", "Consistency",
+        "Score (0-100), 1 / (1 + CV) of the intervals; higher means more regular timing")
+    {
+        @Override
+        double result(IntervalStats stats, IntervalHistogram histogram)
+        {
+            return stats.getConsistencyScore();
+        }
+    },
+    MEAN_INTERVAL("avgInterval", "Avg Interval", "Average time between clicks in ms")
+    {
+        @Override
+        double result(IntervalStats stats, IntervalHistogram histogram)
+        {
+            return stats.getMeanInterval();
+        }
+    },
+    MEDIAN_INTERVAL("medianInterval", "Median Interval", "Median time between clicks in ms")
+    {
+        @Override
+        double result(IntervalStats stats, IntervalHistogram histogram)
+        {
+            return histogram.getValueAtPercentile(50);
+        }
+    },
+    INTERVAL_MAD("intervalMad", "Interval MAD",
+        "Median absolute deviation of the intervals from their median, in ms")
+    {
+        @Override
+        double result(IntervalStats stats, IntervalHistogram histogram)
+        {
+            return histogram.getMedianAbsoluteDeviation();
+        }
+    },
+    ROBUST_CONSISTENCY("robustConsistency", "Robust Consistency",
+        "Consistency score from the median and MAD instead of the mean and standard deviation, so a few outliers barely move it")
+    {
+        @Override
+        double result(IntervalStats stats, IntervalHistogram histogram)
+        {
+            long median = histogram.getValueAtPercentile(50);
+            if (histogram.getTotalCount() < 2 || median <= 0)
+            {
+                return 0;
+            }
+            // 1.4826 scales the MAD to the standard deviation of normally distributed intervals
+            double cv = 1.4826 * histogram.getMedianAbsoluteDeviation() / median;
+            return (long) (1 / (1 + cv) * 100);
+        }
+    };
+
+    private final String key;
+    private final String displayName;
+    private final String description;
+
+    BuiltInMetric(String key, String displayName, String description)
+    {
+        this.key = key;
+        this.displayName = displayName;
+        this.description = description;
+    }
+
+    @Override
+    public String getKey()
+    {
+        return key;
+    }
+
+    @Override
+    public String getName()
+    {
+        return displayName;
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return description;
+    }
+
+    @Override
+    public String format(double value)
+    {
+        return this == CONSISTENCY || this == ROBUST_CONSISTENCY
+            ? String.valueOf((long) value)
+            : String.format("%.0f ms", value);
+    }
+
+    @Override
+    public String toString()
+    {
+        return displayName;
+    }
+
+    /**
+     * The metric over the intervals a dispatcher has recorded.
+     */
+    abstract double result(IntervalStats stats, IntervalHistogram histogram);
+}
@@ -0,0 +1,119 @@
+package com.afkstatstracker;
+
+import java.util.Arrays;
+
+/**
+ * Ring buffer of click timestamps backed by primitive {@code long[]} chunks.
+ * <p>
+ * Chunks are allocated on first use so short sessions stay small, and once the
+ * capacity is reached the oldest timestamps are overwritten. Recording a click is
+ * a single array store except for the one allocation every {@link #CHUNK_SIZE} clicks.
+ */
+public class ClickBuffer implements ClickSeries
+{
+    static final int CHUNK_SHIFT = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Default retention of roughly a million clicks, well beyond an 8 hour session.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private final long[][] chunks;
+    private final int capacity;
+    private final int mask;
+    private long total;
+
+    public ClickBuffer()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of timestamps to retain, rounded up to a whole number of
+     *                 chunks and to a power of two
+     */
+    public ClickBuffer(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+
+        int rounded = Math.max(CHUNK_SIZE, Integer.highestOneBit(capacity - 1) << 1);
+        this.capacity = rounded;
+        this.mask = rounded - 1;
+        this.chunks = new long[rounded >>> CHUNK_SHIFT][];
+    }
+
+    public void add(long timestamp)
+    {
+        int slot = (int) (total & mask);
+        long[] chunk = chunks[slot >>> CHUNK_SHIFT];
+        if (chunk == null)
+        {
+            chunk = new long[CHUNK_SIZE];
+            chunks[slot >>> CHUNK_SHIFT] = chunk;
+        }
+        chunk[slot & CHUNK_MASK] = timestamp;
+        total++;
+    }
+
+    /**
+     * Forgets all timestamps, keeping only the first chunk for reuse.
+     */
+    public void clear()
+    {
+        total = 0;
+        Arrays.fill(chunks, 1, chunks.length, null);
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public int size()
+    {
+        return (int) Math.min(total, capacity);
+    }
+
+    @Override
+    public long totalCount()
+    {
+        return total;
+    }
+
+    @Override
+    public long getTimestamp(int index)
+    {
+        int size = size();
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+
+        int slot = (int) ((total - size + index) & mask);
+        return chunks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+    }
+
+    @Override
+    public long[] toArray()
+    {
+        int size = size();
+        long[] out = new long[size];
+        long first = total - size;
+        int copied = 0;
+        while (copied < size)
+        {
+            int slot = (int) ((first + copied) & mask);
+            int offset = slot & CHUNK_MASK;
+            int length = Math.min(CHUNK_SIZE - offset, size - copied);
+            System.arraycopy(chunks[slot >>> CHUNK_SHIFT], offset, out, copied, length);
+            copied += length;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,26 @@
+package com.afkstatstracker;
+
+/**
+ * Source of the click and session times, in epoch milliseconds.
+ * <p>
+ * The stats only care about the time between clicks, so {@link #monotonic()} reads the
+ * wall clock once and measures everything after it with {@link System#nanoTime()}. An
+ * NTP correction or a manual change of the system clock mid-session then no longer
+ * shows up as a huge or negative interval, and intervals are not rounded to the wall
+ * clock's coarser tick on some platforms. Tests and benchmarks can pass their own.
+ */
+public interface ClickClock
+{
+    long currentTimeMillis();
+
+    /**
+     * A clock that starts at the current wall clock time and then only moves forward
+     * at the rate of {@link System#nanoTime()}. Over a long run it can drift from the
+     * wall clock by however much the wall clock was adjusted, or the machine was
+     * suspended, until it is anchored again; see {@link MonotonicClock}.
+     */
+    static ClickClock monotonic()
+    {
+        return new MonotonicClock();
+    }
+}
@@ -0,0 +1,206 @@
+package com.afkstatstracker;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Counts clicks per cell of a fixed grid laid over the game canvas, to show how spread
+ * out the clicks of a method are.
+ * <p>
+ * Positions are scaled to the canvas size of each click, so resizing the client
+ * mid-session keeps the cells lined up with the same part of the screen. A click is one
+ * increment of a primitive counter, with no per-click objects; the raw positions are
+ * not kept.
+ * <p>
+ * The stored form is the non-empty cells as pairs of varints, the number of empty
+ * cells skipped and the count, deflated when that makes it smaller, in the layout
+ * of {@link TraceCodec}:
+ * <pre>
+ * byte    version
+ * byte    flags (bit 0: deflated)
+ * varint  payload length, only when deflated
+ * varint  columns
+ * varint  rows
+ * varint  skip, varint count   (per non-empty cell)
+ * </pre>
+ */
+public class ClickHeatmap
+{
+    public static final int COLUMNS = 48;
+    public static final int ROWS = 32;
+
+    private static final byte VERSION = 1;
+    private static final int FLAG_DEFLATED = 1;
+
+    private final int[] counts = new int[COLUMNS * ROWS];
+    private long totalCount;
+    private int maxCount;
+    private long modCount;
+
+    /**
+     * Records a click at {@code (x, y)} on a canvas of the given size. Clicks outside
+     * the canvas are ignored.
+     */
+    public void addClick(int x, int y, int width, int height)
+    {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+        {
+            return;
+        }
+
+        int column = (int) ((long) x * COLUMNS / width);
+        int row = (int) ((long) y * ROWS / height);
+        int count = ++counts[row * COLUMNS + column];
+        if (count > maxCount)
+        {
+            maxCount = count;
+        }
+        totalCount++;
+        modCount++;
+    }
+
+    public void reset()
+    {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        maxCount = 0;
+        modCount++;
+    }
+
+    public int getCount(int column, int row)
+    {
+        return counts[row * COLUMNS + column];
+    }
+
+    public long getTotalCount()
+    {
+        return totalCount;
+    }
+
+    /**
+     * Count of the busiest cell, which views scale the other cells against.
+     */
+    public int getMaxCount()
+    {
+        return maxCount;
+    }
+
+    /**
+     * Changes whenever a count does, so a view can tell if it needs redrawing without
+     * comparing cells.
+     */
+    public long getModCount()
+    {
+        return modCount;
+    }
+
+    /**
+     * The counts in their stored form, Base64 encoded, or null if there are none.
+     */
+    public String encode()
+    {
+        if (totalCount == 0)
+        {
+            return null;
+        }
+
+        int size = TraceCodec.varintSize(COLUMNS) + TraceCodec.varintSize(ROWS);
+        int skip = 0;
+        for (int count : counts)
+        {
+            if (count == 0)
+            {
+                skip++;
+                continue;
+            }
+            size += TraceCodec.varintSize(skip) + TraceCodec.varintSize(count);
+            skip = 0;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        TraceCodec.putVarint(payload, COLUMNS);
+        TraceCodec.putVarint(payload, ROWS);
+        skip = 0;
+        for (int count : counts)
+        {
+            if (count == 0)
+            {
+                skip++;
+                continue;
+            }
+            TraceCodec.putVarint(payload, skip);
+            TraceCodec.putVarint(payload, count);
+            skip = 0;
+        }
+
+        byte[] raw = payload.array();
+        byte[] deflated = TraceCodec.deflate(raw);
+        ByteBuffer out;
+        if (deflated != null && deflated.length + TraceCodec.varintSize(raw.length) < raw.length)
+        {
+            out = ByteBuffer.allocate(2 + TraceCodec.varintSize(raw.length) + deflated.length);
+            out.put(VERSION);
+            out.put((byte) FLAG_DEFLATED);
+            TraceCodec.putVarint(out, raw.length);
+            out.put(deflated);
+        }
+        else
+        {
+            out = ByteBuffer.allocate(2 + raw.length);
+            out.put(VERSION);
+            out.put((byte) 0);
+            out.put(raw);
+        }
+        return Base64.getEncoder().encodeToString(out.array());
+    }
+
+    /**
+     * Reads counts written by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if they are corrupt or from a different grid
+     */
+    public static ClickHeatmap decode(String encoded)
+    {
+        try
+        {
+            ByteBuffer in = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+            byte version = in.get();
+            if (version != VERSION)
+            {
+                throw new IllegalArgumentException("Unsupported heatmap version " + version);
+            }
+            if ((in.get() & FLAG_DEFLATED) != 0)
+            {
+                int length = (int) TraceCodec.getVarint(in);
+                in = ByteBuffer.wrap(TraceCodec.inflate(in, length));
+            }
+
+            if (TraceCodec.getVarint(in) != COLUMNS || TraceCodec.getVarint(in) != ROWS)
+            {
+                throw new IllegalArgumentException("Heatmap grid is not " + COLUMNS + "x" + ROWS);
+            }
+
+            ClickHeatmap heatmap = new ClickHeatmap();
+            int cell = 0;
+            while (in.hasRemaining())
+            {
+                cell += (int) TraceCodec.getVarint(in);
+                int count = (int) TraceCodec.getVarint(in);
+                if (cell < 0 || cell >= heatmap.counts.length || count <= 0)
+                {
+                    throw new IllegalArgumentException("Corrupt heatmap");
+                }
+                heatmap.counts[cell++] = count;
+                heatmap.totalCount += count;
+                heatmap.maxCount = Math.max(heatmap.maxCount, count);
+            }
+            return heatmap;
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IllegalArgumentException("Truncated heatmap", e);
+        }
+    }
+}
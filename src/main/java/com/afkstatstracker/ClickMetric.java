@@ -0,0 +1,28 @@
+package com.afkstatstracker;
+
+/**
+ * A statistic of the intervals between clicks, shown in the panel and stored with each
+ * session.
+ * <p>
+ * Every {@link MetricDispatcher} records the intervals of its click stream once, into an
+ * {@link IntervalStats} and an {@link IntervalHistogram}. The {@link BuiltInMetric}s are
+ * views of those and keep no state of their own. A metric that needs anything else
+ * implements {@link AccumulatingMetric}, whose accumulator the dispatcher feeds in the
+ * same pass.
+ */
+public interface ClickMetric
+{
+    /**
+     * Stable identifier, used as the key of the stored result.
+     */
+    String getKey();
+
+    String getName();
+
+    String getDescription();
+
+    /**
+     * The result as shown in the panel.
+     */
+    String format(double value);
+}
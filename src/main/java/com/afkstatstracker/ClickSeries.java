@@ -0,0 +1,27 @@
+package com.afkstatstracker;
+
+/**
+ * Read-only view of the click timestamps captured during a session, oldest first.
+ */
+public interface ClickSeries
+{
+    /**
+     * Number of timestamps currently retained.
+     */
+    int size();
+
+    /**
+     * Number of clicks recorded since the last reset, including any that were spilled.
+     */
+    long totalCount();
+
+    /**
+     * Timestamp at the given position, where 0 is the oldest retained click.
+     */
+    long getTimestamp(int index);
+
+    /**
+     * Copies the retained timestamps into a new array, oldest first.
+     */
+    long[] toArray();
+}
@@ -0,0 +1,67 @@
+package com.afkstatstracker;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Handle to the stored click trace of a session. The file is only read and decoded the
+ * first time the timestamps are requested.
+ */
+public class ClickTrace
+{
+    private final String sessionId;
+    private final Path file;
+    private long[] timestamps;
+
+    ClickTrace(String sessionId, Path file)
+    {
+        this.sessionId = sessionId;
+        this.file = file;
+    }
+
+    public String getSessionId()
+    {
+        return sessionId;
+    }
+
+    public boolean isLoaded()
+    {
+        return timestamps != null;
+    }
+
+    /**
+     * Click timestamps in ms, oldest first.
+     *
+     * @throws UncheckedIOException if the trace file cannot be read
+     */
+    public synchronized long[] getTimestamps()
+    {
+        if (timestamps == null)
+        {
+            timestamps = TraceCodec.decode(read());
+        }
+        return timestamps;
+    }
+
+    private ByteBuffer read()
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+            {
+                // keep reading until the buffer is full
+            }
+            buffer.flip();
+            return buffer;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to read click trace " + sessionId, e);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.afkstatstracker;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves persistence of a {@link SessionHistoryManager.SessionStore} onto a background
+ * thread.
+ * <p>
+ * Mutations are applied to the wrapped store straight away, which only buffers them,
+ * and a flush is scheduled on the writer thread. Further mutations before that flush
+ * runs are written with it, so a burst of renames or deletes costs a single write and
+ * the store is written at most once per interval. {@link #close()} performs a final
+ * flush so nothing buffered is lost on shutdown.
+ */
+@Slf4j
+class CoalescingSessionStore implements SessionHistoryManager.SessionStore, AutoCloseable
+{
+    private final SessionHistoryManager.SessionStore delegate;
+    private final ScheduledExecutorService executor;
+
+    private volatile long intervalMillis;
+    private volatile Runnable afterFlush = () -> {};
+    private ScheduledFuture<?> scheduledFlush;
+    private long lastFlush;
+
+    CoalescingSessionStore(SessionHistoryManager.SessionStore delegate, long intervalMillis)
+    {
+        this.delegate = delegate;
+        this.intervalMillis = intervalMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "afk-stats-tracker-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void setInterval(long intervalMillis)
+    {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Runs on the writer thread after each background flush, and after the final flush
+     * in {@link #close()}, to write state kept alongside the store.
+     */
+    void setAfterFlush(Runnable afterFlush)
+    {
+        this.afterFlush = afterFlush;
+    }
+
+    @Override
+    public List<Session> loadPage(int limit)
+    {
+        return delegate.loadPage(limit);
+    }
+
+    @Override
+    public int size()
+    {
+        return delegate.size();
+    }
+
+    @Override
+    public Session oldest()
+    {
+        return delegate.oldest();
+    }
+
+    @Override
+    public List<Session> loadAll()
+    {
+        return delegate.loadAll();
+    }
+
+    @Override
+    public void add(Session session)
+    {
+        delegate.add(session);
+        scheduleFlush();
+    }
+
+    @Override
+    public void rename(String id, String newName)
+    {
+        delegate.rename(id, newName);
+        scheduleFlush();
+    }
+
+    @Override
+    public void update(Session session)
+    {
+        delegate.update(session);
+        scheduleFlush();
+    }
+
+    @Override
+    public void delete(String id)
+    {
+        delegate.delete(id);
+        scheduleFlush();
+    }
+
+    @Override
+    public long getGeneration()
+    {
+        return delegate.getGeneration();
+    }
+
+    /**
+     * Runs a task on the writer thread, after any flush already queued, for other disk
+     * writes that should stay off the EDT. Runs it on the calling thread once the
+     * store is closed.
+     */
+    void execute(Runnable task)
+    {
+        try
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (RuntimeException e)
+                {
+                    log.warn("Background write failed", e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            task.run();
+        }
+    }
+
+    /**
+     * Flushes on the calling thread, without waiting for the interval.
+     */
+    @Override
+    public void flush()
+    {
+        delegate.flush();
+    }
+
+    /**
+     * Stops the writer thread, waiting for a flush already in progress, and writes
+     * whatever is still buffered.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (scheduledFlush != null)
+            {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+        }
+
+        executor.shutdown();
+        try
+        {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS))
+            {
+                log.warn("Session history writer did not stop in time");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        delegate.flush();
+        afterFlush.run();
+    }
+
+    private synchronized void scheduleFlush()
+    {
+        if (scheduledFlush != null || executor.isShutdown())
+        {
+            return;
+        }
+
+        long delay = Math.max(0, lastFlush + intervalMillis - System.currentTimeMillis());
+        scheduledFlush = executor.schedule(this::runScheduledFlush, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runScheduledFlush()
+    {
+        synchronized (this)
+        {
+            scheduledFlush = null;
+            lastFlush = System.currentTimeMillis();
+        }
+
+        try
+        {
+            delegate.flush();
+            afterFlush.run();
+        }
+        catch (RuntimeException e)
+        {
+            log.warn("Failed to write session history", e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Session store that keeps the whole history as one JSON string in a
+ * {@link SessionHistoryManager.ConfigStorage}, rewriting it on every change.
+ */
+class ConfigSessionStore implements SessionHistoryManager.SessionStore
+{
+    private final SessionHistoryManager.ConfigStorage storage;
+    private final Gson gson;
+    private final SessionTypeAdapter sessionAdapter = new SessionTypeAdapter();
+    private final List<Session> sessions = new ArrayList<>();
+    private int unloaded = -1;
+
+    ConfigSessionStore(SessionHistoryManager.ConfigStorage storage, Gson gson)
+    {
+        this.storage = storage;
+        this.gson = gson.newBuilder().registerTypeAdapter(Session.class, sessionAdapter).create();
+    }
+
+    @Override
+    public List<Session> loadPage(int limit)
+    {
+        if (unloaded < 0)
+        {
+            load();
+            unloaded = sessions.size();
+        }
+
+        int from = Math.max(0, unloaded - limit);
+        List<Session> page = new ArrayList<>(sessions.subList(from, unloaded));
+        unloaded = from;
+        return page;
+    }
+
+    @Override
+    public int size()
+    {
+        if (unloaded < 0)
+        {
+            load();
+            unloaded = sessions.size();
+        }
+        return sessions.size();
+    }
+
+    @Override
+    public Session oldest()
+    {
+        return size() > 0 ? sessions.get(0) : null;
+    }
+
+    @Override
+    public List<Session> loadAll()
+    {
+        size();
+        return new ArrayList<>(sessions);
+    }
+
+    private void load()
+    {
+        String json = storage.load();
+        if (json == null || json.isEmpty())
+        {
+            return;
+        }
+
+        sessions.addAll(sessionAdapter.readList(json));
+    }
+
+    @Override
+    public void add(Session session)
+    {
+        sessions.add(session);
+        save();
+    }
+
+    @Override
+    public void rename(String id, String newName)
+    {
+        for (int i = 0; i < sessions.size(); i++)
+        {
+            if (sessions.get(i).getId().equals(id))
+            {
+                sessions.set(i, sessions.get(i).withName(newName));
+                save();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void update(Session session)
+    {
+        for (int i = 0; i < sessions.size(); i++)
+        {
+            if (sessions.get(i).getId().equals(session.getId()))
+            {
+                sessions.set(i, session.withName(sessions.get(i).getName()));
+                save();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void delete(String id)
+    {
+        for (int i = 0; i < sessions.size(); i++)
+        {
+            if (sessions.get(i).getId().equals(id))
+            {
+                sessions.remove(i);
+                if (i < unloaded)
+                {
+                    unloaded--;
+                }
+                save();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        // Every mutation is saved as it happens
+    }
+
+    private void save()
+    {
+        storage.save(gson.toJson(sessions));
+    }
+}
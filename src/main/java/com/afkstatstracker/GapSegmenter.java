@@ -0,0 +1,132 @@
+package com.afkstatstracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits the click stream into active segments at idle gaps.
+ * <p>
+ * An interval longer than the idle threshold closes the current segment and is counted
+ * as idle time instead of an interval. {@link #addClick(long)} reports such a gap, so the
+ * session, lap and recent stats leave it out too and a bank break does not drag down
+ * the consistency of the clicking around it. {@link #breakAtNextClick()} forces such a
+ * gap for time the session was not being tracked at all. The open segment keeps its stats in an
+ * {@link IntervalStats}, closed segments are kept as {@link SessionSegment} summaries,
+ * so each click is O(1) and nothing is rescanned.
+ */
+public class GapSegmenter
+{
+    private final List<SessionSegment> completed = new ArrayList<>();
+    private final IntervalStats current = new IntervalStats();
+
+    private long idleThresholdMillis;
+    private long segmentStart;
+    private long lastClick;
+    private long idleTime;
+    private boolean breakPending;
+
+    public GapSegmenter(long idleThresholdMillis)
+    {
+        this.idleThresholdMillis = idleThresholdMillis;
+    }
+
+    /**
+     * Gaps already seen keep the threshold they were split with.
+     */
+    public void setIdleThreshold(long idleThresholdMillis)
+    {
+        this.idleThresholdMillis = idleThresholdMillis;
+    }
+
+    /**
+     * Records a click. Returns true if it ended an idle gap, which callers then leave
+     * out of their own intervals.
+     */
+    public boolean addClick(long timestamp)
+    {
+        boolean afterGap = current.getClickCount() > 0 && (breakPending || isIdleGap(timestamp - lastClick));
+        breakPending = false;
+        if (afterGap)
+        {
+            completed.add(snapshot());
+            idleTime += Math.max(0, timestamp - lastClick);
+            current.reset();
+        }
+
+        if (current.getClickCount() == 0)
+        {
+            segmentStart = timestamp;
+        }
+        current.addClick(timestamp);
+        lastClick = timestamp;
+        return afterGap;
+    }
+
+    /**
+     * Makes the next click end an idle gap however short it is, as after a restart.
+     */
+    public void breakAtNextClick()
+    {
+        breakPending = true;
+    }
+
+    /**
+     * Whether an interval is long enough to count as idle time.
+     */
+    public boolean isIdleGap(long interval)
+    {
+        return interval > idleThresholdMillis;
+    }
+
+    public void reset()
+    {
+        completed.clear();
+        current.reset();
+        idleTime = 0;
+        breakPending = false;
+    }
+
+    /**
+     * Stats of the segment being clicked in now.
+     */
+    public IntervalStats getCurrentSegment()
+    {
+        return current;
+    }
+
+    public int getSegmentCount()
+    {
+        return completed.size() + (current.getClickCount() > 0 ? 1 : 0);
+    }
+
+    /**
+     * Total length of the gaps between segments, in ms.
+     */
+    public long getIdleTime()
+    {
+        return idleTime;
+    }
+
+    /**
+     * Every segment so far including the open one, oldest first.
+     */
+    public List<SessionSegment> getSegments()
+    {
+        if (current.getClickCount() == 0)
+        {
+            return Collections.unmodifiableList(new ArrayList<>(completed));
+        }
+
+        List<SessionSegment> segments = new ArrayList<>(completed.size() + 1);
+        segments.addAll(completed);
+        segments.add(snapshot());
+        return Collections.unmodifiableList(segments);
+    }
+
+    private SessionSegment snapshot()
+    {
+        return new SessionSegment(segmentStart, lastClick, (int) current.getClickCount(),
+            current.getConsistencyScore(), current.getMeanInterval());
+    }
+}
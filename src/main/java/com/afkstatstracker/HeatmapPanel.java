@@ -0,0 +1,83 @@
+package com.afkstatstracker;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import javax.swing.JPanel;
+import net.runelite.client.ui.ColorScheme;
+
+/**
+ * Draws a {@link ClickHeatmap}, one pixel per cell scaled up to the panel, from cold
+ * blue for the odd click to red for the busiest cell.
+ * <p>
+ * The cells are drawn into a cached image, which {@link #refresh()} only redraws when
+ * the counts have changed since the last time, so repainting and refreshing an idle
+ * session cost no more than copying the image.
+ */
+class HeatmapPanel extends JPanel
+{
+	private static final int CELL_SIZE = 4;
+
+	private final BufferedImage image = new BufferedImage(ClickHeatmap.COLUMNS, ClickHeatmap.ROWS,
+		BufferedImage.TYPE_INT_RGB);
+	private final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+	private ClickHeatmap heatmap;
+	private long drawnModCount = -1;
+
+	HeatmapPanel()
+	{
+		setPreferredSize(new Dimension(ClickHeatmap.COLUMNS * CELL_SIZE, ClickHeatmap.ROWS * CELL_SIZE));
+		setMaximumSize(getPreferredSize());
+		setBackground(ColorScheme.DARKER_GRAY_COLOR);
+		setToolTipText("Where on the game screen the clicks of this session landed");
+		Arrays.fill(pixels, ColorScheme.DARKER_GRAY_COLOR.getRGB());
+	}
+
+	void setHeatmap(ClickHeatmap heatmap)
+	{
+		if (heatmap != this.heatmap)
+		{
+			this.heatmap = heatmap;
+			drawnModCount = -1;
+		}
+	}
+
+	/**
+	 * Redraws the cached image if the counts have changed.
+	 */
+	void refresh()
+	{
+		if (heatmap == null || heatmap.getModCount() == drawnModCount)
+		{
+			return;
+		}
+		drawnModCount = heatmap.getModCount();
+
+		int background = ColorScheme.DARKER_GRAY_COLOR.getRGB();
+		// Square root, so a few busy cells do not wash out the rest
+		double scale = heatmap.getMaxCount() > 0 ? 1 / Math.sqrt(heatmap.getMaxCount()) : 0;
+		for (int row = 0; row < ClickHeatmap.ROWS; row++)
+		{
+			for (int column = 0; column < ClickHeatmap.COLUMNS; column++)
+			{
+				int count = heatmap.getCount(column, row);
+				float heat = (float) (Math.sqrt(count) * scale);
+				pixels[row * ClickHeatmap.COLUMNS + column] = count == 0
+					? background
+					: Color.HSBtoRGB(0.66f * (1 - heat), 1f, 0.5f + 0.5f * heat);
+			}
+		}
+		repaint();
+	}
+
+	@Override
+	protected void paintComponent(Graphics g)
+	{
+		super.paintComponent(g);
+		g.drawImage(image, 0, 0, getWidth(), getHeight(), null);
+	}
+}
@@ -0,0 +1,87 @@
+package com.afkstatstracker;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The loaded session history as of one change, never modified after it is published.
+ * Any thread can read one without locking, and sees every session as of the same
+ * change however the history moves on meanwhile.
+ * <p>
+ * The sessions in date order are only sorted the first time they are asked for, since
+ * most snapshots are replaced by the next change before anyone reads them.
+ */
+public final class HistorySnapshot
+{
+    static final HistorySnapshot EMPTY = new HistorySnapshot(new SessionIndex(), 0);
+
+    private final SessionIndex index;
+    private final int storedSessionCount;
+    private volatile List<Session> sessions;
+
+    /**
+     * @param index an index nothing will change after this, such as a
+     *              {@link SessionIndex#copy()}
+     */
+    HistorySnapshot(SessionIndex index, int storedSessionCount)
+    {
+        this.index = index;
+        this.storedSessionCount = storedSessionCount;
+    }
+
+    /**
+     * The loaded sessions, oldest first. The list cannot be modified.
+     */
+    public List<Session> getSessions()
+    {
+        List<Session> sorted = sessions;
+        if (sorted == null)
+        {
+            // Sorting twice on a race is harmless, both lists are the same
+            sorted = Collections.unmodifiableList(
+                index.query(SessionIndex.SortKey.DATE, false, Long.MIN_VALUE, Long.MAX_VALUE));
+            sessions = sorted;
+        }
+        return sorted;
+    }
+
+    /**
+     * The loaded session with the id, or null.
+     */
+    public Session get(String id)
+    {
+        return index.get(id);
+    }
+
+    /**
+     * The loaded sessions that started within [{@code from}, {@code to}), sorted by the
+     * key.
+     */
+    public List<Session> query(SessionIndex.SortKey sortKey, boolean descending, long from, long to)
+    {
+        return index.query(sortKey, descending, from, to);
+    }
+
+    public int size()
+    {
+        return index.size();
+    }
+
+    public int getStoredSessionCount()
+    {
+        return storedSessionCount;
+    }
+
+    public boolean hasOlderSessions()
+    {
+        return index.size() < storedSessionCount;
+    }
+
+    /**
+     * Start time of the oldest loaded session, or {@link Long#MAX_VALUE} if none.
+     */
+    long oldestStartTime()
+    {
+        return index.oldestStartTime();
+    }
+}
@@ -0,0 +1,229 @@
+package com.afkstatstracker;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Latency histograms and counters for the plugin's own work, off by default.
+ * <p>
+ * Callers bracket a stage with {@link #start()} and {@link #stop(Stage, long)}. While
+ * disabled {@code start()} returns 0 without reading the clock and {@code stop} returns
+ * straight away, so instrumented code costs one volatile read per stage. Timings go
+ * into an {@link IntervalHistogram} per stage, which never allocates once created.
+ */
+@Slf4j
+public class Instrumentation implements InstrumentationMXBean
+{
+    static final String OBJECT_NAME = "com.afkstatstracker:type=Instrumentation";
+
+    public enum Stage
+    {
+        CLICK_CAPTURE,
+        STATS_REFRESH,
+        HISTORY_SERIALIZE,
+        HISTORY_WRITE,
+        HISTORY_COMPACT,
+        HISTORY_LOAD,
+        HISTORY_LIST_UPDATE
+    }
+
+    private final IntervalHistogram[] timings = new IntervalHistogram[Stage.values().length];
+    private final LongAdder clicks = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    private volatile boolean enabled;
+    private volatile long sinceNanos = System.nanoTime();
+    private volatile ClickBuffer clickBuffer;
+    private ObjectName registeredName;
+
+    public Instrumentation()
+    {
+        for (int i = 0; i < timings.length; i++)
+        {
+            timings[i] = new IntervalHistogram();
+        }
+    }
+
+    /**
+     * Start time of a stage to pass to {@link #stop(Stage, long)}, or 0 when disabled.
+     */
+    public long start()
+    {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void stop(Stage stage, long startNanos)
+    {
+        if (startNanos == 0L)
+        {
+            return;
+        }
+
+        long elapsed = System.nanoTime() - startNanos;
+        IntervalHistogram histogram = timings[stage.ordinal()];
+        synchronized (histogram)
+        {
+            histogram.recordValue(elapsed);
+        }
+    }
+
+    public void clickCaptured()
+    {
+        if (enabled)
+        {
+            clicks.increment();
+        }
+    }
+
+    public void bytesWritten(long bytes)
+    {
+        if (enabled)
+        {
+            bytesWritten.add(bytes);
+        }
+    }
+
+    /**
+     * The buffer whose occupancy is reported.
+     */
+    void watchClickBuffer(ClickBuffer clickBuffer)
+    {
+        this.clickBuffer = clickBuffer;
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled)
+    {
+        if (enabled && !this.enabled)
+        {
+            reset();
+        }
+        this.enabled = enabled;
+    }
+
+    public StageTimings getTimings(Stage stage)
+    {
+        IntervalHistogram histogram = timings[stage.ordinal()];
+        synchronized (histogram)
+        {
+            return new StageTimings(stage.name(), histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99), histogram.getMax());
+        }
+    }
+
+    @Override
+    public List<StageTimings> getStageTimings()
+    {
+        List<StageTimings> result = new ArrayList<>();
+        for (Stage stage : Stage.values())
+        {
+            result.add(getTimings(stage));
+        }
+        return result;
+    }
+
+    @Override
+    public long getClicksCaptured()
+    {
+        return clicks.sum();
+    }
+
+    @Override
+    public double getClickRate()
+    {
+        double seconds = (System.nanoTime() - sinceNanos) / 1e9;
+        return seconds > 0 ? clicks.sum() / seconds : 0.0;
+    }
+
+    @Override
+    public long getBytesWritten()
+    {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public int getBufferedClicks()
+    {
+        ClickBuffer buffer = clickBuffer;
+        return buffer == null ? 0 : buffer.size();
+    }
+
+    @Override
+    public int getBufferCapacity()
+    {
+        ClickBuffer buffer = clickBuffer;
+        return buffer == null ? 0 : buffer.getCapacity();
+    }
+
+    @Override
+    public void reset()
+    {
+        for (IntervalHistogram histogram : timings)
+        {
+            synchronized (histogram)
+            {
+                histogram.reset();
+            }
+        }
+        clicks.reset();
+        bytesWritten.reset();
+        sinceNanos = System.nanoTime();
+    }
+
+    /**
+     * Publishes this instance over JMX, replacing one left behind by an earlier start.
+     */
+    public void register()
+    {
+        try
+        {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        }
+        catch (MalformedObjectNameException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        catch (JMException e)
+        {
+            log.warn("Failed to register instrumentation MBean", e);
+        }
+    }
+
+    public void unregister()
+    {
+        if (registeredName == null)
+        {
+            return;
+        }
+
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        }
+        catch (JMException e)
+        {
+            log.warn("Failed to unregister instrumentation MBean", e);
+        }
+        registeredName = null;
+    }
+}
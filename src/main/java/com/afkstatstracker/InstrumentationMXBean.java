@@ -0,0 +1,34 @@
+package com.afkstatstracker;
+
+import java.util.List;
+
+/**
+ * JMX view of {@link Instrumentation}, registered as
+ * {@code com.afkstatstracker:type=Instrumentation}.
+ */
+public interface InstrumentationMXBean
+{
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * Latency of each instrumented stage since the last reset, in nanoseconds.
+     */
+    List<StageTimings> getStageTimings();
+
+    long getClicksCaptured();
+
+    /**
+     * Clicks captured per second since instrumentation was enabled or reset.
+     */
+    double getClickRate();
+
+    long getBytesWritten();
+
+    int getBufferedClicks();
+
+    int getBufferCapacity();
+
+    void reset();
+}
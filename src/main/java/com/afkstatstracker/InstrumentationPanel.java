@@ -0,0 +1,78 @@
+package com.afkstatstracker;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GridLayout;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import net.runelite.client.ui.ColorScheme;
+
+/**
+ * Debug readout of {@link Instrumentation}, shown while instrumentation is enabled.
+ */
+class InstrumentationPanel extends JPanel
+{
+	private final Instrumentation instrumentation;
+	private final JLabel[] stageLabels = new JLabel[Instrumentation.Stage.values().length];
+	private final JLabel clicksLabel = createLabel();
+	private final JLabel bufferLabel = createLabel();
+	private final JLabel bytesLabel = createLabel();
+
+	InstrumentationPanel(Instrumentation instrumentation)
+	{
+		super(new GridLayout(0, 1));
+		this.instrumentation = instrumentation;
+
+		setBorder(BorderFactory.createCompoundBorder(
+			BorderFactory.createMatteBorder(1, 0, 0, 0, ColorScheme.DARK_GRAY_COLOR),
+			BorderFactory.createEmptyBorder(8, 5, 8, 5)
+		));
+		setToolTipText("Time spent in each stage as p50 / p99 / max, in microseconds");
+
+		JLabel title = new JLabel("Instrumentation");
+		title.setForeground(Color.GRAY);
+		add(title);
+
+		for (int i = 0; i < stageLabels.length; i++)
+		{
+			stageLabels[i] = createLabel();
+			add(stageLabels[i]);
+		}
+		add(clicksLabel);
+		add(bufferLabel);
+		add(bytesLabel);
+	}
+
+	void refresh()
+	{
+		for (Instrumentation.Stage stage : Instrumentation.Stage.values())
+		{
+			StageTimings timings = instrumentation.getTimings(stage);
+			stageLabels[stage.ordinal()].setText(String.format("%s: %d x %s / %s / %s",
+				stage.name().toLowerCase().replace('_', ' '),
+				timings.getCount(),
+				micros(timings.getP50Nanos()),
+				micros(timings.getP99Nanos()),
+				micros(timings.getMaxNanos())));
+		}
+
+		clicksLabel.setText(String.format("clicks: %d (%.2f/s)",
+			instrumentation.getClicksCaptured(), instrumentation.getClickRate()));
+		bufferLabel.setText(String.format("buffer: %d / %d",
+			instrumentation.getBufferedClicks(), instrumentation.getBufferCapacity()));
+		bytesLabel.setText(String.format("written: %.1f KB", instrumentation.getBytesWritten() / 1024.0));
+	}
+
+	private static String micros(long nanos)
+	{
+		return String.format("%.1f", nanos / 1000.0);
+	}
+
+	private static JLabel createLabel()
+	{
+		JLabel label = new JLabel();
+		label.setFont(label.getFont().deriveFont(Font.PLAIN, 11f));
+		return label;
+	}
+}
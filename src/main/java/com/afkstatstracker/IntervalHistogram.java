@@ -0,0 +1,183 @@
+package com.afkstatstracker;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram of click intervals, in the style of an HDR histogram.
+ * <p>
+ * Values below 64 ms are counted exactly; above that each power of two is split into
+ * 32 buckets, so a reported percentile is within about 2% of the true value. Memory is
+ * fixed and recording is a single array increment, and percentile lookups walk the
+ * fixed bucket array, so their cost does not depend on how many clicks were recorded.
+ */
+public class IntervalHistogram
+{
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+
+    /**
+     * Largest value tracked with full precision, about 35 years in ms. Anything above is
+     * counted in the last bucket.
+     */
+    static final long MAX_TRACKABLE = (1L << 40) - 1;
+
+    private static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE) + 1;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void recordValue(long value)
+    {
+        long clamped = Math.min(Math.max(0, value), MAX_TRACKABLE);
+        counts[bucketIndex(clamped)]++;
+        totalCount++;
+        min = Math.min(min, clamped);
+        max = Math.max(max, clamped);
+    }
+
+    /**
+     * Adds every value recorded by another histogram.
+     */
+    public void add(IntervalHistogram other)
+    {
+        for (int i = 0; i < counts.length; i++)
+        {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset()
+    {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getTotalCount()
+    {
+        return totalCount;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    /**
+     * Value at the given percentile (0-100) using the nearest-rank method, or 0 when
+     * nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (totalCount == 0)
+        {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+            {
+                return valueOf(i);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Median distance of the values from their median, or 0 when nothing was recorded.
+     * Walks outwards from the median's bucket taking the nearer side each step, so like
+     * a percentile it costs one pass over the fixed buckets.
+     */
+    public long getMedianAbsoluteDeviation()
+    {
+        if (totalCount == 0)
+        {
+            return 0;
+        }
+
+        long median = getValueAtPercentile(50);
+        long rank = Math.max(1, (totalCount + 1) / 2);
+        int left = bucketIndex(median) - 1;
+        int right = left + 1;
+        long seen = 0;
+        while (true)
+        {
+            while (left >= 0 && counts[left] == 0)
+            {
+                left--;
+            }
+            while (right < counts.length && counts[right] == 0)
+            {
+                right++;
+            }
+            if (left < 0 && right >= counts.length)
+            {
+                return 0;
+            }
+
+            long leftDistance = left >= 0 ? Math.abs(median - valueOf(left)) : Long.MAX_VALUE;
+            long rightDistance = right < counts.length ? Math.abs(valueOf(right) - median) : Long.MAX_VALUE;
+            long distance;
+            if (leftDistance < rightDistance)
+            {
+                seen += counts[left--];
+                distance = leftDistance;
+            }
+            else
+            {
+                seen += counts[right++];
+                distance = rightDistance;
+            }
+            if (seen >= rank)
+            {
+                return distance;
+            }
+        }
+    }
+
+    public IntervalPercentiles toPercentiles()
+    {
+        return new IntervalPercentiles(
+            getValueAtPercentile(50),
+            getValueAtPercentile(90),
+            getValueAtPercentile(99),
+            max);
+    }
+
+    private long valueOf(int index)
+    {
+        return Math.min(max, Math.max(min, representativeValue(index)));
+    }
+
+    static int bucketIndex(long value)
+    {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Middle of the range of values counted in the bucket.
+     */
+    static long representativeValue(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+
+        int shift = index / HALF_SUB_BUCKETS - 1;
+        long subBucket = index - shift * HALF_SUB_BUCKETS;
+        return (subBucket << shift) + ((1L << shift) >> 1);
+    }
+}
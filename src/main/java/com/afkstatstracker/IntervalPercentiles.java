@@ -0,0 +1,25 @@
+package com.afkstatstracker;
+
+/**
+ * Summary of the click interval distribution of a session, in ms.
+ */
+public class IntervalPercentiles
+{
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long max;
+
+    public IntervalPercentiles(long p50, long p90, long p99, long max)
+    {
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public long getP50() { return p50; }
+    public long getP90() { return p90; }
+    public long getP99() { return p99; }
+    public long getMax() { return max; }
+}
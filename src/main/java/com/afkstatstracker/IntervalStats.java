@@ -0,0 +1,142 @@
+package com.afkstatstracker;
+
+import java.util.Arrays;
+
+/**
+ * Streaming mean and variance of the intervals between clicks.
+ * <p>
+ * Each click updates the accumulator in constant time using Welford's method, so the
+ * consistency score and average interval can be read at any point without rescanning
+ * the timestamps. The results use the same definitions as the original batch
+ * computation: the mean is the total span divided by the number of intervals, the
+ * variance is the sample variance (n - 1) and the score is {@code 1 / (1 + CV)}. Clicks
+ * added with {@link #addClickAfterGap(long)} start a new run, and the idle gap before
+ * them is not an interval.
+ * <p>
+ * Timestamps are expected in non-decreasing order; a backwards step is recorded as a
+ * zero interval.
+ */
+public class IntervalStats
+{
+    private long clicks;
+    private long lastTimestamp;
+    private long intervals;
+    private long intervalSum;
+    private double runningMean;
+    private double sumSqDiff;
+
+    /**
+     * Builds the statistics for a batch of timestamps in any order.
+     */
+    public static IntervalStats of(long[] timestamps)
+    {
+        long[] sorted = timestamps.clone();
+        Arrays.sort(sorted);
+
+        IntervalStats stats = new IntervalStats();
+        for (long timestamp : sorted)
+        {
+            stats.addClick(timestamp);
+        }
+        return stats;
+    }
+
+    public void addClick(long timestamp)
+    {
+        if (clicks++ == 0)
+        {
+            lastTimestamp = timestamp;
+            return;
+        }
+
+        long interval = Math.max(0, timestamp - lastTimestamp);
+        lastTimestamp = timestamp;
+        intervals++;
+        intervalSum += interval;
+
+        double delta = interval - runningMean;
+        runningMean += delta / intervals;
+        sumSqDiff += delta * (interval - runningMean);
+    }
+
+    /**
+     * Counts a click that ended an idle gap, without recording the gap as an interval.
+     */
+    public void addClickAfterGap(long timestamp)
+    {
+        clicks++;
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Adds the intervals another accumulator has seen, with Chan's parallel update. The
+     * interval between the two click streams is not counted.
+     */
+    public void merge(IntervalStats other)
+    {
+        if (other.intervals > 0)
+        {
+            long total = intervals + other.intervals;
+            double delta = other.runningMean - runningMean;
+            runningMean += delta * other.intervals / total;
+            sumSqDiff += other.sumSqDiff + delta * delta * intervals * other.intervals / total;
+            intervals = total;
+            intervalSum += other.intervalSum;
+        }
+        clicks += other.clicks;
+        lastTimestamp = Math.max(lastTimestamp, other.lastTimestamp);
+    }
+
+    public void reset()
+    {
+        clicks = 0;
+        lastTimestamp = 0;
+        intervals = 0;
+        intervalSum = 0;
+        runningMean = 0;
+        sumSqDiff = 0;
+    }
+
+    public long getClickCount()
+    {
+        return clicks;
+    }
+
+    public long getIntervalCount()
+    {
+        return intervals;
+    }
+
+    /**
+     * Mean interval in ms, or 0 with fewer than two clicks.
+     */
+    public double getMeanInterval()
+    {
+        long n = getIntervalCount();
+        return n == 0 ? 0.0 : (double) intervalSum / n;
+    }
+
+    /**
+     * Sample variance of the intervals. Undefined (NaN) with a single interval.
+     */
+    public double getVariance()
+    {
+        long n = getIntervalCount();
+        return n == 0 ? 0.0 : sumSqDiff / (n - 1);
+    }
+
+    /**
+     * Consistency score from 0 to 100, {@code 1 / (1 + CV)} where CV is the coefficient
+     * of variation of the intervals.
+     */
+    public long getConsistencyScore()
+    {
+        if (intervals < 2)
+        {
+            return 0;
+        }
+
+        double cv = Math.sqrt(getVariance()) / getMeanInterval();
+        return (long) (1 / (1 + cv) * 100);
+    }
+}
@@ -0,0 +1,167 @@
+package com.afkstatstracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a session into laps at the markers the user sets, so several methods can be
+ * compared within one session without resetting it.
+ * <p>
+ * Like {@link GapSegmenter}, the open lap keeps its stats in its own
+ * {@link IntervalStats} and finished laps are kept as {@link SessionLap} summaries,
+ * so a click is O(1) and reading the open lap does not depend on how many laps came
+ * before. A lap only records where its clicks start in the session; the timestamps
+ * stay in the session's one click buffer.
+ */
+public class LapTracker
+{
+    private final List<SessionLap> completed = new ArrayList<>();
+    private final IntervalStats current = new IntervalStats();
+
+    private long clicks;
+    private long lapFirstClick;
+    private long lapStart;
+    private long lastClick;
+
+    public void addClick(long timestamp)
+    {
+        addClick(timestamp, false);
+    }
+
+    /**
+     * Records a click, leaving the interval before it out of the lap's stats if it
+     * ended an idle gap.
+     */
+    public void addClick(long timestamp, boolean afterGap)
+    {
+        if (current.getClickCount() == 0)
+        {
+            lapStart = timestamp;
+        }
+        if (afterGap)
+        {
+            current.addClickAfterGap(timestamp);
+        }
+        else
+        {
+            current.addClick(timestamp);
+        }
+        lastClick = timestamp;
+        clicks++;
+    }
+
+    /**
+     * Ends the open lap, so the next click starts a new one. Returns the finished lap,
+     * or null if no click was made since the last marker.
+     */
+    public SessionLap markLap()
+    {
+        if (current.getClickCount() == 0)
+        {
+            return null;
+        }
+
+        SessionLap lap = snapshot();
+        completed.add(lap);
+        current.reset();
+        lapFirstClick = clicks;
+        return lap;
+    }
+
+    public void reset()
+    {
+        completed.clear();
+        current.reset();
+        clicks = 0;
+        lapFirstClick = 0;
+    }
+
+    /**
+     * Stats of the lap being clicked in now.
+     */
+    public IntervalStats getCurrentLap()
+    {
+        return current;
+    }
+
+    /**
+     * Number of the open lap, counting from 1.
+     */
+    public int getLapNumber()
+    {
+        return completed.size() + 1;
+    }
+
+    public boolean hasMarkers()
+    {
+        return !completed.isEmpty();
+    }
+
+    /**
+     * Every lap so far including the open one, oldest first, or null if no marker was
+     * set and the whole session is a single lap.
+     */
+    public List<SessionLap> getLaps()
+    {
+        if (completed.isEmpty())
+        {
+            return null;
+        }
+
+        List<SessionLap> laps = new ArrayList<>(completed.size() + 1);
+        laps.addAll(completed);
+        if (current.getClickCount() > 0)
+        {
+            laps.add(snapshot());
+        }
+        return Collections.unmodifiableList(laps);
+    }
+
+    /**
+     * Restats each lap from the session's click timestamps, keeping its click range.
+     * {@code timestamps} may have lost the session's first clicks, as a trace does once
+     * the click buffer overflows; {@code clickCount} is the session's full count.
+     * Intervals longer than {@code idleThresholdMillis} are idle gaps and left out, as
+     * they are live.
+     */
+    static List<SessionLap> recompute(List<SessionLap> laps, long[] timestamps, long clickCount,
+        long idleThresholdMillis)
+    {
+        long dropped = Math.max(0, clickCount - timestamps.length);
+        List<SessionLap> result = new ArrayList<>(laps.size());
+        for (SessionLap lap : laps)
+        {
+            int from = (int) Math.max(0, Math.min(timestamps.length, lap.getFirstClick() - dropped));
+            int to = (int) Math.max(0, Math.min(timestamps.length, lap.getFirstClick() + lap.getClickCount() - dropped));
+            if (to - from < lap.getClickCount())
+            {
+                // Some of its clicks are no longer in the trace
+                result.add(lap);
+                continue;
+            }
+
+            IntervalStats stats = new IntervalStats();
+            for (int i = from; i < to; i++)
+            {
+                if (i > from && timestamps[i] - timestamps[i - 1] > idleThresholdMillis)
+                {
+                    stats.addClickAfterGap(timestamps[i]);
+                }
+                else
+                {
+                    stats.addClick(timestamps[i]);
+                }
+            }
+            result.add(new SessionLap(lap.getFirstClick(), timestamps[from], timestamps[to - 1],
+                lap.getClickCount(), stats.getConsistencyScore(), stats.getMeanInterval()));
+        }
+        return result;
+    }
+
+    private SessionLap snapshot()
+    {
+        return new SessionLap(lapFirstClick, lapStart, lastClick, (int) current.getClickCount(),
+            current.getConsistencyScore(), current.getMeanInterval());
+    }
+}
@@ -0,0 +1,42 @@
+package com.afkstatstracker;
+
+/**
+ * The headline stats of the session in progress as of one click. Immutable, so the
+ * tracker can publish a new one with a single volatile write and any thread, such as
+ * the one drawing the overlay, can read it without locking.
+ */
+final class LiveStats
+{
+    private final long startTime;
+    private final long clickCount;
+    private final long consistency;
+    private final double avgInterval;
+
+    LiveStats(long startTime, long clickCount, long consistency, double avgInterval)
+    {
+        this.startTime = startTime;
+        this.clickCount = clickCount;
+        this.consistency = consistency;
+        this.avgInterval = avgInterval;
+    }
+
+    long getStartTime()
+    {
+        return startTime;
+    }
+
+    long getClickCount()
+    {
+        return clickCount;
+    }
+
+    long getConsistency()
+    {
+        return consistency;
+    }
+
+    double getAvgInterval()
+    {
+        return avgInterval;
+    }
+}
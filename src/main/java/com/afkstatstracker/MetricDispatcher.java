@@ -0,0 +1,180 @@
+package com.afkstatstracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes a set of {@link ClickMetric}s over a click stream in one pass. The interval
+ * since the previous click is worked out once per click and handed to every
+ * accumulator, so each click costs O(metrics).
+ * <p>
+ * The dispatcher records every interval once into an {@link IntervalStats} and an
+ * {@link IntervalHistogram} of its own. The {@link BuiltInMetric}s and the live stats
+ * read those instead of keeping copies; only {@link AccumulatingMetric}s get an
+ * accumulator.
+ * <p>
+ * Timestamps are expected in non-decreasing order; a backwards step is recorded as a
+ * zero interval, as in {@link IntervalStats}.
+ */
+public class MetricDispatcher
+{
+    private final List<ClickMetric> metrics;
+    // Null for the built-in metrics, which have no state of their own
+    private final AccumulatingMetric.Accumulator[] accumulators;
+    private final IntervalStats intervalStats = new IntervalStats();
+    private final IntervalHistogram intervalHistogram = new IntervalHistogram();
+    private long clicks;
+    private long lastTimestamp;
+
+    public MetricDispatcher(List<? extends ClickMetric> metrics)
+    {
+        this.metrics = Collections.unmodifiableList(new ArrayList<>(metrics));
+        for (ClickMetric metric : this.metrics)
+        {
+            if (!(metric instanceof BuiltInMetric) && !(metric instanceof AccumulatingMetric))
+            {
+                throw new IllegalArgumentException("Metric " + metric.getKey() + " has no accumulator");
+            }
+        }
+        this.accumulators = new AccumulatingMetric.Accumulator[this.metrics.size()];
+        reset();
+    }
+
+    /**
+     * A dispatcher of every {@link BuiltInMetric}.
+     */
+    public static MetricDispatcher builtIn()
+    {
+        List<ClickMetric> metrics = new ArrayList<>();
+        Collections.addAll(metrics, BuiltInMetric.values());
+        return new MetricDispatcher(metrics);
+    }
+
+    public void addClick(long timestamp)
+    {
+        intervalStats.addClick(timestamp);
+        if (clicks++ > 0)
+        {
+            long interval = Math.max(0, timestamp - lastTimestamp);
+            intervalHistogram.recordValue(interval);
+            for (AccumulatingMetric.Accumulator accumulator : accumulators)
+            {
+                if (accumulator != null)
+                {
+                    accumulator.update(interval);
+                }
+            }
+        }
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Counts a click that ended an idle gap, without handing the gap to the metrics.
+     */
+    public void addClickAfterGap(long timestamp)
+    {
+        intervalStats.addClickAfterGap(timestamp);
+        clicks++;
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Adds the intervals another dispatcher of the same metrics has seen. The interval
+     * between the two streams is not counted.
+     */
+    public void merge(MetricDispatcher other)
+    {
+        if (!metrics.equals(other.metrics))
+        {
+            throw new IllegalArgumentException("Dispatchers have different metrics");
+        }
+
+        intervalStats.merge(other.intervalStats);
+        intervalHistogram.add(other.intervalHistogram);
+        for (int i = 0; i < accumulators.length; i++)
+        {
+            if (accumulators[i] != null)
+            {
+                accumulators[i].merge(other.accumulators[i]);
+            }
+        }
+        clicks += other.clicks;
+        lastTimestamp = Math.max(lastTimestamp, other.lastTimestamp);
+    }
+
+    /**
+     * Starts over. The shared stats and histogram are cleared in place, so references to
+     * them stay valid.
+     */
+    public void reset()
+    {
+        intervalStats.reset();
+        intervalHistogram.reset();
+        for (int i = 0; i < accumulators.length; i++)
+        {
+            ClickMetric metric = metrics.get(i);
+            accumulators[i] = metric instanceof AccumulatingMetric
+                ? ((AccumulatingMetric) metric).newAccumulator()
+                : null;
+        }
+        clicks = 0;
+        lastTimestamp = 0;
+    }
+
+    public List<ClickMetric> getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Mean and variance of every interval seen.
+     */
+    public IntervalStats getIntervalStats()
+    {
+        return intervalStats;
+    }
+
+    /**
+     * Distribution of every interval seen.
+     */
+    public IntervalHistogram getIntervalHistogram()
+    {
+        return intervalHistogram;
+    }
+
+    /**
+     * Current result of one of the dispatcher's metrics.
+     */
+    public double getResult(ClickMetric metric)
+    {
+        int index = metrics.indexOf(metric);
+        if (index < 0)
+        {
+            throw new IllegalArgumentException("Unknown metric " + metric.getKey());
+        }
+        return result(index);
+    }
+
+    /**
+     * Current result of every metric, keyed by {@link ClickMetric#getKey()}.
+     */
+    public Map<String, Double> getResults()
+    {
+        Map<String, Double> results = new LinkedHashMap<>();
+        for (int i = 0; i < accumulators.length; i++)
+        {
+            results.put(metrics.get(i).getKey(), result(i));
+        }
+        return results;
+    }
+
+    private double result(int index)
+    {
+        return accumulators[index] != null
+            ? accumulators[index].result()
+            : ((BuiltInMetric) metrics.get(index)).result(intervalStats, intervalHistogram);
+    }
+}
@@ -0,0 +1,61 @@
+package com.afkstatstracker;
+
+import java.util.function.LongSupplier;
+
+/**
+ * The clock behind {@link ClickClock#monotonic()}: the wall clock at the last
+ * {@link #anchor()}, plus the {@link System#nanoTime()} elapsed since.
+ * <p>
+ * {@code nanoTime} does not advance while the machine is suspended on every platform,
+ * so one anchor for the whole run would date sessions after a sleep in the past. The
+ * plugin anchors again at the start of each session, which keeps session times on the
+ * wall clock and only uses {@code nanoTime} for the intervals within one.
+ */
+final class MonotonicClock implements ClickClock
+{
+    private static final class Origin
+    {
+        private final long millis;
+        private final long nanos;
+
+        private Origin(long millis, long nanos)
+        {
+            this.millis = millis;
+            this.nanos = nanos;
+        }
+    }
+
+    private final LongSupplier wallMillis;
+    private final LongSupplier nanos;
+
+    // Replaced as a whole so a reader never sees the millis of one anchor with the nanos of another
+    private volatile Origin origin;
+
+    MonotonicClock()
+    {
+        this(System::currentTimeMillis, System::nanoTime);
+    }
+
+    MonotonicClock(LongSupplier wallMillis, LongSupplier nanos)
+    {
+        this.wallMillis = wallMillis;
+        this.nanos = nanos;
+        anchor();
+    }
+
+    /**
+     * Moves the clock to the current wall clock time. Times read before and after are not
+     * comparable, so call it only between sessions.
+     */
+    void anchor()
+    {
+        origin = new Origin(wallMillis.getAsLong(), nanos.getAsLong());
+    }
+
+    @Override
+    public long currentTimeMillis()
+    {
+        Origin origin = this.origin;
+        return origin.millis + (nanos.getAsLong() - origin.nanos) / 1_000_000;
+    }
+}
@@ -1,36 +1,189 @@
 package com.afkstatstracker;
 
+import java.awt.Component;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
 import net.runelite.api.Client;
 import net.runelite.client.input.MouseAdapter;
 
 public class MouseClickCounterListener extends MouseAdapter
 {
-    private final List<Long> clickTimestamps = new ArrayList<>();
+    private final ClickBuffer clickTimestamps = new ClickBuffer();
+    private final GapSegmenter gapSegmenter = new GapSegmenter(TimeUnit.MINUTES.toMillis(1));
+    private final LapTracker lapTracker = new LapTracker();
+    private final MetricDispatcher metrics = MetricDispatcher.builtIn();
+    private final ClickHeatmap heatmap = new ClickHeatmap();
+    private final TickIntervals tickIntervals = new TickIntervals();
+    private SlidingWindowStats recentStats = new SlidingWindowStats(TimeUnit.MINUTES.toMillis(10));
     private final Client client;
-    MouseClickCounterListener(Client client)
+    private final Instrumentation instrumentation;
+    private final ClickClock clock;
+    private final Runnable onClick;
+    private long lastClickTime;
+    // Only written by the client thread, on each game tick
+    private volatile long tick;
+    private volatile boolean tickTracking;
+    MouseClickCounterListener(Client client, Instrumentation instrumentation, Runnable onClick)
+    {
+        this(client, instrumentation, ClickClock.monotonic(), onClick);
+    }
+
+    MouseClickCounterListener(Client client, Instrumentation instrumentation, ClickClock clock, Runnable onClick)
     {
         this.client = client;
+        this.instrumentation = instrumentation;
+        this.clock = clock;
+        this.onClick = onClick;
+        instrumentation.watchClickBuffer(this.clickTimestamps);
     }
 
     @Override
     public MouseEvent mousePressed(MouseEvent mouseEvent)
     {
+        Component canvas = mouseEvent.getComponent();
+        if (canvas != null)
+        {
+            this.heatmap.addClick(mouseEvent.getX(), mouseEvent.getY(), canvas.getWidth(), canvas.getHeight());
+        }
         addClick();
         return mouseEvent;
     }
 
-    public List<Long> getClickCounter() { return this.clickTimestamps; }
+    public ClickSeries getClicks() { return this.clickTimestamps; }
+
+    public IntervalStats getIntervalStats() { return this.metrics.getIntervalStats(); }
+
+    public IntervalHistogram getIntervalHistogram() { return this.metrics.getIntervalHistogram(); }
+
+    public SlidingWindowStats getRecentStats() { return this.recentStats; }
+
+    public GapSegmenter getGapSegmenter() { return this.gapSegmenter; }
+
+    public LapTracker getLapTracker() { return this.lapTracker; }
+
+    public MetricDispatcher getMetrics() { return this.metrics; }
+
+    public ClickHeatmap getHeatmap() { return this.heatmap; }
+
+    public TickIntervals getTickIntervals() { return this.tickIntervals; }
+
+    public ClickClock getClock() { return this.clock; }
+
+    /**
+     * Counts a game tick, so the following clicks are tagged with it. Only called from
+     * the client thread.
+     */
+    public void onGameTick()
+    {
+        this.tick++;
+    }
+
+    /**
+     * Turns tagging clicks with the game tick on or off. Clicks made while it is off
+     * leave the tick intervals alone.
+     */
+    public void setTickTracking(boolean enabled)
+    {
+        this.tickTracking = enabled;
+    }
+
+    /**
+     * Changes the length of the recent window, refilling it from the clicks still held
+     * in the buffer so the recent stats carry on without a gap.
+     */
+    public void setRecentWindow(long windowMillis)
+    {
+        SlidingWindowStats stats = new SlidingWindowStats(windowMillis);
+        int size = this.clickTimestamps.size();
+        long cutoff = this.clock.currentTimeMillis() - stats.getWindowMillis();
+        int first = size;
+        while (first > 1 && this.clickTimestamps.getTimestamp(first - 1) >= cutoff)
+        {
+            first--;
+        }
+        for (int i = Math.max(1, first); i < size; i++)
+        {
+            long timestamp = this.clickTimestamps.getTimestamp(i);
+            long interval = timestamp - this.clickTimestamps.getTimestamp(i - 1);
+            if (!this.gapSegmenter.isIdleGap(interval))
+            {
+                stats.recordInterval(timestamp, interval);
+            }
+        }
+        this.recentStats = stats;
+    }
 
     public void addClick()
     {
-        this.clickTimestamps.add(System.currentTimeMillis());
+        long start = this.instrumentation.start();
+        boolean afterGap = recordClick(this.clock.currentTimeMillis());
+        if (this.tickTracking)
+        {
+            if (afterGap)
+            {
+                this.tickIntervals.addClickAfterGap(this.tick);
+            }
+            else
+            {
+                this.tickIntervals.addClick(this.tick);
+            }
+        }
+        this.instrumentation.clickCaptured();
+        this.instrumentation.stop(Instrumentation.Stage.CLICK_CAPTURE, start);
+        this.onClick.run();
+    }
+
+    /**
+     * Replaces the session's clicks with those of a recovered session, oldest first, so
+     * every stat carries on from where it left off. Click positions are not
+     * checkpointed, so the heatmap starts over. The time until the next click spans
+     * the restart, so it is counted as idle rather than as an interval.
+     */
+    public void restoreClicks(long[] timestamps)
+    {
+        resetMouseClickCounterListener();
+        for (long timestamp : timestamps)
+        {
+            recordClick(timestamp);
+        }
+        this.gapSegmenter.breakAtNextClick();
+    }
+
+    /**
+     * Records a click in every stat. Returns true if it ended an idle gap, which is
+     * counted as idle time and left out of the intervals.
+     */
+    private boolean recordClick(long now)
+    {
+        boolean afterGap = this.gapSegmenter.addClick(now);
+        if (afterGap)
+        {
+            this.recentStats.advance(now);
+            // Also feeds the interval stats and histogram
+            this.metrics.addClickAfterGap(now);
+        }
+        else
+        {
+            if (this.clickTimestamps.totalCount() > 0)
+            {
+                this.recentStats.recordInterval(now, now - this.lastClickTime);
+            }
+            this.metrics.addClick(now);
+        }
+        this.lastClickTime = now;
+        this.clickTimestamps.add(now);
+        this.lapTracker.addClick(now, afterGap);
+        return afterGap;
     }
 
     public void resetMouseClickCounterListener()
     {
         this.clickTimestamps.clear();
+        this.recentStats.clear();
+        this.gapSegmenter.reset();
+        this.lapTracker.reset();
+        this.metrics.reset();
+        this.heatmap.reset();
+        this.tickIntervals.reset();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,218 @@
+package com.afkstatstracker;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Recomputes the metrics of stored sessions from their click traces.
+ * <p>
+ * Sessions are analysed in parallel on the engine's own fork-join pool, never on the
+ * EDT, using the same {@link IntervalStats}, {@link IntervalHistogram},
+ * {@link GapSegmenter} and {@link MetricDispatcher} as live tracking. Laps keep their click ranges and are restated
+ * from the clicks in them. Each result is stamped with
+ * {@link #ANALYSIS_VERSION}; sessions already at that version are skipped unless the
+ * run is forced. Results are only returned, writing them back is up to the caller.
+ */
+@Slf4j
+public class ReanalysisEngine
+{
+    /**
+     * Bump whenever a metric definition changes, so stored sessions are recomputed.
+     * 1: consistency, interval, percentiles and segments.
+     * 2: adds the interval variance used by the activity rollups.
+     * 3: adds the {@link BuiltInMetric} results.
+     * 4: leaves idle gaps out of the session and lap intervals.
+     */
+    public static final int ANALYSIS_VERSION = 4;
+
+    private final TraceStore traceStore;
+    private final ForkJoinPool pool;
+
+    public ReanalysisEngine(TraceStore traceStore, int parallelism)
+    {
+        this.traceStore = traceStore;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), pool ->
+        {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("afk-stats-tracker-reanalysis-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Progress and result of one run.
+     */
+    public static class Job
+    {
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger updated = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private volatile int total = -1;
+        private CompletableFuture<Map<Session, Session>> result;
+
+        /**
+         * Number of sessions to look at, or -1 while they are still being loaded.
+         */
+        public int getTotal()
+        {
+            return total;
+        }
+
+        public int getDone()
+        {
+            return done.get();
+        }
+
+        public int getUpdated()
+        {
+            return updated.get();
+        }
+
+        /**
+         * Sessions that could not be recomputed and were left as stored.
+         */
+        public int getFailed()
+        {
+            return failed.get();
+        }
+
+        /**
+         * Stops at the next session. The sessions finished so far are still returned.
+         */
+        public void cancel()
+        {
+            cancelled.set(true);
+        }
+
+        public boolean isCancelled()
+        {
+            return cancelled.get();
+        }
+
+        /**
+         * The recomputed sessions keyed by the stored session each one replaces,
+         * completed on a pool thread.
+         */
+        public CompletableFuture<Map<Session, Session>> getResult()
+        {
+            return result;
+        }
+    }
+
+    /**
+     * Starts re-analysing the sessions from {@code source}, which is called on a pool
+     * thread.
+     *
+     * @param force recompute sessions already at the current analysis version too
+     */
+    public Job start(Supplier<List<Session>> source, long idleThresholdMillis, boolean force)
+    {
+        Job job = new Job();
+        job.result = CompletableFuture.supplyAsync(() ->
+        {
+            List<Session> sessions = source.get();
+            job.total = sessions.size();
+            Map<Session, Session> results = new LinkedHashMap<>();
+            sessions.parallelStream()
+                .map(session -> reanalyze(job, session, idleThresholdMillis, force))
+                .filter(Objects::nonNull)
+                .forEachOrdered(result -> results.put(result.getKey(), result.getValue()));
+            return results;
+        }, pool);
+        return job;
+    }
+
+    public void shutdown()
+    {
+        pool.shutdownNow();
+    }
+
+    private Map.Entry<Session, Session> reanalyze(Job job, Session session, long idleThresholdMillis, boolean force)
+    {
+        try
+        {
+            if (job.isCancelled() || (!force && session.getAnalysisVersion() >= ANALYSIS_VERSION))
+            {
+                return null;
+            }
+
+            ClickTrace trace = traceStore.find(session.getId());
+            if (trace == null)
+            {
+                return null;
+            }
+
+            Session result = analyze(session, trace.getTimestamps(), idleThresholdMillis);
+            job.updated.incrementAndGet();
+            return new AbstractMap.SimpleImmutableEntry<>(session, result);
+        }
+        catch (RuntimeException e)
+        {
+            // One bad trace costs only its own session, not the whole run
+            log.warn("Skipping re-analysis of session {}", session.getId(), e);
+            job.failed.incrementAndGet();
+            return null;
+        }
+        finally
+        {
+            job.done.incrementAndGet();
+        }
+    }
+
+    /**
+     * Computes the metrics of a stored session from its click trace. The click count is
+     * kept, since the trace only holds the clicks still buffered when the session ended,
+     * and so are the tag and the lap markers.
+     */
+    static Session analyze(Session stored, long[] timestamps, long idleThresholdMillis)
+    {
+        // One pass feeding everything, as the clicks were fed live
+        GapSegmenter segmenter = new GapSegmenter(idleThresholdMillis);
+        MetricDispatcher metrics = MetricDispatcher.builtIn();
+        for (long timestamp : timestamps)
+        {
+            if (segmenter.addClick(timestamp))
+            {
+                metrics.addClickAfterGap(timestamp);
+            }
+            else
+            {
+                metrics.addClick(timestamp);
+            }
+        }
+        IntervalStats stats = metrics.getIntervalStats();
+        IntervalHistogram histogram = metrics.getIntervalHistogram();
+
+        return new Session(
+            stored.getId(),
+            stored.getName(),
+            stored.getStartTime(),
+            stored.getEndTime(),
+            stored.getClickCount(),
+            stats.getConsistencyScore(),
+            stats.getMeanInterval()
+        )
+            .withIntervalVariance(stats.getIntervalCount() > 1 ? stats.getVariance() : 0)
+            .withTag(stored.getTag())
+            .withPercentiles(histogram.toPercentiles())
+            .withSegments(segmenter.getSegments())
+            .withLaps(stored.getLaps() != null ? LapTracker.recompute(stored.getLaps(), timestamps, stored.getClickCount(), idleThresholdMillis) : null)
+            .withHeatmap(stored.getHeatmap())
+            .withIdleTime(segmenter.getIdleTime())
+            .withMetrics(metrics.getResults())
+            .withAnalysisVersion(ANALYSIS_VERSION);
+    }
+}
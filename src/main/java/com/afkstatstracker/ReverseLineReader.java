@@ -0,0 +1,99 @@
+package com.afkstatstracker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads newline separated UTF-8 lines from a file channel, last line first, without
+ * reading the rest of the file.
+ */
+final class ReverseLineReader
+{
+    private static final int BLOCK_SIZE = 8192;
+
+    private final FileChannel channel;
+    private final long floor;
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    private long blockStart = -1;
+    private long position;
+
+    /**
+     * @param floor    offset of the first byte that may be returned
+     * @param position offset just past the last line to return
+     */
+    ReverseLineReader(FileChannel channel, long floor, long position)
+    {
+        this.channel = channel;
+        this.floor = floor;
+        this.position = position;
+    }
+
+    /**
+     * Offset just past the next line that would be returned.
+     */
+    long getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Returns the previous non-empty line, or null once the floor is reached.
+     */
+    String readLine() throws IOException
+    {
+        while (position > floor)
+        {
+            long end = position;
+            if (byteAt(end - 1) == '\n')
+            {
+                end--;
+            }
+
+            long start = end;
+            while (start > floor && byteAt(start - 1) != '\n')
+            {
+                start--;
+            }
+
+            position = start;
+            if (end > start)
+            {
+                return read(start, end);
+            }
+        }
+        return null;
+    }
+
+    private byte byteAt(long offset) throws IOException
+    {
+        if (blockStart < 0 || offset < blockStart || offset >= blockStart + block.limit())
+        {
+            blockStart = Math.max(floor, offset + 1 - BLOCK_SIZE);
+            block.clear();
+            block.limit((int) (offset + 1 - blockStart));
+            readFully(block, blockStart);
+        }
+        return block.get((int) (offset - blockStart));
+    }
+
+    private String read(long start, long end) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        readFully(buffer, start);
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, offset + buffer.position());
+            if (read < 0)
+            {
+                throw new IOException("Unexpected end of file at " + (offset + buffer.position()));
+            }
+        }
+    }
+}
@@ -1,17 +1,67 @@
 package com.afkstatstracker;
 
-public class Session
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recorded session. Immutable, so it can be shared between threads; the {@code with}
+ * methods return a new version with one field changed.
+ */
+public final class Session
 {
     private final String id;
-    private String name;
+    private final String name;
     private final long startTime;
     private final long endTime;
     private final int clickCount;
     private final long consistencyScore;
     private final double avgInterval;
+    private final double intervalVariance;
+    private final String tag;
+    private final long idleTime;
+    private final int analysisVersion;
+    private final Map<String, Double> metrics;
+    // Percentiles, segments, laps and heatmap as stored, decoded into details on first access
+    private final transient String payload;
+    private volatile Details details;
+
+    /**
+     * The percentiles, segments, laps and heatmap, apart from the rest so they can be decoded
+     * lazily.
+     */
+    static final class Details
+    {
+        static final Details NONE = new Details(null, null, null, null);
+
+        private final IntervalPercentiles percentiles;
+        private final List<SessionSegment> segments;
+        private final List<SessionLap> laps;
+        private final String heatmap;
+
+        Details(IntervalPercentiles percentiles, List<SessionSegment> segments, List<SessionLap> laps,
+                String heatmap)
+        {
+            this.percentiles = percentiles;
+            this.segments = segments != null ? Collections.unmodifiableList(new ArrayList<>(segments)) : null;
+            this.laps = laps != null ? Collections.unmodifiableList(new ArrayList<>(laps)) : null;
+            this.heatmap = heatmap;
+        }
+    }
 
     public Session(String id, String name, long startTime, long endTime,
                    int clickCount, long consistencyScore, double avgInterval)
+    {
+        this(id, name, startTime, endTime, clickCount, consistencyScore, avgInterval,
+            0, null, 0, 0, Collections.emptyMap(), null, Details.NONE);
+    }
+
+    private Session(String id, String name, long startTime, long endTime,
+                    int clickCount, long consistencyScore, double avgInterval,
+                    double intervalVariance, String tag, long idleTime, int analysisVersion,
+                    Map<String, Double> metrics, String payload, Details details)
     {
         this.id = id;
         this.name = name;
@@ -20,15 +70,214 @@ public class Session
         this.clickCount = clickCount;
         this.consistencyScore = consistencyScore;
         this.avgInterval = avgInterval;
+        this.intervalVariance = intervalVariance;
+        this.tag = tag;
+        this.idleTime = idleTime;
+        this.analysisVersion = analysisVersion;
+        this.metrics = metrics;
+        this.payload = payload;
+        this.details = details;
     }
 
     public String getId() { return id; }
     public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
     public long getStartTime() { return startTime; }
     public long getEndTime() { return endTime; }
     public int getClickCount() { return clickCount; }
     public long getConsistencyScore() { return consistencyScore; }
     public double getAvgInterval() { return avgInterval; }
 
+    public Session withName(String name)
+    {
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, metrics, payload, details);
+    }
+
+    /**
+     * Sample variance of the click intervals, in ms squared. Only recorded from analysis
+     * version 2, 0 before that.
+     */
+    public double getIntervalVariance() { return intervalVariance; }
+
+    public Session withIntervalVariance(double intervalVariance)
+    {
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, metrics, payload, details);
+    }
+
+    /**
+     * Activity the session was spent on, used to group sessions for comparison, or null
+     * if it has not been tagged.
+     */
+    public String getTag() { return tag; }
+
+    public Session withTag(String tag)
+    {
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, metrics, payload, details);
+    }
+
+    /**
+     * Interval percentiles, or null for sessions recorded before they were tracked.
+     */
+    public IntervalPercentiles getPercentiles()
+    {
+        return details().percentiles;
+    }
+
+    public Session withPercentiles(IntervalPercentiles percentiles)
+    {
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, metrics, null,
+            new Details(percentiles, details().segments, details().laps, details().heatmap));
+    }
+
+    /**
+     * Active stretches of clicking between idle gaps, or null for sessions recorded
+     * before they were tracked. The list cannot be modified.
+     */
+    public List<SessionSegment> getSegments()
+    {
+        return details().segments;
+    }
+
+    public Session withSegments(List<SessionSegment> segments)
+    {
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, metrics, null,
+            new Details(details().percentiles, segments, details().laps, details().heatmap));
+    }
+
+    /**
+     * Laps between the markers set during the session, or null if none were set.
+     * The list cannot be modified.
+     */
+    public List<SessionLap> getLaps()
+    {
+        return details().laps;
+    }
+
+    public Session withLaps(List<SessionLap> laps)
+    {
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, metrics, null,
+            new Details(details().percentiles, details().segments, laps, details().heatmap));
+    }
+
+    /**
+     * Click positions of the session, or null for sessions recorded before they were
+     * tracked or recovered after a crash. Each call decodes a new copy.
+     */
+    public ClickHeatmap getHeatmap()
+    {
+        String heatmap = details().heatmap;
+        if (heatmap == null)
+        {
+            return null;
+        }
+        try
+        {
+            return ClickHeatmap.decode(heatmap);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    public Session withHeatmap(ClickHeatmap heatmap)
+    {
+        Details current = details();
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, metrics, null,
+            new Details(current.percentiles, current.segments, current.laps, heatmap != null ? heatmap.encode() : null));
+    }
+
+    /**
+     * Time spent in idle gaps, left out of the segment stats, in ms.
+     */
+    public long getIdleTime() { return idleTime; }
+
+    public Session withIdleTime(long idleTime)
+    {
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, metrics, payload, details);
+    }
+
+    /**
+     * The {@link ReanalysisEngine#ANALYSIS_VERSION} the metrics were computed with, 0 for
+     * sessions recorded before metrics were versioned.
+     */
+    public int getAnalysisVersion() { return analysisVersion; }
+
+    public Session withAnalysisVersion(int analysisVersion)
+    {
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, metrics, payload, details);
+    }
+
+    /**
+     * Results of the {@link ClickMetric}s computed for the session, keyed by
+     * {@link ClickMetric#getKey()}. Empty for sessions recorded before metrics were
+     * pluggable. Sessions recorded with game ticks tracked also carry the tick interval
+     * stats under {@code tickInterval} and {@code tickConsistency}. The map cannot be
+     * modified.
+     */
+    public Map<String, Double> getMetrics()
+    {
+        // Null only when created by reflection from JSON without the field
+        return metrics != null ? metrics : Collections.emptyMap();
+    }
+
+    public Session withMetrics(Map<String, Double> metrics)
+    {
+        Map<String, Double> copy = metrics != null && !metrics.isEmpty()
+            ? Collections.unmodifiableMap(new LinkedHashMap<>(metrics))
+            : Collections.<String, Double>emptyMap();
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, copy, payload, details);
+    }
+
+    /**
+     * Whether the percentiles, segments, laps and heatmap have been decoded. Sessions read from
+     * storage keep them as stored JSON until first asked for.
+     */
+    boolean isPayloadLoaded()
+    {
+        return payload == null || details != null;
+    }
+
+    /**
+     * The stored JSON of the percentiles, segments, laps and heatmap, passed through unchanged if they
+     * came from storage, or null if there are none.
+     */
+    String getPayloadJson()
+    {
+        if (payload != null)
+        {
+            return payload;
+        }
+        Details current = details();
+        return SessionTypeAdapter.encodePayload(current.percentiles, current.segments, current.laps,
+            current.heatmap);
+    }
+
+    /**
+     * A version whose percentiles, segments and laps are decoded from the stored JSON when
+     * first asked for.
+     */
+    Session withPayloadJson(String payload)
+    {
+        return copy(name, tag, intervalVariance, idleTime, analysisVersion, metrics, payload,
+            payload != null ? null : Details.NONE);
+    }
+
+    private Details details()
+    {
+        Details current = details;
+        if (current == null)
+        {
+            // Racing readers each decode the same JSON to equal details, so no lock needed
+            current = payload != null ? SessionTypeAdapter.decodePayload(payload, id) : Details.NONE;
+            details = current;
+        }
+        return current;
+    }
+
+    private Session copy(String name, String tag, double intervalVariance, long idleTime, int analysisVersion,
+                         Map<String, Double> metrics, String payload, Details details)
+    {
+        return new Session(id, name, startTime, endTime, clickCount, consistencyScore, avgInterval,
+            intervalVariance, tag, idleTime, analysisVersion, metrics, payload, details);
+    }
 }
@@ -0,0 +1,483 @@
+package com.afkstatstracker;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only checkpoint of the session in progress, so a crash or forced restart
+ * loses at most the clicks since the last checkpoint.
+ * <p>
+ * {@link #begin(long)} starts the file with the session's start time, and each
+ * {@link #checkpoint(ClickSeries)} appends one block holding only the clicks made
+ * since the previous one, so its cost does not grow with the length of the session.
+ * Timestamps are zig-zag varint deltas as in {@link TraceCodec}, starting from zero in
+ * each block so every block can be read on its own. Each block is prefixed with its
+ * length and ends with a CRC32: a corrupt block is skipped on {@link #recover()} and
+ * the ones after it are still read, while one torn by a crash mid-write ends the file.
+ * <p>
+ * Writes run on a background thread in the order they were made. Only a block that
+ * reached the file counts as checkpointed: when a write fails the partial block is cut
+ * off again and the next checkpoint sends everything since the last one that did.
+ * <pre>
+ * header  byte version, varint start time
+ * block   varint body length, body, int CRC32 of the body
+ * body    varint clicks, varint skipped, clicks x varint delta
+ * </pre>
+ * Skipped clicks are ones that had already left the click buffer by the time of the
+ * checkpoint; they only add to the recovered click count.
+ */
+@Slf4j
+class SessionCheckpoint implements AutoCloseable
+{
+    static final String FILE = "active.checkpoint";
+    private static final byte VERSION = 2;
+
+    private final Path file;
+    private final ExecutorService writer;
+
+    // Owned by the thread recording clicks
+    private boolean active;
+    private long session;
+    private long checkpointedClicks;
+    private Failure seenFailure;
+
+    // Owned by the writer thread
+    private long writingSession;
+    private long writtenClicks;
+    private byte[] pendingHeader;
+
+    // Published by the writer thread when a block could not be written
+    private volatile Failure failure;
+
+    /**
+     * A failed write: the clicks of {@code session} from {@code clicks} on have to be
+     * sent again.
+     */
+    private static class Failure
+    {
+        private final long session;
+        private final long clicks;
+
+        Failure(long session, long clicks)
+        {
+            this.session = session;
+            this.clicks = clicks;
+        }
+    }
+
+    /**
+     * An unfinished session read back from a checkpoint.
+     */
+    static class Recovery
+    {
+        private final long startTime;
+        private final long[] timestamps;
+        private final long clickCount;
+        // End of the last readable block
+        private final long length;
+
+        Recovery(long startTime, long[] timestamps, long clickCount, long length)
+        {
+            this.startTime = startTime;
+            this.timestamps = timestamps;
+            this.clickCount = clickCount;
+            this.length = length;
+        }
+
+        long getStartTime()
+        {
+            return startTime;
+        }
+
+        /**
+         * The checkpointed click timestamps, oldest first.
+         */
+        long[] getTimestamps()
+        {
+            return timestamps;
+        }
+
+        /**
+         * Clicks made in the session, including any skipped ones.
+         */
+        long getClickCount()
+        {
+            return clickCount;
+        }
+
+        long getEndTime()
+        {
+            return timestamps.length > 0 ? timestamps[timestamps.length - 1] : startTime;
+        }
+    }
+
+    SessionCheckpoint(File directory)
+    {
+        this.file = directory.toPath().resolve(FILE);
+        this.writer = Executors.newSingleThreadExecutor(r ->
+        {
+            Thread thread = new Thread(r, "afk-stats-tracker-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a new checkpoint for a session started at {@code startTime}, replacing any
+     * previous one.
+     */
+    void begin(long startTime)
+    {
+        active = true;
+        checkpointedClicks = 0;
+        long started = ++session;
+
+        ByteBuffer header = ByteBuffer.allocate(1 + TraceCodec.varintSize(TraceCodec.zigZagEncode(startTime)));
+        header.put(VERSION);
+        TraceCodec.putVarint(header, TraceCodec.zigZagEncode(startTime));
+        writer.execute(() ->
+        {
+            writingSession = started;
+            writtenClicks = 0;
+            // Kept until written, the first block tries again if this fails
+            pendingHeader = header.array();
+            writeHeader();
+        });
+    }
+
+    /**
+     * Carries on appending to the checkpoint a recovered session was read from, whose
+     * clicks have been replayed into the click buffer. Anything after the last readable
+     * block is cut off first.
+     */
+    void resume(Recovery recovery)
+    {
+        active = true;
+        checkpointedClicks = recovery.getTimestamps().length;
+        long resumed = ++session;
+        long recovered = checkpointedClicks;
+        writer.execute(() ->
+        {
+            writingSession = resumed;
+            writtenClicks = recovered;
+            pendingHeader = null;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+            {
+                channel.truncate(recovery.length);
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to trim session checkpoint", e);
+            }
+        });
+    }
+
+    /**
+     * Appends the clicks recorded since the last checkpoint. Must be called on the
+     * thread that records clicks, while no click is being recorded.
+     */
+    void checkpoint(ClickSeries clicks)
+    {
+        Failure failed = failure;
+        if (failed != seenFailure)
+        {
+            seenFailure = failed;
+            if (failed.session == session)
+            {
+                // Send again everything since the last block that reached the file
+                checkpointedClicks = failed.clicks;
+            }
+        }
+
+        long fresh = clicks.totalCount() - checkpointedClicks;
+        if (!active || fresh <= 0)
+        {
+            return;
+        }
+
+        int available = (int) Math.min(fresh, clicks.size());
+        long skipped = fresh - available;
+        int first = clicks.size() - available;
+
+        long[] deltas = new long[available];
+        int bodySize = TraceCodec.varintSize(available) + TraceCodec.varintSize(skipped);
+        long previous = 0;
+        for (int i = 0; i < available; i++)
+        {
+            long timestamp = clicks.getTimestamp(first + i);
+            deltas[i] = TraceCodec.zigZagEncode(timestamp - previous);
+            bodySize += TraceCodec.varintSize(deltas[i]);
+            previous = timestamp;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(TraceCodec.varintSize(bodySize) + bodySize + Integer.BYTES);
+        TraceCodec.putVarint(block, bodySize);
+        int bodyStart = block.position();
+        TraceCodec.putVarint(block, available);
+        TraceCodec.putVarint(block, skipped);
+        for (long delta : deltas)
+        {
+            TraceCodec.putVarint(block, delta);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(block.array(), bodyStart, bodySize);
+        block.putInt((int) crc.getValue());
+
+        long current = session;
+        long from = checkpointedClicks;
+        long to = clicks.totalCount();
+        checkpointedClicks = to;
+        writer.execute(() -> append(current, from, to, block.array()));
+    }
+
+    /**
+     * Removes the checkpoint once the session has been saved or thrown away.
+     */
+    void discard()
+    {
+        active = false;
+        writer.execute(() ->
+        {
+            pendingHeader = null;
+            try
+            {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to delete session checkpoint", e);
+            }
+        });
+    }
+
+    /**
+     * Reads back the session left behind by a previous run, or null if there is none
+     * or it has no clicks. Corrupt blocks are skipped, and a torn one ends the file.
+     */
+    Recovery recover()
+    {
+        if (!Files.exists(file))
+        {
+            return null;
+        }
+
+        ByteBuffer in;
+        try
+        {
+            in = ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to read session checkpoint", e);
+            return null;
+        }
+
+        long startTime;
+        try
+        {
+            if (in.get() != VERSION)
+            {
+                log.warn("Unrecognised session checkpoint, ignoring it");
+                return null;
+            }
+            startTime = TraceCodec.zigZagDecode(TraceCodec.getVarint(in));
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            log.warn("Session checkpoint has no readable header, ignoring it");
+            return null;
+        }
+
+        long[] timestamps = new long[64];
+        int count = 0;
+        long clickCount = 0;
+        long length = in.position();
+        while (in.hasRemaining())
+        {
+            int blockStart = in.position();
+            int blockEnd = -1;
+            try
+            {
+                long bodySize = TraceCodec.getVarint(in);
+                if (bodySize < 0 || bodySize > in.remaining() - Integer.BYTES)
+                {
+                    throw new IllegalArgumentException("Implausible block length");
+                }
+                int bodyStart = in.position();
+                blockEnd = bodyStart + (int) bodySize + Integer.BYTES;
+
+                int clicks = (int) TraceCodec.getVarint(in);
+                long skipped = TraceCodec.getVarint(in);
+                if (clicks < 0 || clicks > bodySize || skipped < 0)
+                {
+                    throw new IllegalArgumentException("Implausible block size");
+                }
+
+                long[] block = new long[clicks];
+                long timestamp = 0;
+                for (int i = 0; i < clicks; i++)
+                {
+                    timestamp += TraceCodec.zigZagDecode(TraceCodec.getVarint(in));
+                    block[i] = timestamp;
+                }
+
+                if (in.position() != blockEnd - Integer.BYTES)
+                {
+                    throw new IllegalArgumentException("Block length mismatch");
+                }
+                CRC32 crc = new CRC32();
+                crc.update(in.array(), bodyStart, (int) bodySize);
+                if (in.getInt() != (int) crc.getValue())
+                {
+                    throw new IllegalArgumentException("Checksum mismatch");
+                }
+
+                if (count + clicks > timestamps.length)
+                {
+                    timestamps = Arrays.copyOf(timestamps, Math.max(count + clicks, timestamps.length * 2));
+                }
+                System.arraycopy(block, 0, timestamps, count, clicks);
+                count += clicks;
+                clickCount += clicks + skipped;
+                length = in.position();
+            }
+            catch (BufferUnderflowException | IllegalArgumentException e)
+            {
+                if (blockEnd < 0)
+                {
+                    // The last block, torn by the crash, the rest is still usable
+                    log.warn("Dropping unreadable session checkpoint data at byte {}", blockStart);
+                    break;
+                }
+                // Its length still says where the next block starts
+                log.warn("Skipping corrupt session checkpoint block at byte {}", blockStart);
+                in.position(blockEnd);
+                length = blockEnd;
+            }
+        }
+
+        return clickCount > 0 ? new Recovery(startTime, Arrays.copyOf(timestamps, count), clickCount, length) : null;
+    }
+
+    /**
+     * Waits for the writes already made.
+     */
+    void flush()
+    {
+        try
+        {
+            writer.submit(() -> { }).get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Waits for the writes already made, then stops the writer thread.
+     */
+    @Override
+    public void close()
+    {
+        writer.shutdown();
+        try
+        {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS))
+            {
+                log.warn("Session checkpoint writer did not stop in time");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void append(long blockSession, long from, long to, byte[] block)
+    {
+        if (blockSession != writingSession || from != writtenClicks)
+        {
+            // Queued behind a failed write, the clicks are sent again from where it was
+            return;
+        }
+        if ((pendingHeader != null && !writeHeader()) || !appendBlock(block))
+        {
+            failure = new Failure(blockSession, from);
+            return;
+        }
+        writtenClicks = to;
+    }
+
+    private boolean writeHeader()
+    {
+        try
+        {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                writeFully(channel, pendingHeader);
+            }
+            pendingHeader = null;
+            return true;
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to write session checkpoint", e);
+            return false;
+        }
+    }
+
+    private boolean appendBlock(byte[] block)
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            long end = channel.size();
+            channel.position(end);
+            try
+            {
+                writeFully(channel, block);
+            }
+            catch (IOException e)
+            {
+                // Leave no partial block for the next one to be appended after
+                channel.truncate(end);
+                throw e;
+            }
+            return true;
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to write session checkpoint", e);
+            return false;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+}
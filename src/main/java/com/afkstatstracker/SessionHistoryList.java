@@ -0,0 +1,507 @@
+package com.afkstatstracker;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.GridLayout;
+import java.awt.Rectangle;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
+import javax.swing.JTextField;
+import javax.swing.ListCellRenderer;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import net.runelite.client.ui.ColorScheme;
+
+/**
+ * Session history rendered through a single reused cell renderer, so only visible rows
+ * are painted and no components are built per session. The list model is updated
+ * incrementally from {@link SessionHistoryManager} events while shown oldest first;
+ * any other sort or a date filter rebuilds the view from the manager's session index.
+ * Clicking a name edits it in place, clicking the bin icon deletes the session and
+ * right-clicking sets the activity it is tagged with.
+ */
+class SessionHistoryList extends JList<Session> implements SessionHistoryManager.Listener
+{
+	private static final int DELETE_ZONE_WIDTH = 24;
+	private static final int MAX_NAME_LENGTH = 30;
+
+	private final SessionHistoryManager sessionHistoryManager;
+	private final Instrumentation instrumentation;
+	private final DefaultListModel<Session> model = new DefaultListModel<>();
+
+	private JTextField editor;
+
+	private SessionIndex.SortKey sortKey = SessionIndex.SortKey.DATE;
+	private boolean descending;
+	private long from = Long.MIN_VALUE;
+	private boolean loadingOlder;
+	private boolean rebuildQueued;
+
+	SessionHistoryList(SessionHistoryManager sessionHistoryManager, Instrumentation instrumentation)
+	{
+		this.sessionHistoryManager = sessionHistoryManager;
+		this.instrumentation = instrumentation;
+
+		setModel(model);
+		setCellRenderer(new SessionCellRenderer());
+		setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		setFocusable(false);
+		setPrototypeCellValue(new Session("", "Session 2000-01-01 00:00", 0, 0, 10000, 100, 10000.0));
+
+		for (Session session : sessionHistoryManager.getSessions())
+		{
+			model.addElement(session);
+		}
+		sessionHistoryManager.addListener(this);
+
+		MouseAdapter mouseHandler = new MouseAdapter()
+		{
+			@Override
+			public void mouseClicked(MouseEvent e)
+			{
+				int index = rowAt(e);
+				if (index < 0)
+				{
+					return;
+				}
+
+				if (SwingUtilities.isRightMouseButton(e))
+				{
+					showTagMenu(index, e);
+				}
+				else if (isOverDelete(e, index))
+				{
+					sessionHistoryManager.deleteSession(model.get(index).getId());
+				}
+				else
+				{
+					startRename(index);
+				}
+			}
+
+			@Override
+			public void mouseMoved(MouseEvent e)
+			{
+				int index = rowAt(e);
+				int cursor = index < 0 ? Cursor.DEFAULT_CURSOR
+					: isOverDelete(e, index) ? Cursor.HAND_CURSOR : Cursor.TEXT_CURSOR;
+				setCursor(Cursor.getPredefinedCursor(cursor));
+			}
+		};
+		addMouseListener(mouseHandler);
+		addMouseMotionListener(mouseHandler);
+	}
+
+	@Override
+	public String getToolTipText(MouseEvent e)
+	{
+		int index = rowAt(e);
+		if (index < 0)
+		{
+			return null;
+		}
+		if (isOverDelete(e, index))
+		{
+			return "Delete session";
+		}
+
+		Session session = model.get(index);
+		String laps = session.getLaps() != null ? session.getLaps().size() + " laps, " : "";
+		if (session.getSegments() == null)
+		{
+			return laps.isEmpty() ? session.getName() : String.format("%s (%d laps)", session.getName(), session.getLaps().size());
+		}
+		return String.format("%s (%s%d segments, %s idle)", session.getName(), laps, session.getSegments().size(),
+			AfkStatsTrackerPanel.formatDuration(session.getIdleTime()));
+	}
+
+	/**
+	 * Shows the sessions started at or after {@code from} sorted by the key, loading
+	 * older pages from the store as far back as the filter reaches. Sorting by anything
+	 * but date loads every session in range, even without a filter, since the best or
+	 * longest session may be in any page.
+	 */
+	void setView(SessionIndex.SortKey sortKey, boolean descending, long from)
+	{
+		this.sortKey = sortKey;
+		this.descending = descending;
+		this.from = from;
+
+		if (from != Long.MIN_VALUE || sortKey != SessionIndex.SortKey.DATE)
+		{
+			// Rebuilt once below rather than once per page
+			loadingOlder = true;
+			try
+			{
+				sessionHistoryManager.loadSessionsSince(from);
+			}
+			finally
+			{
+				loadingOlder = false;
+			}
+		}
+		rebuild();
+	}
+
+	@Override
+	public void sessionAdded(Session session)
+	{
+		long start = instrumentation.start();
+		cancelRename();
+		if (isChronological() && (model.isEmpty() || compareInView(model.lastElement(), session) <= 0))
+		{
+			model.addElement(session);
+			ensureIndexIsVisible(model.size() - 1);
+		}
+		else
+		{
+			rebuild();
+		}
+		instrumentation.stop(Instrumentation.Stage.HISTORY_LIST_UPDATE, start);
+	}
+
+	@Override
+	public void sessionUpdated(Session session)
+	{
+		if (!isChronological())
+		{
+			// The new metrics may move it, rebuilt once for a whole batch of updates
+			queueRebuild();
+			return;
+		}
+
+		// An update keeps the start time but may replace the session with a new instance
+		int row = rowOf(session);
+		if (row >= 0)
+		{
+			model.set(row, session);
+		}
+	}
+
+	@Override
+	public void sessionRemoved(Session session)
+	{
+		cancelRename();
+		int row = rowOf(session);
+		if (row >= 0)
+		{
+			model.remove(row);
+		}
+	}
+
+	@Override
+	public void olderSessionsLoaded(List<Session> page)
+	{
+		if (loadingOlder)
+		{
+			return;
+		}
+
+		long start = instrumentation.start();
+		cancelRename();
+		if (isChronological() && isInViewOrder(page))
+		{
+			for (int i = page.size() - 1; i >= 0; i--)
+			{
+				model.add(0, page.get(i));
+			}
+		}
+		else
+		{
+			rebuild();
+		}
+		instrumentation.stop(Instrumentation.Stage.HISTORY_LIST_UPDATE, start);
+	}
+
+	private boolean isChronological()
+	{
+		return sortKey == SessionIndex.SortKey.DATE && !descending && from == Long.MIN_VALUE;
+	}
+
+	/**
+	 * Orders sessions the way {@link SessionIndex#query} sorts the view, down to ties
+	 * between equal start times.
+	 */
+	private int compareInView(Session a, Session b)
+	{
+		int order = Double.compare(sortValue(a), sortValue(b));
+		if (order == 0)
+		{
+			order = Long.compare(a.getStartTime(), b.getStartTime());
+		}
+		return descending ? -order : order;
+	}
+
+	private double sortValue(Session session)
+	{
+		switch (sortKey)
+		{
+			case CONSISTENCY:
+				return session.getConsistencyScore();
+			case INTERVAL:
+				return session.getAvgInterval();
+			case DURATION:
+				return session.getEndTime() - session.getStartTime();
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Whether a page of older sessions can go in front of the rows as it is.
+	 */
+	private boolean isInViewOrder(List<Session> page)
+	{
+		for (int i = 1; i < page.size(); i++)
+		{
+			if (compareInView(page.get(i - 1), page.get(i)) > 0)
+			{
+				return false;
+			}
+		}
+		return page.isEmpty() || model.isEmpty() || compareInView(page.get(page.size() - 1), model.get(0)) <= 0;
+	}
+
+	/**
+	 * Row of a session, found by binary search since the rows are always in view order,
+	 * or -1 if it is not shown.
+	 */
+	private int rowOf(Session session)
+	{
+		int low = 0;
+		int high = model.size();
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (compareInView(model.get(mid), session) < 0)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+
+		// Rows that tie with it are next to each other, and all but it are rare
+		for (int i = low; i < model.size() && compareInView(model.get(i), session) == 0; i++)
+		{
+			if (model.get(i).getId().equals(session.getId()))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void queueRebuild()
+	{
+		if (rebuildQueued)
+		{
+			return;
+		}
+		rebuildQueued = true;
+		SwingUtilities.invokeLater(() ->
+		{
+			rebuildQueued = false;
+			long start = instrumentation.start();
+			rebuild();
+			instrumentation.stop(Instrumentation.Stage.HISTORY_LIST_UPDATE, start);
+		});
+	}
+
+	private void rebuild()
+	{
+		cancelRename();
+		model.clear();
+		model.addAll(sessionHistoryManager.getSessions(sortKey, descending, from, Long.MAX_VALUE));
+	}
+
+	private int rowAt(MouseEvent e)
+	{
+		int index = locationToIndex(e.getPoint());
+		if (index < 0 || !getCellBounds(index, index).contains(e.getPoint()))
+		{
+			return -1;
+		}
+		return index;
+	}
+
+	private boolean isOverDelete(MouseEvent e, int index)
+	{
+		Rectangle cell = getCellBounds(index, index);
+		return e.getX() >= cell.x + cell.width - DELETE_ZONE_WIDTH;
+	}
+
+	private void startRename(int index)
+	{
+		cancelRename();
+
+		Session session = model.get(index);
+		Rectangle cell = getCellBounds(index, index);
+
+		JTextField textField = new JTextField(session.getName());
+		textField.setBorder(BorderFactory.createEmptyBorder(0, 2, 0, 2));
+		textField.setBounds(cell.x + 5, cell.y + 3, cell.width - DELETE_ZONE_WIDTH - 10,
+			textField.getPreferredSize().height + 5);
+		textField.selectAll();
+
+		Runnable save = () -> {
+			if (editor != textField)
+			{
+				return;
+			}
+			cancelRename();
+
+			String newName = textField.getText().trim();
+			if (!newName.isEmpty() && !newName.equals(session.getName()))
+			{
+				sessionHistoryManager.renameSession(session.getId(), newName);
+			}
+		};
+
+		textField.addActionListener(e -> save.run());
+		textField.addFocusListener(new FocusAdapter()
+		{
+			@Override
+			public void focusLost(FocusEvent e)
+			{
+				save.run();
+			}
+		});
+		textField.addKeyListener(new KeyAdapter()
+		{
+			@Override
+			public void keyPressed(KeyEvent e)
+			{
+				if (e.getKeyCode() == KeyEvent.VK_ESCAPE)
+				{
+					cancelRename();
+				}
+			}
+		});
+
+		editor = textField;
+		add(textField);
+		textField.requestFocusInWindow();
+		repaint();
+	}
+
+	private void showTagMenu(int index, MouseEvent e)
+	{
+		cancelRename();
+		Session session = model.get(index);
+
+		JMenuItem setTag = new JMenuItem("Set activity...");
+		setTag.addActionListener(a -> promptForTag(session));
+		JMenuItem clearTag = new JMenuItem("Clear activity");
+		clearTag.setEnabled(session.getTag() != null);
+		clearTag.addActionListener(a -> sessionHistoryManager.setSessionTag(session.getId(), null));
+
+		JPopupMenu menu = new JPopupMenu();
+		menu.add(setTag);
+		menu.add(clearTag);
+		menu.show(this, e.getX(), e.getY());
+	}
+
+	private void promptForTag(Session session)
+	{
+		// Offers the activities already in use so the same one is not typed differently
+		JComboBox<String> tagBox = new JComboBox<>();
+		for (String tag : sessionHistoryManager.getRollups().getTags())
+		{
+			if (!tag.equals(SessionRollups.UNTAGGED))
+			{
+				tagBox.addItem(tag);
+			}
+		}
+		tagBox.setEditable(true);
+		tagBox.setSelectedItem(session.getTag() != null ? session.getTag() : "");
+
+		int choice = JOptionPane.showConfirmDialog(this, tagBox, "Activity for " + session.getName(),
+			JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+		if (choice != JOptionPane.OK_OPTION)
+		{
+			return;
+		}
+
+		Object selected = tagBox.getEditor().getItem();
+		String tag = selected != null ? selected.toString().trim() : "";
+		sessionHistoryManager.setSessionTag(session.getId(), tag.isEmpty() ? null : tag);
+	}
+
+	private void cancelRename()
+	{
+		if (editor != null)
+		{
+			JTextField textField = editor;
+			editor = null;
+			remove(textField);
+			repaint();
+		}
+	}
+
+	private static class SessionCellRenderer extends JPanel implements ListCellRenderer<Session>
+	{
+		private final JLabel nameLabel = new JLabel();
+		private final JLabel statsLabel = new JLabel();
+
+		SessionCellRenderer()
+		{
+			super(new BorderLayout(5, 2));
+			setBorder(BorderFactory.createCompoundBorder(
+				BorderFactory.createMatteBorder(0, 0, 1, 0, ColorScheme.DARK_GRAY_COLOR),
+				BorderFactory.createEmptyBorder(5, 5, 5, 5)
+			));
+
+			statsLabel.setForeground(Color.GRAY);
+
+			JPanel textPanel = new JPanel(new GridLayout(2, 1));
+			textPanel.setOpaque(false);
+			textPanel.add(nameLabel);
+			textPanel.add(statsLabel);
+
+			JLabel deleteIcon = new JLabel("\uD83D\uDDD1");
+
+			add(textPanel, BorderLayout.CENTER);
+			add(deleteIcon, BorderLayout.EAST);
+		}
+
+		@Override
+		public Component getListCellRendererComponent(JList<? extends Session> list, Session session, int index,
+			boolean isSelected, boolean cellHasFocus)
+		{
+			String displayName = session.getName();
+			if (displayName.length() > MAX_NAME_LENGTH)
+			{
+				displayName = displayName.substring(0, MAX_NAME_LENGTH - 3) + "...";
+			}
+			nameLabel.setText(displayName);
+
+			String stats = String.format("%d | %.0fms | %d clicks",
+				session.getConsistencyScore(),
+				session.getAvgInterval(),
+				session.getClickCount());
+			statsLabel.setText(session.getTag() != null ? session.getTag() + " | " + stats : stats);
+
+			setBackground(list.getBackground());
+			return this;
+		}
+	}
+}
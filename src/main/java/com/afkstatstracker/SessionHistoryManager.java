@@ -1,95 +1,448 @@
 package com.afkstatstracker;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.Type;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
-@Slf4j
+/**
+ * The session history, loaded a page at a time from a {@link SessionStore}.
+ * <p>
+ * Readers get an immutable {@link HistorySnapshot}, safe on any thread without copying
+ * or locking. Every change goes through one of the synchronized mutators, which apply
+ * it to a private index, publish a copy of it as the new snapshot and then notify the
+ * listeners on the calling thread. The copy shares all but the chunks the change
+ * touches with the previous snapshot, see {@link SessionIndex}, and a batch such as
+ * {@link #updateSessions(Map)} or {@link #loadSessionsSince(long)} publishes once.
+ */
 public class SessionHistoryManager
 {
-    private static final int MAX_SESSIONS = 20;
+    static final int PAGE_SIZE = 50;
 
-    private final ConfigStorage storage;
-    private final Gson gson;
-    private List<Session> sessions;
+    private final SessionStore store;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Only touched by the mutators, readers see the published copy
+    private final SessionIndex sessions = new SessionIndex();
+    private final SessionRollups rollups;
+    // Sessions removed while running, so a late re-analysis result cannot revive one,
+    // with the store generation each was removed in
+    private final Map<String, Long> removedIds = new HashMap<>();
+    private long prunedGeneration;
+    private volatile HistorySnapshot snapshot = HistorySnapshot.EMPTY;
+
+    private int maxSessions;
+    private int maxAgeDays;
 
     public interface ConfigStorage
     {
         String load();
         void save(String json);
+        void clear();
+    }
+
+    /**
+     * Persistence backend for the history. Mutations are reported individually so a
+     * backend can record them without rewriting everything, and sessions are loaded a
+     * page at a time, newest first. A backend may buffer mutations until
+     * {@link #flush()}.
+     */
+    public interface SessionStore
+    {
+        /**
+         * Loads the next page of sessions older than those already loaded, oldest first.
+         * Returns an empty list once every session has been loaded.
+         */
+        List<Session> loadPage(int limit);
+
+        /**
+         * Number of stored sessions, whether loaded or not.
+         */
+        int size();
+
+        /**
+         * The oldest stored session, or null if there are none.
+         */
+        Session oldest();
+
+        /**
+         * Every stored session, oldest first, without changing which pages are loaded.
+         * Unlike the other methods this may be called off the EDT.
+         */
+        List<Session> loadAll();
+
+        void add(Session session);
+        void rename(String id, String newName);
+
+        /**
+         * Replaces the stored metrics and tag of a session with those of the given one,
+         * keeping the session's current name.
+         */
+        void update(Session session);
+
+        void delete(String id);
+
+        /**
+         * Writes any buffered mutations.
+         */
+        void flush();
+
+        /**
+         * Rises each time the store has been written out in full, after which every
+         * session deleted before then is gone from it for good.
+         */
+        default long getGeneration()
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Notified after the history changes, including sessions removed by retention, on
+     * the thread that changed it and with the new snapshot already published.
+     */
+    public interface Listener
+    {
+        default void sessionAdded(Session session) {}
+        default void sessionUpdated(Session session) {}
+        default void sessionRemoved(Session session) {}
+        default void olderSessionsLoaded(List<Session> page) {}
+
+        /**
+         * The rollups have been rebuilt from the store, called on the thread that
+         * rebuilt them.
+         */
+        default void rollupsRebuilt() {}
     }
 
     public SessionHistoryManager(ConfigStorage storage, Gson gson)
     {
-        this.storage = storage;
-        this.gson = gson;
-        this.sessions = loadSessions();
+        this(new ConfigSessionStore(storage, gson));
+    }
+
+    public SessionHistoryManager(SessionStore store)
+    {
+        this(store, new SessionRollups(ZoneId.systemDefault()), Runnable::run);
     }
 
-    private List<Session> loadSessions()
+    /**
+     * @param rollups  per-activity aggregates of the stored sessions, rebuilt from the
+     *                 store if they do not cover the same number of sessions
+     * @param rebuilds runs that rebuild, which reads every stored session, so it can be
+     *                 kept off the EDT
+     */
+    SessionHistoryManager(SessionStore store, SessionRollups rollups, Executor rebuilds)
     {
-        String json = storage.load();
-        if (json == null || json.isEmpty())
+        this.store = store;
+        this.rollups = rollups;
+        store.loadPage(PAGE_SIZE).forEach(sessions::add);
+        publish();
+
+        if (rollups.getSessionCount() != store.size())
         {
-            return new ArrayList<>();
+            rebuilds.execute(() ->
+            {
+                // Sessions changed in the meantime are kept in their latest version
+                rollups.rebuild(store::loadAll);
+                listeners.forEach(Listener::rollupsRebuilt);
+            });
         }
+    }
+
+    public void addListener(Listener listener)
+    {
+        listeners.add(listener);
+    }
 
-        try
+    public void removeListener(Listener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The history as of the latest change. Read everything a task needs from one
+     * snapshot to get a consistent view.
+     */
+    public HistorySnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * The loaded sessions, oldest first. The list cannot be modified.
+     */
+    public List<Session> getSessions()
+    {
+        return snapshot.getSessions();
+    }
+
+    /**
+     * The loaded sessions that started within [{@code from}, {@code to}), sorted by the
+     * key.
+     */
+    public List<Session> getSessions(SessionIndex.SortKey sortKey, boolean descending, long from, long to)
+    {
+        return snapshot.query(sortKey, descending, from, to);
+    }
+
+    /**
+     * Aggregates of every stored session per activity tag, loaded or not.
+     */
+    SessionRollups getRollups()
+    {
+        return rollups;
+    }
+
+    public int getStoredSessionCount()
+    {
+        return snapshot.getStoredSessionCount();
+    }
+
+    public boolean hasOlderSessions()
+    {
+        return snapshot.hasOlderSessions();
+    }
+
+    /**
+     * Loads the next page of older sessions from the store.
+     */
+    public synchronized List<Session> loadOlderSessions()
+    {
+        List<Session> page = store.loadPage(PAGE_SIZE);
+        sessions.addOlder(page);
+
+        if (!page.isEmpty())
         {
-            Type listType = new TypeToken<List<Session>>(){}.getType();
-            List<Session> loaded = gson.fromJson(json, listType);
-            return loaded != null ? new ArrayList<>(loaded) : new ArrayList<>();
+            publish();
+            listeners.forEach(l -> l.olderSessionsLoaded(page));
         }
-        catch (Exception e)
+        return page;
+    }
+
+    /**
+     * Loads older pages until every stored session that started at or after
+     * {@code from} is loaded, publishing and notifying once for all of them.
+     */
+    public synchronized void loadSessionsSince(long from)
+    {
+        List<List<Session>> pages = new ArrayList<>();
+        int loaded = 0;
+        while (sessions.size() < store.size() && sessions.oldestStartTime() >= from)
         {
-            log.warn("Failed to parse session history, starting fresh", e);
-            return new ArrayList<>();
+            List<Session> page = store.loadPage(PAGE_SIZE);
+            if (page.isEmpty())
+            {
+                break;
+            }
+            sessions.addOlder(page);
+            pages.add(page);
+            loaded += page.size();
+        }
+
+        if (!pages.isEmpty())
+        {
+            // Oldest first, like a single page
+            List<Session> older = new ArrayList<>(loaded);
+            for (int i = pages.size() - 1; i >= 0; i--)
+            {
+                older.addAll(pages.get(i));
+            }
+            publish();
+            listeners.forEach(l -> l.olderSessionsLoaded(older));
         }
     }
 
-    private void saveSessions()
+    /**
+     * Sets how many sessions to keep and for how long, then applies it. Zero disables
+     * a limit.
+     */
+    public synchronized void setRetention(int maxSessions, int maxAgeDays)
     {
-        String json = gson.toJson(sessions);
-        storage.save(json);
+        this.maxSessions = Math.max(0, maxSessions);
+        this.maxAgeDays = Math.max(0, maxAgeDays);
+        applyRetention();
     }
 
-    public List<Session> getSessions()
+    /**
+     * Writes any mutations the store has buffered.
+     */
+    public void flush()
     {
-        return new ArrayList<>(sessions);
+        store.flush();
+        rollups.save();
     }
 
-    public void addSession(Session session)
+    public synchronized void addSession(Session session)
     {
         sessions.add(session);
+        rollups.add(session);
+        store.add(session);
+        publish();
+        listeners.forEach(l -> l.sessionAdded(session));
+
+        applyRetention();
+    }
+
+    /**
+     * Replaces a loaded session with a renamed version of it.
+     */
+    public synchronized void renameSession(String id, String newName)
+    {
+        Session loaded = sessions.get(id);
+        if (loaded != null)
+        {
+            Session session = loaded.withName(newName);
+            sessions.add(session);
+            store.rename(id, newName);
+            publish();
+            listeners.forEach(l -> l.sessionUpdated(session));
+        }
+    }
+
+    /**
+     * Tags a session with the activity it was spent on, or clears the tag if null.
+     */
+    public synchronized void setSessionTag(String id, String tag)
+    {
+        Session loaded = sessions.get(id);
+        if (loaded != null && !Objects.equals(loaded.getTag(), tag))
+        {
+            Session session = loaded.withTag(tag);
+            sessions.add(session);
+            rollups.remove(loaded);
+            rollups.add(session);
+            store.update(session);
+            publish();
+            listeners.forEach(l -> l.sessionUpdated(session));
+        }
+    }
+
+    /**
+     * Replaces the metrics of stored sessions, such as after re-analysis, keeping their
+     * current names and tags.
+     *
+     * @param updates the new sessions keyed by the stored sessions they replace
+     */
+    public synchronized void updateSessions(Map<Session, Session> updates)
+    {
+        forgetCompactedRemovals();
+        List<Session> updated = new ArrayList<>();
+        for (Map.Entry<Session, Session> update : updates.entrySet())
+        {
+            Session session = update.getValue();
+            if (removedIds.containsKey(session.getId()))
+            {
+                continue;
+            }
 
-        while (sessions.size() > MAX_SESSIONS)
+            Session loaded = sessions.get(session.getId());
+            Session previous = loaded != null ? loaded : update.getKey();
+            if (loaded != null)
+            {
+                session = session.withName(loaded.getName()).withTag(loaded.getTag());
+                sessions.add(session);
+                updated.add(session);
+            }
+            rollups.remove(previous);
+            rollups.add(session);
+            store.update(session);
+        }
+
+        if (!updated.isEmpty())
         {
-            sessions.remove(0);
+            publish();
+            for (Session session : updated)
+            {
+                listeners.forEach(l -> l.sessionUpdated(session));
+            }
         }
+    }
 
-        saveSessions();
+    public synchronized void deleteSession(String id)
+    {
+        forgetCompactedRemovals();
+        Session removed = sessions.remove(id);
+        if (removed != null)
+        {
+            rollups.remove(removed);
+            removedIds.put(id, store.getGeneration());
+            store.delete(id);
+            publish();
+            listeners.forEach(l -> l.sessionRemoved(removed));
+        }
     }
 
-    public void renameSession(String id, String newName)
+    private void applyRetention()
     {
-        for (Session session : sessions)
+        Session oldest;
+        while (maxSessions > 0 && store.size() > maxSessions && (oldest = store.oldest()) != null)
+        {
+            evict(oldest);
+        }
+
+        if (maxAgeDays > 0)
         {
-            if (session.getId().equals(id))
+            long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAgeDays);
+            // By start time, a recovered session is stored after newer ones
+            if (sessions.oldestStartTime() < cutoff)
             {
-                session.setName(newName);
-                saveSessions();
-                return;
+                for (Session expired : sessions.query(SessionIndex.SortKey.DATE, false, Long.MIN_VALUE, cutoff))
+                {
+                    evict(expired);
+                }
+            }
+            // Sessions not loaded yet can only be reached in the order they were stored
+            while ((oldest = store.oldest()) != null && oldest.getStartTime() < cutoff)
+            {
+                evict(oldest);
             }
         }
     }
 
-    public void deleteSession(String id)
+    private void evict(Session oldest)
+    {
+        forgetCompactedRemovals();
+        // Prefer the loaded version, the store's may predate a rename
+        Session loaded = sessions.remove(oldest.getId());
+        Session evicted = loaded != null ? loaded : oldest;
+        rollups.remove(evicted);
+        removedIds.put(evicted.getId(), store.getGeneration());
+        store.delete(evicted.getId());
+        publish();
+        listeners.forEach(l -> l.sessionRemoved(evicted));
+    }
+
+    /**
+     * Drops the removals the store has since written out in full, which it no longer
+     * lets an update bring back.
+     */
+    private void forgetCompactedRemovals()
+    {
+        long generation = store.getGeneration();
+        if (generation != prunedGeneration)
+        {
+            prunedGeneration = generation;
+            removedIds.values().removeIf(removedIn -> removedIn < generation);
+        }
+    }
+
+    int getRemovedSessionCount()
+    {
+        return removedIds.size();
+    }
+
+    /**
+     * Publishes a copy of the index as the snapshot readers see, O(loaded sessions /
+     * {@link SessionIndex#CHUNK_SIZE}).
+     */
+    private void publish()
     {
-        sessions.removeIf(s -> s.getId().equals(id));
-        saveSessions();
+        snapshot = new HistorySnapshot(sessions.copy(), store.size());
     }
 }
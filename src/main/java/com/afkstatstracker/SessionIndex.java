@@ -0,0 +1,437 @@
+package com.afkstatstracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the loaded sessions, kept column by column.
+ * <p>
+ * The fields that are sorted and filtered on live in parallel primitive arrays next to
+ * the sessions themselves, and a hash map gives the slot of each id, so lookups and
+ * removals by id are O(1) and a sorted, filtered view of 100k sessions is built by
+ * scanning and merge sorting plain arrays. Slots are unordered: a removal moves the
+ * last slot into the gap.
+ * <p>
+ * The columns are split into chunks of {@link #CHUNK_SIZE} slots and the id map into
+ * {@link #SHARDS} shards by hash. A {@link #copy()} shares all of them with this index,
+ * and whichever of the two changes a chunk or shard first copies just that one, so a
+ * copy costs O(chunks) and the change after it O(chunk size) rather than O(sessions).
+ * <p>
+ * Not thread-safe while it is being changed. {@link SessionHistoryManager} only changes
+ * its own index and hands readers a {@link #copy()}, which nothing changes after.
+ */
+class SessionIndex
+{
+    enum SortKey
+    {
+        DATE,
+        CONSISTENCY,
+        INTERVAL,
+        DURATION
+    }
+
+    static final int CHUNK_SIZE = 1024;
+    static final int SHARDS = 1024;
+    private static final int CHUNK_BITS = 10;
+    private static final int INITIAL_CHUNK_CAPACITY = 64;
+
+    /**
+     * The columns of {@link #CHUNK_SIZE} consecutive slots, grown up to that size.
+     */
+    private static final class Chunk
+    {
+        // The index that may change it in place, any other copies it first
+        final Object owner;
+        final Session[] sessions;
+        final long[] startTimes;
+        final long[] endTimes;
+        final int[] clickCounts;
+        final long[] consistencyScores;
+        final double[] avgIntervals;
+        // Position in the history, breaking ties between equal start times
+        final long[] sequence;
+
+        Chunk(Object owner, int capacity)
+        {
+            this.owner = owner;
+            sessions = new Session[capacity];
+            startTimes = new long[capacity];
+            endTimes = new long[capacity];
+            clickCounts = new int[capacity];
+            consistencyScores = new long[capacity];
+            avgIntervals = new double[capacity];
+            sequence = new long[capacity];
+        }
+
+        Chunk(Object owner, Chunk other, int capacity)
+        {
+            this.owner = owner;
+            sessions = Arrays.copyOf(other.sessions, capacity);
+            startTimes = Arrays.copyOf(other.startTimes, capacity);
+            endTimes = Arrays.copyOf(other.endTimes, capacity);
+            clickCounts = Arrays.copyOf(other.clickCounts, capacity);
+            consistencyScores = Arrays.copyOf(other.consistencyScores, capacity);
+            avgIntervals = Arrays.copyOf(other.avgIntervals, capacity);
+            sequence = Arrays.copyOf(other.sequence, capacity);
+        }
+    }
+
+    private static final class Shard
+    {
+        final Object owner;
+        final Map<String, Integer> slots;
+
+        Shard(Object owner, Map<String, Integer> slots)
+        {
+            this.owner = owner;
+            this.slots = slots;
+        }
+    }
+
+    private Object owner = new Object();
+    private Chunk[] chunks;
+    private final Shard[] shards;
+    private long nextSequence;
+    private long firstSequence;
+    private int size;
+    // Start time of the oldest session, rescanned on demand after it is removed
+    private long oldestStartTime = Long.MAX_VALUE;
+    private boolean oldestKnown = true;
+
+    SessionIndex()
+    {
+        chunks = new Chunk[0];
+        shards = new Shard[SHARDS];
+    }
+
+    private SessionIndex(SessionIndex other)
+    {
+        chunks = other.chunks.clone();
+        shards = other.shards.clone();
+        nextSequence = other.nextSequence;
+        firstSequence = other.firstSequence;
+        size = other.size;
+        oldestStartTime = other.oldestStartTime();
+    }
+
+    /**
+     * A copy independent of any later change to this index. Both share every chunk and
+     * shard until one of them changes it.
+     */
+    SessionIndex copy()
+    {
+        SessionIndex copy = new SessionIndex(this);
+        // Nothing is this index's own any more, so its next change copies what it touches
+        owner = new Object();
+        return copy;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Adds a session after every indexed one, replacing one already indexed under the
+     * same id.
+     */
+    void add(Session session)
+    {
+        put(session, nextSequence++);
+    }
+
+    /**
+     * Adds a page of sessions, oldest first, before every indexed one.
+     */
+    void addOlder(List<Session> page)
+    {
+        for (int i = page.size() - 1; i >= 0; i--)
+        {
+            put(page.get(i), --firstSequence);
+        }
+    }
+
+    private void put(Session session, long position)
+    {
+        Integer existing = shard(session.getId()).slots.get(session.getId());
+        int slot;
+        Chunk chunk;
+        if (existing != null)
+        {
+            slot = existing;
+            chunk = writableChunk(slot);
+            if (chunk.startTimes[offset(slot)] == oldestStartTime)
+            {
+                oldestKnown = false;
+            }
+        }
+        else
+        {
+            slot = size++;
+            chunk = writableChunk(slot);
+            writableShard(session.getId()).slots.put(session.getId(), slot);
+            chunk.sequence[offset(slot)] = position;
+        }
+
+        int i = offset(slot);
+        chunk.sessions[i] = session;
+        chunk.startTimes[i] = session.getStartTime();
+        chunk.endTimes[i] = session.getEndTime();
+        chunk.clickCounts[i] = session.getClickCount();
+        chunk.consistencyScores[i] = session.getConsistencyScore();
+        chunk.avgIntervals[i] = session.getAvgInterval();
+        if (oldestKnown)
+        {
+            oldestStartTime = Math.min(oldestStartTime, session.getStartTime());
+        }
+    }
+
+    Session get(String id)
+    {
+        Shard shard = shards[shardOf(id)];
+        Integer slot = shard != null ? shard.slots.get(id) : null;
+        return slot != null ? chunks[slot >> CHUNK_BITS].sessions[offset(slot)] : null;
+    }
+
+    Session remove(String id)
+    {
+        Shard shard = shards[shardOf(id)];
+        if (shard == null || !shard.slots.containsKey(id))
+        {
+            return null;
+        }
+
+        int slot = writableShard(id).slots.remove(id);
+        Chunk chunk = writableChunk(slot);
+        int i = offset(slot);
+        Session removed = chunk.sessions[i];
+        if (chunk.startTimes[i] == oldestStartTime)
+        {
+            oldestKnown = false;
+        }
+
+        int last = --size;
+        if (slot != last)
+        {
+            Chunk lastChunk = chunks[last >> CHUNK_BITS];
+            int j = offset(last);
+            chunk.sessions[i] = lastChunk.sessions[j];
+            chunk.startTimes[i] = lastChunk.startTimes[j];
+            chunk.endTimes[i] = lastChunk.endTimes[j];
+            chunk.clickCounts[i] = lastChunk.clickCounts[j];
+            chunk.consistencyScores[i] = lastChunk.consistencyScores[j];
+            chunk.avgIntervals[i] = lastChunk.avgIntervals[j];
+            chunk.sequence[i] = lastChunk.sequence[j];
+            writableShard(chunk.sessions[i].getId()).slots.put(chunk.sessions[i].getId(), slot);
+        }
+
+        if (offset(last) == 0)
+        {
+            // The last chunk is empty, the next add starts a fresh one
+            chunks[last >> CHUNK_BITS] = null;
+        }
+        else
+        {
+            writableChunk(last).sessions[offset(last)] = null;
+        }
+        return removed;
+    }
+
+    /**
+     * Start time of the oldest indexed session, or {@link Long#MAX_VALUE} if empty.
+     */
+    long oldestStartTime()
+    {
+        if (!oldestKnown)
+        {
+            long oldest = Long.MAX_VALUE;
+            for (int slot = 0; slot < size; slot++)
+            {
+                oldest = Math.min(oldest, chunks[slot >> CHUNK_BITS].startTimes[offset(slot)]);
+            }
+            oldestStartTime = oldest;
+            oldestKnown = true;
+        }
+        return oldestStartTime;
+    }
+
+    /**
+     * Sessions that started within [{@code from}, {@code to}), sorted by the key. Ties
+     * are in date order, reversed along with everything else when descending.
+     */
+    List<Session> query(SortKey key, boolean descending, long from, long to)
+    {
+        // The matching slots are gathered into flat arrays, which are then sorted by position
+        Session[] matched = new Session[size];
+        long[] startTimes = new long[size];
+        long[] sequence = new long[size];
+        double[] values = key != SortKey.DATE ? new double[size] : null;
+        int count = 0;
+        for (int c = 0; c * CHUNK_SIZE < size; c++)
+        {
+            Chunk chunk = chunks[c];
+            int end = Math.min(CHUNK_SIZE, size - c * CHUNK_SIZE);
+            for (int i = 0; i < end; i++)
+            {
+                long start = chunk.startTimes[i];
+                if (start >= from && start < to)
+                {
+                    matched[count] = chunk.sessions[i];
+                    startTimes[count] = start;
+                    sequence[count] = chunk.sequence[i];
+                    if (values != null)
+                    {
+                        values[count] = value(key, chunk, i);
+                    }
+                    count++;
+                }
+            }
+        }
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            order[i] = i;
+        }
+
+        // Date order first, so the stable sort by key leaves ties in date order
+        mergeSort(order, (a, b) ->
+        {
+            int byStart = Long.compare(startTimes[a], startTimes[b]);
+            return byStart != 0 ? byStart : Long.compare(sequence[a], sequence[b]);
+        });
+        if (values != null)
+        {
+            mergeSort(order, (a, b) -> Double.compare(values[a], values[b]));
+        }
+
+        List<Session> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            result.add(matched[order[descending ? count - 1 - i : i]]);
+        }
+        return result;
+    }
+
+    private static double value(SortKey key, Chunk chunk, int i)
+    {
+        switch (key)
+        {
+            case CONSISTENCY:
+                return chunk.consistencyScores[i];
+            case INTERVAL:
+                return chunk.avgIntervals[i];
+            default:
+                return chunk.endTimes[i] - chunk.startTimes[i];
+        }
+    }
+
+    private interface PositionComparator
+    {
+        int compare(int a, int b);
+    }
+
+    /**
+     * Stable bottom-up merge sort of positions.
+     */
+    private static void mergeSort(int[] positions, PositionComparator comparator)
+    {
+        int count = positions.length;
+        int[] source = positions;
+        int[] target = new int[count];
+        for (int width = 1; width < count; width *= 2)
+        {
+            for (int lo = 0; lo < count; lo += 2 * width)
+            {
+                int mid = Math.min(lo + width, count);
+                int hi = Math.min(lo + 2 * width, count);
+                int i = lo;
+                int j = mid;
+                int k = lo;
+                while (i < mid && j < hi)
+                {
+                    target[k++] = comparator.compare(source[j], source[i]) < 0 ? source[j++] : source[i++];
+                }
+                while (i < mid)
+                {
+                    target[k++] = source[i++];
+                }
+                while (j < hi)
+                {
+                    target[k++] = source[j++];
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+
+        if (source != positions)
+        {
+            System.arraycopy(source, 0, positions, 0, count);
+        }
+    }
+
+    /**
+     * The chunk holding the slot, copied first unless this index owns it and grown to
+     * hold the slot.
+     */
+    private Chunk writableChunk(int slot)
+    {
+        int c = slot >> CHUNK_BITS;
+        if (c == chunks.length)
+        {
+            chunks = Arrays.copyOf(chunks, Math.max(4, chunks.length * 2));
+        }
+
+        Chunk chunk = chunks[c];
+        int i = offset(slot);
+        if (chunk == null)
+        {
+            chunk = new Chunk(owner, INITIAL_CHUNK_CAPACITY);
+        }
+        else if (chunk.owner != owner || i >= chunk.sessions.length)
+        {
+            int capacity = chunk.sessions.length;
+            while (i >= capacity)
+            {
+                capacity *= 2;
+            }
+            chunk = new Chunk(owner, chunk, capacity);
+        }
+        chunks[c] = chunk;
+        return chunk;
+    }
+
+    private Shard shard(String id)
+    {
+        Shard shard = shards[shardOf(id)];
+        return shard != null ? shard : writableShard(id);
+    }
+
+    private Shard writableShard(String id)
+    {
+        int s = shardOf(id);
+        Shard shard = shards[s];
+        if (shard == null || shard.owner != owner)
+        {
+            shard = new Shard(owner, shard == null ? new HashMap<>() : new HashMap<>(shard.slots));
+            shards[s] = shard;
+        }
+        return shard;
+    }
+
+    private static int shardOf(String id)
+    {
+        int hash = id.hashCode();
+        return (hash ^ (hash >>> 16)) & (SHARDS - 1);
+    }
+
+    private static int offset(int slot)
+    {
+        return slot & (CHUNK_SIZE - 1);
+    }
+}
@@ -0,0 +1,1000 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Session store made of a compacted base file and an append-only journal.
+ * <p>
+ * The base file ({@code sessions.dat}) holds one JSON session per line, oldest first,
+ * after a header line with the session count. Every mutation since the last compaction
+ * is appended to the journal ({@code sessions.journal}) as one small JSON record
+ * ({@code add}, {@code rename}, {@code update} or {@code delete}). On load only the journal is replayed;
+ * the base file is paged from its end on demand, so startup cost does not grow with the
+ * size of the history. Once the journal holds {@link #COMPACT_THRESHOLD} records it is
+ * merged into a new base file, which is atomically swapped in.
+ * <p>
+ * Each compaction numbers its base file with the next generation, and the journal
+ * started over it opens with a {@code base} record naming that generation. Records
+ * written before the base file they were compacted into are then recognised and
+ * skipped, should the old journal survive the swap, for instance after a crash between
+ * moving the base file into place and deleting the journal. Records before any
+ * {@code base} record belong to generation 0, the base file of journals written before
+ * generations were numbered.
+ * <p>
+ * Mutations only update the in-memory state and buffer their record; nothing touches
+ * the disk until {@link #flush()}, which is meant to run off the EDT.
+ * <p>
+ * A load without a base file imports the history previously kept under the
+ * {@code sessionHistory} config key, and clears that key once a compaction has written
+ * it to a base file. Until then every load imports it again.
+ */
+@Slf4j
+public class SessionJournal implements SessionHistoryManager.SessionStore
+{
+    static final String JOURNAL_FILE = "sessions.journal";
+    static final String BASE_FILE = "sessions.dat";
+    static final int COMPACT_THRESHOLD = 256;
+
+    private static final int BASE_FORMAT = 1;
+    private static final String HEADER_FORMAT = "{\"format\":%d,\"count\":%10d,\"generation\":%d}\n";
+
+    private static final String OP_ADD = "add";
+    private static final String OP_RENAME = "rename";
+    private static final String OP_UPDATE = "update";
+    private static final String OP_DELETE = "delete";
+    private static final String OP_BASE = "base";
+
+    private final Path journal;
+    private final Path base;
+    private final Gson gson;
+    private final SessionTypeAdapter sessionAdapter;
+    private final SessionHistoryManager.ConfigStorage legacyStorage;
+    private final Instrumentation instrumentation;
+
+    // Journal state, replayed on load and kept current by each mutation
+    private final LinkedHashMap<String, Session> journalAdds = new LinkedHashMap<>();
+    private final Map<String, String> baseRenames = new HashMap<>();
+    private final Map<String, Session> baseUpdates = new HashMap<>();
+    private final Set<String> baseDeletes = new HashSet<>();
+    private int journalRecords;
+
+    // Base file state
+    private long baseGeneration;
+    private int baseCount;
+    private long baseFloor;
+    private long pageCursor;
+    private long oldestCursor;
+    private Session oldest;
+
+    // Records serialized by mutations but not yet written
+    private final List<byte[]> pending = new ArrayList<>();
+    private final Object ioLock = new Object();
+    // Whether the journal on disk is already marked as applying to the current base file
+    private boolean journalMarked;
+
+    private boolean loaded;
+    private boolean paging;
+    private final Set<String> loadedIds = new HashSet<>();
+
+    // Mutations made while a compaction writes the base file, replayed over it once swapped in
+    private List<Record> mutationsDuringCompaction;
+
+    static class Record
+    {
+        String op;
+        String id;
+        String name;
+        Session session;
+        Long generation;
+
+        Record(String op, String id, String name, Session session)
+        {
+            this.op = op;
+            this.id = id;
+            this.name = name;
+            this.session = session;
+        }
+    }
+
+    static class Header
+    {
+        int format;
+        int count;
+        long generation;
+    }
+
+    /**
+     * The journal state as of one moment, so the base file can be read or rewritten
+     * without holding the monitor.
+     */
+    private static class Snapshot
+    {
+        final List<Session> adds;
+        final Map<String, String> renames;
+        final Map<String, Session> updates;
+        final Set<String> deletes;
+        final long generation;
+
+        Snapshot(SessionJournal journal)
+        {
+            generation = journal.baseGeneration;
+            adds = new ArrayList<>(journal.journalAdds.values());
+            renames = new HashMap<>(journal.baseRenames);
+            updates = new HashMap<>(journal.baseUpdates);
+            deletes = new HashSet<>(journal.baseDeletes);
+        }
+    }
+
+    /**
+     * A base file written to its temporary path, with where each session starts so the
+     * page cursor can be placed once it is swapped in.
+     */
+    private static class WrittenBase
+    {
+        final Path temp;
+        final List<String> ids = new ArrayList<>();
+        long[] offsets = new long[64];
+        long end;
+
+        WrittenBase(Path temp)
+        {
+            this.temp = temp;
+        }
+
+        void add(String id, long offset)
+        {
+            if (ids.size() == offsets.length)
+            {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[ids.size()] = offset;
+            ids.add(id);
+        }
+
+        /**
+         * Start of the first loaded session, everything from there on is already loaded.
+         */
+        long boundary(Set<String> loadedIds)
+        {
+            for (int i = 0; i < ids.size(); i++)
+            {
+                if (loadedIds.contains(ids.get(i)))
+                {
+                    return offsets[i];
+                }
+            }
+            return end;
+        }
+    }
+
+    /**
+     * @param directory     directory holding the journal, created if missing
+     * @param legacyStorage config-backed history to migrate from, or null
+     */
+    public SessionJournal(File directory, Gson gson, SessionHistoryManager.ConfigStorage legacyStorage)
+    {
+        this(directory, gson, legacyStorage, new Instrumentation());
+    }
+
+    public SessionJournal(File directory, Gson gson, SessionHistoryManager.ConfigStorage legacyStorage,
+        Instrumentation instrumentation)
+    {
+        this.instrumentation = instrumentation;
+        this.journal = directory.toPath().resolve(JOURNAL_FILE);
+        this.base = directory.toPath().resolve(BASE_FILE);
+        this.sessionAdapter = new SessionTypeAdapter();
+        this.gson = gson.newBuilder().registerTypeAdapter(Session.class, sessionAdapter).create();
+        this.legacyStorage = legacyStorage;
+    }
+
+    @Override
+    public synchronized List<Session> loadPage(int limit)
+    {
+        long start = instrumentation.start();
+        ensureLoaded();
+
+        List<Session> page = new ArrayList<>();
+        if (!paging)
+        {
+            // The first page always carries every session added since the last compaction
+            paging = true;
+            page.addAll(journalAdds.values());
+            Collections.reverse(page);
+        }
+
+        if (pageCursor > baseFloor && page.size() < limit)
+        {
+            try (FileChannel channel = FileChannel.open(base, StandardOpenOption.READ))
+            {
+                ReverseLineReader reader = new ReverseLineReader(channel, baseFloor, pageCursor);
+                String line;
+                while (page.size() < limit && (line = reader.readLine()) != null)
+                {
+                    Session session = parseBaseLine(line);
+                    // Should a session be in both, the journaled copy wins
+                    if (session != null && !journalAdds.containsKey(session.getId()))
+                    {
+                        page.add(session);
+                    }
+                    pageCursor = reader.getPosition();
+                }
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to read session history page", e);
+                pageCursor = baseFloor;
+            }
+        }
+
+        for (Session session : page)
+        {
+            loadedIds.add(session.getId());
+        }
+        Collections.reverse(page);
+        instrumentation.stop(Instrumentation.Stage.HISTORY_LOAD, start);
+        return page;
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        ensureLoaded();
+        return baseCount - baseDeletes.size() + journalAdds.size();
+    }
+
+    @Override
+    public synchronized Session oldest()
+    {
+        ensureLoaded();
+
+        if (oldest == null && oldestCursor < endOfBase())
+        {
+            try (FileChannel channel = FileChannel.open(base, StandardOpenOption.READ))
+            {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(channel.position(oldestCursor)), StandardCharsets.UTF_8));
+                String line;
+                while (oldest == null && (line = reader.readLine()) != null)
+                {
+                    oldest = parseBaseLine(line);
+                    if (oldest == null)
+                    {
+                        // Deleted or unreadable, never needs to be looked at again
+                        oldestCursor += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to read oldest stored session", e);
+            }
+        }
+
+        if (oldest != null)
+        {
+            return oldest;
+        }
+        return journalAdds.isEmpty() ? null : journalAdds.values().iterator().next();
+    }
+
+    /**
+     * Reads every stored session. The base file is read without holding the monitor, so
+     * the EDT can keep mutating the history meanwhile; the result is the history as it
+     * stood when the call started.
+     */
+    @Override
+    public List<Session> loadAll()
+    {
+        // The base file is only replaced under the I/O lock
+        synchronized (ioLock)
+        {
+            Snapshot snapshot;
+            boolean hasBase;
+            synchronized (this)
+            {
+                ensureLoaded();
+                snapshot = new Snapshot(this);
+                hasBase = baseFloor > 0;
+            }
+
+            Set<String> addedIds = new HashSet<>();
+            for (Session session : snapshot.adds)
+            {
+                addedIds.add(session.getId());
+            }
+
+            List<Session> sessions = new ArrayList<>();
+            if (hasBase && Files.exists(base))
+            {
+                try (BufferedReader reader = Files.newBufferedReader(base, StandardCharsets.UTF_8))
+                {
+                    reader.readLine();
+                    String line;
+                    while ((line = reader.readLine()) != null)
+                    {
+                        Session session = parseBaseLine(line, snapshot.deletes, snapshot.updates, snapshot.renames);
+                        if (session != null && !addedIds.contains(session.getId()))
+                        {
+                            sessions.add(session);
+                        }
+                    }
+                }
+                catch (IOException e)
+                {
+                    log.warn("Failed to read session history", e);
+                }
+            }
+            sessions.addAll(snapshot.adds);
+            return sessions;
+        }
+    }
+
+    @Override
+    public synchronized void add(Session session)
+    {
+        ensureLoaded();
+        journalAdds.put(session.getId(), session);
+        loadedIds.add(session.getId());
+        append(new Record(OP_ADD, null, null, session));
+    }
+
+    @Override
+    public synchronized void rename(String id, String newName)
+    {
+        ensureLoaded();
+        Session added = journalAdds.get(id);
+        if (added != null)
+        {
+            journalAdds.put(id, added.withName(newName));
+        }
+        else
+        {
+            baseRenames.put(id, newName);
+        }
+
+        if (oldest != null && oldest.getId().equals(id))
+        {
+            oldest = oldest.withName(newName);
+        }
+        append(new Record(OP_RENAME, id, newName, null));
+    }
+
+    @Override
+    public synchronized void update(Session session)
+    {
+        ensureLoaded();
+        if (applyUpdate(session))
+        {
+            append(new Record(OP_UPDATE, null, null, session));
+        }
+    }
+
+    @Override
+    public synchronized void delete(String id)
+    {
+        ensureLoaded();
+        if (journalAdds.remove(id) == null)
+        {
+            baseDeletes.add(id);
+            baseRenames.remove(id);
+            baseUpdates.remove(id);
+        }
+
+        loadedIds.remove(id);
+        if (oldest != null && oldest.getId().equals(id))
+        {
+            oldest = null;
+        }
+        append(new Record(OP_DELETE, id, null, null));
+    }
+
+    /**
+     * Writes the mutations buffered since the last flush to the journal with a single
+     * append, compacting it into the base file once it has grown large enough. Safe to
+     * call from any thread; mutations made while the write is in progress are buffered
+     * for the next flush.
+     */
+    @Override
+    public void flush()
+    {
+        synchronized (ioLock)
+        {
+            List<byte[]> batch;
+            boolean mark;
+            long generation;
+            synchronized (this)
+            {
+                if (pending.isEmpty())
+                {
+                    return;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+                mark = !journalMarked;
+                generation = baseGeneration;
+            }
+
+            long start = instrumentation.start();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            if (mark)
+            {
+                Record marker = new Record(OP_BASE, null, null, null);
+                marker.generation = generation;
+                // On a line of its own even if a stale journal ends in a torn record
+                byte[] record = ("\n" + gson.toJson(marker) + "\n").getBytes(StandardCharsets.UTF_8);
+                bytes.write(record, 0, record.length);
+            }
+            for (byte[] record : batch)
+            {
+                bytes.write(record, 0, record.length);
+            }
+
+            try
+            {
+                Files.createDirectories(journal.getParent());
+                Files.write(journal, bytes.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                instrumentation.bytesWritten(bytes.size());
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to append to session journal", e);
+                synchronized (this)
+                {
+                    // Keep the records so the next flush retries them in order
+                    pending.addAll(0, batch);
+                }
+                return;
+            }
+
+            instrumentation.stop(Instrumentation.Stage.HISTORY_WRITE, start);
+
+            boolean compact;
+            synchronized (this)
+            {
+                journalMarked = true;
+                journalRecords += batch.size();
+                compact = journalRecords >= COMPACT_THRESHOLD;
+            }
+            if (compact)
+            {
+                compactUnlocked();
+            }
+        }
+    }
+
+    /**
+     * Merges the journal and any buffered mutations into a new base file and starts an
+     * empty journal.
+     */
+    public void compact()
+    {
+        synchronized (ioLock)
+        {
+            synchronized (this)
+            {
+                ensureLoaded();
+            }
+            compactUnlocked();
+        }
+    }
+
+    /**
+     * Compacts while holding only the I/O lock. The journal state is copied under the
+     * monitor and the new base file written from the copy without it, so mutations,
+     * {@link #size()} and {@link #oldest()} on the EDT never wait for the disk. The
+     * file is swapped in under the monitor, and mutations made in the meantime are
+     * replayed over it as the start of the new journal.
+     */
+    private void compactUnlocked()
+    {
+        long start = instrumentation.start();
+        Snapshot snapshot;
+        List<byte[]> compacted;
+        synchronized (this)
+        {
+            snapshot = new Snapshot(this);
+            // Already part of the snapshot, so they are not written to the new journal
+            compacted = new ArrayList<>(pending);
+            pending.clear();
+            mutationsDuringCompaction = new ArrayList<>();
+        }
+
+        WrittenBase written = writeBase(snapshot);
+
+        synchronized (this)
+        {
+            List<Record> since = mutationsDuringCompaction;
+            mutationsDuringCompaction = null;
+            if (written == null || !swapIn(written))
+            {
+                // The journal is intact, the live state never stopped being current
+                pending.addAll(0, compacted);
+                return;
+            }
+            finishCompaction(written, since);
+        }
+        instrumentation.stop(Instrumentation.Stage.HISTORY_COMPACT, start);
+    }
+
+    /**
+     * Compacts in one go under the monitor, for the first load when nothing else can be
+     * touching the journal yet.
+     */
+    private void compactLocked()
+    {
+        long start = instrumentation.start();
+        WrittenBase written = writeBase(new Snapshot(this));
+        if (written != null && swapIn(written))
+        {
+            pending.clear();
+            finishCompaction(written, Collections.emptyList());
+        }
+        instrumentation.stop(Instrumentation.Stage.HISTORY_COMPACT, start);
+    }
+
+    /**
+     * Writes the base file the snapshot describes to a temporary file, or returns null
+     * if that failed.
+     */
+    private WrittenBase writeBase(Snapshot snapshot)
+    {
+        WrittenBase written = new WrittenBase(base.resolveSibling(BASE_FILE + ".tmp"));
+        try
+        {
+            Files.createDirectories(base.getParent());
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(written.temp)))
+            {
+                byte[] header = String.format(Locale.ROOT, HEADER_FORMAT, BASE_FORMAT, 0, snapshot.generation + 1)
+                    .getBytes(StandardCharsets.UTF_8);
+                out.write(header);
+                long offset = header.length;
+
+                if (Files.exists(base))
+                {
+                    try (BufferedReader reader = Files.newBufferedReader(base, StandardCharsets.UTF_8))
+                    {
+                        reader.readLine();
+                        String line;
+                        while ((line = reader.readLine()) != null)
+                        {
+                            Session session = parseBaseLine(line, snapshot.deletes, snapshot.updates, snapshot.renames);
+                            if (session == null)
+                            {
+                                continue;
+                            }
+
+                            boolean changed = snapshot.renames.containsKey(session.getId())
+                                || snapshot.updates.containsKey(session.getId());
+                            String json = changed ? gson.toJson(session) : line;
+                            written.add(session.getId(), offset);
+                            offset += writeLine(out, json);
+                        }
+                    }
+                }
+
+                for (Session session : snapshot.adds)
+                {
+                    written.add(session.getId(), offset);
+                    offset += writeLine(out, gson.toJson(session));
+                }
+                written.end = offset;
+                instrumentation.bytesWritten(offset);
+            }
+
+            try (FileChannel channel = FileChannel.open(written.temp, StandardOpenOption.WRITE))
+            {
+                ByteBuffer header = ByteBuffer.wrap(String.format(Locale.ROOT, HEADER_FORMAT, BASE_FORMAT,
+                    written.ids.size(), snapshot.generation + 1).getBytes(StandardCharsets.UTF_8));
+                while (header.hasRemaining())
+                {
+                    channel.write(header, header.position());
+                }
+            }
+            return written;
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to compact session journal", e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the base file with the written one and drops the journal it includes.
+     */
+    private boolean swapIn(WrittenBase written)
+    {
+        try
+        {
+            Files.move(written.temp, base, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to replace the session history file", e);
+            return false;
+        }
+
+        try
+        {
+            Files.deleteIfExists(journal);
+        }
+        catch (IOException e)
+        {
+            // Its records predate the new base file's generation, so a replay skips them
+            log.warn("Failed to remove the compacted session journal", e);
+        }
+        return true;
+    }
+
+    /**
+     * Resets the journal state to the new base file, then replays the mutations made
+     * since the snapshot it was written from.
+     */
+    private void finishCompaction(WrittenBase written, List<Record> since)
+    {
+        journalAdds.clear();
+        baseRenames.clear();
+        baseUpdates.clear();
+        baseDeletes.clear();
+        journalRecords = 0;
+        oldest = null;
+        openBase();
+        // The next flush starts the journal over the new generation
+        journalMarked = false;
+        if (paging)
+        {
+            pageCursor = written.boundary(loadedIds);
+        }
+        for (Record record : since)
+        {
+            apply(record);
+        }
+    }
+
+    /**
+     * The generation of the base file, raised by each compaction.
+     */
+    @Override
+    public synchronized long getGeneration()
+    {
+        return baseGeneration;
+    }
+
+    int getJournalRecordCount()
+    {
+        return journalRecords;
+    }
+
+    private void ensureLoaded()
+    {
+        if (loaded)
+        {
+            return;
+        }
+        loaded = true;
+
+        // The legacy sessions only become durable with the first base file, so they are
+        // imported again on every load until one has been written
+        boolean migrating = !Files.exists(base) && importLegacy();
+
+        openBase();
+        boolean stale = replayJournal();
+        if (migrating || stale || journalRecords >= COMPACT_THRESHOLD)
+        {
+            // Runs before any mutation has been buffered, so no flush can be in progress
+            compactLocked();
+        }
+
+        if (migrating && Files.exists(base))
+        {
+            log.info("Migrated the session history from config to the session journal");
+            legacyStorage.clear();
+        }
+    }
+
+    private void openBase()
+    {
+        baseGeneration = 0;
+        baseCount = 0;
+        baseFloor = 0;
+        if (Files.exists(base))
+        {
+            try (BufferedReader reader = Files.newBufferedReader(base, StandardCharsets.UTF_8))
+            {
+                String line = reader.readLine();
+                Header header = line != null ? gson.fromJson(line, Header.class) : null;
+                if (header != null && header.format == BASE_FORMAT)
+                {
+                    baseGeneration = header.generation;
+                    baseCount = header.count;
+                    baseFloor = line.getBytes(StandardCharsets.UTF_8).length + 1;
+                }
+                else
+                {
+                    log.warn("Unrecognised session history file, ignoring it");
+                }
+            }
+            catch (IOException | JsonParseException e)
+            {
+                log.warn("Failed to read session history header", e);
+            }
+        }
+
+        oldestCursor = baseFloor;
+        pageCursor = endOfBase();
+    }
+
+    private long endOfBase()
+    {
+        try
+        {
+            return baseFloor > 0 ? Files.size(base) : 0;
+        }
+        catch (IOException e)
+        {
+            return baseFloor;
+        }
+    }
+
+    /**
+     * Applies the journal's records for the current base file and skips those of older
+     * generations, which it already contains.
+     *
+     * @return true if the journal contained an unreadable or skipped record
+     */
+    private boolean replayJournal()
+    {
+        if (!Files.exists(journal))
+        {
+            // Without a journal, records of generation 0 need no marker
+            journalMarked = baseGeneration == 0;
+            return false;
+        }
+
+        boolean stale = false;
+        long generation = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.isEmpty())
+                {
+                    continue;
+                }
+
+                Record record;
+                try
+                {
+                    record = gson.fromJson(line, Record.class);
+                }
+                catch (JsonParseException e)
+                {
+                    // Most likely a record torn by a crash mid-write, the rest is still usable
+                    log.warn("Skipping unreadable session journal record", e);
+                    stale = true;
+                    continue;
+                }
+
+                if (record != null && OP_BASE.equals(record.op))
+                {
+                    generation = record.generation != null ? record.generation : 0;
+                    continue;
+                }
+                if (generation != baseGeneration)
+                {
+                    // Already compacted into the base file
+                    stale = true;
+                    continue;
+                }
+
+                journalRecords++;
+                apply(record);
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to read session journal", e);
+        }
+        journalMarked = generation == baseGeneration;
+        return stale;
+    }
+
+    private void apply(Record record)
+    {
+        if (record == null || record.op == null)
+        {
+            return;
+        }
+
+        switch (record.op)
+        {
+            case OP_ADD:
+                if (record.session != null)
+                {
+                    journalAdds.put(record.session.getId(), record.session);
+                }
+                break;
+            case OP_RENAME:
+                Session session = journalAdds.get(record.id);
+                if (session != null)
+                {
+                    journalAdds.put(record.id, session.withName(record.name));
+                }
+                else
+                {
+                    baseRenames.put(record.id, record.name);
+                }
+                break;
+            case OP_UPDATE:
+                if (record.session != null)
+                {
+                    applyUpdate(record.session);
+                }
+                break;
+            case OP_DELETE:
+                if (journalAdds.remove(record.id) == null)
+                {
+                    baseDeletes.add(record.id);
+                    baseRenames.remove(record.id);
+                    baseUpdates.remove(record.id);
+                }
+                break;
+            default:
+                log.debug("Ignoring unknown session journal op {}", record.op);
+        }
+    }
+
+    /**
+     * Swaps in the updated session under its current name. Returns false if the session
+     * has been deleted.
+     */
+    private boolean applyUpdate(Session session)
+    {
+        String id = session.getId();
+        Session added = journalAdds.get(id);
+        if (added != null)
+        {
+            session = session.withName(added.getName());
+            journalAdds.put(id, session);
+        }
+        else if (baseDeletes.contains(id))
+        {
+            return false;
+        }
+        else
+        {
+            // A pending rename is folded into the update
+            String renamed = baseRenames.remove(id);
+            if (renamed != null)
+            {
+                session = session.withName(renamed);
+            }
+            baseUpdates.put(id, session);
+        }
+
+        if (oldest != null && oldest.getId().equals(id))
+        {
+            oldest = session;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a base file line, applying journaled renames. Returns null for deleted or
+     * unreadable sessions.
+     */
+    private Session parseBaseLine(String line)
+    {
+        return parseBaseLine(line, baseDeletes, baseUpdates, baseRenames);
+    }
+
+    private Session parseBaseLine(String line, Set<String> deletes, Map<String, Session> updates,
+                                  Map<String, String> renames)
+    {
+        Session session;
+        try
+        {
+            session = gson.fromJson(line, Session.class);
+        }
+        catch (JsonParseException e)
+        {
+            log.warn("Skipping unreadable stored session", e);
+            return null;
+        }
+
+        if (session == null || deletes.contains(session.getId()))
+        {
+            return null;
+        }
+
+        Session updated = updates.get(session.getId());
+        if (updated != null)
+        {
+            session = updated;
+        }
+
+        String renamed = renames.get(session.getId());
+        if (renamed != null)
+        {
+            session = session.withName(renamed);
+        }
+        return session;
+    }
+
+    /**
+     * Adds the sessions kept under the legacy config key, ahead of anything the journal
+     * adds. Returns false if there were none.
+     */
+    private boolean importLegacy()
+    {
+        String json = legacyStorage != null ? legacyStorage.load() : null;
+        if (json == null || json.isEmpty())
+        {
+            return false;
+        }
+
+        List<Session> legacy = sessionAdapter.readList(json);
+        if (legacy.isEmpty())
+        {
+            log.warn("Legacy session history has no readable sessions, leaving it in place");
+            return false;
+        }
+
+        for (Session session : legacy)
+        {
+            journalAdds.put(session.getId(), session);
+        }
+        return true;
+    }
+
+    private static int writeLine(OutputStream out, String json) throws IOException
+    {
+        byte[] bytes = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        return bytes.length;
+    }
+
+    /**
+     * Serializes the record now, so later changes to the session cannot leak into it,
+     * and buffers it for the next {@link #flush()}.
+     */
+    private void append(Record record)
+    {
+        long start = instrumentation.start();
+        pending.add((gson.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8));
+        if (mutationsDuringCompaction != null)
+        {
+            mutationsDuringCompaction.add(record);
+        }
+        instrumentation.stop(Instrumentation.Stage.HISTORY_SERIALIZE, start);
+    }
+}
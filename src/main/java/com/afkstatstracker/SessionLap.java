@@ -0,0 +1,36 @@
+package com.afkstatstracker;
+
+/**
+ * Stats of one lap of a session, between the lap markers the user set.
+ * <p>
+ * A lap is the range of clicks [{@code firstClick}, {@code firstClick + clickCount})
+ * of the session, counted from its first click, so the clicks themselves are only ever
+ * held once, by the session's click buffer or trace.
+ */
+public class SessionLap
+{
+    private final long firstClick;
+    private final long startTime;
+    private final long endTime;
+    private final int clickCount;
+    private final long consistencyScore;
+    private final double avgInterval;
+
+    public SessionLap(long firstClick, long startTime, long endTime, int clickCount, long consistencyScore,
+                      double avgInterval)
+    {
+        this.firstClick = firstClick;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.clickCount = clickCount;
+        this.consistencyScore = consistencyScore;
+        this.avgInterval = avgInterval;
+    }
+
+    public long getFirstClick() { return firstClick; }
+    public long getStartTime() { return startTime; }
+    public long getEndTime() { return endTime; }
+    public int getClickCount() { return clickCount; }
+    public long getConsistencyScore() { return consistencyScore; }
+    public double getAvgInterval() { return avgInterval; }
+}
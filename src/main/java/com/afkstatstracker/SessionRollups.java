@@ -0,0 +1,495 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Aggregates of the session history per activity tag, over all time and per day and
+ * week, kept current as sessions are added and removed rather than recomputed.
+ * <p>
+ * Every aggregate is a handful of sums a session adds to and takes away from exactly:
+ * the session and interval counts, the total of all intervals, and each session's
+ * interval variance weighted by its degrees of freedom. The click-weighted mean
+ * interval and pooled variance of an aggregate are then a division away, and a range
+ * of days or weeks is combined by adding up their sums. Untagged sessions are grouped
+ * under {@link #UNTAGGED}.
+ * <p>
+ * The aggregates are saved to {@code rollups.json} with the number of sessions they
+ * cover. {@link SessionHistoryManager} rebuilds them from the store once in the
+ * background if that count no longer matches, such as on first run or after a crash
+ * between the two writes.
+ */
+@Slf4j
+class SessionRollups
+{
+    static final String FILE = "rollups.json";
+    static final String UNTAGGED = "";
+
+    private static final int FORMAT = 1;
+
+    enum Period
+    {
+        DAY,
+        WEEK
+    }
+
+    /**
+     * Sums over a group of sessions.
+     */
+    static class Rollup
+    {
+        private int sessions;
+        private long intervals;
+        private double intervalSum;
+        private long degrees;
+        private double squaredDeviations;
+
+        static Rollup of(Session session)
+        {
+            long intervals = Math.max(0, session.getClickCount() - 1);
+            Rollup rollup = new Rollup();
+            rollup.sessions = 1;
+            rollup.intervals = intervals;
+            rollup.intervalSum = intervals * session.getAvgInterval();
+            rollup.degrees = Math.max(0, intervals - 1);
+            rollup.squaredDeviations = rollup.degrees * intervalVariance(session);
+            return rollup;
+        }
+
+        void add(Rollup other, int sign)
+        {
+            sessions += sign * other.sessions;
+            intervals += sign * other.intervals;
+            intervalSum += sign * other.intervalSum;
+            degrees += sign * other.degrees;
+            squaredDeviations += sign * other.squaredDeviations;
+
+            if (sessions <= 0)
+            {
+                // Drop any floating point residue along with the last session
+                sessions = 0;
+                intervals = 0;
+                intervalSum = 0;
+                degrees = 0;
+                squaredDeviations = 0;
+            }
+        }
+
+        Rollup copy()
+        {
+            Rollup copy = new Rollup();
+            copy.add(this, 1);
+            return copy;
+        }
+
+        int getSessionCount()
+        {
+            return sessions;
+        }
+
+        long getIntervalCount()
+        {
+            return intervals;
+        }
+
+        /**
+         * Mean of every interval in the group, so longer sessions weigh more.
+         */
+        double getMeanInterval()
+        {
+            return intervals == 0 ? 0.0 : intervalSum / intervals;
+        }
+
+        /**
+         * Within-session variance of the intervals, pooled over the group's sessions.
+         */
+        double getPooledVariance()
+        {
+            return degrees == 0 ? 0.0 : Math.max(0, squaredDeviations / degrees);
+        }
+
+        /**
+         * Consistency score from the pooled variance, on the same {@code 1 / (1 + CV)}
+         * scale as a single session.
+         */
+        long getConsistencyScore()
+        {
+            double mean = getMeanInterval();
+            if (degrees == 0 || mean <= 0)
+            {
+                return 0;
+            }
+            double cv = Math.sqrt(getPooledVariance()) / mean;
+            return (long) (1 / (1 + cv) * 100);
+        }
+    }
+
+    private static class TagRollups
+    {
+        final Rollup total = new Rollup();
+        final TreeMap<LocalDate, Rollup> days = new TreeMap<>();
+        final TreeMap<LocalDate, Rollup> weeks = new TreeMap<>();
+    }
+
+    static class Stored
+    {
+        int format;
+        int sessions;
+        List<StoredRollup> rollups;
+    }
+
+    static class StoredRollup
+    {
+        String tag;
+        // Null for the all time total
+        Period period;
+        long epochDay;
+        Rollup rollup;
+    }
+
+    private final Path file;
+    private final Gson gson;
+    private final ZoneId zone;
+    private final Object ioLock = new Object();
+
+    private final Map<String, TagRollups> tags = new TreeMap<>();
+    private int sessionCount;
+    private boolean dirty;
+    // While a rebuild reads its sessions, the latest version of each session changed
+    // since it started, null once removed
+    private Map<String, Session> changedDuringRebuild;
+
+    /**
+     * Rollups kept in memory only.
+     */
+    SessionRollups(ZoneId zone)
+    {
+        this.file = null;
+        this.gson = null;
+        this.zone = zone;
+    }
+
+    /**
+     * Rollups saved in {@code directory}, loaded straight away. Days and weeks follow
+     * the calendar of {@code zone}.
+     */
+    SessionRollups(File directory, Gson gson, ZoneId zone)
+    {
+        this.file = directory.toPath().resolve(FILE);
+        this.gson = gson;
+        this.zone = zone;
+        load();
+    }
+
+    /**
+     * Number of sessions the rollups cover, or -1 if none could be loaded.
+     */
+    synchronized int getSessionCount()
+    {
+        return sessionCount;
+    }
+
+    synchronized void add(Session session)
+    {
+        if (changedDuringRebuild != null)
+        {
+            changedDuringRebuild.put(session.getId(), session);
+        }
+        apply(session, 1);
+    }
+
+    synchronized void remove(Session session)
+    {
+        if (changedDuringRebuild != null)
+        {
+            changedDuringRebuild.put(session.getId(), null);
+        }
+        apply(session, -1);
+    }
+
+    /**
+     * Replaces every aggregate with those of the sessions from {@code source}. Only for
+     * when the saved rollups are missing or out of step with the store.
+     * <p>
+     * {@code source} is called without the lock held, so a rebuild can run on a
+     * background thread while sessions are added and removed. Those sessions are taken
+     * in their latest version whether or not {@code source} already saw the change.
+     */
+    void rebuild(Supplier<List<Session>> source)
+    {
+        synchronized (this)
+        {
+            changedDuringRebuild = new HashMap<>();
+        }
+
+        List<Session> sessions;
+        try
+        {
+            sessions = source.get();
+        }
+        catch (RuntimeException e)
+        {
+            synchronized (this)
+            {
+                changedDuringRebuild = null;
+            }
+            throw e;
+        }
+
+        synchronized (this)
+        {
+            Map<String, Session> changed = changedDuringRebuild;
+            changedDuringRebuild = null;
+            tags.clear();
+            sessionCount = 0;
+            for (Session session : sessions)
+            {
+                if (!changed.containsKey(session.getId()))
+                {
+                    apply(session, 1);
+                }
+            }
+            for (Session latest : changed.values())
+            {
+                if (latest != null)
+                {
+                    apply(latest, 1);
+                }
+            }
+            dirty = true;
+        }
+    }
+
+    /**
+     * The tags with at least one session, sorted, {@link #UNTAGGED} first.
+     */
+    synchronized List<String> getTags()
+    {
+        return new ArrayList<>(tags.keySet());
+    }
+
+    synchronized Rollup getTotal(String tag)
+    {
+        TagRollups rollups = tags.get(tag);
+        return rollups != null ? rollups.total.copy() : new Rollup();
+    }
+
+    /**
+     * Combined rollup of the days or weeks from the one holding {@code from} to the one
+     * holding {@code to}, inclusive.
+     */
+    synchronized Rollup getRange(String tag, Period period, LocalDate from, LocalDate to)
+    {
+        Rollup range = new Rollup();
+        TagRollups rollups = tags.get(tag);
+        if (rollups != null && !from.isAfter(to))
+        {
+            TreeMap<LocalDate, Rollup> buckets = period == Period.DAY ? rollups.days : rollups.weeks;
+            for (Rollup bucket : buckets.subMap(bucketOf(period, from), true, bucketOf(period, to), true).values())
+            {
+                range.add(bucket, 1);
+            }
+        }
+        return range;
+    }
+
+    /**
+     * Writes the rollups if they changed since the last save. Safe to call from any
+     * thread.
+     */
+    void save()
+    {
+        if (file == null)
+        {
+            return;
+        }
+
+        synchronized (ioLock)
+        {
+            String json;
+            synchronized (this)
+            {
+                if (!dirty)
+                {
+                    return;
+                }
+                dirty = false;
+                json = gson.toJson(toStored());
+            }
+
+            Path temp = file.resolveSibling(FILE + ".tmp");
+            try
+            {
+                Files.createDirectories(file.getParent());
+                Files.write(temp, json.getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to save session rollups", e);
+                synchronized (this)
+                {
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    private void apply(Session session, int sign)
+    {
+        Rollup contribution = Rollup.of(session);
+        String tag = session.getTag() != null ? session.getTag() : UNTAGGED;
+        LocalDate day = Instant.ofEpochMilli(session.getStartTime()).atZone(zone).toLocalDate();
+
+        TagRollups rollups = tags.get(tag);
+        if (rollups == null)
+        {
+            if (sign < 0)
+            {
+                log.debug("Removed session {} was not in the rollups", session.getId());
+                return;
+            }
+            rollups = new TagRollups();
+            tags.put(tag, rollups);
+        }
+
+        rollups.total.add(contribution, sign);
+        apply(rollups.days, bucketOf(Period.DAY, day), contribution, sign);
+        apply(rollups.weeks, bucketOf(Period.WEEK, day), contribution, sign);
+        if (rollups.total.getSessionCount() == 0)
+        {
+            tags.remove(tag);
+        }
+
+        sessionCount = Math.max(0, sessionCount) + sign;
+        dirty = true;
+    }
+
+    private static void apply(Map<LocalDate, Rollup> buckets, LocalDate bucket, Rollup contribution, int sign)
+    {
+        Rollup rollup = buckets.computeIfAbsent(bucket, b -> new Rollup());
+        rollup.add(contribution, sign);
+        if (rollup.getSessionCount() == 0)
+        {
+            buckets.remove(bucket);
+        }
+    }
+
+    private static LocalDate bucketOf(Period period, LocalDate day)
+    {
+        return period == Period.DAY ? day : day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    /**
+     * Interval variance of a session. Sessions analysed before it was stored only kept
+     * the consistency score, {@code 1 / (1 + CV)} truncated to a whole percent, so the
+     * middle of the CV range that score came from stands in for it.
+     */
+    static double intervalVariance(Session session)
+    {
+        if (session.getAnalysisVersion() >= 2)
+        {
+            return session.getIntervalVariance();
+        }
+
+        long score = session.getConsistencyScore();
+        if (score <= 0)
+        {
+            return 0;
+        }
+        double cv = Math.max(0, 100.0 / (score + 0.5) - 1);
+        double sd = cv * session.getAvgInterval();
+        return sd * sd;
+    }
+
+    private Stored toStored()
+    {
+        Stored stored = new Stored();
+        stored.format = FORMAT;
+        stored.sessions = sessionCount;
+        stored.rollups = new ArrayList<>();
+        for (Map.Entry<String, TagRollups> entry : tags.entrySet())
+        {
+            TagRollups rollups = entry.getValue();
+            stored.rollups.add(storedRollup(entry.getKey(), null, null, rollups.total));
+            rollups.days.forEach((day, rollup) -> stored.rollups.add(storedRollup(entry.getKey(), Period.DAY, day, rollup)));
+            rollups.weeks.forEach((week, rollup) -> stored.rollups.add(storedRollup(entry.getKey(), Period.WEEK, week, rollup)));
+        }
+        return stored;
+    }
+
+    private static StoredRollup storedRollup(String tag, Period period, LocalDate bucket, Rollup rollup)
+    {
+        StoredRollup stored = new StoredRollup();
+        stored.tag = tag;
+        stored.period = period;
+        stored.epochDay = bucket != null ? bucket.toEpochDay() : 0;
+        stored.rollup = rollup;
+        return stored;
+    }
+
+    private void load()
+    {
+        sessionCount = -1;
+        if (!Files.exists(file))
+        {
+            return;
+        }
+
+        Stored stored;
+        try
+        {
+            stored = gson.fromJson(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), Stored.class);
+        }
+        catch (IOException | JsonParseException e)
+        {
+            log.warn("Failed to read session rollups", e);
+            return;
+        }
+
+        if (stored == null || stored.format != FORMAT || stored.rollups == null)
+        {
+            log.warn("Unrecognised session rollups file, ignoring it");
+            return;
+        }
+
+        for (StoredRollup rollup : stored.rollups)
+        {
+            if (rollup == null || rollup.tag == null || rollup.rollup == null)
+            {
+                continue;
+            }
+
+            TagRollups rollups = tags.computeIfAbsent(rollup.tag, t -> new TagRollups());
+            if (rollup.period == null)
+            {
+                rollups.total.add(rollup.rollup, 1);
+            }
+            else
+            {
+                TreeMap<LocalDate, Rollup> buckets = rollup.period == Period.DAY ? rollups.days : rollups.weeks;
+                buckets.put(LocalDate.ofEpochDay(rollup.epochDay), rollup.rollup);
+            }
+        }
+        sessionCount = stored.sessions;
+    }
+}
@@ -0,0 +1,28 @@
+package com.afkstatstracker;
+
+/**
+ * Stats of one stretch of active clicking within a session, between idle gaps.
+ */
+public class SessionSegment
+{
+    private final long startTime;
+    private final long endTime;
+    private final int clickCount;
+    private final long consistencyScore;
+    private final double avgInterval;
+
+    public SessionSegment(long startTime, long endTime, int clickCount, long consistencyScore, double avgInterval)
+    {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.clickCount = clickCount;
+        this.consistencyScore = consistencyScore;
+        this.avgInterval = avgInterval;
+    }
+
+    public long getStartTime() { return startTime; }
+    public long getEndTime() { return endTime; }
+    public int getClickCount() { return clickCount; }
+    public long getConsistencyScore() { return consistencyScore; }
+    public double getAvgInterval() { return avgInterval; }
+}
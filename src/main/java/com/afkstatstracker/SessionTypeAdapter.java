@@ -0,0 +1,628 @@
+package com.afkstatstracker;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming JSON form of a {@link Session}.
+ * <p>
+ * Each session carries a {@code schema} version; older versions are migrated forward
+ * as they are read, and fields the reader does not know are skipped, so a session
+ * written by a newer version still loads. A field of the wrong shape falls back to its
+ * default rather than failing the session.
+ * <p>
+ * The summary fields the history list needs are stored flat, and the metric results as
+ * an object keyed by metric. The percentiles, segments, laps and heatmap go into a single
+ * {@code payload} string, which is kept as is when the session is read and only
+ * decoded when one of them is first asked for; a session that is never opened is
+ * written back without decoding it.
+ */
+@Slf4j
+class SessionTypeAdapter extends TypeAdapter<Session>
+{
+    /**
+     * 1: the reflective Gson layout, with percentiles and segments inline and no version.
+     * 2: versioned, with percentiles and segments in the lazily decoded payload.
+     */
+    static final int SCHEMA_VERSION = 2;
+
+    @Override
+    public void write(JsonWriter out, Session session) throws IOException
+    {
+        if (session == null)
+        {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("schema").value(SCHEMA_VERSION);
+        out.name("id").value(session.getId());
+        out.name("name").value(session.getName());
+        out.name("startTime").value(session.getStartTime());
+        out.name("endTime").value(session.getEndTime());
+        out.name("clickCount").value(session.getClickCount());
+        out.name("consistencyScore").value(session.getConsistencyScore());
+        out.name("avgInterval").value(finite(session.getAvgInterval()));
+        out.name("intervalVariance").value(finite(session.getIntervalVariance()));
+        if (session.getTag() != null)
+        {
+            out.name("tag").value(session.getTag());
+        }
+        out.name("idleTime").value(session.getIdleTime());
+        out.name("analysisVersion").value(session.getAnalysisVersion());
+        if (!session.getMetrics().isEmpty())
+        {
+            out.name("metrics").beginObject();
+            for (Map.Entry<String, Double> metric : session.getMetrics().entrySet())
+            {
+                out.name(metric.getKey()).value(finite(metric.getValue()));
+            }
+            out.endObject();
+        }
+
+        String payload = session.getPayloadJson();
+        if (payload != null)
+        {
+            out.name("payload").value(payload);
+        }
+        out.endObject();
+    }
+
+    @Override
+    public Session read(JsonReader in) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return null;
+        }
+
+        int schema = 1;
+        String id = null;
+        String name = null;
+        long startTime = 0;
+        long endTime = 0;
+        long clickCount = 0;
+        long consistencyScore = 0;
+        double avgInterval = 0;
+        double intervalVariance = 0;
+        String tag = null;
+        long idleTime = 0;
+        long analysisVersion = 0;
+        Map<String, Double> metrics = null;
+        String payload = null;
+        IntervalPercentiles inlinePercentiles = null;
+        List<SessionSegment> inlineSegments = null;
+
+        in.beginObject();
+        while (in.hasNext())
+        {
+            switch (in.nextName())
+            {
+                case "schema":
+                    schema = (int) readLong(in, 1);
+                    break;
+                case "id":
+                    id = readString(in);
+                    break;
+                case "name":
+                    name = readString(in);
+                    break;
+                case "startTime":
+                    startTime = readLong(in, 0);
+                    break;
+                case "endTime":
+                    endTime = readLong(in, 0);
+                    break;
+                case "clickCount":
+                    clickCount = readLong(in, 0);
+                    break;
+                case "consistencyScore":
+                    consistencyScore = readLong(in, 0);
+                    break;
+                case "avgInterval":
+                    avgInterval = readDouble(in, 0);
+                    break;
+                case "intervalVariance":
+                    intervalVariance = readDouble(in, 0);
+                    break;
+                case "tag":
+                    tag = readString(in);
+                    break;
+                case "idleTime":
+                    idleTime = readLong(in, 0);
+                    break;
+                case "analysisVersion":
+                    analysisVersion = readLong(in, 0);
+                    break;
+                case "metrics":
+                    metrics = readMetrics(in);
+                    break;
+                case "payload":
+                    payload = readString(in);
+                    break;
+                case "percentiles":
+                    inlinePercentiles = readPercentiles(in);
+                    break;
+                case "segments":
+                    inlineSegments = readSegmentObjects(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (id == null)
+        {
+            throw new JsonParseException("Stored session has no id");
+        }
+
+        Session session = new Session(id, name != null ? name : "Session", startTime, endTime,
+            (int) clickCount, consistencyScore, avgInterval)
+            .withIntervalVariance(intervalVariance)
+            .withTag(tag)
+            .withIdleTime(idleTime)
+            .withAnalysisVersion((int) analysisVersion)
+            .withMetrics(metrics);
+
+        // Migrations, applied in order from the stored version
+        if (schema < 2)
+        {
+            // 1 -> 2: the inline percentiles and segments become the payload
+            return session.withPercentiles(inlinePercentiles).withSegments(inlineSegments);
+        }
+        return session.withPayloadJson(payload);
+    }
+
+    /**
+     * Reads a JSON array of sessions one at a time. A session that cannot be read is
+     * skipped; malformed JSON keeps the sessions read before it.
+     */
+    List<Session> readList(String json)
+    {
+        List<Session> sessions = new ArrayList<>();
+        try (JsonReader in = new JsonReader(new StringReader(json)))
+        {
+            if (in.peek() != JsonToken.BEGIN_ARRAY)
+            {
+                log.warn("Stored session history is not a list, ignoring it");
+                return sessions;
+            }
+
+            in.beginArray();
+            while (in.hasNext())
+            {
+                try
+                {
+                    Session session = read(in);
+                    if (session != null)
+                    {
+                        sessions.add(session);
+                    }
+                }
+                catch (JsonParseException e)
+                {
+                    log.warn("Skipping unreadable stored session", e);
+                }
+            }
+            in.endArray();
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            log.warn("Stored session history is malformed, kept the {} sessions before the error", sessions.size(), e);
+        }
+        return sessions;
+    }
+
+    static String encodePayload(IntervalPercentiles percentiles, List<SessionSegment> segments, List<SessionLap> laps,
+                                String heatmap)
+    {
+        if (percentiles == null && segments == null && laps == null && heatmap == null)
+        {
+            return null;
+        }
+
+        StringWriter json = new StringWriter();
+        try (JsonWriter out = new JsonWriter(json))
+        {
+            out.beginObject();
+            if (percentiles != null)
+            {
+                out.name("percentiles").beginArray()
+                    .value(percentiles.getP50())
+                    .value(percentiles.getP90())
+                    .value(percentiles.getP99())
+                    .value(percentiles.getMax())
+                    .endArray();
+            }
+            if (segments != null)
+            {
+                // One compact array per segment, these can number in the hundreds
+                out.name("segments").beginArray();
+                for (SessionSegment segment : segments)
+                {
+                    out.beginArray()
+                        .value(segment.getStartTime())
+                        .value(segment.getEndTime())
+                        .value(segment.getClickCount())
+                        .value(segment.getConsistencyScore())
+                        .value(finite(segment.getAvgInterval()))
+                        .endArray();
+                }
+                out.endArray();
+            }
+            if (laps != null)
+            {
+                out.name("laps").beginArray();
+                for (SessionLap lap : laps)
+                {
+                    out.beginArray()
+                        .value(lap.getFirstClick())
+                        .value(lap.getStartTime())
+                        .value(lap.getEndTime())
+                        .value(lap.getClickCount())
+                        .value(lap.getConsistencyScore())
+                        .value(finite(lap.getAvgInterval()))
+                        .endArray();
+                }
+                out.endArray();
+            }
+            if (heatmap != null)
+            {
+                // Already compressed by ClickHeatmap#encode
+                out.name("heatmap").value(heatmap);
+            }
+            out.endObject();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    static Session.Details decodePayload(String json, String sessionId)
+    {
+        IntervalPercentiles percentiles = null;
+        List<SessionSegment> segments = null;
+        List<SessionLap> laps = null;
+        String heatmap = null;
+        try (JsonReader in = new JsonReader(new StringReader(json)))
+        {
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "percentiles":
+                        long[] values = readLongArray(in);
+                        if (values != null && values.length == 4)
+                        {
+                            percentiles = new IntervalPercentiles(values[0], values[1], values[2], values[3]);
+                        }
+                        break;
+                    case "segments":
+                        segments = readSegmentArrays(in);
+                        break;
+                    case "laps":
+                        laps = readLapArrays(in);
+                        break;
+                    case "heatmap":
+                        heatmap = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            log.warn("Unreadable details for session {}", sessionId, e);
+        }
+        return new Session.Details(percentiles, segments, laps, heatmap);
+    }
+
+    private static List<SessionLap> readLapArrays(JsonReader in) throws IOException
+    {
+        if (in.peek() != JsonToken.BEGIN_ARRAY)
+        {
+            in.skipValue();
+            return null;
+        }
+
+        List<SessionLap> laps = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+        {
+            if (in.peek() != JsonToken.BEGIN_ARRAY)
+            {
+                in.skipValue();
+                continue;
+            }
+
+            in.beginArray();
+            long firstClick = readLong(in, 0);
+            long startTime = readLong(in, 0);
+            long endTime = readLong(in, 0);
+            long clickCount = readLong(in, 0);
+            long consistencyScore = readLong(in, 0);
+            double avgInterval = readDouble(in, 0);
+            while (in.hasNext())
+            {
+                in.skipValue();
+            }
+            in.endArray();
+
+            laps.add(new SessionLap(firstClick, startTime, endTime, (int) clickCount, consistencyScore, avgInterval));
+        }
+        in.endArray();
+        return laps;
+    }
+
+    private static List<SessionSegment> readSegmentArrays(JsonReader in) throws IOException
+    {
+        if (in.peek() != JsonToken.BEGIN_ARRAY)
+        {
+            in.skipValue();
+            return null;
+        }
+
+        List<SessionSegment> segments = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+        {
+            if (in.peek() != JsonToken.BEGIN_ARRAY)
+            {
+                in.skipValue();
+                continue;
+            }
+
+            in.beginArray();
+            long startTime = readLong(in, 0);
+            long endTime = readLong(in, 0);
+            long clickCount = readLong(in, 0);
+            long consistencyScore = readLong(in, 0);
+            double avgInterval = readDouble(in, 0);
+            while (in.hasNext())
+            {
+                in.skipValue();
+            }
+            in.endArray();
+
+            segments.add(new SessionSegment(startTime, endTime, (int) clickCount, consistencyScore, avgInterval));
+        }
+        in.endArray();
+        return segments;
+    }
+
+    private static List<SessionSegment> readSegmentObjects(JsonReader in) throws IOException
+    {
+        if (in.peek() != JsonToken.BEGIN_ARRAY)
+        {
+            in.skipValue();
+            return null;
+        }
+
+        List<SessionSegment> segments = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+        {
+            if (in.peek() != JsonToken.BEGIN_OBJECT)
+            {
+                in.skipValue();
+                continue;
+            }
+
+            long startTime = 0;
+            long endTime = 0;
+            long clickCount = 0;
+            long consistencyScore = 0;
+            double avgInterval = 0;
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "startTime":
+                        startTime = readLong(in, 0);
+                        break;
+                    case "endTime":
+                        endTime = readLong(in, 0);
+                        break;
+                    case "clickCount":
+                        clickCount = readLong(in, 0);
+                        break;
+                    case "consistencyScore":
+                        consistencyScore = readLong(in, 0);
+                        break;
+                    case "avgInterval":
+                        avgInterval = readDouble(in, 0);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            segments.add(new SessionSegment(startTime, endTime, (int) clickCount, consistencyScore, avgInterval));
+        }
+        in.endArray();
+        return segments;
+    }
+
+    private static IntervalPercentiles readPercentiles(JsonReader in) throws IOException
+    {
+        if (in.peek() != JsonToken.BEGIN_OBJECT)
+        {
+            in.skipValue();
+            return null;
+        }
+
+        long p50 = 0;
+        long p90 = 0;
+        long p99 = 0;
+        long max = 0;
+        in.beginObject();
+        while (in.hasNext())
+        {
+            switch (in.nextName())
+            {
+                case "p50":
+                    p50 = readLong(in, 0);
+                    break;
+                case "p90":
+                    p90 = readLong(in, 0);
+                    break;
+                case "p99":
+                    p99 = readLong(in, 0);
+                    break;
+                case "max":
+                    max = readLong(in, 0);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new IntervalPercentiles(p50, p90, p99, max);
+    }
+
+    private static long[] readLongArray(JsonReader in) throws IOException
+    {
+        if (in.peek() != JsonToken.BEGIN_ARRAY)
+        {
+            in.skipValue();
+            return null;
+        }
+
+        List<Long> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+        {
+            values.add(readLong(in, 0));
+        }
+        in.endArray();
+
+        long[] result = new long[values.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    private static Map<String, Double> readMetrics(JsonReader in) throws IOException
+    {
+        if (in.peek() != JsonToken.BEGIN_OBJECT)
+        {
+            in.skipValue();
+            return null;
+        }
+
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext())
+        {
+            String key = in.nextName();
+            double value = readDouble(in, Double.NaN);
+            if (!Double.isNaN(value))
+            {
+                metrics.put(key, value);
+            }
+        }
+        in.endObject();
+        return metrics;
+    }
+
+    private static String readString(JsonReader in) throws IOException
+    {
+        JsonToken token = in.peek();
+        if (token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT)
+        {
+            // Missing from a short array
+            return null;
+        }
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER)
+        {
+            return in.nextString();
+        }
+        in.skipValue();
+        return null;
+    }
+
+    private static long readLong(JsonReader in, long defaultValue) throws IOException
+    {
+        JsonToken token = in.peek();
+        if (token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT)
+        {
+            // Missing from a short array
+            return defaultValue;
+        }
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING)
+        {
+            in.skipValue();
+            return defaultValue;
+        }
+
+        String value = in.nextString();
+        try
+        {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException e)
+        {
+            try
+            {
+                return (long) Double.parseDouble(value);
+            }
+            catch (NumberFormatException e2)
+            {
+                return defaultValue;
+            }
+        }
+    }
+
+    private static double readDouble(JsonReader in, double defaultValue) throws IOException
+    {
+        JsonToken token = in.peek();
+        if (token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT)
+        {
+            // Missing from a short array
+            return defaultValue;
+        }
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING)
+        {
+            in.skipValue();
+            return defaultValue;
+        }
+
+        try
+        {
+            return Double.parseDouble(in.nextString());
+        }
+        catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+
+    private static double finite(double value)
+    {
+        return Double.isFinite(value) ? value : 0;
+    }
+}
@@ -0,0 +1,160 @@
+package com.afkstatstracker;
+
+/**
+ * Consistency and average interval over the clicks of the last few minutes.
+ * <p>
+ * The window is split into {@link #BUCKETS} time buckets, each holding the count, sum
+ * and sum of squares of the intervals that ended in it, with running totals kept over
+ * all live buckets. As time advances the expired buckets are subtracted from the totals
+ * and cleared, so both recording and reading cost O(1) per elapsed bucket and never
+ * rescan timestamps. Sums are exact integers, so evicting a bucket leaves no rounding
+ * error behind.
+ */
+public class SlidingWindowStats
+{
+    static final int BUCKETS = 60;
+
+    private final long windowMillis;
+    private final long bucketMillis;
+    private final long[] counts = new long[BUCKETS];
+    private final long[] sums = new long[BUCKETS];
+    private final long[] sumSquares = new long[BUCKETS];
+
+    private long headBucket = Long.MIN_VALUE;
+    private long totalCount;
+    private long totalSum;
+    private long totalSumSquares;
+
+    public SlidingWindowStats(long windowMillis)
+    {
+        this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+        this.windowMillis = bucketMillis * BUCKETS;
+    }
+
+    public long getWindowMillis()
+    {
+        return windowMillis;
+    }
+
+    /**
+     * Records an interval that ended at the given time.
+     */
+    public void recordInterval(long timestamp, long interval)
+    {
+        advance(timestamp);
+        long bucket = timestamp / bucketMillis;
+        if (headBucket - bucket >= BUCKETS)
+        {
+            // Already outside the window
+            return;
+        }
+
+        int slot = slot(bucket);
+        long value = Math.max(0, interval);
+        counts[slot]++;
+        sums[slot] += value;
+        sumSquares[slot] += value * value;
+        totalCount++;
+        totalSum += value;
+        totalSumSquares += value * value;
+    }
+
+    /**
+     * Expires every bucket that is no longer within the window ending at {@code now}.
+     */
+    public void advance(long now)
+    {
+        long bucket = now / bucketMillis;
+        if (headBucket == Long.MIN_VALUE || bucket - headBucket >= BUCKETS)
+        {
+            clear();
+            headBucket = bucket;
+            return;
+        }
+
+        while (headBucket < bucket)
+        {
+            headBucket++;
+            evict(slot(headBucket));
+        }
+    }
+
+    public void clear()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = 0;
+            sums[i] = 0;
+            sumSquares[i] = 0;
+        }
+        totalCount = 0;
+        totalSum = 0;
+        totalSumSquares = 0;
+        headBucket = Long.MIN_VALUE;
+    }
+
+    public long getIntervalCount(long now)
+    {
+        advance(now);
+        return totalCount;
+    }
+
+    /**
+     * Mean interval in ms within the window, or 0 without intervals.
+     */
+    public double getMeanInterval(long now)
+    {
+        advance(now);
+        return totalCount == 0 ? 0.0 : (double) totalSum / totalCount;
+    }
+
+    /**
+     * Consistency score from 0 to 100 within the window, defined as in
+     * {@link IntervalStats#getConsistencyScore()}.
+     */
+    public long getConsistencyScore(long now)
+    {
+        advance(now);
+        if (totalCount == 0)
+        {
+            return 0;
+        }
+
+        double mean = (double) totalSum / totalCount;
+        double variance = (totalSumSquares - (double) totalSum * totalSum / totalCount) / (totalCount - 1);
+        double cv = Math.sqrt(Math.max(0, variance)) / mean;
+        return (long) (1 / (1 + cv) * 100);
+    }
+
+    /**
+     * When the oldest interval still in the window expires, changing the stats without
+     * a new click, or {@link Long#MAX_VALUE} if the window is empty.
+     */
+    public long getNextExpiry(long now)
+    {
+        advance(now);
+        for (long bucket = headBucket - BUCKETS + 1; totalCount != 0 && bucket <= headBucket; bucket++)
+        {
+            if (counts[slot(bucket)] != 0)
+            {
+                return (bucket + BUCKETS) * bucketMillis;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void evict(int slot)
+    {
+        totalCount -= counts[slot];
+        totalSum -= sums[slot];
+        totalSumSquares -= sumSquares[slot];
+        counts[slot] = 0;
+        sums[slot] = 0;
+        sumSquares[slot] = 0;
+    }
+
+    private static int slot(long bucket)
+    {
+        return (int) Math.floorMod(bucket, (long) BUCKETS);
+    }
+}
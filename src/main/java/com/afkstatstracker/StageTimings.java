@@ -0,0 +1,50 @@
+package com.afkstatstracker;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Latency summary of one instrumented stage, in nanoseconds.
+ */
+public class StageTimings
+{
+    private final String stage;
+    private final long count;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    @ConstructorProperties({"stage", "count", "p50Nanos", "p99Nanos", "maxNanos"})
+    public StageTimings(String stage, long count, long p50Nanos, long p99Nanos, long maxNanos)
+    {
+        this.stage = stage;
+        this.count = count;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public String getStage()
+    {
+        return stage;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getP50Nanos()
+    {
+        return p50Nanos;
+    }
+
+    public long getP99Nanos()
+    {
+        return p99Nanos;
+    }
+
+    public long getMaxNanos()
+    {
+        return maxNanos;
+    }
+}
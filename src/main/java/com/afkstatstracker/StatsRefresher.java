@@ -0,0 +1,183 @@
+package com.afkstatstracker;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Runs a refresh on the EDT after the stats change, at most once per interval.
+ * <p>
+ * {@link #markDirty()} is called from the click path. The first call after a refresh
+ * schedules the next one, later calls only see the flag already set, so a burst of
+ * clicks costs one refresh. While inactive nothing is scheduled and the pending
+ * refresh runs on activation.
+ * <p>
+ * Some stats also change without clicks, such as the recent window dropping its oldest
+ * clicks. The refresh reports when that next happens through {@link #refreshAt(long)},
+ * so an idle session costs one refresh per change rather than one per second.
+ */
+class StatsRefresher
+{
+    /**
+     * Runs a task on the EDT after a delay, replacing any task still waiting.
+     */
+    interface Scheduler
+    {
+        void schedule(Runnable task, long delayMillis);
+
+        void cancel();
+
+        boolean isPending();
+    }
+
+    private final Runnable refresh;
+    private final ClickClock clock;
+    private final Scheduler scheduler;
+
+    private volatile boolean dirty;
+    private boolean active;
+    private long minIntervalMillis;
+    private long lastRefresh = Long.MIN_VALUE;
+    private long staleAt = Long.MAX_VALUE;
+    private long scheduledAt;
+
+    StatsRefresher(Runnable refresh, int maxPerSecond, ClickClock clock)
+    {
+        this(refresh, maxPerSecond, clock, new SwingScheduler());
+    }
+
+    StatsRefresher(Runnable refresh, int maxPerSecond, ClickClock clock, Scheduler scheduler)
+    {
+        this.refresh = refresh;
+        this.clock = clock;
+        this.scheduler = scheduler;
+        setMaxRate(maxPerSecond);
+    }
+
+    /**
+     * Notes that the stats changed. Safe to call from any thread.
+     */
+    void markDirty()
+    {
+        if (dirty)
+        {
+            return;
+        }
+        dirty = true;
+        SwingUtilities.invokeLater(this::schedule);
+    }
+
+    /**
+     * Schedules a refresh for when the stats shown go stale without a click, or never
+     * for {@link Long#MAX_VALUE}. Called on the EDT, usually by the refresh itself.
+     */
+    void refreshAt(long time)
+    {
+        staleAt = time;
+        schedule();
+    }
+
+    void setMaxRate(int maxPerSecond)
+    {
+        minIntervalMillis = 1000 / Math.max(1, maxPerSecond);
+    }
+
+    void setActive(boolean active)
+    {
+        this.active = active;
+        if (active)
+        {
+            schedule();
+        }
+        else
+        {
+            scheduler.cancel();
+        }
+    }
+
+    void stop()
+    {
+        active = false;
+        scheduler.cancel();
+    }
+
+    private void schedule()
+    {
+        if (!active)
+        {
+            return;
+        }
+
+        long due = staleAt;
+        if (dirty)
+        {
+            due = Math.min(due, lastRefresh + minIntervalMillis);
+        }
+        if (due == Long.MAX_VALUE)
+        {
+            return;
+        }
+
+        long now = clock.currentTimeMillis();
+        due = Math.max(due, now);
+        if (scheduler.isPending() && scheduledAt <= due)
+        {
+            return;
+        }
+
+        scheduledAt = due;
+        scheduler.schedule(this::fire, due - now);
+    }
+
+    private void fire()
+    {
+        if (!active)
+        {
+            return;
+        }
+
+        long now = clock.currentTimeMillis();
+        if (!dirty && now < staleAt)
+        {
+            schedule();
+            return;
+        }
+
+        // Cleared first so a click during the refresh schedules another one
+        dirty = false;
+        staleAt = Long.MAX_VALUE;
+        lastRefresh = now;
+        refresh.run();
+    }
+
+    private static class SwingScheduler implements Scheduler
+    {
+        private final Timer timer;
+        private Runnable task;
+
+        SwingScheduler()
+        {
+            timer = new Timer(0, e -> task.run());
+            timer.setRepeats(false);
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis)
+        {
+            this.task = task;
+            timer.setInitialDelay((int) Math.min(Integer.MAX_VALUE, delayMillis));
+            timer.restart();
+        }
+
+        @Override
+        public void cancel()
+        {
+            timer.stop();
+        }
+
+        @Override
+        public boolean isPending()
+        {
+            return timer.isRunning();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.afkstatstracker;
+
+import java.util.Arrays;
+
+/**
+ * Intervals between clicks counted in game ticks rather than milliseconds.
+ * <p>
+ * The game only acts on input once per 600 ms tick, so two clicks a few ms apart in
+ * wall time can be a whole tick apart in the game and vice versa. Counting ticks
+ * between clicks gives exact, jitter free intervals for methods timed to the tick.
+ * The deltas are small ints, so they are kept as counts per delta rather than per
+ * click: memory is fixed however long the session runs.
+ */
+public class TickIntervals
+{
+    /**
+     * Deltas of this many ticks or more share the last count, about a minute.
+     */
+    static final int MAX_TRACKED_TICKS = 100;
+
+    private final IntervalStats stats = new IntervalStats();
+    private final int[] counts = new int[MAX_TRACKED_TICKS + 1];
+    private long lastTick;
+
+    /**
+     * Records a click made during the given tick. Ticks are expected in non-decreasing
+     * order.
+     */
+    public void addClick(long tick)
+    {
+        if (stats.getClickCount() > 0)
+        {
+            long delta = Math.max(0, tick - lastTick);
+            counts[(int) Math.min(delta, MAX_TRACKED_TICKS)]++;
+        }
+        stats.addClick(tick);
+        lastTick = tick;
+    }
+
+    /**
+     * Records a click that ended an idle gap, leaving the gap out of the intervals.
+     */
+    public void addClickAfterGap(long tick)
+    {
+        stats.addClickAfterGap(tick);
+        lastTick = tick;
+    }
+
+    public void reset()
+    {
+        stats.reset();
+        Arrays.fill(counts, 0);
+    }
+
+    public long getClickCount()
+    {
+        return stats.getClickCount();
+    }
+
+    /**
+     * Average number of ticks between clicks.
+     */
+    public double getMeanTicks()
+    {
+        return stats.getMeanInterval();
+    }
+
+    /**
+     * Consistency score (0-100) of the tick intervals, defined as in
+     * {@link IntervalStats#getConsistencyScore()}.
+     */
+    public long getConsistencyScore()
+    {
+        return stats.getConsistencyScore();
+    }
+
+    /**
+     * Number of intervals of exactly {@code ticks} ticks; the last delta also counts
+     * every longer one.
+     */
+    public int getCount(int ticks)
+    {
+        return counts[Math.min(ticks, MAX_TRACKED_TICKS)];
+    }
+
+    /**
+     * The most common number of ticks between clicks, 0 before the second click.
+     */
+    public int getModalTicks()
+    {
+        int modal = 0;
+        for (int ticks = 1; ticks < counts.length; ticks++)
+        {
+            if (counts[ticks] > counts[modal])
+            {
+                modal = ticks;
+            }
+        }
+        return modal;
+    }
+}
@@ -0,0 +1,209 @@
+package com.afkstatstracker;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary encoding of a click trace.
+ * <p>
+ * The payload is the click count followed by the first timestamp and the delta to
+ * each following timestamp, all as zig-zag varints. Click intervals of a few seconds
+ * fit in two bytes, and the payload is deflated when that makes it smaller, which for
+ * regular AFK rhythms usually brings a trace well under two bytes per click.
+ * <pre>
+ * byte    version
+ * byte    flags (bit 0: deflated)
+ * varint  payload length, only when deflated
+ * bytes   payload
+ * </pre>
+ */
+final class TraceCodec
+{
+    static final byte VERSION = 1;
+    private static final int FLAG_DEFLATED = 1;
+
+    private TraceCodec()
+    {
+    }
+
+    static byte[] encode(long[] timestamps)
+    {
+        byte[] payload = encodePayload(timestamps);
+        byte[] deflated = deflate(payload);
+
+        if (deflated != null && deflated.length + varintSize(payload.length) < payload.length)
+        {
+            ByteBuffer out = ByteBuffer.allocate(2 + varintSize(payload.length) + deflated.length);
+            out.put(VERSION);
+            out.put((byte) FLAG_DEFLATED);
+            putVarint(out, payload.length);
+            out.put(deflated);
+            return out.array();
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(2 + payload.length);
+        out.put(VERSION);
+        out.put((byte) 0);
+        out.put(payload);
+        return out.array();
+    }
+
+    static long[] decode(ByteBuffer in)
+    {
+        byte version = in.get();
+        if (version != VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported trace version " + version);
+        }
+
+        int flags = in.get();
+        if ((flags & FLAG_DEFLATED) != 0)
+        {
+            int length = (int) getVarint(in);
+            in = ByteBuffer.wrap(inflate(in, length));
+        }
+
+        int count = (int) getVarint(in);
+        long[] timestamps = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++)
+        {
+            previous += zigZagDecode(getVarint(in));
+            timestamps[i] = previous;
+        }
+        return timestamps;
+    }
+
+    private static byte[] encodePayload(long[] timestamps)
+    {
+        int size = varintSize(timestamps.length);
+        long previous = 0;
+        for (long timestamp : timestamps)
+        {
+            size += varintSize(zigZagEncode(timestamp - previous));
+            previous = timestamp;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        putVarint(out, timestamps.length);
+        previous = 0;
+        for (long timestamp : timestamps)
+        {
+            putVarint(out, zigZagEncode(timestamp - previous));
+            previous = timestamp;
+        }
+        return out.array();
+    }
+
+    static byte[] deflate(byte[] payload)
+    {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try
+        {
+            deflater.setInput(payload);
+            deflater.finish();
+
+            byte[] out = new byte[payload.length];
+            int length = 0;
+            while (!deflater.finished())
+            {
+                if (length == out.length)
+                {
+                    // Incompressible, the raw payload wins
+                    return null;
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return Arrays.copyOf(out, length);
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(ByteBuffer in, int length)
+    {
+        Inflater inflater = new Inflater();
+        try
+        {
+            byte[] compressed = new byte[in.remaining()];
+            in.get(compressed);
+            inflater.setInput(compressed);
+
+            byte[] out = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished())
+            {
+                int n = inflater.inflate(out, read, length - read);
+                if (n == 0 && inflater.needsInput())
+                {
+                    break;
+                }
+                read += n;
+            }
+            if (read != length)
+            {
+                throw new IllegalArgumentException("Truncated payload");
+            }
+            return out;
+        }
+        catch (DataFormatException e)
+        {
+            throw new IllegalArgumentException("Corrupt payload", e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    static long zigZagEncode(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long zigZagDecode(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int varintSize(long value)
+    {
+        int size = 1;
+        while ((value & ~0x7FL) != 0)
+        {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void putVarint(ByteBuffer out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarint(ByteBuffer in)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,80 @@
+package com.afkstatstracker;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stores the full click trace of each session in its own file, encoded by
+ * {@link TraceCodec}.
+ */
+@Slf4j
+public class TraceStore
+{
+    private static final String EXTENSION = ".trace";
+
+    private final Path directory;
+
+    public TraceStore(File directory)
+    {
+        this.directory = directory.toPath();
+    }
+
+    public void save(String sessionId, long[] timestamps)
+    {
+        Path file = fileFor(sessionId);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.wrap(TraceCodec.encode(timestamps));
+
+        try
+        {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to save click trace for session {}", sessionId, e);
+        }
+    }
+
+    /**
+     * Returns a lazily decoded handle to the session's trace, or null if none was stored.
+     */
+    public ClickTrace find(String sessionId)
+    {
+        Path file = fileFor(sessionId);
+        return Files.exists(file) ? new ClickTrace(sessionId, file) : null;
+    }
+
+    public void delete(String sessionId)
+    {
+        try
+        {
+            Files.deleteIfExists(fileFor(sessionId));
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to delete click trace for session {}", sessionId, e);
+        }
+    }
+
+    private Path fileFor(String sessionId)
+    {
+        return directory.resolve(sessionId + EXTENSION);
+    }
+}
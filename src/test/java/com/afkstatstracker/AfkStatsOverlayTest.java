@@ -0,0 +1,62 @@
+package com.afkstatstracker;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AfkStatsOverlayTest
+{
+    private final BufferedImage screen = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+    private final Graphics2D graphics = screen.createGraphics();
+    private final long[] now = {1_000_000L};
+    private LiveStats stats = new LiveStats(1_000_000L, 10, 80, 1200.0);
+    private final AfkStatsOverlay overlay = new AfkStatsOverlay(() -> stats, () -> now[0]);
+
+    @After
+    public void tearDown()
+    {
+        graphics.dispose();
+    }
+
+    @Test
+    public void testSameSecondReusesTheImage()
+    {
+        Dimension size = overlay.render(graphics);
+        BufferedImage image = overlay.getCachedImage();
+        assertNotNull(image);
+
+        // Later in the same second with the same snapshot
+        now[0] += 999;
+        assertSame(size, overlay.render(graphics));
+        assertSame(image, overlay.getCachedImage());
+        assertEquals(image.getWidth(), size.width);
+        assertEquals(image.getHeight(), size.height);
+    }
+
+    @Test
+    public void testNewSnapshotOrSecondRedraws()
+    {
+        overlay.render(graphics);
+        BufferedImage first = overlay.getCachedImage();
+
+        stats = new LiveStats(1_000_000L, 11, 81, 1190.0);
+        overlay.render(graphics);
+        BufferedImage second = overlay.getCachedImage();
+        assertNotSame(first, second);
+
+        now[0] += 1000;
+        overlay.render(graphics);
+        assertNotSame(second, overlay.getCachedImage());
+    }
+
+    @Test
+    public void testNothingDrawnWithoutASession()
+    {
+        stats = null;
+        assertNull(overlay.render(graphics));
+        assertNull(overlay.getCachedImage());
+    }
+}
@@ -0,0 +1,86 @@
+package com.afkstatstracker;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ClickBufferTest
+{
+    @Test
+    public void testAddAndRead()
+    {
+        ClickBuffer buffer = new ClickBuffer();
+        buffer.add(100L);
+        buffer.add(250L);
+        buffer.add(400L);
+
+        assertEquals(3, buffer.size());
+        assertEquals(3L, buffer.totalCount());
+        assertEquals(100L, buffer.getTimestamp(0));
+        assertEquals(400L, buffer.getTimestamp(2));
+        assertArrayEquals(new long[]{100L, 250L, 400L}, buffer.toArray());
+    }
+
+    @Test
+    public void testSpansMultipleChunks()
+    {
+        ClickBuffer buffer = new ClickBuffer();
+        int count = ClickBuffer.CHUNK_SIZE * 2 + 5;
+        for (int i = 0; i < count; i++)
+        {
+            buffer.add(i);
+        }
+
+        long[] all = buffer.toArray();
+        assertEquals(count, all.length);
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals(i, all[i]);
+        }
+        assertEquals(ClickBuffer.CHUNK_SIZE, buffer.getTimestamp(ClickBuffer.CHUNK_SIZE));
+    }
+
+    @Test
+    public void testOldestClicksSpillWhenFull()
+    {
+        ClickBuffer buffer = new ClickBuffer(ClickBuffer.CHUNK_SIZE);
+        int count = ClickBuffer.CHUNK_SIZE + 10;
+        for (int i = 0; i < count; i++)
+        {
+            buffer.add(i);
+        }
+
+        assertEquals(ClickBuffer.CHUNK_SIZE, buffer.size());
+        assertEquals(count, buffer.totalCount());
+        assertEquals(10L, buffer.getTimestamp(0));
+        assertEquals(count - 1, buffer.getTimestamp(buffer.size() - 1));
+
+        long[] all = buffer.toArray();
+        assertEquals(10L, all[0]);
+        assertEquals(count - 1, all[all.length - 1]);
+    }
+
+    @Test
+    public void testClear()
+    {
+        ClickBuffer buffer = new ClickBuffer();
+        for (int i = 0; i < ClickBuffer.CHUNK_SIZE + 1; i++)
+        {
+            buffer.add(i);
+        }
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.toArray().length);
+
+        buffer.add(7L);
+        assertEquals(7L, buffer.getTimestamp(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testReadPastEnd()
+    {
+        ClickBuffer buffer = new ClickBuffer();
+        buffer.add(1L);
+        buffer.getTimestamp(1);
+    }
+}
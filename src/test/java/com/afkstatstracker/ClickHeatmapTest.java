@@ -0,0 +1,96 @@
+package com.afkstatstracker;
+
+import java.util.Arrays;
+import java.util.Base64;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ClickHeatmapTest
+{
+    @Test
+    public void testClicksAreScaledToTheCanvas()
+    {
+        ClickHeatmap heatmap = new ClickHeatmap();
+        heatmap.addClick(0, 0, 765, 503);
+        heatmap.addClick(764, 502, 765, 503);
+        // The same spot after the client was resized to twice the size
+        heatmap.addClick(1528, 1004, 1530, 1006);
+        heatmap.addClick(765, 10, 765, 503);
+        heatmap.addClick(-1, 10, 765, 503);
+
+        assertEquals("Clicks off the canvas are ignored", 3, heatmap.getTotalCount());
+        assertEquals(1, heatmap.getCount(0, 0));
+        assertEquals(2, heatmap.getCount(ClickHeatmap.COLUMNS - 1, ClickHeatmap.ROWS - 1));
+        assertEquals(2, heatmap.getMaxCount());
+
+        long modCount = heatmap.getModCount();
+        heatmap.reset();
+        assertTrue(heatmap.getModCount() != modCount);
+        assertEquals(0, heatmap.getTotalCount());
+        assertEquals(0, heatmap.getCount(0, 0));
+        assertNull(heatmap.encode());
+    }
+
+    @Test
+    public void testEncodedGridRoundTripsCompactly()
+    {
+        ClickHeatmap heatmap = new ClickHeatmap();
+        // An AFK method clicking the same two spots for hours
+        for (int i = 0; i < 20000; i++)
+        {
+            heatmap.addClick(300 + i % 7, 200 + i % 5, 765, 503);
+            heatmap.addClick(600, 400, 765, 503);
+        }
+
+        String encoded = heatmap.encode();
+        assertTrue(Base64.getDecoder().decode(encoded).length < 32);
+
+        ClickHeatmap decoded = ClickHeatmap.decode(encoded);
+        assertEquals(heatmap.getTotalCount(), decoded.getTotalCount());
+        assertEquals(heatmap.getMaxCount(), decoded.getMaxCount());
+        for (int row = 0; row < ClickHeatmap.ROWS; row++)
+        {
+            for (int column = 0; column < ClickHeatmap.COLUMNS; column++)
+            {
+                assertEquals(heatmap.getCount(column, row), decoded.getCount(column, row));
+            }
+        }
+    }
+
+    @Test
+    public void testCorruptGridIsRejected()
+    {
+        ClickHeatmap heatmap = new ClickHeatmap();
+        heatmap.addClick(10, 10, 100, 100);
+        byte[] encoded = Base64.getDecoder().decode(heatmap.encode());
+
+        try
+        {
+            ClickHeatmap.decode(Base64.getEncoder().encodeToString(Arrays.copyOf(encoded, 3)));
+            fail();
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+    }
+
+    @Test
+    public void testHeatmapSurvivesThePayload()
+    {
+        ClickHeatmap heatmap = new ClickHeatmap();
+        heatmap.addClick(10, 10, 100, 100);
+        heatmap.addClick(10, 10, 100, 100);
+        Session session = new Session("id1", "Heatmap", 0L, 1000L, 2, 0L, 0.0).withHeatmap(heatmap);
+
+        // The session keeps its own copy
+        heatmap.addClick(90, 90, 100, 100);
+
+        Session copy = new Session("id1", "Heatmap", 0L, 1000L, 2, 0L, 0.0)
+            .withPayloadJson(session.getPayloadJson());
+        ClickHeatmap stored = copy.getHeatmap();
+        assertEquals(2, stored.getTotalCount());
+        assertEquals(2, stored.getCount(4, 3));
+        assertNull(copy.getLaps());
+        assertNull(new Session("id2", "None", 0L, 1000L, 0, 0L, 0.0).getHeatmap());
+    }
+}
@@ -0,0 +1,159 @@
+package com.afkstatstracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CoalescingSessionStoreTest
+{
+    @Test
+    public void testBurstOfMutationsIsCoalesced() throws Exception
+    {
+        RecordingStore delegate = new RecordingStore();
+        CoalescingSessionStore store = new CoalescingSessionStore(delegate, 200);
+
+        for (int i = 0; i < 20; i++)
+        {
+            store.rename("id1", "Name " + i);
+        }
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (delegate.getWritten() < 20 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        store.close();
+
+        assertEquals(20, delegate.getWritten());
+        // The first mutation may be written straight away, the rest wait for one interval
+        assertTrue("flushes: " + delegate.getFlushes(), delegate.getFlushes() <= 2);
+    }
+
+    @Test
+    public void testCloseWritesPendingMutations()
+    {
+        RecordingStore delegate = new RecordingStore();
+        CoalescingSessionStore store = new CoalescingSessionStore(delegate, TimeUnit.HOURS.toMillis(1));
+
+        for (int i = 0; i < 5; i++)
+        {
+            store.add(createTestSession("id" + i));
+        }
+        store.delete("id0");
+        store.close();
+
+        assertEquals(6, delegate.getWritten());
+    }
+
+    @Test
+    public void testMutationsAfterCloseAreStillBuffered()
+    {
+        RecordingStore delegate = new RecordingStore();
+        CoalescingSessionStore store = new CoalescingSessionStore(delegate, 0);
+        store.close();
+
+        store.add(createTestSession("late"));
+        store.flush();
+
+        assertEquals(1, delegate.getWritten());
+    }
+
+    @Test
+    public void testTasksRunOnTheWriterUntilClosed()
+    {
+        CoalescingSessionStore store = new CoalescingSessionStore(new RecordingStore(), TimeUnit.HOURS.toMillis(1));
+        List<String> threads = new ArrayList<>();
+
+        store.execute(() -> threads.add(Thread.currentThread().getName()));
+        // Close waits for the queued task
+        store.close();
+        store.execute(() -> threads.add(Thread.currentThread().getName()));
+
+        assertEquals(2, threads.size());
+        assertEquals("afk-stats-tracker-writer", threads.get(0));
+        assertEquals(Thread.currentThread().getName(), threads.get(1));
+    }
+
+    private static Session createTestSession(String id)
+    {
+        return new Session(id, "Session", 1000L, 2000L, 10, 50L, 30000.0);
+    }
+
+    static class RecordingStore implements SessionHistoryManager.SessionStore
+    {
+        private int pending;
+        private int written;
+        private int flushes;
+
+        @Override
+        public List<Session> loadPage(int limit)
+        {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public int size()
+        {
+            return 0;
+        }
+
+        @Override
+        public Session oldest()
+        {
+            return null;
+        }
+
+        @Override
+        public List<Session> loadAll()
+        {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public synchronized void add(Session session)
+        {
+            pending++;
+        }
+
+        @Override
+        public synchronized void rename(String id, String newName)
+        {
+            pending++;
+        }
+
+        @Override
+        public synchronized void update(Session session)
+        {
+            pending++;
+        }
+
+        @Override
+        public synchronized void delete(String id)
+        {
+            pending++;
+        }
+
+        @Override
+        public synchronized void flush()
+        {
+            if (pending > 0)
+            {
+                written += pending;
+                pending = 0;
+                flushes++;
+            }
+        }
+
+        synchronized int getWritten()
+        {
+            return written;
+        }
+
+        synchronized int getFlushes()
+        {
+            return flushes;
+        }
+    }
+}
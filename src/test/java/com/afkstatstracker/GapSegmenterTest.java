@@ -0,0 +1,137 @@
+package com.afkstatstracker;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GapSegmenterTest
+{
+    @Test
+    public void testNoGapsIsOneSegment()
+    {
+        GapSegmenter segmenter = new GapSegmenter(60_000);
+        for (int i = 0; i < 10; i++)
+        {
+            segmenter.addClick(i * 1000L);
+        }
+
+        List<SessionSegment> segments = segmenter.getSegments();
+        assertEquals(1, segments.size());
+        assertEquals(10, segments.get(0).getClickCount());
+        assertEquals(1000.0, segments.get(0).getAvgInterval(), 0.0);
+        assertEquals(100L, segments.get(0).getConsistencyScore());
+        assertEquals(0L, segmenter.getIdleTime());
+    }
+
+    @Test
+    public void testGapSplitsSegmentsAndCountsIdleTime()
+    {
+        GapSegmenter segmenter = new GapSegmenter(60_000);
+        long time = 0;
+        for (int i = 0; i < 5; i++)
+        {
+            segmenter.addClick(time);
+            time += 2000;
+        }
+        // Ten minute bank break
+        time += 600_000;
+        for (int i = 0; i < 5; i++)
+        {
+            segmenter.addClick(time);
+            time += 2000;
+        }
+
+        List<SessionSegment> segments = segmenter.getSegments();
+        assertEquals(2, segments.size());
+        assertEquals(0L, segments.get(0).getStartTime());
+        assertEquals(8000L, segments.get(0).getEndTime());
+        assertEquals(610_000L, segments.get(1).getStartTime());
+        assertEquals(5, segments.get(1).getClickCount());
+        assertEquals(2000.0, segments.get(1).getAvgInterval(), 0.0);
+        assertEquals(100L, segments.get(1).getConsistencyScore());
+        assertEquals(602_000L, segmenter.getIdleTime());
+        assertEquals(100L, segmenter.getCurrentSegment().getConsistencyScore());
+    }
+
+    @Test
+    public void testGapAtThresholdIsNotIdle()
+    {
+        GapSegmenter segmenter = new GapSegmenter(60_000);
+        segmenter.addClick(0);
+        segmenter.addClick(60_000);
+
+        assertEquals(1, segmenter.getSegmentCount());
+        assertEquals(0L, segmenter.getIdleTime());
+    }
+
+    @Test
+    public void testReset()
+    {
+        GapSegmenter segmenter = new GapSegmenter(1000);
+        segmenter.addClick(0);
+        segmenter.addClick(5000);
+        segmenter.reset();
+
+        assertEquals(0, segmenter.getSegmentCount());
+        assertEquals(0L, segmenter.getIdleTime());
+        assertTrue(segmenter.getSegments().isEmpty());
+    }
+
+    @Test
+    public void testBankBreakLeavesSessionStatsUnchanged()
+    {
+        long[] steady = new long[200];
+        long[] withBreak = new long[200];
+        for (int i = 0; i < steady.length; i++)
+        {
+            steady[i] = i * 1000L + (i % 2) * 100;
+            // A 10 minute bank break halfway through
+            withBreak[i] = steady[i] + (i >= 100 ? 600_000 : 0);
+        }
+        MouseClickCounterListener expected = listener(steady);
+        MouseClickCounterListener listener = listener(withBreak);
+
+        IntervalStats stats = listener.getIntervalStats();
+        assertEquals(expected.getIntervalStats().getConsistencyScore(), stats.getConsistencyScore());
+        // The interval across the break is left out, not counted as a 0 or a 1000
+        assertEquals(198, stats.getIntervalCount());
+        assertEquals(1000.0, stats.getMeanInterval(), 5.0);
+        assertTrue(listener.getIntervalHistogram().toPercentiles().getMax() < 60_000);
+        assertEquals(198, listener.getLapTracker().getCurrentLap().getIntervalCount());
+        assertEquals(2, listener.getGapSegmenter().getSegmentCount());
+        assertEquals(601_000L, listener.getGapSegmenter().getIdleTime(), 200);
+    }
+
+    @Test
+    public void testRestartIsIdleTime()
+    {
+        long[] recovered = new long[100];
+        for (int i = 0; i < recovered.length; i++)
+        {
+            recovered[i] = i * 1000L;
+        }
+        // Back up and clicking 20 seconds after the last checkpointed click
+        long[] now = {recovered[recovered.length - 1] + 20_000};
+        MouseClickCounterListener listener = new MouseClickCounterListener(null, new Instrumentation(),
+            () -> now[0], () -> {});
+        listener.restoreClicks(recovered);
+        listener.addClick();
+        now[0] += 1000;
+        listener.addClick();
+
+        IntervalStats stats = listener.getIntervalStats();
+        assertEquals(100, stats.getIntervalCount());
+        assertEquals(1000.0, stats.getMeanInterval(), 0.0);
+        assertEquals(2, listener.getGapSegmenter().getSegmentCount());
+        assertEquals(20_000L, listener.getGapSegmenter().getIdleTime());
+        assertEquals(100, listener.getLapTracker().getCurrentLap().getIntervalCount());
+    }
+
+    private static MouseClickCounterListener listener(long[] timestamps)
+    {
+        MouseClickCounterListener listener = new MouseClickCounterListener(null, new Instrumentation(),
+            () -> timestamps[timestamps.length - 1], () -> {});
+        listener.restoreClicks(timestamps);
+        return listener;
+    }
+}
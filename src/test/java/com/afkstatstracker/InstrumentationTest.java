@@ -0,0 +1,110 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class InstrumentationTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDisabledRecordsNothing()
+    {
+        Instrumentation instrumentation = new Instrumentation();
+        long start = instrumentation.start();
+        instrumentation.stop(Instrumentation.Stage.STATS_REFRESH, start);
+        instrumentation.clickCaptured();
+        instrumentation.bytesWritten(100);
+
+        assertEquals(0L, start);
+        assertEquals(0L, instrumentation.getTimings(Instrumentation.Stage.STATS_REFRESH).getCount());
+        assertEquals(0L, instrumentation.getClicksCaptured());
+        assertEquals(0L, instrumentation.getBytesWritten());
+    }
+
+    @Test
+    public void testEnabledRecordsStages()
+    {
+        Instrumentation instrumentation = new Instrumentation();
+        instrumentation.setEnabled(true);
+
+        for (int i = 0; i < 10; i++)
+        {
+            instrumentation.stop(Instrumentation.Stage.HISTORY_WRITE, instrumentation.start());
+        }
+        instrumentation.bytesWritten(100);
+        instrumentation.bytesWritten(50);
+
+        StageTimings timings = instrumentation.getTimings(Instrumentation.Stage.HISTORY_WRITE);
+        assertEquals(10L, timings.getCount());
+        assertTrue(timings.getMaxNanos() >= timings.getP50Nanos());
+        assertEquals(150L, instrumentation.getBytesWritten());
+        assertEquals(0L, instrumentation.getTimings(Instrumentation.Stage.HISTORY_LOAD).getCount());
+    }
+
+    @Test
+    public void testClickCaptureAndBufferOccupancy()
+    {
+        Instrumentation instrumentation = new Instrumentation();
+        instrumentation.setEnabled(true);
+        MouseClickCounterListener listener = new MouseClickCounterListener(null, instrumentation, () -> {});
+
+        listener.addClick();
+        listener.addClick();
+        listener.addClick();
+
+        assertEquals(3L, instrumentation.getClicksCaptured());
+        assertEquals(3L, instrumentation.getTimings(Instrumentation.Stage.CLICK_CAPTURE).getCount());
+        assertEquals(3, instrumentation.getBufferedClicks());
+        assertEquals(ClickBuffer.DEFAULT_CAPACITY, instrumentation.getBufferCapacity());
+    }
+
+    @Test
+    public void testJournalReportsWrites() throws Exception
+    {
+        File dir = folder.newFolder();
+        Instrumentation instrumentation = new Instrumentation();
+        instrumentation.setEnabled(true);
+        SessionJournal journal = new SessionJournal(dir, new Gson(), null, instrumentation);
+
+        journal.add(new Session("a", "Session A", 0, 1000, 10, 90, 100.0));
+        journal.flush();
+
+        assertEquals(1L, instrumentation.getTimings(Instrumentation.Stage.HISTORY_SERIALIZE).getCount());
+        assertEquals(1L, instrumentation.getTimings(Instrumentation.Stage.HISTORY_WRITE).getCount());
+        assertEquals(new File(dir, SessionJournal.JOURNAL_FILE).length(), instrumentation.getBytesWritten());
+    }
+
+    @Test
+    public void testRegisteredOverJmx() throws Exception
+    {
+        Instrumentation instrumentation = new Instrumentation();
+        instrumentation.setEnabled(true);
+        instrumentation.register();
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(Instrumentation.OBJECT_NAME);
+
+            assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+            CompositeData[] stages = (CompositeData[]) server.getAttribute(name, "StageTimings");
+            assertEquals(Instrumentation.Stage.values().length, stages.length);
+            assertEquals("CLICK_CAPTURE", stages[0].get("stage"));
+        }
+        finally
+        {
+            instrumentation.unregister();
+        }
+
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(Instrumentation.OBJECT_NAME)));
+    }
+}
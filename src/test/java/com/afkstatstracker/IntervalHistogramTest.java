@@ -0,0 +1,86 @@
+package com.afkstatstracker;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IntervalHistogramTest
+{
+    @Test
+    public void testEmptyHistogram()
+    {
+        IntervalHistogram histogram = new IntervalHistogram();
+
+        assertEquals(0L, histogram.getValueAtPercentile(50));
+        assertEquals(0L, histogram.getMax());
+    }
+
+    @Test
+    public void testSmallValuesAreExact()
+    {
+        IntervalHistogram histogram = new IntervalHistogram();
+        for (int i = 1; i <= 10; i++)
+        {
+            histogram.recordValue(i);
+        }
+
+        assertEquals(5L, histogram.getValueAtPercentile(50));
+        assertEquals(9L, histogram.getValueAtPercentile(90));
+        assertEquals(10L, histogram.getValueAtPercentile(99));
+        assertEquals(10L, histogram.getMax());
+    }
+
+    @Test
+    public void testPercentilesWithinRelativeError()
+    {
+        Random random = new Random(3);
+        IntervalHistogram histogram = new IntervalHistogram();
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = 600 + (long) (Math.abs(random.nextGaussian()) * 3000);
+            histogram.recordValue(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{50, 90, 99})
+        {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.getValueAtPercentile(percentile);
+            assertEquals("p" + percentile, exact, estimate, exact * 0.02);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    @Test
+    public void testBucketsCoverWholeRange()
+    {
+        long previous = -1;
+        for (long value : new long[]{0, 63, 64, 65, 127, 128, 1000, 60000, 3600000, IntervalHistogram.MAX_TRACKABLE})
+        {
+            int index = IntervalHistogram.bucketIndex(value);
+            assertTrue(index >= previous);
+            long representative = IntervalHistogram.representativeValue(index);
+            assertEquals(value, representative, value * 0.02 + 1);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void testToPercentilesAndReset()
+    {
+        IntervalHistogram histogram = new IntervalHistogram();
+        histogram.recordValue(600);
+        histogram.recordValue(600);
+        histogram.recordValue(5000);
+
+        IntervalPercentiles percentiles = histogram.toPercentiles();
+        assertEquals(600L, percentiles.getP50(), 600 * 0.02);
+        assertEquals(5000L, percentiles.getMax());
+
+        histogram.reset();
+        assertEquals(0L, histogram.getTotalCount());
+        assertEquals(0L, histogram.toPercentiles().getP99());
+    }
+}
@@ -0,0 +1,96 @@
+package com.afkstatstracker;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IntervalStatsTest
+{
+    @Test
+    public void testFewerThanTwoClicks()
+    {
+        IntervalStats stats = new IntervalStats();
+        assertEquals(0L, stats.getConsistencyScore());
+        assertEquals(0.0, stats.getMeanInterval(), 0.0);
+
+        stats.addClick(1000L);
+        assertEquals(0L, stats.getConsistencyScore());
+        assertEquals(0.0, stats.getMeanInterval(), 0.0);
+    }
+
+    @Test
+    public void testSingleIntervalScoresZero()
+    {
+        IntervalStats stats = new IntervalStats();
+        stats.addClick(1000L);
+        stats.addClick(1600L);
+
+        // Sample variance of one interval is undefined, which the batch formula scored as 0
+        assertEquals(600.0, stats.getMeanInterval(), 0.0);
+        assertEquals(0L, stats.getConsistencyScore());
+    }
+
+    @Test
+    public void testPerfectlyRegularClicks()
+    {
+        IntervalStats stats = new IntervalStats();
+        for (int i = 0; i < 10; i++)
+        {
+            stats.addClick(i * 600L);
+        }
+
+        assertEquals(600.0, stats.getMeanInterval(), 0.0);
+        assertEquals(0.0, stats.getVariance(), 0.0);
+        assertEquals(100L, stats.getConsistencyScore());
+    }
+
+    @Test
+    public void testMatchesBatchFormula()
+    {
+        Random random = new Random(42);
+        long[] timestamps = new long[5000];
+        long t = 0;
+        IntervalStats stats = new IntervalStats();
+        for (int i = 0; i < timestamps.length; i++)
+        {
+            t += 200 + random.nextInt(5000);
+            timestamps[i] = t;
+            stats.addClick(t);
+        }
+
+        int numIntervals = timestamps.length - 1;
+        double mean = (double) (timestamps[numIntervals] - timestamps[0]) / numIntervals;
+        double sumSqDiff = 0;
+        for (int i = 1; i < timestamps.length; i++)
+        {
+            sumSqDiff += Math.pow((timestamps[i] - timestamps[i - 1]) - mean, 2);
+        }
+        double variance = sumSqDiff / (numIntervals - 1);
+        long expectedScore = (long) (1 / (1 + Math.sqrt(variance) / mean) * 100);
+
+        assertEquals(mean, stats.getMeanInterval(), 0.0);
+        assertEquals(variance, stats.getVariance(), variance * 1e-9);
+        assertEquals(expectedScore, stats.getConsistencyScore());
+    }
+
+    @Test
+    public void testOfSortsTimestamps()
+    {
+        IntervalStats stats = IntervalStats.of(new long[]{3000L, 1000L, 2000L, 4500L});
+
+        assertEquals(3L, stats.getIntervalCount());
+        assertEquals(1166.67, stats.getMeanInterval(), 0.01);
+    }
+
+    @Test
+    public void testReset()
+    {
+        IntervalStats stats = new IntervalStats();
+        stats.addClick(0L);
+        stats.addClick(500L);
+        stats.reset();
+
+        assertEquals(0L, stats.getClickCount());
+        assertEquals(0.0, stats.getMeanInterval(), 0.0);
+    }
+}
@@ -0,0 +1,89 @@
+package com.afkstatstracker;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LapTrackerTest
+{
+    @Test
+    public void testNoMarkersHasNoLaps()
+    {
+        LapTracker tracker = new LapTracker();
+        for (int i = 0; i < 10; i++)
+        {
+            tracker.addClick(i * 1000L);
+        }
+
+        assertNull(tracker.getLaps());
+        assertEquals(1, tracker.getLapNumber());
+        assertEquals(10, tracker.getCurrentLap().getClickCount());
+    }
+
+    @Test
+    public void testMarkersSplitTheClicksIntoRanges()
+    {
+        LapTracker tracker = new LapTracker();
+        long[] timestamps = new long[15];
+        for (int i = 0; i < timestamps.length; i++)
+        {
+            // Steady 1s clicks, then 2s clicks after the marker
+            timestamps[i] = i < 10 ? i * 1000L : 9000L + (i - 9) * 2000L;
+        }
+        for (int i = 0; i < 10; i++)
+        {
+            tracker.addClick(timestamps[i]);
+        }
+
+        SessionLap first = tracker.markLap();
+        assertNull("A marker with no clicks since the last is ignored", tracker.markLap());
+        for (int i = 10; i < timestamps.length; i++)
+        {
+            tracker.addClick(timestamps[i]);
+        }
+
+        assertEquals(0, first.getFirstClick());
+        assertEquals(10, first.getClickCount());
+        assertEquals(1000.0, first.getAvgInterval(), 0.0);
+        assertEquals(100L, first.getConsistencyScore());
+        assertEquals(2, tracker.getLapNumber());
+        assertEquals(2000.0, tracker.getCurrentLap().getMeanInterval(), 0.0);
+
+        List<SessionLap> laps = tracker.getLaps();
+        assertEquals(2, laps.size());
+        assertEquals(10, laps.get(1).getFirstClick());
+        assertEquals(5, laps.get(1).getClickCount());
+        assertEquals(11000L, laps.get(1).getStartTime());
+        assertEquals(timestamps[14], laps.get(1).getEndTime());
+
+        // Restating from the trace gives the same laps, even with the first clicks lost
+        List<SessionLap> recomputed = LapTracker.recompute(laps,
+            Arrays.copyOfRange(timestamps, 3, timestamps.length), timestamps.length, Long.MAX_VALUE);
+        assertSame(laps.get(0), recomputed.get(0));
+        assertEquals(2000.0, recomputed.get(1).getAvgInterval(), 0.0);
+        assertEquals(laps.get(1).getConsistencyScore(), recomputed.get(1).getConsistencyScore());
+
+        tracker.reset();
+        assertNull(tracker.getLaps());
+        assertEquals(1, tracker.getLapNumber());
+    }
+
+    @Test
+    public void testLapsSurviveThePayload()
+    {
+        Session session = new Session("id1", "Laps", 0L, 30000L, 15, 80L, 1500.0)
+            .withLaps(Arrays.asList(
+                new SessionLap(0, 0L, 9000L, 10, 100L, 1000.0),
+                new SessionLap(10, 11000L, 19000L, 5, 100L, 2000.0)));
+
+        Session copy = new Session("id1", "Laps", 0L, 30000L, 15, 80L, 1500.0)
+            .withPayloadJson(session.getPayloadJson());
+
+        assertFalse(copy.isPayloadLoaded());
+        assertNull(copy.getPercentiles());
+        assertEquals(2, copy.getLaps().size());
+        assertEquals(10, copy.getLaps().get(1).getFirstClick());
+        assertEquals(2000.0, copy.getLaps().get(1).getAvgInterval(), 0.0);
+    }
+}
@@ -0,0 +1,194 @@
+package com.afkstatstracker;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MetricDispatcherTest
+{
+    private static long[] trace(Random random, int clicks)
+    {
+        long[] timestamps = new long[clicks];
+        for (int i = 1; i < clicks; i++)
+        {
+            timestamps[i] = timestamps[i - 1] + 1200 + random.nextInt(600);
+        }
+        return timestamps;
+    }
+
+    @Test
+    public void testMeanMetricsMatchIntervalStats()
+    {
+        long[] timestamps = trace(new Random(7), 5000);
+        MetricDispatcher dispatcher = MetricDispatcher.builtIn();
+        IntervalStats stats = new IntervalStats();
+        for (long timestamp : timestamps)
+        {
+            dispatcher.addClick(timestamp);
+            stats.addClick(timestamp);
+        }
+
+        assertEquals(stats.getConsistencyScore(), dispatcher.getResult(BuiltInMetric.CONSISTENCY), 0.0);
+        assertEquals(stats.getMeanInterval(), dispatcher.getResult(BuiltInMetric.MEAN_INTERVAL), 1e-9);
+    }
+
+    @Test
+    public void testMergeMatchesOnePass()
+    {
+        long[] timestamps = trace(new Random(11), 4001);
+        MetricDispatcher whole = MetricDispatcher.builtIn();
+        MetricDispatcher first = MetricDispatcher.builtIn();
+        MetricDispatcher second = MetricDispatcher.builtIn();
+        for (int i = 0; i < timestamps.length; i++)
+        {
+            whole.addClick(timestamps[i]);
+            // The halves share the click at 2000, so between them they see every interval
+            if (i <= 2000)
+            {
+                first.addClick(timestamps[i]);
+            }
+            if (i >= 2000)
+            {
+                second.addClick(timestamps[i]);
+            }
+        }
+        first.merge(second);
+
+        Map<String, Double> expected = whole.getResults();
+        Map<String, Double> merged = first.getResults();
+        assertEquals(expected.keySet(), merged.keySet());
+        for (String key : expected.keySet())
+        {
+            assertEquals(key, expected.get(key), merged.get(key), 1e-6);
+        }
+    }
+
+    @Test
+    public void testBuiltInMetricsShareOneRecording()
+    {
+        MetricDispatcher dispatcher = MetricDispatcher.builtIn();
+        IntervalStats stats = dispatcher.getIntervalStats();
+        IntervalHistogram histogram = dispatcher.getIntervalHistogram();
+        for (long timestamp : new long[]{0, 1000, 2500, 3500})
+        {
+            dispatcher.addClick(timestamp);
+        }
+
+        // Every interval recorded once, however many metrics read it
+        assertEquals(3, histogram.getTotalCount());
+        assertEquals(3, stats.getIntervalCount());
+        assertEquals(stats.getMeanInterval(), dispatcher.getResult(BuiltInMetric.MEAN_INTERVAL), 0.0);
+        assertEquals(histogram.getValueAtPercentile(50), dispatcher.getResult(BuiltInMetric.MEDIAN_INTERVAL), 0.0);
+
+        dispatcher.reset();
+        assertSame(stats, dispatcher.getIntervalStats());
+        assertSame(histogram, dispatcher.getIntervalHistogram());
+        assertEquals(0, histogram.getTotalCount());
+        dispatcher.addClick(0);
+        dispatcher.addClick(800);
+        assertEquals(800.0, dispatcher.getResult(BuiltInMetric.MEAN_INTERVAL), 0.0);
+    }
+
+    @Test
+    public void testRobustMetricsIgnoreOutliers()
+    {
+        MetricDispatcher dispatcher = MetricDispatcher.builtIn();
+        long time = 0;
+        for (int i = 0; i < 101; i++)
+        {
+            dispatcher.addClick(time);
+            // Alternating 900 and 1100 ms, with a few long pauses
+            time += i % 25 == 24 ? 30_000 : i % 2 == 0 ? 900 : 1100;
+        }
+
+        // Within the histogram's bucket precision
+        assertEquals(1100.0, dispatcher.getResult(BuiltInMetric.MEDIAN_INTERVAL), 1100 * 0.02);
+        assertEquals(200.0, dispatcher.getResult(BuiltInMetric.INTERVAL_MAD), 1100 * 0.04);
+        double robust = dispatcher.getResult(BuiltInMetric.ROBUST_CONSISTENCY);
+        assertTrue("Robust score " + robust, robust > 70);
+        assertTrue(dispatcher.getResult(BuiltInMetric.CONSISTENCY) < 40);
+    }
+
+    @Test
+    public void testCustomMetricsJoinTheSamePass()
+    {
+        AccumulatingMetric longest = new AccumulatingMetric()
+        {
+            @Override
+            public String getKey()
+            {
+                return "longest";
+            }
+
+            @Override
+            public String getName()
+            {
+                return "Longest";
+            }
+
+            @Override
+            public String getDescription()
+            {
+                return "Longest interval";
+            }
+
+            @Override
+            public String format(double value)
+            {
+                return String.valueOf(value);
+            }
+
+            @Override
+            public Accumulator newAccumulator()
+            {
+                return new Accumulator()
+                {
+                    private long max;
+
+                    @Override
+                    public void update(long interval)
+                    {
+                        max = Math.max(max, interval);
+                    }
+
+                    @Override
+                    public void merge(Accumulator other)
+                    {
+                        max = Math.max(max, (long) other.result());
+                    }
+
+                    @Override
+                    public double result()
+                    {
+                        return max;
+                    }
+                };
+            }
+        };
+
+        MetricDispatcher dispatcher = new MetricDispatcher(Arrays.asList(longest, BuiltInMetric.MEAN_INTERVAL));
+        for (long timestamp : new long[]{0, 1000, 4000, 5000})
+        {
+            dispatcher.addClick(timestamp);
+        }
+
+        assertEquals(3000.0, dispatcher.getResult(longest), 0.0);
+        assertEquals(Arrays.asList("longest", "avgInterval"), Arrays.asList(dispatcher.getResults().keySet().toArray()));
+
+        // Both the accumulator and the shared stats the built-in metric reads are merged
+        MetricDispatcher other = new MetricDispatcher(Arrays.asList(longest, BuiltInMetric.MEAN_INTERVAL));
+        other.addClick(10_000);
+        other.addClick(17_000);
+        dispatcher.merge(other);
+        assertEquals(7000.0, dispatcher.getResult(longest), 0.0);
+        assertEquals(3000.0, dispatcher.getResult(BuiltInMetric.MEAN_INTERVAL), 0.0);
+
+        dispatcher.reset();
+        assertEquals(0.0, dispatcher.getResult(longest), 0.0);
+        assertEquals(Collections.singletonList(BuiltInMetric.CONSISTENCY),
+            new MetricDispatcher(Collections.singletonList(BuiltInMetric.CONSISTENCY)).getMetrics());
+    }
+}
@@ -0,0 +1,75 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-analyses a session history on disk without starting the client, for processing
+ * large archives in bulk.
+ * <p>
+ * Usage: {@code ReanalysisCli [--force] [--idle-threshold <seconds>] [data dir]}, where
+ * the data dir defaults to {@code ~/.runelite/afk-stats-tracker}. The client must not be
+ * running against the same directory.
+ */
+public class ReanalysisCli
+{
+    public static void main(String[] args) throws Exception
+    {
+        boolean force = false;
+        long idleThresholdMillis = TimeUnit.SECONDS.toMillis(60);
+        File dataDir = new File(System.getProperty("user.home"), ".runelite/afk-stats-tracker");
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--force":
+                    force = true;
+                    break;
+                case "--idle-threshold":
+                    idleThresholdMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(args[++i]));
+                    break;
+                default:
+                    dataDir = new File(args[i]);
+            }
+        }
+
+        Gson gson = new Gson();
+        SessionJournal journal = new SessionJournal(dataDir, gson, null);
+        SessionRollups rollups = new SessionRollups(dataDir, gson, ZoneId.systemDefault());
+        ReanalysisEngine engine = new ReanalysisEngine(new TraceStore(new File(dataDir, "traces")),
+            Runtime.getRuntime().availableProcessors());
+        try
+        {
+            ReanalysisEngine.Job job = engine.start(journal::loadAll, idleThresholdMillis, force);
+            while (!job.getResult().isDone())
+            {
+                System.out.printf("%d / %d%n", job.getDone(), Math.max(0, job.getTotal()));
+                Thread.sleep(1000);
+            }
+
+            // The client only rebuilds rollups whose session count is off, which this never changes
+            Map<Session, Session> results = job.getResult().get();
+            for (Map.Entry<Session, Session> result : results.entrySet())
+            {
+                journal.update(result.getValue());
+                rollups.remove(result.getKey());
+                rollups.add(result.getValue());
+            }
+            journal.flush();
+
+            if (rollups.getSessionCount() != journal.size())
+            {
+                rollups.rebuild(journal::loadAll);
+            }
+            rollups.save();
+            System.out.printf("Re-analysed %d of %d sessions in %s%n", results.size(), job.getTotal(), dataDir);
+        }
+        finally
+        {
+            engine.shutdown();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.afkstatstracker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ReanalysisEngineTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TraceStore traceStore;
+
+    @Before
+    public void setUp()
+    {
+        traceStore = new TraceStore(new File(folder.getRoot(), "traces"));
+    }
+
+    private Session storeSession(String id, int clicks, long interval)
+    {
+        long[] timestamps = new long[clicks];
+        for (int i = 0; i < clicks; i++)
+        {
+            timestamps[i] = 1000L + i * interval;
+        }
+        traceStore.save(id, timestamps);
+        // Stale metrics from before analysis was versioned
+        return new Session(id, "Session " + id, 1000L, timestamps[clicks - 1], clicks, 1L, 1.0);
+    }
+
+    @Test
+    public void testRecomputesFromTraces() throws Exception
+    {
+        List<Session> stored = new ArrayList<>();
+        stored.add(storeSession("a", 100, 2000));
+        stored.add(storeSession("b", 50, 600));
+        stored.add(new Session("no-trace", "Old", 0L, 1L, 10, 1L, 1.0));
+
+        ReanalysisEngine engine = new ReanalysisEngine(traceStore, 2);
+        ReanalysisEngine.Job job = engine.start(() -> stored, TimeUnit.MINUTES.toMillis(1), false);
+        List<Session> results = new ArrayList<>(job.getResult().get(10, TimeUnit.SECONDS).values());
+        engine.shutdown();
+
+        assertEquals(3, job.getTotal());
+        assertEquals(3, job.getDone());
+        assertEquals(2, results.size());
+
+        Session a = results.get(0).getId().equals("a") ? results.get(0) : results.get(1);
+        assertEquals(100L, a.getConsistencyScore());
+        assertEquals(2000.0, a.getAvgInterval(), 0.0);
+        assertEquals(100, a.getClickCount());
+        assertEquals("Session a", a.getName());
+        assertEquals(1, a.getSegments().size());
+        assertEquals(ReanalysisEngine.ANALYSIS_VERSION, a.getAnalysisVersion());
+    }
+
+    @Test
+    public void testSkipsUpToDateSessionsUnlessForced() throws Exception
+    {
+        Session current = storeSession("a", 10, 1000).withAnalysisVersion(ReanalysisEngine.ANALYSIS_VERSION);
+        List<Session> stored = new ArrayList<>();
+        stored.add(current);
+
+        ReanalysisEngine engine = new ReanalysisEngine(traceStore, 1);
+        assertTrue(engine.start(() -> stored, 60_000, false).getResult().get(10, TimeUnit.SECONDS).isEmpty());
+        assertEquals(1, engine.start(() -> stored, 60_000, true).getResult().get(10, TimeUnit.SECONDS).size());
+        engine.shutdown();
+    }
+
+    @Test
+    public void testCancelledJobReturnsFinishedSessions() throws Exception
+    {
+        List<Session> stored = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+        {
+            stored.add(storeSession("id" + i, 200, 1000));
+        }
+
+        ReanalysisEngine engine = new ReanalysisEngine(traceStore, 1);
+        ReanalysisEngine.Job job = engine.start(() ->
+        {
+            sleep();
+            return stored;
+        }, 60_000, false);
+        job.cancel();
+        List<Session> results = new ArrayList<>(job.getResult().get(10, TimeUnit.SECONDS).values());
+        engine.shutdown();
+
+        assertTrue(job.isCancelled());
+        assertTrue(results.isEmpty());
+        assertEquals(200, job.getDone());
+    }
+
+    @Test
+    public void testFailedSessionDoesNotFailTheJob() throws Exception
+    {
+        TraceStore failing = new TraceStore(new File(folder.getRoot(), "traces"))
+        {
+            @Override
+            public ClickTrace find(String sessionId)
+            {
+                if (sessionId.equals("broken"))
+                {
+                    throw new IllegalStateException("Unreadable trace");
+                }
+                return super.find(sessionId);
+            }
+        };
+        List<Session> stored = new ArrayList<>();
+        stored.add(storeSession("a", 100, 2000));
+        stored.add(storeSession("broken", 50, 600));
+        stored.add(storeSession("c", 50, 600));
+
+        ReanalysisEngine engine = new ReanalysisEngine(failing, 2);
+        ReanalysisEngine.Job job = engine.start(() -> stored, TimeUnit.MINUTES.toMillis(1), false);
+        List<Session> results = new ArrayList<>(job.getResult().get(10, TimeUnit.SECONDS).values());
+        engine.shutdown();
+
+        assertFalse(job.getResult().isCompletedExceptionally());
+        assertEquals(3, job.getDone());
+        assertEquals(2, job.getUpdated());
+        assertEquals(1, job.getFailed());
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    public void testIdleGapsAreSegmented()
+    {
+        long[] timestamps = {0, 1000, 2000, 602000, 603000, 604000};
+        Session stored = new Session("a", "A", 0L, 604000L, 6, 1L, 1.0);
+
+        Session result = ReanalysisEngine.analyze(stored, timestamps, 60_000);
+
+        assertEquals(2, result.getSegments().size());
+        assertEquals(600000L, result.getIdleTime());
+        // As live, the gap is idle time rather than an interval
+        assertEquals(1000.0, result.getAvgInterval(), 0.0);
+        assertEquals(0.0, result.getIntervalVariance(), 0.0);
+        assertEquals(1000L, result.getPercentiles().getMax(), 1000 * 0.02);
+    }
+
+    private static void sleep()
+    {
+        try
+        {
+            Thread.sleep(100);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
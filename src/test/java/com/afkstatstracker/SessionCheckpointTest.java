@@ -0,0 +1,225 @@
+package com.afkstatstracker;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class SessionCheckpointTest
+{
+    private static final long START = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void click(ClickBuffer clicks, int count)
+    {
+        long last = clicks.totalCount() > 0 ? clicks.getTimestamp(clicks.size() - 1) : START;
+        for (int i = 1; i <= count; i++)
+        {
+            clicks.add(last + i * 600L + (i % 7) * 13);
+        }
+    }
+
+    private File checkpointFile()
+    {
+        return new File(folder.getRoot(), SessionCheckpoint.FILE);
+    }
+
+    @Test
+    public void testRecoversEveryCheckpointedClick()
+    {
+        ClickBuffer clicks = new ClickBuffer();
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(folder.getRoot()))
+        {
+            checkpoint.begin(START);
+            click(clicks, 100);
+            checkpoint.checkpoint(clicks);
+            checkpoint.checkpoint(clicks);
+            click(clicks, 50);
+            checkpoint.checkpoint(clicks);
+            // Not checkpointed, lost in the crash
+            click(clicks, 5);
+        }
+
+        SessionCheckpoint.Recovery recovery = new SessionCheckpoint(folder.getRoot()).recover();
+        assertNotNull(recovery);
+        assertEquals(START, recovery.getStartTime());
+        assertEquals(150, recovery.getClickCount());
+        long[] expected = clicks.toArray();
+        assertArrayEquals(Arrays.copyOf(expected, 150), recovery.getTimestamps());
+        assertEquals(expected[149], recovery.getEndTime());
+    }
+
+    @Test
+    public void testCheckpointOnlyWritesNewClicks()
+    {
+        ClickBuffer clicks = new ClickBuffer();
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(folder.getRoot()))
+        {
+            checkpoint.begin(START);
+            click(clicks, 100_000);
+            checkpoint.checkpoint(clicks);
+        }
+        long before = checkpointFile().length();
+
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(folder.getRoot()))
+        {
+            checkpoint.resume(checkpoint.recover());
+            click(clicks, 10);
+            checkpoint.checkpoint(clicks);
+        }
+
+        // Ten two-byte deltas after an absolute first timestamp, plus counts and checksum
+        long appended = checkpointFile().length() - before;
+        assertTrue("appended " + appended, appended < 40);
+        assertEquals(100_010, new SessionCheckpoint(folder.getRoot()).recover().getClickCount());
+    }
+
+    @Test
+    public void testTornBlockIsDroppedAndTrimmedOnResume() throws Exception
+    {
+        ClickBuffer clicks = new ClickBuffer();
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(folder.getRoot()))
+        {
+            checkpoint.begin(START);
+            click(clicks, 20);
+            checkpoint.checkpoint(clicks);
+            click(clicks, 20);
+            checkpoint.checkpoint(clicks);
+        }
+
+        // Crash part way through the second block
+        try (RandomAccessFile file = new RandomAccessFile(checkpointFile(), "rw"))
+        {
+            file.setLength(file.length() - 3);
+        }
+
+        ClickBuffer resumed = new ClickBuffer();
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(folder.getRoot()))
+        {
+            SessionCheckpoint.Recovery recovery = checkpoint.recover();
+            assertEquals(20, recovery.getClickCount());
+
+            for (long timestamp : recovery.getTimestamps())
+            {
+                resumed.add(timestamp);
+            }
+            checkpoint.resume(recovery);
+            click(resumed, 5);
+            checkpoint.checkpoint(resumed);
+        }
+
+        SessionCheckpoint.Recovery recovery = new SessionCheckpoint(folder.getRoot()).recover();
+        assertEquals(25, recovery.getClickCount());
+        assertArrayEquals(resumed.toArray(), recovery.getTimestamps());
+    }
+
+    @Test
+    public void testCorruptBlockIsSkipped() throws Exception
+    {
+        ClickBuffer clicks = new ClickBuffer();
+        long secondBlock;
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(folder.getRoot()))
+        {
+            checkpoint.begin(START);
+            click(clicks, 20);
+            checkpoint.checkpoint(clicks);
+            checkpoint.flush();
+            secondBlock = checkpointFile().length();
+            click(clicks, 20);
+            checkpoint.checkpoint(clicks);
+            click(clicks, 10);
+            checkpoint.checkpoint(clicks);
+        }
+
+        // Flip a bit in the middle of the second block
+        try (RandomAccessFile file = new RandomAccessFile(checkpointFile(), "rw"))
+        {
+            file.seek(secondBlock + 10);
+            int b = file.read();
+            file.seek(secondBlock + 10);
+            file.write(b ^ 0x10);
+        }
+
+        SessionCheckpoint.Recovery recovery = new SessionCheckpoint(folder.getRoot()).recover();
+        assertEquals(30, recovery.getClickCount());
+        long[] expected = clicks.toArray();
+        long[] kept = Arrays.copyOf(expected, 30);
+        System.arraycopy(expected, 40, kept, 20, 10);
+        assertArrayEquals(kept, recovery.getTimestamps());
+    }
+
+    @Test
+    public void testFailedWriteIsSentAgain() throws Exception
+    {
+        ClickBuffer clicks = new ClickBuffer();
+        File moved = new File(folder.getRoot(), "moved");
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(folder.getRoot()))
+        {
+            checkpoint.begin(START);
+            click(clicks, 20);
+            checkpoint.checkpoint(clicks);
+            checkpoint.flush();
+
+            // A directory in its place makes the next write fail
+            assertTrue(checkpointFile().renameTo(moved));
+            assertTrue(checkpointFile().mkdir());
+            click(clicks, 20);
+            checkpoint.checkpoint(clicks);
+            checkpoint.flush();
+
+            assertTrue(checkpointFile().delete());
+            assertTrue(moved.renameTo(checkpointFile()));
+            click(clicks, 10);
+            checkpoint.checkpoint(clicks);
+        }
+
+        SessionCheckpoint.Recovery recovery = new SessionCheckpoint(folder.getRoot()).recover();
+        assertEquals(50, recovery.getClickCount());
+        assertArrayEquals(clicks.toArray(), recovery.getTimestamps());
+    }
+
+    @Test
+    public void testClicksGoneFromTheBufferAreCounted()
+    {
+        ClickBuffer clicks = new ClickBuffer(ClickBuffer.CHUNK_SIZE);
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(folder.getRoot()))
+        {
+            checkpoint.begin(START);
+            click(clicks, ClickBuffer.CHUNK_SIZE + 100);
+            checkpoint.checkpoint(clicks);
+        }
+
+        SessionCheckpoint.Recovery recovery = new SessionCheckpoint(folder.getRoot()).recover();
+        assertEquals(ClickBuffer.CHUNK_SIZE + 100, recovery.getClickCount());
+        assertArrayEquals(clicks.toArray(), recovery.getTimestamps());
+    }
+
+    @Test
+    public void testNothingToRecover() throws Exception
+    {
+        ClickBuffer clicks = new ClickBuffer();
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(folder.getRoot()))
+        {
+            assertNull(checkpoint.recover());
+
+            // Started but no clicks yet
+            checkpoint.begin(START);
+            checkpoint.close();
+        }
+        assertNull(new SessionCheckpoint(folder.getRoot()).recover());
+
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(folder.getRoot()))
+        {
+            checkpoint.begin(START);
+            click(clicks, 10);
+            checkpoint.checkpoint(clicks);
+            checkpoint.discard();
+        }
+        assertFalse(checkpointFile().exists());
+    }
+}
@@ -0,0 +1,71 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+import java.util.Collections;
+import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SessionHistoryListTest
+{
+    @Test
+    public void testSortingByConsistencyConsidersEverySession()
+    {
+        SessionHistoryManagerTest.TestConfigStorage storage = new SessionHistoryManagerTest.TestConfigStorage();
+        SessionHistoryManager writer = new SessionHistoryManager(storage, new Gson());
+        int total = SessionHistoryManager.PAGE_SIZE * 4;
+        for (int i = 0; i < total; i++)
+        {
+            // The most consistent session is the oldest, far outside the first page
+            writer.addSession(new Session("id" + i, "Session " + i, i * 1000L, i * 1000L + 500, 10,
+                i == 0 ? 100L : 50L, 30000.0));
+        }
+
+        SessionHistoryManager manager = new SessionHistoryManager(storage, new Gson());
+        SessionHistoryList list = new SessionHistoryList(manager, new Instrumentation());
+        assertEquals(SessionHistoryManager.PAGE_SIZE, list.getModel().getSize());
+
+        list.setView(SessionIndex.SortKey.CONSISTENCY, true, Long.MIN_VALUE);
+
+        ListModel<Session> model = list.getModel();
+        assertEquals(total, model.getSize());
+        assertEquals("id0", model.getElementAt(0).getId());
+        assertFalse(manager.hasOlderSessions());
+    }
+
+    @Test
+    public void testUpdateKeepsTheSortOrder() throws Exception
+    {
+        SessionHistoryManager manager = new SessionHistoryManager(new SessionHistoryManagerTest.TestConfigStorage(), new Gson());
+        for (int i = 0; i < 5; i++)
+        {
+            manager.addSession(new Session("id" + i, "Session " + i, i * 1000L, i * 1000L + 500, 10,
+                10L + i * 10, 30000.0));
+        }
+        SessionHistoryList list = new SessionHistoryList(manager, new Instrumentation());
+        list.setView(SessionIndex.SortKey.CONSISTENCY, true, Long.MIN_VALUE);
+
+        // Re-analysis makes the least consistent session the most consistent
+        Session stored = manager.getSnapshot().get("id0");
+        manager.updateSessions(Collections.singletonMap(stored, new Session("id0", "Session 0", 0L, 500L, 10,
+            90L, 30000.0)));
+        SwingUtilities.invokeAndWait(() -> { });
+
+        ListModel<Session> model = list.getModel();
+        assertEquals(5, model.getSize());
+        assertEquals("id0", model.getElementAt(0).getId());
+        for (int i = 1; i < model.getSize(); i++)
+        {
+            assertTrue(model.getElementAt(i - 1).getConsistencyScore() >= model.getElementAt(i).getConsistencyScore());
+        }
+
+        // Found by binary search in the sorted rows
+        manager.deleteSession("id2");
+        assertEquals(4, model.getSize());
+        for (int i = 0; i < model.getSize(); i++)
+        {
+            assertFalse("id2".equals(model.getElementAt(i).getId()));
+        }
+    }
+}
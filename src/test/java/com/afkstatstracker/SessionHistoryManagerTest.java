@@ -2,12 +2,22 @@ package com.afkstatstracker;
 
 import com.google.gson.Gson;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import static org.junit.Assert.*;
 
 public class SessionHistoryManagerTest
 {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private SessionHistoryManager manager;
     private TestConfigStorage storage;
 
@@ -40,6 +50,47 @@ public class SessionHistoryManagerTest
         assertEquals("Renamed", manager.getSessions().get(0).getName());
     }
 
+    @Test
+    public void testSnapshotsDoNotChangeAfterPublishing() throws Exception
+    {
+        Session session = createTestSession("id1", "Original");
+        manager.addSession(session);
+        HistorySnapshot before = manager.getSnapshot();
+
+        manager.renameSession("id1", "Renamed");
+        manager.addSession(createTestSession("id2", "Session 2"));
+
+        assertEquals("Original", session.getName());
+        assertEquals(1, before.size());
+        assertEquals("Original", before.get("id1").getName());
+        assertEquals("Renamed", manager.getSnapshot().get("id1").getName());
+        assertEquals(2, manager.getSnapshot().size());
+
+        // A reader on another thread sees whole snapshots while the history changes
+        Thread reader = new Thread(() ->
+        {
+            for (int i = 0; i < 2000; i++)
+            {
+                HistorySnapshot snapshot = manager.getSnapshot();
+                assertEquals(snapshot.size(), snapshot.getSessions().size());
+                for (Session s : snapshot.getSessions())
+                {
+                    assertSame(s, snapshot.get(s.getId()));
+                }
+            }
+        });
+        List<Throwable> failures = new ArrayList<>();
+        reader.setUncaughtExceptionHandler((t, e) -> failures.add(e));
+        reader.start();
+        for (int i = 3; i < 200; i++)
+        {
+            manager.addSession(createTestSession("id" + i, "Session " + i));
+            manager.renameSession("id" + (i - 1), "Renamed " + i);
+        }
+        reader.join();
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
     @Test
     public void testDeleteSession()
     {
@@ -56,6 +107,7 @@ public class SessionHistoryManagerTest
     @Test
     public void testMaxSessionsLimit()
     {
+        manager.setRetention(20, 0);
         for (int i = 0; i < 25; i++)
         {
             manager.addSession(createTestSession("id" + i, "Session " + i));
@@ -68,6 +120,153 @@ public class SessionHistoryManagerTest
         assertEquals("id24", sessions.get(19).getId());
     }
 
+    @Test
+    public void testNoLimitByDefault()
+    {
+        for (int i = 0; i < 25; i++)
+        {
+            manager.addSession(createTestSession("id" + i, "Session " + i));
+        }
+
+        assertEquals(25, manager.getSessions().size());
+    }
+
+    @Test
+    public void testMaxAgeLimit()
+    {
+        long now = System.currentTimeMillis();
+        manager.addSession(new Session("old", "Old", now - 40L * 86400000L, now, 10, 50L, 30000.0));
+        manager.addSession(new Session("new", "New", now - 86400000L, now, 10, 50L, 30000.0));
+
+        manager.setRetention(0, 30);
+
+        List<Session> sessions = manager.getSessions();
+        assertEquals(1, sessions.size());
+        assertEquals("new", sessions.get(0).getId());
+    }
+
+    @Test
+    public void testMaxAgeGoesByStartTime()
+    {
+        long now = System.currentTimeMillis();
+        manager.addSession(new Session("new", "New", now - 86400000L, now, 10, 50L, 30000.0));
+        // Stored after a newer session, as a recovered one is
+        manager.addSession(new Session("old", "Old", now - 40L * 86400000L, now, 10, 50L, 30000.0));
+
+        manager.setRetention(0, 30);
+
+        List<Session> sessions = manager.getSessions();
+        assertEquals(1, sessions.size());
+        assertEquals("new", sessions.get(0).getId());
+    }
+
+    @Test
+    public void testRemovalsAreForgottenOnceCompacted()
+    {
+        SessionJournal journal = new SessionJournal(folder.getRoot(), new Gson(), null);
+        SessionHistoryManager manager = new SessionHistoryManager(journal);
+        Session a = createTestSession("a", "A");
+        manager.addSession(a);
+        manager.addSession(createTestSession("b", "B"));
+        manager.addSession(createTestSession("c", "C"));
+
+        manager.deleteSession("a");
+        manager.updateSessions(Collections.singletonMap(a, a.withAnalysisVersion(ReanalysisEngine.ANALYSIS_VERSION)));
+        assertNull(manager.getSnapshot().get("a"));
+        assertEquals(1, manager.getRemovedSessionCount());
+
+        journal.flush();
+        journal.compact();
+        manager.deleteSession("b");
+        assertEquals(1, manager.getRemovedSessionCount());
+
+        // The store itself no longer takes an update to the compacted session
+        manager.updateSessions(Collections.singletonMap(a, a.withAnalysisVersion(ReanalysisEngine.ANALYSIS_VERSION)));
+        journal.flush();
+        journal.compact();
+        assertEquals(1, new SessionJournal(folder.getRoot(), new Gson(), null).loadAll().size());
+    }
+
+    @Test
+    public void testOlderSessionsLoadInPages()
+    {
+        int total = SessionHistoryManager.PAGE_SIZE * 2 + 5;
+        for (int i = 0; i < total; i++)
+        {
+            manager.addSession(createTestSession("id" + i, "Session " + i));
+        }
+
+        SessionHistoryManager reloaded = new SessionHistoryManager(storage, new Gson());
+        assertEquals(SessionHistoryManager.PAGE_SIZE, reloaded.getSessions().size());
+        assertEquals("id" + (total - 1), reloaded.getSessions().get(SessionHistoryManager.PAGE_SIZE - 1).getId());
+        assertTrue(reloaded.hasOlderSessions());
+
+        reloaded.loadOlderSessions();
+        reloaded.loadOlderSessions();
+
+        List<Session> sessions = reloaded.getSessions();
+        assertEquals(total, sessions.size());
+        assertEquals("id0", sessions.get(0).getId());
+        assertFalse(reloaded.hasOlderSessions());
+    }
+
+    @Test
+    public void testLoadSessionsSinceLoadsOnlyWhatTheFilterNeeds()
+    {
+        int total = SessionHistoryManager.PAGE_SIZE * 4;
+        for (int i = 0; i < total; i++)
+        {
+            manager.addSession(new Session("id" + i, "Session " + i, i * 1000L, i * 1000L + 500, 10, i % 100, 30000.0));
+        }
+
+        SessionHistoryManager reloaded = new SessionHistoryManager(storage, new Gson());
+        long from = (total - SessionHistoryManager.PAGE_SIZE - 10) * 1000L;
+        reloaded.loadSessionsSince(from);
+
+        assertEquals(SessionHistoryManager.PAGE_SIZE * 2, reloaded.getSessions().size());
+        List<Session> inRange = reloaded.getSessions(SessionIndex.SortKey.DATE, true, from, Long.MAX_VALUE);
+        assertEquals(SessionHistoryManager.PAGE_SIZE + 10, inRange.size());
+        assertEquals("id" + (total - 1), inRange.get(0).getId());
+
+        reloaded.renameSession("id" + (total - 60), "Renamed");
+        assertEquals("Session " + (total - 60), inRange.get(59).getName());
+        assertEquals("Renamed", reloaded.getSessions(SessionIndex.SortKey.DATE, true, from, Long.MAX_VALUE).get(59).getName());
+    }
+
+    @Test
+    public void testLoadSessionsSincePublishesOnce()
+    {
+        int total = SessionHistoryManager.PAGE_SIZE * 4;
+        for (int i = 0; i < total; i++)
+        {
+            manager.addSession(new Session("id" + i, "Session " + i, i * 1000L, i * 1000L + 500, 10, 50L, 30000.0));
+        }
+
+        SessionHistoryManager reloaded = new SessionHistoryManager(storage, new Gson());
+        List<List<Session>> notified = new ArrayList<>();
+        reloaded.addListener(new SessionHistoryManager.Listener()
+        {
+            @Override
+            public void olderSessionsLoaded(List<Session> page)
+            {
+                notified.add(page);
+            }
+        });
+        HistorySnapshot before = reloaded.getSnapshot();
+        reloaded.loadSessionsSince(Long.MIN_VALUE);
+
+        assertEquals(1, notified.size());
+        List<Session> older = notified.get(0);
+        assertEquals(total - SessionHistoryManager.PAGE_SIZE, older.size());
+        for (int i = 0; i < older.size(); i++)
+        {
+            assertEquals("id" + i, older.get(i).getId());
+        }
+        assertEquals(SessionHistoryManager.PAGE_SIZE, before.size());
+        assertEquals(total, reloaded.getSnapshot().size());
+        assertFalse(reloaded.hasOlderSessions());
+    }
+
     @Test
     public void testPersistence()
     {
@@ -91,6 +290,105 @@ public class SessionHistoryManagerTest
         assertTrue(sessions.isEmpty());
     }
 
+    @Test
+    public void testListenerSeesEvictions()
+    {
+        List<String> removed = new ArrayList<>();
+        manager.addListener(new SessionHistoryManager.Listener()
+        {
+            @Override
+            public void sessionRemoved(Session session)
+            {
+                removed.add(session.getId());
+            }
+        });
+
+        manager.setRetention(20, 0);
+        for (int i = 0; i < 21; i++)
+        {
+            manager.addSession(createTestSession("id" + i, "Session " + i));
+        }
+        manager.deleteSession("id5");
+
+        assertEquals(2, removed.size());
+        assertEquals("id0", removed.get(0));
+        assertEquals("id5", removed.get(1));
+    }
+
+    @Test
+    public void testRollupsFollowTagsAndRemovals()
+    {
+        manager.setRetention(3, 0);
+        for (int i = 0; i < 3; i++)
+        {
+            manager.addSession(createTestSession("id" + i, "Session " + i));
+        }
+        manager.setSessionTag("id0", "Fishing");
+        manager.setSessionTag("id1", "Fishing");
+
+        SessionRollups rollups = manager.getRollups();
+        assertEquals(2, rollups.getTotal("Fishing").getSessionCount());
+        assertEquals(1, rollups.getTotal(SessionRollups.UNTAGGED).getSessionCount());
+
+        // Evicts id0
+        manager.addSession(createTestSession("id3", "Session 3"));
+        manager.deleteSession("id2");
+        assertEquals(1, rollups.getTotal("Fishing").getSessionCount());
+        assertEquals(1, rollups.getTotal(SessionRollups.UNTAGGED).getSessionCount());
+        assertEquals(2, rollups.getSessionCount());
+
+        // A re-analysis result for a removed session is dropped
+        Map<Session, Session> updates = new HashMap<>();
+        Session stale = createTestSession("id2", "Session 2");
+        updates.put(stale, new Session("id2", "Session 2", 1000L, 2000L, 10, 90L, 500.0));
+        Session stored = manager.getSessions().get(0);
+        Session updated = new Session("id1", "Session 1", 1000L, 2000L, 10, 90L, 500.0);
+        updates.put(stored, updated);
+        manager.updateSessions(updates);
+
+        assertEquals(2, rollups.getSessionCount());
+        assertEquals("Fishing", manager.getSnapshot().get("id1").getTag());
+        assertEquals(500.0, manager.getSnapshot().get("id1").getAvgInterval(), 1e-9);
+        assertEquals(500.0, rollups.getTotal("Fishing").getMeanInterval(), 1e-9);
+
+        // Tags are stored, and a fresh manager starts from the same rollups
+        SessionHistoryManager reloaded = new SessionHistoryManager(storage, new Gson());
+        assertEquals("Fishing", reloaded.getSessions().get(0).getTag());
+        assertEquals(1, reloaded.getRollups().getTotal("Fishing").getSessionCount());
+        assertEquals(500.0, reloaded.getRollups().getTotal("Fishing").getMeanInterval(), 1e-9);
+    }
+
+    @Test
+    public void testRollupsAreRebuiltOnTheGivenExecutor()
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            manager.addSession(createTestSession("id" + i, "Session " + i));
+        }
+
+        List<Runnable> rebuilds = new ArrayList<>();
+        SessionHistoryManager reloaded = new SessionHistoryManager(new ConfigSessionStore(storage, new Gson()),
+            new SessionRollups(ZoneId.systemDefault()), rebuilds::add);
+        int[] notified = new int[1];
+        reloaded.addListener(new SessionHistoryManager.Listener()
+        {
+            @Override
+            public void rollupsRebuilt()
+            {
+                notified[0]++;
+            }
+        });
+        assertEquals(3, reloaded.getSessions().size());
+        assertEquals(1, rebuilds.size());
+
+        // Added before the rebuild gets to run, and counted once
+        reloaded.addSession(createTestSession("id3", "Session 3"));
+        rebuilds.get(0).run();
+        assertEquals(4, reloaded.getRollups().getSessionCount());
+        assertEquals(4, reloaded.getRollups().getTotal(SessionRollups.UNTAGGED).getSessionCount());
+        assertEquals(1, notified[0]);
+    }
+
     private Session createTestSession(String id, String name)
     {
         return new Session(id, name, 1000L, 2000L, 10, 50L, 30000.0);
@@ -113,6 +411,12 @@ public class SessionHistoryManagerTest
             this.data = json;
         }
 
+        @Override
+        public void clear()
+        {
+            this.data = null;
+        }
+
         public void setData(String data)
         {
             this.data = data;
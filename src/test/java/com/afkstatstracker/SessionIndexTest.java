@@ -0,0 +1,157 @@
+package com.afkstatstracker;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SessionIndexTest
+{
+    private static Session session(String id, long start, long duration, long consistency, double interval)
+    {
+        return new Session(id, "Session " + id, start, start + duration, 100, consistency, interval);
+    }
+
+    private static String ids(List<Session> sessions)
+    {
+        StringBuilder ids = new StringBuilder();
+        for (Session session : sessions)
+        {
+            ids.append(session.getId());
+        }
+        return ids.toString();
+    }
+
+    @Test
+    public void testLookupAndRemoveById()
+    {
+        SessionIndex index = new SessionIndex();
+        index.add(session("a", 1000, 10, 50, 100));
+        index.add(session("b", 2000, 10, 50, 100));
+        index.add(session("c", 3000, 10, 50, 100));
+
+        assertEquals("b", index.get("b").getId());
+        assertEquals("a", index.remove("a").getId());
+        assertNull(index.get("a"));
+        assertNull(index.remove("a"));
+
+        // The last slot moved into the gap and is still found
+        assertEquals("c", index.get("c").getId());
+        assertEquals(2, index.size());
+        assertEquals("bc", ids(index.query(SessionIndex.SortKey.DATE, false, Long.MIN_VALUE, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testSortKeys()
+    {
+        SessionIndex index = new SessionIndex();
+        index.add(session("a", 1000, 300, 90, 2000));
+        index.add(session("b", 2000, 100, 70, 5000));
+        index.add(session("c", 3000, 200, 80, 1000));
+
+        assertEquals("abc", ids(index.query(SessionIndex.SortKey.DATE, false, Long.MIN_VALUE, Long.MAX_VALUE)));
+        assertEquals("cba", ids(index.query(SessionIndex.SortKey.DATE, true, Long.MIN_VALUE, Long.MAX_VALUE)));
+        assertEquals("acb", ids(index.query(SessionIndex.SortKey.CONSISTENCY, true, Long.MIN_VALUE, Long.MAX_VALUE)));
+        assertEquals("cab", ids(index.query(SessionIndex.SortKey.INTERVAL, false, Long.MIN_VALUE, Long.MAX_VALUE)));
+        assertEquals("acb", ids(index.query(SessionIndex.SortKey.DURATION, true, Long.MIN_VALUE, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testDateRangeFilter()
+    {
+        SessionIndex index = new SessionIndex();
+        for (int i = 0; i < 10; i++)
+        {
+            index.add(session(String.valueOf(i), i * 1000L, 10, 50, 100));
+        }
+
+        assertEquals("345", ids(index.query(SessionIndex.SortKey.DATE, false, 3000, 6000)));
+        assertEquals("", ids(index.query(SessionIndex.SortKey.DATE, false, 20000, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testTiesKeepHistoryOrder()
+    {
+        SessionIndex index = new SessionIndex();
+        index.add(session("c", 1000, 10, 50, 100));
+        index.add(session("d", 1000, 10, 50, 100));
+        index.addOlder(Arrays.asList(session("a", 1000, 10, 50, 100), session("b", 1000, 10, 50, 100)));
+
+        assertEquals("abcd", ids(index.query(SessionIndex.SortKey.DATE, false, Long.MIN_VALUE, Long.MAX_VALUE)));
+        assertEquals("abcd", ids(index.query(SessionIndex.SortKey.CONSISTENCY, false, Long.MIN_VALUE, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testCopyIsUnaffectedByLaterChanges()
+    {
+        int count = SessionIndex.CHUNK_SIZE * 2 + 10;
+        SessionIndex index = new SessionIndex();
+        for (int i = 0; i < count; i++)
+        {
+            index.add(session("id" + i, 1000L + i, 10, 50, 100));
+        }
+
+        SessionIndex copy = index.copy();
+        index.add(session("id5", 1005, 10, 99, 100).withName("Renamed"));
+        index.remove("id0");
+        index.remove("id" + SessionIndex.CHUNK_SIZE);
+        index.add(session("new", 999_999, 10, 50, 100));
+        SessionIndex second = index.copy();
+        index.remove("id1");
+
+        assertEquals(count, copy.size());
+        assertEquals("Session id5", copy.get("id5").getName());
+        assertEquals("id0", copy.get("id0").getId());
+        assertNull(copy.get("new"));
+        assertEquals(1000L, copy.oldestStartTime());
+        List<Session> copied = copy.query(SessionIndex.SortKey.DATE, false, Long.MIN_VALUE, Long.MAX_VALUE);
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals("id" + i, copied.get(i).getId());
+        }
+
+        assertEquals(count - 1, second.size());
+        assertEquals("Renamed", second.get("id5").getName());
+        assertEquals("id1", second.get("id1").getId());
+        assertEquals(1001L, second.oldestStartTime());
+
+        assertEquals(count - 2, index.size());
+        assertNull(index.get("id1"));
+        assertEquals("new", index.get("new").getId());
+        assertEquals(1002L, index.oldestStartTime());
+        assertEquals(99L, index.query(SessionIndex.SortKey.CONSISTENCY, true, Long.MIN_VALUE, Long.MAX_VALUE)
+            .get(0).getConsistencyScore());
+    }
+
+    @Test
+    public void testLargeIndex()
+    {
+        Random random = new Random(5);
+        SessionIndex index = new SessionIndex();
+        for (int i = 0; i < 100_000; i++)
+        {
+            index.add(session("id" + i, i * 60_000L, random.nextInt(3_600_000), random.nextInt(101),
+                600 + random.nextInt(4400)));
+        }
+
+        // How long these take is measured by SessionIndexBenchmark
+        List<Session> sorted = index.query(SessionIndex.SortKey.CONSISTENCY, true, Long.MIN_VALUE, Long.MAX_VALUE);
+        List<Session> filtered = index.query(SessionIndex.SortKey.DURATION, true, 0, 600_000_000L);
+        for (int i = 0; i < 1000; i++)
+        {
+            assertEquals("id" + (i * 97), index.get("id" + (i * 97)).getId());
+        }
+        index.remove("id500");
+
+        assertEquals(100_000, sorted.size());
+        assertEquals(100L, sorted.get(0).getConsistencyScore());
+        for (int i = 1; i < sorted.size(); i++)
+        {
+            assertTrue(sorted.get(i - 1).getConsistencyScore() >= sorted.get(i).getConsistencyScore());
+        }
+        assertEquals(10_000, filtered.size());
+        assertNull(index.get("id500"));
+        assertEquals(99_999, index.size());
+    }
+}
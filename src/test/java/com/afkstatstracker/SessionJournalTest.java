@@ -0,0 +1,382 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class SessionJournalTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Gson gson = new Gson();
+
+    @Test
+    public void testReplayAppliesAllOperations()
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        assertTrue(journal.loadPage(10).isEmpty());
+
+        journal.add(createTestSession("id1", "First"));
+        journal.add(createTestSession("id2", "Second"));
+        journal.rename("id1", "Renamed");
+        journal.delete("id2");
+        journal.flush();
+
+        List<Session> sessions = loadAll(dir);
+        assertEquals(1, sessions.size());
+        assertEquals("id1", sessions.get(0).getId());
+        assertEquals("Renamed", sessions.get(0).getName());
+    }
+
+    @Test
+    public void testUpdateReplacesMetricsAndKeepsName()
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        journal.loadPage(10);
+        journal.add(createTestSession("base", "Base"));
+        journal.add(createTestSession("added", "Added"));
+        journal.compact();
+        journal.add(createTestSession("journal", "Journal"));
+        journal.rename("base", "Renamed");
+
+        journal.update(new Session("base", "Stale", 1000L, 2000L, 10, 95L, 1200.0));
+        journal.update(new Session("journal", "Stale", 1000L, 2000L, 10, 96L, 1300.0));
+        journal.flush();
+
+        List<Session> sessions = new SessionJournal(dir, gson, null).loadAll();
+        assertEquals(3, sessions.size());
+        assertEquals("Renamed", sessions.get(0).getName());
+        assertEquals(95L, sessions.get(0).getConsistencyScore());
+        assertEquals(50L, sessions.get(1).getConsistencyScore());
+        assertEquals("Journal", sessions.get(2).getName());
+        assertEquals(1300.0, sessions.get(2).getAvgInterval(), 0.0);
+
+        // And once compacted into the base file
+        SessionJournal reloaded = new SessionJournal(dir, gson, null);
+        reloaded.compact();
+        sessions = reloaded.loadAll();
+        assertEquals("Renamed", sessions.get(0).getName());
+        assertEquals(95L, sessions.get(0).getConsistencyScore());
+        assertEquals(96L, sessions.get(2).getConsistencyScore());
+    }
+
+    @Test
+    public void testMutationsAppendSmallRecords() throws Exception
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        journal.add(createTestSession("id1", "First"));
+        journal.flush();
+        long sizeAfterAdd = journalFile(dir).length();
+
+        journal.rename("id1", "Renamed");
+        journal.flush();
+
+        List<String> lines = Files.readAllLines(journalFile(dir).toPath());
+        assertEquals(2, lines.size());
+        assertTrue(journalFile(dir).length() - sizeAfterAdd < sizeAfterAdd);
+    }
+
+    @Test
+    public void testCompactionMergesJournalIntoBase()
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        journal.add(createTestSession("keep", "Keep"));
+        journal.add(createTestSession("drop", "Drop"));
+        journal.delete("drop");
+        for (int i = 0; i < SessionJournal.COMPACT_THRESHOLD; i++)
+        {
+            journal.rename("keep", "Keep " + i);
+            journal.flush();
+        }
+
+        assertTrue(journal.getJournalRecordCount() < SessionJournal.COMPACT_THRESHOLD);
+        assertTrue(new File(dir, SessionJournal.BASE_FILE).exists());
+
+        List<Session> sessions = loadAll(dir);
+        assertEquals(1, sessions.size());
+        assertEquals("Keep " + (SessionJournal.COMPACT_THRESHOLD - 1), sessions.get(0).getName());
+    }
+
+    @Test
+    public void testMutationsDuringCompactionAreKept() throws Exception
+    {
+        File dir = folder.getRoot();
+        SessionJournal[] journal = new SessionJournal[1];
+        Thread[] edt = new Thread[1];
+        // Called once the new base file is written, before it is swapped in
+        Instrumentation instrumentation = new Instrumentation()
+        {
+            @Override
+            public void bytesWritten(long bytes)
+            {
+                if (edt[0] != null)
+                {
+                    return;
+                }
+                edt[0] = new Thread(() ->
+                {
+                    journal[0].add(createTestSession("late", "Late"));
+                    journal[0].rename("base", "Renamed");
+                    journal[0].delete("added");
+                    journal[0].size();
+                });
+                edt[0].start();
+                try
+                {
+                    edt[0].join(5000);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        journal[0] = new SessionJournal(dir, gson, null, instrumentation);
+        journal[0].add(createTestSession("base", "Base"));
+        journal[0].add(createTestSession("added", "Added"));
+        journal[0].compact();
+
+        assertFalse("Mutations must not wait for the compaction", edt[0].isAlive());
+        assertEquals(2, journal[0].size());
+        journal[0].flush();
+
+        List<Session> sessions = loadAll(dir);
+        assertEquals(2, sessions.size());
+        assertEquals("Renamed", sessions.get(0).getName());
+        assertEquals("late", sessions.get(1).getId());
+        assertEquals(2, journal[0].loadAll().size());
+    }
+
+    @Test
+    public void testPagesFromNewestToOldest()
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        for (int i = 0; i < 10; i++)
+        {
+            journal.add(createTestSession("id" + i, "Session " + i));
+        }
+        journal.compact();
+        journal.add(createTestSession("id10", "Session 10"));
+        journal.rename("id3", "Renamed");
+        journal.delete("id8");
+        journal.flush();
+
+        SessionJournal reloaded = new SessionJournal(dir, gson, null);
+        assertEquals(10, reloaded.size());
+        assertEquals("id0", reloaded.oldest().getId());
+
+        List<Session> first = reloaded.loadPage(4);
+        assertEquals(4, first.size());
+        assertEquals("id6", first.get(0).getId());
+        assertEquals("id7", first.get(1).getId());
+        assertEquals("id10", first.get(3).getId());
+
+        List<Session> second = reloaded.loadPage(4);
+        assertEquals("id2", second.get(0).getId());
+        assertEquals("Renamed", second.get(1).getName());
+
+        assertEquals(2, reloaded.loadPage(4).size());
+        assertTrue(reloaded.loadPage(4).isEmpty());
+    }
+
+    @Test
+    public void testPagingContinuesAcrossCompaction()
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        for (int i = 0; i < 10; i++)
+        {
+            journal.add(createTestSession("id" + i, "Session " + i));
+        }
+        journal.compact();
+
+        SessionJournal reloaded = new SessionJournal(dir, gson, null);
+        assertEquals("id6", reloaded.loadPage(4).get(0).getId());
+        reloaded.add(createTestSession("id10", "Session 10"));
+        reloaded.compact();
+
+        List<Session> next = reloaded.loadPage(100);
+        assertEquals(6, next.size());
+        assertEquals("id0", next.get(0).getId());
+        assertEquals("id5", next.get(5).getId());
+    }
+
+    @Test
+    public void testOldestSkipsDeletedSessions()
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        for (int i = 0; i < 3; i++)
+        {
+            journal.add(createTestSession("id" + i, "Session " + i));
+        }
+        journal.compact();
+
+        journal.delete("id0");
+        assertEquals("id1", journal.oldest().getId());
+        journal.delete("id1");
+        assertEquals("id2", journal.oldest().getId());
+        assertEquals(1, journal.size());
+    }
+
+    @Test
+    public void testTornRecordIsSkipped() throws Exception
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        journal.add(createTestSession("id1", "First"));
+        journal.flush();
+        Files.write(journalFile(dir).toPath(), "{\"op\":\"add\",\"sess".getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+
+        SessionJournal reloaded = new SessionJournal(dir, gson, null);
+        assertEquals(1, reloaded.loadPage(10).size());
+
+        // The torn tail was compacted away, so later appends are not swallowed by it
+        reloaded.add(createTestSession("id2", "Second"));
+        reloaded.flush();
+        assertEquals(2, loadAll(dir).size());
+    }
+
+    @Test
+    public void testStaleJournalNextToCompactedBaseIsSkipped() throws Exception
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        journal.add(createTestSession("id1", "First"));
+        journal.add(createTestSession("id2", "Second"));
+        journal.add(createTestSession("id3", "Third"));
+        journal.delete("id3");
+        journal.flush();
+        byte[] stale = Files.readAllBytes(journalFile(dir).toPath());
+
+        // As if the journal survived the compaction, which deletes it after the swap
+        journal.compact();
+        Files.write(journalFile(dir).toPath(), stale);
+
+        SessionJournal reloaded = new SessionJournal(dir, gson, null);
+        assertEquals(2, reloaded.size());
+        assertEquals(2, reloaded.loadPage(10).size());
+
+        // Appending over the stale records still replays
+        reloaded.add(createTestSession("id4", "Fourth"));
+        reloaded.rename("id1", "Renamed");
+        reloaded.flush();
+        SessionJournal again = new SessionJournal(dir, gson, null);
+        assertEquals(3, again.size());
+        List<Session> sessions = again.loadAll();
+        assertEquals(3, sessions.size());
+        assertEquals("Renamed", sessions.get(0).getName());
+        assertEquals("id4", sessions.get(2).getId());
+    }
+
+    @Test
+    public void testMarkerSurvivesAStaleJournalAfterTheSwap() throws Exception
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        journal.add(createTestSession("id1", "First"));
+        journal.flush();
+        byte[] stale = Files.readAllBytes(journalFile(dir).toPath());
+        journal.compact();
+        Files.write(journalFile(dir).toPath(), stale);
+
+        // The same instance appends to the journal the swap failed to delete
+        journal.add(createTestSession("id2", "Second"));
+        journal.flush();
+
+        SessionJournal reloaded = new SessionJournal(dir, gson, null);
+        assertEquals(2, reloaded.size());
+        assertEquals(2, reloaded.loadAll().size());
+    }
+
+    @Test
+    public void testMigratesLegacyConfigOnce()
+    {
+        File dir = folder.getRoot();
+        SessionHistoryManagerTest.TestConfigStorage legacy = new SessionHistoryManagerTest.TestConfigStorage();
+        legacy.setData(gson.toJson(Collections.singletonList(createTestSession("old", "Legacy"))));
+
+        List<Session> sessions = new SessionJournal(dir, gson, legacy).loadPage(10);
+        assertEquals(1, sessions.size());
+        assertEquals("Legacy", sessions.get(0).getName());
+        assertNull(legacy.load());
+
+        // Subsequent loads come from the journal alone
+        legacy.setData(gson.toJson(Collections.singletonList(createTestSession("other", "Ignored"))));
+        sessions = new SessionJournal(dir, gson, legacy).loadPage(10);
+        assertEquals(1, sessions.size());
+        assertEquals("old", sessions.get(0).getId());
+    }
+
+    @Test
+    public void testFailedMigrationIsRetried() throws Exception
+    {
+        File dir = folder.getRoot();
+        SessionHistoryManagerTest.TestConfigStorage legacy = new SessionHistoryManagerTest.TestConfigStorage();
+        legacy.setData(gson.toJson(Collections.singletonList(createTestSession("old", "Legacy"))));
+        // Nothing can be written where the new base file goes
+        File temp = new File(dir, SessionJournal.BASE_FILE + ".tmp");
+        assertTrue(temp.mkdir());
+
+        SessionJournal journal = new SessionJournal(dir, gson, legacy);
+        assertEquals(1, journal.loadPage(10).size());
+        assertNotNull(legacy.load());
+        journal.add(createTestSession("new", "New"));
+        journal.rename("old", "Renamed");
+        journal.flush();
+        assertTrue(journalFile(dir).exists());
+
+        assertTrue(temp.delete());
+        List<Session> sessions = new SessionJournal(dir, gson, legacy).loadPage(10);
+        assertEquals(2, sessions.size());
+        assertEquals("Renamed", sessions.get(0).getName());
+        assertEquals("new", sessions.get(1).getId());
+        assertNull(legacy.load());
+        assertEquals(2, loadAll(dir).size());
+    }
+
+    @Test
+    public void testNothingWrittenUntilFlush()
+    {
+        File dir = folder.getRoot();
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        journal.add(createTestSession("id1", "First"));
+        journal.rename("id1", "Renamed");
+
+        assertFalse(journalFile(dir).exists());
+        assertEquals(1, journal.size());
+
+        journal.flush();
+        assertEquals("Renamed", loadAll(dir).get(0).getName());
+    }
+
+    private List<Session> loadAll(File dir)
+    {
+        return new SessionJournal(dir, gson, null).loadPage(Integer.MAX_VALUE);
+    }
+
+    private static File journalFile(File dir)
+    {
+        return new File(dir, SessionJournal.JOURNAL_FILE);
+    }
+
+    private static Session createTestSession(String id, String name)
+    {
+        return new Session(id, name, 1000L, 2000L, 10, 50L, 30000.0);
+    }
+}
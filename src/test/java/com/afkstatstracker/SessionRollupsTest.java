@@ -0,0 +1,222 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class SessionRollupsTest
+{
+    private static final long DAY = 86400000L;
+    // A Monday
+    private static final LocalDate MONDAY = LocalDate.of(2024, 1, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Session session(String id, String tag, LocalDate day, long[] timestamps)
+    {
+        IntervalStats stats = IntervalStats.of(timestamps);
+        long start = day.toEpochDay() * DAY + 3600000L;
+        return new Session(id, id, start, start + 1000, timestamps.length,
+            stats.getConsistencyScore(), stats.getMeanInterval())
+            .withIntervalVariance(stats.getVariance())
+            .withAnalysisVersion(ReanalysisEngine.ANALYSIS_VERSION)
+            .withTag(tag);
+    }
+
+    private static long[] trace(Random random, int clicks, long mean, long jitter)
+    {
+        long[] timestamps = new long[clicks];
+        for (int i = 1; i < clicks; i++)
+        {
+            timestamps[i] = timestamps[i - 1] + mean + (long) (random.nextGaussian() * jitter);
+        }
+        return timestamps;
+    }
+
+    @Test
+    public void testMeanIsClickWeightedAndVarianceIsPooled()
+    {
+        SessionRollups rollups = new SessionRollups(ZoneOffset.UTC);
+        long[] a = {0, 1000, 2000, 3000, 4000, 5000};
+        long[] b = {0, 500, 1500, 2000};
+        rollups.add(session("a", "Fishing", MONDAY, a));
+        rollups.add(session("b", "Fishing", MONDAY, b));
+
+        SessionRollups.Rollup rollup = rollups.getTotal("Fishing");
+        assertEquals(2, rollup.getSessionCount());
+        assertEquals(8, rollup.getIntervalCount());
+        // (5 * 1000 + 3 * 666.7) / 8
+        assertEquals(7000.0 / 8, rollup.getMeanInterval(), 1e-9);
+        // Only b varies: (3 - 1) * var(500, 1000, 500) pooled over 4 + 2 degrees
+        double varB = IntervalStats.of(b).getVariance();
+        assertEquals(2 * varB / 6, rollup.getPooledVariance(), 1e-9);
+    }
+
+    @Test
+    public void testRemoveUndoesAdd()
+    {
+        SessionRollups rollups = new SessionRollups(ZoneOffset.UTC);
+        Random random = new Random(1);
+        List<Session> sessions = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+        {
+            Session session = session("id" + i, i % 2 == 0 ? "Fishing" : "Woodcutting", MONDAY.plusDays(i % 10),
+                trace(random, 200, 600 + i, 50));
+            sessions.add(session);
+            rollups.add(session);
+        }
+        SessionRollups.Rollup before = rollups.getTotal("Fishing");
+
+        Session extra = session("extra", "Fishing", MONDAY, trace(random, 300, 2000, 900));
+        rollups.add(extra);
+        rollups.remove(extra);
+
+        SessionRollups.Rollup after = rollups.getTotal("Fishing");
+        assertEquals(before.getSessionCount(), after.getSessionCount());
+        assertEquals(before.getMeanInterval(), after.getMeanInterval(), 1e-6);
+        assertEquals(before.getPooledVariance(), after.getPooledVariance(), 1e-6);
+
+        for (Session session : sessions)
+        {
+            rollups.remove(session);
+        }
+        assertTrue(rollups.getTags().isEmpty());
+        assertEquals(0, rollups.getSessionCount());
+    }
+
+    @Test
+    public void testIncrementalMatchesRebuild()
+    {
+        Random random = new Random(2);
+        SessionRollups incremental = new SessionRollups(ZoneOffset.UTC);
+        List<Session> kept = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            Session session = session("id" + i, "Tag" + (i % 3), MONDAY.plusDays(i % 20), trace(random, 50, 800, 100));
+            incremental.add(session);
+            if (i % 4 == 0)
+            {
+                incremental.remove(session);
+            }
+            else
+            {
+                kept.add(session);
+            }
+        }
+
+        SessionRollups rebuilt = new SessionRollups(ZoneOffset.UTC);
+        rebuilt.rebuild(() -> kept);
+
+        assertEquals(rebuilt.getTags(), incremental.getTags());
+        assertEquals(kept.size(), incremental.getSessionCount());
+        for (String tag : rebuilt.getTags())
+        {
+            SessionRollups.Rollup expected = rebuilt.getRange(tag, SessionRollups.Period.DAY, MONDAY, MONDAY.plusDays(6));
+            SessionRollups.Rollup actual = incremental.getRange(tag, SessionRollups.Period.DAY, MONDAY, MONDAY.plusDays(6));
+            assertEquals(expected.getSessionCount(), actual.getSessionCount());
+            assertEquals(expected.getMeanInterval(), actual.getMeanInterval(), 1e-6);
+            assertEquals(expected.getPooledVariance(), actual.getPooledVariance(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testRebuildKeepsChangesMadeWhileReading()
+    {
+        Random random = new Random(5);
+        Session removed = session("a", "Fishing", MONDAY, trace(random, 50, 800, 100));
+        Session stored = session("b", "Fishing", MONDAY, trace(random, 50, 800, 100));
+        Session updated = session("b", "Fishing", MONDAY, trace(random, 50, 1200, 100));
+        Session added = session("c", "Mining", MONDAY, trace(random, 50, 600, 100));
+
+        SessionRollups rollups = new SessionRollups(ZoneOffset.UTC);
+        rollups.add(removed);
+        rollups.add(stored);
+        rollups.rebuild(() ->
+        {
+            // Changed while the store is read, which may or may not have seen them
+            rollups.remove(removed);
+            rollups.remove(stored);
+            rollups.add(updated);
+            rollups.add(added);
+            return Arrays.asList(removed, stored);
+        });
+
+        SessionRollups expected = new SessionRollups(ZoneOffset.UTC);
+        expected.rebuild(() -> Arrays.asList(updated, added));
+        assertEquals(2, rollups.getSessionCount());
+        assertEquals(expected.getTags(), rollups.getTags());
+        for (String tag : expected.getTags())
+        {
+            assertEquals(expected.getTotal(tag).getSessionCount(), rollups.getTotal(tag).getSessionCount());
+            assertEquals(expected.getTotal(tag).getMeanInterval(), rollups.getTotal(tag).getMeanInterval(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testDayAndWeekBuckets()
+    {
+        SessionRollups rollups = new SessionRollups(ZoneOffset.UTC);
+        long[] clicks = {0, 1000, 2000};
+        rollups.add(session("mon", "Fishing", MONDAY, clicks));
+        rollups.add(session("sun", "Fishing", MONDAY.plusDays(6), clicks));
+        rollups.add(session("next", "Fishing", MONDAY.plusDays(7), clicks));
+        rollups.add(session("other", null, MONDAY, clicks));
+
+        assertEquals(1, rollups.getRange("Fishing", SessionRollups.Period.DAY, MONDAY, MONDAY).getSessionCount());
+        // Any day of the week selects the whole week
+        assertEquals(2, rollups.getRange("Fishing", SessionRollups.Period.WEEK, MONDAY.plusDays(3), MONDAY.plusDays(3)).getSessionCount());
+        assertEquals(3, rollups.getRange("Fishing", SessionRollups.Period.WEEK, MONDAY, MONDAY.plusDays(7)).getSessionCount());
+        assertEquals(Arrays.asList(SessionRollups.UNTAGGED, "Fishing"), rollups.getTags());
+        assertEquals(1, rollups.getTotal(SessionRollups.UNTAGGED).getSessionCount());
+    }
+
+    @Test
+    public void testLegacyVarianceIsEstimatedFromScore()
+    {
+        Session legacy = new Session("old", "Old", 0, 1000, 100, 50L, 1000.0);
+
+        // 1 / (1 + CV) = 0.505 gives a CV of about 0.98
+        double variance = SessionRollups.intervalVariance(legacy);
+        assertEquals(980.2, Math.sqrt(variance), 0.1);
+
+        // Which gives the stored score back
+        SessionRollups rollups = new SessionRollups(ZoneOffset.UTC);
+        rollups.add(legacy);
+        assertEquals(50, rollups.getTotal(SessionRollups.UNTAGGED).getConsistencyScore());
+    }
+
+    @Test
+    public void testSavedRollupsReload()
+    {
+        File dir = folder.getRoot();
+        SessionRollups rollups = new SessionRollups(dir, new Gson(), ZoneOffset.UTC);
+        assertEquals(-1, rollups.getSessionCount());
+
+        rollups.add(session("a", "Fishing", MONDAY, new long[]{0, 900, 2000, 2900}));
+        rollups.add(session("b", null, MONDAY.plusDays(8), new long[]{0, 600, 1200}));
+        rollups.save();
+
+        SessionRollups reloaded = new SessionRollups(dir, new Gson(), ZoneOffset.UTC);
+        assertEquals(2, reloaded.getSessionCount());
+        assertEquals(rollups.getTags(), reloaded.getTags());
+        SessionRollups.Rollup total = reloaded.getTotal("Fishing");
+        assertEquals(rollups.getTotal("Fishing").getPooledVariance(), total.getPooledVariance(), 0.0);
+        assertEquals(1, reloaded.getRange(SessionRollups.UNTAGGED, SessionRollups.Period.WEEK,
+            MONDAY.plusDays(7), MONDAY.plusDays(7)).getSessionCount());
+
+        // Still loads, just empty, from a file it cannot read
+        assertTrue(new File(dir, SessionRollups.FILE).delete());
+        assertTrue(new File(dir, SessionRollups.FILE).mkdir());
+        assertEquals(-1, new SessionRollups(dir, new Gson(), ZoneOffset.UTC).getSessionCount());
+    }
+}
@@ -1,5 +1,8 @@
 package com.afkstatstracker;
 
+import com.google.gson.Gson;
+import java.util.Arrays;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -28,7 +31,7 @@ public class SessionTest
     }
 
     @Test
-    public void testSessionSetName()
+    public void testSessionWithName()
     {
         Session session = new Session(
             "test-id",
@@ -40,8 +43,49 @@ public class SessionTest
             30000.0
         );
 
-        session.setName("New Name");
-        assertEquals("New Name", session.getName());
+        Session renamed = session.withName("New Name");
+        assertEquals("New Name", renamed.getName());
+        assertEquals("Original Name", session.getName());
+        assertEquals(session.getId(), renamed.getId());
+        assertEquals(session.getClickCount(), renamed.getClickCount());
     }
 
+    @Test
+    public void testSessionPercentiles()
+    {
+        Session session = new Session(
+            "test-id",
+            "Test Session",
+            1000L,
+            2000L,
+            10,
+            50L,
+            30000.0
+        );
+
+        assertNull(session.getPercentiles());
+
+        session = session.withPercentiles(new IntervalPercentiles(600L, 1200L, 4000L, 9000L));
+        assertEquals(600L, session.getPercentiles().getP50());
+        assertEquals(9000L, session.getPercentiles().getMax());
+    }
+
+    @Test
+    public void testSessionSegmentsSurviveJson()
+    {
+        Session session = new Session("test-id", "Test Session", 1000L, 700000L, 10, 50L, 30000.0);
+        assertNull(session.getSegments());
+
+        session = session
+            .withSegments(Arrays.asList(
+                new SessionSegment(1000L, 9000L, 5, 100L, 2000.0),
+                new SessionSegment(609000L, 700000L, 5, 80L, 22750.0)))
+            .withIdleTime(600000L);
+
+        Session copy = new Gson().fromJson(new Gson().toJson(session), Session.class);
+        assertEquals(2, copy.getSegments().size());
+        assertEquals(609000L, copy.getSegments().get(1).getStartTime());
+        assertEquals(80L, copy.getSegments().get(1).getConsistencyScore());
+        assertEquals(600000L, copy.getIdleTime());
+    }
 }
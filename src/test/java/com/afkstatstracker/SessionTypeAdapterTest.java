@@ -0,0 +1,130 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SessionTypeAdapterTest
+{
+    private final Gson gson = new GsonBuilder()
+        .registerTypeAdapter(Session.class, new SessionTypeAdapter())
+        .create();
+
+    private static Session createDetailedSession()
+    {
+        return new Session("id1", "Fishing", 1000L, 700000L, 120, 85L, 2400.5)
+            .withPercentiles(new IntervalPercentiles(2000L, 3500L, 4800L, 9000L))
+            .withSegments(Arrays.asList(
+                new SessionSegment(1000L, 90000L, 40, 88L, 2200.0),
+                new SessionSegment(690000L, 700000L, 80, 83L, 2500.0)))
+            .withIdleTime(600000L)
+            .withMetrics(Collections.singletonMap(BuiltInMetric.INTERVAL_MAD.getKey(), 350.0));
+    }
+
+    @Test
+    public void testRoundTrip()
+    {
+        Session copy = gson.fromJson(gson.toJson(createDetailedSession()), Session.class);
+
+        assertEquals("id1", copy.getId());
+        assertEquals("Fishing", copy.getName());
+        assertEquals(1000L, copy.getStartTime());
+        assertEquals(700000L, copy.getEndTime());
+        assertEquals(120, copy.getClickCount());
+        assertEquals(85L, copy.getConsistencyScore());
+        assertEquals(2400.5, copy.getAvgInterval(), 0.0);
+        assertEquals(600000L, copy.getIdleTime());
+        assertEquals(4800L, copy.getPercentiles().getP99());
+        assertEquals(2, copy.getSegments().size());
+        assertEquals(690000L, copy.getSegments().get(1).getStartTime());
+        assertEquals(2500.0, copy.getSegments().get(1).getAvgInterval(), 0.0);
+        assertEquals(350.0, copy.getMetrics().get(BuiltInMetric.INTERVAL_MAD.getKey()), 0.0);
+    }
+
+    @Test
+    public void testPayloadIsDecodedOnlyWhenRequested()
+    {
+        String json = gson.toJson(createDetailedSession());
+        Session copy = gson.fromJson(json, Session.class);
+
+        assertFalse(copy.isPayloadLoaded());
+        assertEquals("Fishing", copy.getName());
+        // Written back untouched
+        assertEquals(json, gson.toJson(copy));
+        assertFalse(copy.isPayloadLoaded());
+
+        assertEquals(2, copy.getSegments().size());
+        assertTrue(copy.isPayloadLoaded());
+    }
+
+    @Test
+    public void testSessionWithoutDetails()
+    {
+        Session session = new Session("id1", "Old", 1000L, 2000L, 5, 50L, 250.0);
+        Session copy = gson.fromJson(gson.toJson(session), Session.class);
+
+        assertNull(copy.getPercentiles());
+        assertNull(copy.getSegments());
+        assertFalse(gson.toJson(session).contains("payload"));
+    }
+
+    @Test
+    public void testMigratesReflectiveLayout()
+    {
+        // Version 1 was written by plain Gson, with no schema field
+        String json = "{\"id\":\"id1\",\"name\":\"Fishing\",\"startTime\":1000,\"endTime\":700000,"
+            + "\"clickCount\":120,\"consistencyScore\":85,\"avgInterval\":2400.5,"
+            + "\"percentiles\":{\"p50\":2000,\"p90\":3500,\"p99\":4800,\"max\":9000},"
+            + "\"segments\":[{\"startTime\":1000,\"endTime\":90000,\"clickCount\":40,\"consistencyScore\":88,\"avgInterval\":2200.0},"
+            + "{\"startTime\":690000,\"endTime\":700000,\"clickCount\":80,\"consistencyScore\":83,\"avgInterval\":2500.0}],"
+            + "\"idleTime\":600000}";
+
+        Session copy = gson.fromJson(json, Session.class);
+
+        assertEquals("Fishing", copy.getName());
+        assertEquals(9000L, copy.getPercentiles().getMax());
+        assertEquals(40, copy.getSegments().get(0).getClickCount());
+        assertTrue(gson.toJson(copy).contains("\"schema\":" + SessionTypeAdapter.SCHEMA_VERSION));
+    }
+
+    @Test
+    public void testToleratesUnknownAndMisshapenFields()
+    {
+        String json = "{\"schema\":99,\"id\":\"id1\",\"name\":\"Future\",\"startTime\":\"1000\","
+            + "\"clickCount\":{\"nested\":true},\"newField\":[1,2,3],\"avgInterval\":300.5}";
+
+        Session session = gson.fromJson(json, Session.class);
+
+        assertEquals("Future", session.getName());
+        assertEquals(1000L, session.getStartTime());
+        assertEquals(0, session.getClickCount());
+        assertEquals(300.5, session.getAvgInterval(), 0.0);
+    }
+
+    @Test
+    public void testReadListSkipsUnreadableSessions()
+    {
+        String json = "[" + gson.toJson(createDetailedSession()) + ",{\"name\":\"no id\"},"
+            + "{\"id\":\"id2\",\"name\":\"Second\"}]";
+
+        List<Session> sessions = new SessionTypeAdapter().readList(json);
+
+        assertEquals(2, sessions.size());
+        assertEquals("id2", sessions.get(1).getId());
+    }
+
+    @Test
+    public void testReadListKeepsSessionsBeforeMalformedJson()
+    {
+        String json = "[{\"id\":\"id1\",\"name\":\"First\"},{\"id\":\"id2\",\"name\":";
+
+        List<Session> sessions = new SessionTypeAdapter().readList(json);
+
+        assertEquals(1, sessions.size());
+        assertEquals("id1", sessions.get(0).getId());
+    }
+}
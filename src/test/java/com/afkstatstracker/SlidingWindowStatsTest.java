@@ -0,0 +1,100 @@
+package com.afkstatstracker;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SlidingWindowStatsTest
+{
+    private static final long WINDOW = 60_000;
+
+    @Test
+    public void testEmptyWindow()
+    {
+        SlidingWindowStats stats = new SlidingWindowStats(WINDOW);
+
+        assertEquals(0L, stats.getConsistencyScore(0));
+        assertEquals(0.0, stats.getMeanInterval(0), 0.0);
+    }
+
+    @Test
+    public void testMatchesIntervalStatsWithinWindow()
+    {
+        long[] timestamps = {1000, 2000, 3500, 4000, 6000, 6100};
+        SlidingWindowStats stats = new SlidingWindowStats(WINDOW);
+        for (int i = 1; i < timestamps.length; i++)
+        {
+            stats.recordInterval(timestamps[i], timestamps[i] - timestamps[i - 1]);
+        }
+
+        IntervalStats expected = IntervalStats.of(timestamps);
+        assertEquals(expected.getMeanInterval(), stats.getMeanInterval(6100), 0.0001);
+        assertEquals(expected.getConsistencyScore(), stats.getConsistencyScore(6100));
+    }
+
+    @Test
+    public void testOldIntervalsExpire()
+    {
+        SlidingWindowStats stats = new SlidingWindowStats(WINDOW);
+        // Erratic clicking first, then perfectly regular clicking
+        long time = 0;
+        for (int i = 0; i < 20; i++)
+        {
+            long interval = i % 2 == 0 ? 100 : 5000;
+            time += interval;
+            stats.recordInterval(time, interval);
+        }
+        long erraticScore = stats.getConsistencyScore(time);
+
+        for (int i = 0; i < 100; i++)
+        {
+            time += 1000;
+            stats.recordInterval(time, 1000);
+        }
+
+        assertTrue(erraticScore < 70);
+        assertEquals(100L, stats.getConsistencyScore(time));
+        assertEquals(1000.0, stats.getMeanInterval(time), 0.0);
+        assertEquals(WINDOW / 1000, stats.getIntervalCount(time), 1);
+    }
+
+    @Test
+    public void testWindowEmptiesAfterIdle()
+    {
+        SlidingWindowStats stats = new SlidingWindowStats(WINDOW);
+        stats.recordInterval(1000, 500);
+        stats.recordInterval(2000, 1000);
+
+        assertEquals(2L, stats.getIntervalCount(30_000));
+        assertEquals(0L, stats.getIntervalCount(2000 + WINDOW + 1000));
+        assertEquals(0L, stats.getIntervalCount(10 * WINDOW));
+    }
+
+    @Test
+    public void testNextExpiryIsWhenTheStatsChange()
+    {
+        SlidingWindowStats stats = new SlidingWindowStats(WINDOW);
+        assertEquals(Long.MAX_VALUE, stats.getNextExpiry(0));
+
+        stats.recordInterval(1000, 500);
+        stats.recordInterval(2500, 1500);
+
+        long expiry = stats.getNextExpiry(30_000);
+        assertEquals(2L, stats.getIntervalCount(expiry - 1));
+        assertEquals(1L, stats.getIntervalCount(expiry));
+
+        expiry = stats.getNextExpiry(expiry);
+        assertEquals(1L, stats.getIntervalCount(expiry - 1));
+        assertEquals(0L, stats.getIntervalCount(expiry));
+        assertEquals(Long.MAX_VALUE, stats.getNextExpiry(expiry));
+    }
+
+    @Test
+    public void testClear()
+    {
+        SlidingWindowStats stats = new SlidingWindowStats(WINDOW);
+        stats.recordInterval(1000, 500);
+        stats.clear();
+
+        assertEquals(0L, stats.getIntervalCount(1000));
+    }
+}
@@ -0,0 +1,446 @@
+package com.afkstatstracker;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the tracker through a full AFK session and a large history at accelerated
+ * speed: click times come from a virtual clock, so an 8 hour session takes a few
+ * seconds. The session drives the plugin's getters through the real panel refresh, and
+ * the history is read and edited at the 100k sessions it is meant to handle. The bounds
+ * are several times what a typical machine needs, loose enough not to flake on a busy
+ * build agent but tight enough that an accidental O(n) step per click, refresh or edit
+ * fails the build.
+ */
+public class SoakTest
+{
+    // About 8 hours of clicking, idle breaks included
+    private static final int SESSION_CLICKS = 100_000;
+    private static final long MEAN_INTERVAL = 240;
+    private static final int CLICKS_PER_BREAK = 2_000;
+    private static final long BREAK_LENGTH = TimeUnit.SECONDS.toMillis(90);
+    private static final long TICK_LENGTH = 600;
+    // The panel refreshes at most a few times a second, so once per 10 clicks is generous
+    private static final int CLICKS_PER_REFRESH = 10;
+
+    private static final int HISTORY_SESSIONS = 2_000;
+    private static final int SESSIONS_PER_FLUSH = 100;
+    // Sessions without payloads, to keep writing the history out of the test's time
+    private static final int LARGE_HISTORY_SESSIONS = 100_000;
+    private static final int EDITS = 1_000;
+
+    private static final long MAX_SESSION_HEAP_GROWTH = 32L << 20;
+    private static final long MAX_HISTORY_HEAP_GROWTH = 64L << 20;
+    private static final long MAX_LARGE_HISTORY_HEAP = 256L << 20;
+    private static final long MAX_REFRESH_P99_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long MAX_ADD_P99_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long MAX_EDIT_P99_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    // Includes the journal compactions, which rewrite the whole history
+    private static final long MAX_FLUSH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_LARGE_FLUSH_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long MAX_RELOAD_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long MAX_LOAD_ALL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEightHourSession() throws Exception
+    {
+        long[] nanos = {0};
+        MonotonicClock clock = new MonotonicClock(() -> 1_700_000_000_000L, () -> nanos[0]);
+        SyntheticClicks clicks = new SyntheticClicks(42);
+        Instrumentation instrumentation = new Instrumentation();
+        AfkStatsTrackerPanel[] panel = new AfkStatsTrackerPanel[1];
+        MouseClickCounterListener listener = new MouseClickCounterListener(null, instrumentation, clock,
+            () -> panel[0].markStatsDirty());
+        listener.getGapSegmenter().setIdleThreshold(TimeUnit.MINUTES.toMillis(1));
+        listener.setTickTracking(true);
+        AfkStatsTrackerPlugin plugin = plugin(clock, listener, instrumentation);
+        SessionHistoryManager history = new SessionHistoryManager(new SessionHistoryManagerTest.TestConfigStorage(),
+            new Gson());
+        onEdt(() -> panel[0] = new AfkStatsTrackerPanel(plugin, history));
+        long start = clock.currentTimeMillis();
+        long nextTick = start + TICK_LENGTH;
+
+        long heapBefore = settledHeap();
+        long[] refreshNanos = new long[SESSION_CLICKS / CLICKS_PER_REFRESH];
+        for (int i = 0; i < SESSION_CLICKS; i++)
+        {
+            nanos[0] += TimeUnit.MILLISECONDS.toNanos(clicks.nextInterval(i));
+            while (nextTick <= clock.currentTimeMillis())
+            {
+                listener.onGameTick();
+                nextTick += TICK_LENGTH;
+            }
+            listener.addClick();
+            listener.getHeatmap().addClick(clicks.nextX(), clicks.nextY(), 765, 503);
+
+            if (i % 25_000 == 24_999)
+            {
+                plugin.markLap();
+            }
+            if (i % CLICKS_PER_REFRESH == 0)
+            {
+                // What the panel's refresher runs, timed on the EDT
+                int refresh = i / CLICKS_PER_REFRESH;
+                onEdt(() ->
+                {
+                    long refreshStart = System.nanoTime();
+                    panel[0].updateStats();
+                    refreshNanos[refresh] = System.nanoTime() - refreshStart;
+                });
+            }
+        }
+        long heapAfter = settledHeap();
+
+        long elapsed = clock.currentTimeMillis() - start;
+        assertTrue("Session should span about 8 hours, was " + elapsed,
+            Math.abs(elapsed - TimeUnit.HOURS.toMillis(8)) < TimeUnit.MINUTES.toMillis(30));
+        assertEquals(SESSION_CLICKS, listener.getClicks().totalCount());
+        assertEquals(SESSION_CLICKS / CLICKS_PER_BREAK, listener.getGapSegmenter().getSegmentCount());
+        assertEquals(MEAN_INTERVAL, listener.getGapSegmenter().getCurrentSegment().getMeanInterval(),
+            MEAN_INTERVAL * 0.05);
+        assertEquals(SESSION_CLICKS, listener.getTickIntervals().getClickCount());
+        assertEquals(4, listener.getLapTracker().getLaps().size());
+
+        long refreshP99 = percentile(refreshNanos, 99);
+        assertTrue("p99 refresh took " + refreshP99 + " ns", refreshP99 < MAX_REFRESH_P99_NANOS);
+
+        // What stopping the session stores, and its stored form read back
+        Session session = new Session("soak", "Soak", start, clock.currentTimeMillis(), SESSION_CLICKS,
+            listener.getIntervalStats().getConsistencyScore(), listener.getIntervalStats().getMeanInterval())
+            .withPercentiles(listener.getIntervalHistogram().toPercentiles())
+            .withSegments(listener.getGapSegmenter().getSegments())
+            .withLaps(listener.getLapTracker().getLaps())
+            .withMetrics(listener.getMetrics().getResults())
+            .withHeatmap(listener.getHeatmap());
+        Session stored = new Session("soak", "Soak", start, clock.currentTimeMillis(), SESSION_CLICKS, 0, 0)
+            .withPayloadJson(session.getPayloadJson());
+        assertEquals(SESSION_CLICKS / CLICKS_PER_BREAK, stored.getSegments().size());
+        assertEquals(SESSION_CLICKS, stored.getHeatmap().getTotalCount());
+
+        assertHeapGrowth(heapBefore, heapAfter, MAX_SESSION_HEAP_GROWTH);
+    }
+
+    @Test
+    public void testLargeHistory() throws Exception
+    {
+        File dir = folder.getRoot();
+        Gson gson = new Gson();
+        Random random = new Random(7);
+
+        long heapBefore = settledHeap();
+        long[] addNanos = new long[HISTORY_SESSIONS];
+        long maxFlushNanos = 0;
+        try (CoalescingSessionStore store = new CoalescingSessionStore(new SessionJournal(dir, gson, null),
+            TimeUnit.HOURS.toMillis(1)))
+        {
+            SessionRollups rollups = new SessionRollups(dir, gson, ZoneId.systemDefault());
+            store.setAfterFlush(rollups::save);
+            SessionHistoryManager manager = new SessionHistoryManager(store, rollups, Runnable::run);
+
+            long time = 1_600_000_000_000L;
+            for (int i = 0; i < HISTORY_SESSIONS; i++)
+            {
+                Session session = syntheticSession("s" + i, time, random);
+                time = session.getEndTime() + TimeUnit.HOURS.toMillis(1);
+
+                long addStart = System.nanoTime();
+                manager.addSession(session);
+                addNanos[i] = System.nanoTime() - addStart;
+
+                if (i % SESSIONS_PER_FLUSH == SESSIONS_PER_FLUSH - 1)
+                {
+                    long flushStart = System.nanoTime();
+                    manager.flush();
+                    maxFlushNanos = Math.max(maxFlushNanos, System.nanoTime() - flushStart);
+                }
+            }
+            assertEquals(HISTORY_SESSIONS, manager.getStoredSessionCount());
+        }
+        long heapAfter = settledHeap();
+
+        long addP99 = percentile(addNanos, 99);
+        assertTrue("p99 add took " + addP99 + " ns", addP99 < MAX_ADD_P99_NANOS);
+        assertTrue("Slowest flush took " + maxFlushNanos + " ns", maxFlushNanos < MAX_FLUSH_NANOS);
+        // The next start only loads the newest sessions
+        long reloadStart = System.nanoTime();
+        SessionHistoryManager reloaded = new SessionHistoryManager(new SessionJournal(dir, gson, null),
+            new SessionRollups(dir, gson, ZoneId.systemDefault()), Runnable::run);
+        long reloadNanos = System.nanoTime() - reloadStart;
+
+        assertEquals(HISTORY_SESSIONS, reloaded.getStoredSessionCount());
+        // The journal adds since the last compaction come with the first page
+        int loaded = reloaded.getSessions().size();
+        assertTrue("Loaded " + loaded + " sessions up front",
+            loaded <= SessionJournal.COMPACT_THRESHOLD + SessionHistoryManager.PAGE_SIZE);
+        assertEquals("s" + (HISTORY_SESSIONS - 1), reloaded.getSessions().get(loaded - 1).getId());
+        assertTrue("Reload took " + reloadNanos + " ns", reloadNanos < MAX_RELOAD_NANOS);
+
+        assertHeapGrowth(heapBefore, heapAfter, MAX_HISTORY_HEAP_GROWTH);
+    }
+
+    @Test
+    public void testHundredThousandSessions() throws Exception
+    {
+        File dir = folder.newFolder("large");
+        Gson gson = new Gson();
+        Random random = new Random(11);
+        ZoneId zone = ZoneId.systemDefault();
+        long first = 1_500_000_000_000L;
+        SessionJournal journal = new SessionJournal(dir, gson, null);
+        SessionRollups rollups = new SessionRollups(dir, gson, zone);
+        for (int i = 0; i < LARGE_HISTORY_SESSIONS; i++)
+        {
+            Session session = leanSession(i, first, random);
+            journal.add(session);
+            rollups.add(session);
+        }
+        journal.flush();
+        rollups.save();
+
+        // Opening the history only reads its newest page
+        long heapBefore = settledHeap();
+        long openStart = System.nanoTime();
+        SessionHistoryManager manager = new SessionHistoryManager(new SessionJournal(dir, gson, null),
+            new SessionRollups(dir, gson, zone), Runnable::run);
+        long openNanos = System.nanoTime() - openStart;
+        assertTrue("Opening took " + openNanos + " ns", openNanos < MAX_RELOAD_NANOS);
+        assertEquals(LARGE_HISTORY_SESSIONS, manager.getStoredSessionCount());
+        assertEquals(SessionHistoryManager.PAGE_SIZE, manager.getSessions().size());
+
+        // Filtering to the newest tenth pages in just enough of it
+        int recent = LARGE_HISTORY_SESSIONS / 10;
+        long from = leanStart(LARGE_HISTORY_SESSIONS - recent, first);
+        long sinceStart = System.nanoTime();
+        manager.loadSessionsSince(from);
+        long sinceNanos = System.nanoTime() - sinceStart;
+        assertTrue("Loading the newest tenth took " + sinceNanos + " ns", sinceNanos < MAX_RELOAD_NANOS);
+        assertEquals(recent, manager.getSessions(SessionIndex.SortKey.DATE, true, from, Long.MAX_VALUE).size());
+        int loaded = manager.getSessions().size();
+        assertTrue("Loaded " + loaded + " sessions", loaded <= recent + SessionHistoryManager.PAGE_SIZE);
+
+        // Sorting by anything but date pages in the rest
+        long allStart = System.nanoTime();
+        manager.loadSessionsSince(Long.MIN_VALUE);
+        List<Session> byConsistency = manager.getSessions(SessionIndex.SortKey.CONSISTENCY, true, Long.MIN_VALUE,
+            Long.MAX_VALUE);
+        long allNanos = System.nanoTime() - allStart;
+        assertTrue("Loading and sorting everything took " + allNanos + " ns", allNanos < MAX_LOAD_ALL_NANOS);
+        assertEquals(LARGE_HISTORY_SESSIONS, byConsistency.size());
+        assertFalse(manager.hasOlderSessions());
+        long heapAfter = settledHeap();
+
+        // Renames and deletes spread across the whole history
+        long[] editNanos = new long[EDITS * 2];
+        for (int i = 0; i < EDITS; i++)
+        {
+            long renameStart = System.nanoTime();
+            manager.renameSession("s" + i * 97, "Renamed " + i);
+            editNanos[i * 2] = System.nanoTime() - renameStart;
+
+            long deleteStart = System.nanoTime();
+            manager.deleteSession("s" + (i * 97 + 13));
+            editNanos[i * 2 + 1] = System.nanoTime() - deleteStart;
+        }
+        long editP99 = percentile(editNanos, 99);
+        assertTrue("p99 edit took " + editP99 + " ns", editP99 < MAX_EDIT_P99_NANOS);
+        assertEquals(LARGE_HISTORY_SESSIONS - EDITS, manager.getSnapshot().size());
+
+        long flushStart = System.nanoTime();
+        manager.flush();
+        long flushNanos = System.nanoTime() - flushStart;
+        assertTrue("Flush took " + flushNanos + " ns", flushNanos < MAX_LARGE_FLUSH_NANOS);
+
+        SessionJournal reopened = new SessionJournal(dir, gson, null);
+        assertEquals(LARGE_HISTORY_SESSIONS - EDITS, reopened.size());
+        Map<String, Session> stored = new HashMap<>();
+        reopened.loadAll().forEach(session -> stored.put(session.getId(), session));
+        for (int i = 0; i < EDITS; i++)
+        {
+            assertEquals("Renamed " + i, stored.get("s" + i * 97).getName());
+            assertFalse(stored.containsKey("s" + (i * 97 + 13)));
+        }
+
+        assertHeapGrowth(heapBefore, heapAfter, MAX_LARGE_HISTORY_HEAP);
+    }
+
+    /**
+     * A plugin as far as the panel needs one, around the given listener and clock
+     * instead of the ones started with the client.
+     */
+    private static AfkStatsTrackerPlugin plugin(MonotonicClock clock, MouseClickCounterListener listener,
+        Instrumentation instrumentation) throws ReflectiveOperationException
+    {
+        AfkStatsTrackerConfig config = (AfkStatsTrackerConfig) Proxy.newProxyInstance(
+            AfkStatsTrackerConfig.class.getClassLoader(), new Class<?>[]{AfkStatsTrackerConfig.class},
+            (proxy, method, args) -> method.getName().equals("trackGameTicks"));
+
+        AfkStatsTrackerPlugin plugin = new AfkStatsTrackerPlugin();
+        setField(plugin, "config", config);
+        setField(plugin, "clock", clock);
+        setField(plugin, "mouseListener", listener);
+        setField(plugin, "instrumentation", instrumentation);
+        setField(plugin, "startTime", clock.currentTimeMillis());
+        setField(plugin, "isTracking", true);
+        return plugin;
+    }
+
+    private static void setField(Object target, String name, Object value) throws ReflectiveOperationException
+    {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static void onEdt(Runnable task) throws Exception
+    {
+        SwingUtilities.invokeAndWait(task);
+    }
+
+    private static long leanStart(int index, long first)
+    {
+        return first + index * TimeUnit.HOURS.toMillis(2);
+    }
+
+    private static Session leanSession(int index, long first, Random random)
+    {
+        long start = leanStart(index, first);
+        long end = start + TimeUnit.MINUTES.toMillis(30 + random.nextInt(60));
+        return new Session("s" + index, "Session " + index, start, end, 500 + random.nextInt(5_000),
+            random.nextInt(101), 600 + random.nextInt(5_000))
+            .withTag(random.nextBoolean() ? "Fishing" : "Woodcutting");
+    }
+
+    private static Session syntheticSession(String id, long start, Random random)
+    {
+        int clicks = 500 + random.nextInt(5_000);
+        long mean = 600 + random.nextInt(5_000);
+        long end = start + clicks * mean;
+        SessionSegment[] segments = new SessionSegment[1 + random.nextInt(20)];
+        long segmentLength = (end - start) / segments.length;
+        for (int i = 0; i < segments.length; i++)
+        {
+            segments[i] = new SessionSegment(start + i * segmentLength, start + (i + 1) * segmentLength,
+                clicks / segments.length, 60 + random.nextInt(40), mean);
+        }
+        ClickHeatmap heatmap = new ClickHeatmap();
+        for (int i = 0; i < 50; i++)
+        {
+            heatmap.addClick(random.nextInt(765), random.nextInt(503), 765, 503);
+        }
+
+        return new Session(id, "Session " + id, start, end, clicks, 60 + random.nextInt(40), mean)
+            .withTag(random.nextBoolean() ? "Fishing" : "Woodcutting")
+            .withPercentiles(new IntervalPercentiles(mean, mean * 2, mean * 3, mean * 10))
+            .withSegments(Arrays.asList(segments))
+            .withMetrics(MetricDispatcher.builtIn().getResults())
+            .withHeatmap(heatmap)
+            .withAnalysisVersion(ReanalysisEngine.ANALYSIS_VERSION);
+    }
+
+    private static long percentile(long[] values, int percentile)
+    {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    /**
+     * Used heap once a full collection has freed all it can, or -1 if no collection could
+     * be forced, such as with {@code -XX:+DisableExplicitGC}. {@link System#gc()} is only
+     * a hint, so this waits for a weakly held object to go, then until the used heap
+     * stops shrinking.
+     */
+    private static long settledHeap() throws InterruptedException
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int round = 0; round < 10; round++)
+        {
+            if (!collect())
+            {
+                return -1;
+            }
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            // Within about 1% of the last round
+            if (now >= used - (used >> 7))
+            {
+                return Math.min(now, used);
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    private static boolean collect() throws InterruptedException
+    {
+        WeakReference<Object> sentinel = new WeakReference<>(new Object());
+        for (int i = 0; i < 50 && sentinel.get() != null; i++)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        return sentinel.get() == null;
+    }
+
+    /**
+     * Checked last, so a JVM that ignores {@link System#gc()} skips only this.
+     */
+    private static void assertHeapGrowth(long before, long after, long max)
+    {
+        Assume.assumeTrue("Could not force a garbage collection", before >= 0 && after >= 0);
+        long growth = after - before;
+        assertTrue("Heap grew by " + growth + " bytes", growth < max);
+    }
+
+    /**
+     * A steady AFK rhythm with normally distributed jitter, a bank break every
+     * {@link #CLICKS_PER_BREAK} clicks, and clicks clustered around two spots.
+     */
+    private static class SyntheticClicks
+    {
+        private final Random random;
+
+        SyntheticClicks(long seed)
+        {
+            this.random = new Random(seed);
+        }
+
+        long nextInterval(int click)
+        {
+            if (click > 0 && click % CLICKS_PER_BREAK == 0)
+            {
+                return BREAK_LENGTH;
+            }
+            return Math.max(1, Math.round(MEAN_INTERVAL + random.nextGaussian() * MEAN_INTERVAL / 10));
+        }
+
+        int nextX()
+        {
+            return (random.nextBoolean() ? 300 : 500) + (int) (random.nextGaussian() * 8);
+        }
+
+        int nextY()
+        {
+            return 250 + (int) (random.nextGaussian() * 8);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.afkstatstracker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StatsRefresherTest
+{
+    private final long[] now = {1_000_000L};
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final AtomicInteger refreshes = new AtomicInteger();
+
+    @Test
+    public void testBurstIsCoalesced() throws Exception
+    {
+        StatsRefresher refresher = refresher(1);
+        onEdt(() -> refresher.setActive(true));
+
+        for (int i = 0; i < 100; i++)
+        {
+            refresher.markDirty();
+        }
+        onEdt(() -> {});
+        assertEquals(0, scheduler.delay);
+        scheduler.run();
+        scheduler.run();
+
+        assertEquals(1, refreshes.get());
+        assertFalse(scheduler.isPending());
+    }
+
+    @Test
+    public void testNothingRunsWithoutClicks() throws Exception
+    {
+        StatsRefresher refresher = refresher(10);
+        onEdt(() -> refresher.setActive(true));
+
+        assertFalse(scheduler.isPending());
+        assertEquals(0, refreshes.get());
+    }
+
+    @Test
+    public void testInactivePanelDefersRefresh() throws Exception
+    {
+        StatsRefresher refresher = refresher(10);
+
+        refresher.markDirty();
+        refresher.markDirty();
+        onEdt(() -> {});
+        assertFalse(scheduler.isPending());
+
+        onEdt(() -> refresher.setActive(true));
+        scheduler.run();
+        scheduler.run();
+
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    public void testRateIsLimited() throws Exception
+    {
+        StatsRefresher refresher = refresher(5);
+        onEdt(() -> refresher.setActive(true));
+
+        refresher.markDirty();
+        onEdt(() -> {});
+        scheduler.run();
+        assertEquals(1, refreshes.get());
+
+        // Clicking again 10 ms later waits out the rest of the 200 ms
+        now[0] += 10;
+        refresher.markDirty();
+        onEdt(() -> {});
+        assertEquals(190, scheduler.delay);
+
+        now[0] += 190;
+        scheduler.run();
+        assertEquals(2, refreshes.get());
+    }
+
+    @Test
+    public void testStaleStatsRefreshWithoutClicks() throws Exception
+    {
+        StatsRefresher refresher = refresher(5);
+        onEdt(() -> refresher.setActive(true));
+        onEdt(() -> refresher.refreshAt(now[0] + 60_000));
+        assertEquals(60_000, scheduler.delay);
+
+        // A click refreshes sooner without losing the expiry
+        refresher.markDirty();
+        onEdt(() -> {});
+        assertEquals(0, scheduler.delay);
+        scheduler.run();
+        assertEquals(1, refreshes.get());
+
+        onEdt(() -> refresher.refreshAt(now[0] + 30_000));
+        now[0] += 29_999;
+        scheduler.run();
+        assertEquals("Not stale yet", 1, refreshes.get());
+        assertEquals(1, scheduler.delay);
+
+        now[0] += 1;
+        scheduler.run();
+        assertEquals(2, refreshes.get());
+        assertFalse(scheduler.isPending());
+
+        onEdt(() -> refresher.refreshAt(Long.MAX_VALUE));
+        assertFalse(scheduler.isPending());
+    }
+
+    private StatsRefresher refresher(int maxPerSecond)
+    {
+        return new StatsRefresher(refreshes::incrementAndGet, maxPerSecond, () -> now[0], scheduler);
+    }
+
+    private static void onEdt(Runnable task) throws Exception
+    {
+        SwingUtilities.invokeAndWait(task);
+    }
+
+    /**
+     * Runs the scheduled task when the test says so, on the EDT.
+     */
+    private static class ManualScheduler implements StatsRefresher.Scheduler
+    {
+        private Runnable task;
+        private long delay = -1;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis)
+        {
+            this.task = task;
+            this.delay = delayMillis;
+        }
+
+        @Override
+        public void cancel()
+        {
+            task = null;
+        }
+
+        @Override
+        public boolean isPending()
+        {
+            return task != null;
+        }
+
+        void run() throws Exception
+        {
+            Runnable pending = task;
+            task = null;
+            if (pending != null)
+            {
+                onEdt(pending);
+            }
+        }
+    }
+}
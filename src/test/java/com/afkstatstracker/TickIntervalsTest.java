@@ -0,0 +1,93 @@
+package com.afkstatstracker;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TickIntervalsTest
+{
+    @Test
+    public void testCountsTicksBetweenClicks()
+    {
+        TickIntervals ticks = new TickIntervals();
+        long[] clickTicks = {10, 15, 20, 25, 31, 36, 36, 500};
+        for (long tick : clickTicks)
+        {
+            ticks.addClick(tick);
+        }
+
+        assertEquals(8, ticks.getClickCount());
+        assertEquals(5, ticks.getModalTicks());
+        assertEquals(4, ticks.getCount(5));
+        assertEquals(1, ticks.getCount(6));
+        assertEquals(1, ticks.getCount(0));
+        assertEquals("Long gaps share the last count", 1, ticks.getCount(TickIntervals.MAX_TRACKED_TICKS));
+        assertEquals((500 - 10) / 7.0, ticks.getMeanTicks(), 1e-9);
+
+        ticks.reset();
+        assertEquals(0, ticks.getClickCount());
+        assertEquals(0, ticks.getCount(5));
+        assertEquals(0, ticks.getModalTicks());
+    }
+
+    @Test
+    public void testListenerUsesItsClockAndTagsTicks()
+    {
+        long[] now = {1_000_000L};
+        MouseClickCounterListener listener = new MouseClickCounterListener(null, new Instrumentation(),
+            () -> now[0], () -> {});
+        listener.setTickTracking(true);
+
+        for (int i = 0; i < 10; i++)
+        {
+            listener.addClick();
+            // 3 ticks between clicks, with the usual few ms of jitter
+            now[0] += 1800 + (i % 2 == 0 ? 7 : -7);
+            listener.onGameTick();
+            listener.onGameTick();
+            listener.onGameTick();
+        }
+
+        assertEquals(1_000_000L, listener.getClicks().getTimestamp(0));
+        assertTrue(listener.getIntervalStats().getConsistencyScore() < 100);
+        assertEquals(3.0, listener.getTickIntervals().getMeanTicks(), 0.0);
+        assertEquals(100L, listener.getTickIntervals().getConsistencyScore());
+
+        listener.setTickTracking(false);
+        listener.addClick();
+        assertEquals(10, listener.getTickIntervals().getClickCount());
+        assertEquals(11, listener.getIntervalStats().getClickCount());
+    }
+
+    @Test
+    public void testMonotonicClockStartsAtTheWallClock()
+    {
+        long before = System.currentTimeMillis();
+        ClickClock clock = ClickClock.monotonic();
+        long first = clock.currentTimeMillis();
+        long second = clock.currentTimeMillis();
+
+        assertTrue(Math.abs(first - before) < 1000);
+        assertTrue(second >= first);
+    }
+
+    @Test
+    public void testAnchorCatchesUpAfterSuspend()
+    {
+        long[] wall = {1_000_000L};
+        long[] nanos = {5_000_000_000L};
+        MonotonicClock clock = new MonotonicClock(() -> wall[0], () -> nanos[0]);
+
+        // Clicks within a session only follow nanoTime, whatever the wall clock does
+        nanos[0] += 1_500_000_000L;
+        wall[0] -= 60_000;
+        assertEquals(1_001_500L, clock.currentTimeMillis());
+
+        // An hour asleep passes on the wall clock only
+        wall[0] += 3_600_000L;
+        assertEquals(1_001_500L, clock.currentTimeMillis());
+        clock.anchor();
+        assertEquals(wall[0], clock.currentTimeMillis());
+        nanos[0] += 2_000_000L;
+        assertEquals(wall[0] + 2, clock.currentTimeMillis());
+    }
+}
@@ -0,0 +1,73 @@
+package com.afkstatstracker;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class TraceStoreTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCodecRoundTrip()
+    {
+        long[] timestamps = {1708523400000L, 1708523400600L, 1708523401800L, 1708523401800L, 1708523465000L};
+
+        long[] decoded = TraceCodec.decode(ByteBuffer.wrap(TraceCodec.encode(timestamps)));
+
+        assertArrayEquals(timestamps, decoded);
+    }
+
+    @Test
+    public void testCodecHandlesEmptyAndUnsortedTraces()
+    {
+        assertArrayEquals(new long[0], TraceCodec.decode(ByteBuffer.wrap(TraceCodec.encode(new long[0]))));
+
+        long[] unsorted = {5000L, 1000L, 9000L};
+        assertArrayEquals(unsorted, TraceCodec.decode(ByteBuffer.wrap(TraceCodec.encode(unsorted))));
+    }
+
+    @Test
+    public void testTypicalTraceUnderTwoBytesPerClick()
+    {
+        Random random = new Random(7);
+        long[] timestamps = new long[20000];
+        long t = 1708523400000L;
+        for (int i = 0; i < timestamps.length; i++)
+        {
+            // Clicks every 0.6 to 5 seconds
+            t += 600 + random.nextInt(4400);
+            timestamps[i] = t;
+        }
+
+        byte[] encoded = TraceCodec.encode(timestamps);
+
+        assertTrue("encoded " + encoded.length + " bytes", encoded.length < timestamps.length * 2);
+        assertArrayEquals(timestamps, TraceCodec.decode(ByteBuffer.wrap(encoded)));
+    }
+
+    @Test
+    public void testSaveFindAndDelete()
+    {
+        File dir = new File(folder.getRoot(), "traces");
+        TraceStore store = new TraceStore(dir);
+        long[] timestamps = {1000L, 1600L, 2300L};
+
+        assertNull(store.find("id1"));
+
+        store.save("id1", timestamps);
+        ClickTrace trace = store.find("id1");
+        assertNotNull(trace);
+        assertFalse(trace.isLoaded());
+        assertArrayEquals(timestamps, trace.getTimestamps());
+        assertTrue(trace.isLoaded());
+
+        store.delete("id1");
+        assertNull(store.find("id1"));
+    }
+}